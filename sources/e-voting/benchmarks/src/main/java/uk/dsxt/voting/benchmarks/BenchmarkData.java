@@ -0,0 +1,86 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ * *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ * *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ * *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ * *
+ * Removal or modification of this copyright notice is prohibited.            *
+ * *
+ ******************************************************************************/
+
+package uk.dsxt.voting.benchmarks;
+
+import lombok.Getter;
+import uk.dsxt.voting.common.domain.dataModel.Voting;
+import uk.dsxt.voting.common.domain.dataModel.VoteResult;
+import uk.dsxt.voting.common.utils.crypto.CryptoHelperImpl;
+import uk.dsxt.voting.common.utils.crypto.KeyPair;
+import uk.dsxt.voting.tests.TestDataGenerator;
+
+import java.math.BigDecimal;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Fixed dataset shared by the benchmarks: the english voting and owner votes generated with {@link TestDataGenerator}
+ * logic from a constant seed, so every run measures the same messages. Only the RSA keys differ between runs.
+ */
+public class BenchmarkData {
+
+    public static final long VOTING_BEGIN = 1451606400000L;
+    public static final long VOTING_END = 4102444800000L;
+
+    private static final long SEED = 20160301;
+
+    private static volatile BenchmarkData defaultData;
+
+    @Getter
+    private final Voting voting;
+
+    @Getter
+    private final VoteResult[] votes;
+
+    @Getter
+    private final PrivateKey privateKey;
+
+    @Getter
+    private final PublicKey publicKey;
+
+    public BenchmarkData(int ownersCount, long seed) throws Exception {
+        voting = TestDataGenerator.generateVotingEn(VOTING_BEGIN, VOTING_END);
+        Random random = new Random(seed);
+        votes = new VoteResult[ownersCount];
+        for (int i = 0; i < ownersCount; i++) {
+            Map<String, BigDecimal> securities = Collections.singletonMap(TestDataGenerator.SECURITY, new BigDecimal(15 + random.nextInt(86)));
+            votes[i] = TestDataGenerator.generateVote(Integer.toString(i + 1), securities, voting, random);
+        }
+        CryptoHelperImpl cryptoHelper = CryptoHelperImpl.DEFAULT_CRYPTO_HELPER;
+        KeyPair keys = cryptoHelper.createCryptoKeysGenerator().generateKeyPair();
+        privateKey = cryptoHelper.loadPrivateKey(keys.getPrivateKey());
+        publicKey = cryptoHelper.loadPublicKey(keys.getPublicKey());
+    }
+
+    public static BenchmarkData getDefault() throws Exception {
+        if (defaultData == null) {
+            synchronized (BenchmarkData.class) {
+                if (defaultData == null)
+                    defaultData = new BenchmarkData(100000, SEED);
+            }
+        }
+        return defaultData;
+    }
+}
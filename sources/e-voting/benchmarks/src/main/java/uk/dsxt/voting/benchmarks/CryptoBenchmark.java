@@ -0,0 +1,77 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ * *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ * *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ * *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ * *
+ * Removal or modification of this copyright notice is prohibited.            *
+ * *
+ ******************************************************************************/
+
+package uk.dsxt.voting.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import uk.dsxt.voting.common.messaging.SimpleSerializer;
+import uk.dsxt.voting.common.utils.crypto.CryptoHelperImpl;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CryptoBenchmark {
+
+    private final CryptoHelperImpl cryptoHelper = CryptoHelperImpl.DEFAULT_CRYPTO_HELPER;
+
+    private BenchmarkData data;
+    private String text;
+    private String signature;
+    private String encrypted;
+
+    @Setup
+    public void setUp() throws Exception {
+        data = BenchmarkData.getDefault();
+        text = new SimpleSerializer().serialize(data.getVotes()[0], data.getVoting());
+        signature = cryptoHelper.createSignature(text, data.getPrivateKey());
+        encrypted = cryptoHelper.encrypt(text, data.getPublicKey());
+    }
+
+    @Benchmark
+    public String sign() throws Exception {
+        return cryptoHelper.createSignature(text, data.getPrivateKey());
+    }
+
+    @Benchmark
+    public boolean verify() throws Exception {
+        return cryptoHelper.verifySignature(text, signature, data.getPublicKey());
+    }
+
+    @Benchmark
+    public String encrypt() throws Exception {
+        return cryptoHelper.encrypt(text, data.getPublicKey());
+    }
+
+    @Benchmark
+    public String decrypt() throws Exception {
+        return cryptoHelper.decrypt(encrypted, data.getPrivateKey());
+    }
+
+    @Benchmark
+    public String digest() throws Exception {
+        return cryptoHelper.getDigest(text);
+    }
+}
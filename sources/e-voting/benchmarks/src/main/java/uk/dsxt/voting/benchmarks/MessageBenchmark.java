@@ -0,0 +1,95 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ * *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ * *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ * *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ * *
+ * Removal or modification of this copyright notice is prohibited.            *
+ * *
+ ******************************************************************************/
+
+package uk.dsxt.voting.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import uk.dsxt.voting.common.messaging.MessageContent;
+import uk.dsxt.voting.common.messaging.SimpleSerializer;
+import uk.dsxt.voting.common.utils.MessageBuilder;
+import uk.dsxt.voting.common.utils.crypto.CryptoHelper;
+import uk.dsxt.voting.common.utils.crypto.CryptoHelperImpl;
+import uk.dsxt.voting.common.utils.crypto.MockCryptoHelper;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wallet message envelope: building a signed VOTE message, parsing it and checking its signature,
+ * and the {@link MessageBuilder} framing used for every signed text.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageBenchmark {
+
+    @Param({"mock", "real"})
+    public String crypto;
+
+    private BenchmarkData data;
+    private CryptoHelper cryptoHelper;
+    private String body;
+    private byte[] message;
+    private String[] parts;
+    private String builtMessage;
+
+    @Setup
+    public void setUp() throws Exception {
+        data = BenchmarkData.getDefault();
+        cryptoHelper = "real".equals(crypto) ? CryptoHelperImpl.DEFAULT_CRYPTO_HELPER : new MockCryptoHelper();
+        String serializedVote = new SimpleSerializer().serialize(data.getVotes()[0], data.getVoting());
+        body = cryptoHelper.encrypt(MessageBuilder.buildMessage(serializedVote, "SIGN"), data.getPublicKey());
+        message = buildOutputMessage();
+        parts = new String[]{"transaction", data.getVoting().getId(), "100", "1", "0", body, "digest"};
+        builtMessage = MessageBuilder.buildMessage(parts);
+    }
+
+    @Benchmark
+    public byte[] buildOutputMessage() throws Exception {
+        Map<String, String> fields = new HashMap<>();
+        fields.put("BODY", body);
+        return MessageContent.buildOutputMessage("VOTE", "1", data.getPrivateKey(), cryptoHelper, fields);
+    }
+
+    @Benchmark
+    public MessageContent parse() {
+        return new MessageContent(message);
+    }
+
+    @Benchmark
+    public boolean parseAndCheckSign() throws Exception {
+        return new MessageContent(message).checkSign(data.getPublicKey(), cryptoHelper);
+    }
+
+    @Benchmark
+    public String buildMessage() {
+        return MessageBuilder.buildMessage(parts);
+    }
+
+    @Benchmark
+    public String[] splitMessage() {
+        return MessageBuilder.splitMessage(builtMessage);
+    }
+}
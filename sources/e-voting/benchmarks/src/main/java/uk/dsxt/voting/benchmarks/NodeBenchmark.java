@@ -0,0 +1,128 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ * *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ * *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ * *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ * *
+ * Removal or modification of this copyright notice is prohibited.            *
+ * *
+ ******************************************************************************/
+
+package uk.dsxt.voting.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import uk.dsxt.voting.common.domain.dataModel.*;
+import uk.dsxt.voting.common.domain.nodes.AssetsHolder;
+import uk.dsxt.voting.common.domain.nodes.ClientNode;
+import uk.dsxt.voting.common.domain.nodes.MasterNode;
+import uk.dsxt.voting.common.domain.nodes.NetworkMessagesSender;
+import uk.dsxt.voting.common.messaging.SimpleSerializer;
+import uk.dsxt.voting.common.utils.InternalLogicException;
+import uk.dsxt.voting.common.utils.crypto.MockCryptoHelper;
+
+import java.math.BigDecimal;
+import java.security.PublicKey;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vote handling of a holder node without crypto and network costs: {@link MockCryptoHelper} keys and signatures,
+ * a parent acceptor and a wallet sender which drop everything. A fresh node is created for every iteration,
+ * so each accepted vote takes a new packet range of the child holder and each owner votes once.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NodeBenchmark {
+
+    private static final String HOLDER_ID = "holder";
+    private static final String CHILD_ID = "child";
+
+    private BenchmarkData data;
+    private ClientNode node;
+    private Client[] clients;
+    private long voteIndex;
+    private int ownerIndex;
+
+    private static class NullNetwork implements NetworkMessagesSender {
+        private long lastId;
+
+        @Override
+        public String addVoting(Voting voting) {
+            return Long.toString(++lastId);
+        }
+
+        @Override
+        public String addVotingTotalResult(VoteResult result, Voting voting) {
+            return Long.toString(++lastId);
+        }
+
+        @Override
+        public String addVoteStatus(VoteStatus status) {
+            return Long.toString(++lastId);
+        }
+
+        @Override
+        public String addVote(VoteResult result, String serializedVote, String ownerSignature) {
+            return Long.toString(++lastId);
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception {
+        data = BenchmarkData.getDefault();
+        VoteResult[] votes = data.getVotes();
+        clients = new Client[votes.length + 1];
+        for (int i = 0; i < votes.length; i++) {
+            clients[i] = new Client(votes[i].getHolderId(), Collections.singletonMap(data.getVoting().getSecurity(), votes[i].getPacketSize()), ParticipantRole.Owner);
+        }
+        clients[votes.length] = new Client(CHILD_ID, Collections.singletonMap(data.getVoting().getSecurity(), new BigDecimal(Long.MAX_VALUE)), ParticipantRole.NominalHolder);
+    }
+
+    @Setup(Level.Iteration)
+    public void createNode() throws Exception {
+        MockCryptoHelper cryptoHelper = new MockCryptoHelper();
+        Map<String, PublicKey> keys = new HashMap<>();
+        PublicKey key = cryptoHelper.loadPublicKey(null);
+        keys.put(MasterNode.MASTER_HOLDER_ID, key);
+        keys.put(HOLDER_ID, key);
+        keys.put(CHILD_ID, key);
+        node = new ClientNode(HOLDER_ID, new SimpleSerializer(), cryptoHelper, keys, cryptoHelper.loadPrivateKey(null),
+            (transactionId, votingId, packetSize, clientId, clientPacketResidual, encryptedData, voteDigest, clientSignature) -> null, null, null);
+        node.setNetworkMessagesSender(new NullNetwork());
+        node.setClientsOnTime(0, clients);
+        node.addVoting(data.getVoting());
+        voteIndex = 0;
+        ownerIndex = 0;
+    }
+
+    @Benchmark
+    public NodeVoteReceipt acceptVote() throws InternalLogicException {
+        long index = voteIndex++;
+        return node.acceptVote(Long.toString(index), data.getVoting().getId(), BigDecimal.ONE, CHILD_ID, BigDecimal.valueOf(index),
+            "encrypted", "digest", "SIGN");
+    }
+
+    @Benchmark
+    public void addClientVote() throws InternalLogicException {
+        node.addClientVote(data.getVotes()[ownerIndex], AssetsHolder.EMPTY_SIGNATURE);
+        if (++ownerIndex == data.getVotes().length)
+            ownerIndex = 0;
+    }
+}
@@ -0,0 +1,86 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ * *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ * *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ * *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ * *
+ * Removal or modification of this copyright notice is prohibited.            *
+ * *
+ ******************************************************************************/
+
+package uk.dsxt.voting.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import uk.dsxt.voting.common.domain.dataModel.Voting;
+import uk.dsxt.voting.common.domain.dataModel.VoteResult;
+import uk.dsxt.voting.common.iso20022.Iso20022Serializer;
+import uk.dsxt.voting.common.messaging.MessagesSerializer;
+import uk.dsxt.voting.common.messaging.SimpleSerializer;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializerBenchmark {
+
+    @Param({"iso20022", "simple"})
+    public String format;
+
+    private BenchmarkData data;
+    private MessagesSerializer serializer;
+    private String serializedVoting;
+    private String[] serializedVotes;
+    private int index;
+
+    @Setup
+    public void setUp() throws Exception {
+        data = BenchmarkData.getDefault();
+        serializer = "iso20022".equals(format) ? new Iso20022Serializer() : new SimpleSerializer();
+        serializedVoting = serializer.serialize(data.getVoting());
+        serializedVotes = new String[1000];
+        for (int i = 0; i < serializedVotes.length; i++) {
+            serializedVotes[i] = serializer.serialize(data.getVotes()[i], data.getVoting());
+        }
+    }
+
+    private int next() {
+        if (++index == serializedVotes.length)
+            index = 0;
+        return index;
+    }
+
+    @Benchmark
+    public String serializeVoting() {
+        return serializer.serialize(data.getVoting());
+    }
+
+    @Benchmark
+    public Voting deserializeVoting() throws Exception {
+        return serializer.deserializeVoting(serializedVoting);
+    }
+
+    @Benchmark
+    public String serializeVote() throws Exception {
+        return serializer.serialize(data.getVotes()[next()], data.getVoting());
+    }
+
+    @Benchmark
+    public VoteResult deserializeVote() throws Exception {
+        return serializer.deserializeVoteResult(serializedVotes[next()]);
+    }
+}
@@ -0,0 +1,82 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ * *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ * *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ * *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ * *
+ * Removal or modification of this copyright notice is prohibited.            *
+ * *
+ ******************************************************************************/
+
+package uk.dsxt.voting.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import uk.dsxt.voting.common.domain.dataModel.VoteResult;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VoteResultBenchmark {
+
+    private BenchmarkData data;
+    private String[] serializedVotes;
+    private VoteResult total;
+    private int index;
+
+    @Setup
+    public void setUp() throws Exception {
+        data = BenchmarkData.getDefault();
+        serializedVotes = new String[data.getVotes().length];
+        for (int i = 0; i < serializedVotes.length; i++) {
+            serializedVotes[i] = data.getVotes()[i].toString();
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void resetTotal() {
+        total = new VoteResult(data.getVoting().getId(), null);
+    }
+
+    private int next() {
+        if (++index == serializedVotes.length)
+            index = 0;
+        return index;
+    }
+
+    @Benchmark
+    public VoteResult parse() {
+        return new VoteResult(serializedVotes[next()]);
+    }
+
+    @Benchmark
+    public String serialize() {
+        return data.getVotes()[next()].toString();
+    }
+
+    @Benchmark
+    public VoteResult add() {
+        total.add(data.getVotes()[next()]);
+        return total;
+    }
+
+    @Benchmark
+    public String findError() {
+        return data.getVotes()[next()].findError(data.getVoting());
+    }
+}
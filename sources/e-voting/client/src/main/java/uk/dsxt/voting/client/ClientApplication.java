@@ -27,8 +27,9 @@ import org.glassfish.jersey.server.ResourceConfig;
 import uk.dsxt.voting.client.auth.AuthManager;
 import uk.dsxt.voting.client.datamodel.ClientsOnTime;
 import uk.dsxt.voting.common.cryptoVote.CryptoVoteAcceptorWeb;
+import uk.dsxt.voting.common.cryptoVote.VoteOutbox;
+import uk.dsxt.voting.common.demo.AsyncResultsBuilder;
 import uk.dsxt.voting.common.demo.ResultBilderDecorator;
-import uk.dsxt.voting.common.demo.ResultsBuilder;
 import uk.dsxt.voting.common.demo.ResultsBuilderWeb;
 import uk.dsxt.voting.common.domain.dataModel.Participant;
 import uk.dsxt.voting.common.domain.dataModel.Voting;
@@ -36,8 +37,14 @@ import uk.dsxt.voting.common.domain.nodes.ClientNode;
 import uk.dsxt.voting.common.domain.nodes.MasterNode;
 import uk.dsxt.voting.common.domain.nodes.VotingOrganizer;
 import uk.dsxt.voting.common.iso20022.Iso20022Serializer;
+import uk.dsxt.voting.common.ledger.LedgerWalletManager;
 import uk.dsxt.voting.common.messaging.MessagesSerializer;
+import uk.dsxt.voting.common.messaging.MeteredMessagesSerializer;
+import uk.dsxt.voting.common.metrics.MetricsRegistry;
+import uk.dsxt.voting.common.metrics.MetricsResource;
+import uk.dsxt.voting.common.metrics.VoteTracer;
 import uk.dsxt.voting.common.messaging.SimpleSerializer;
+import uk.dsxt.voting.common.networking.MessageBus;
 import uk.dsxt.voting.common.networking.MessageHandler;
 import uk.dsxt.voting.common.networking.MockWalletManager;
 import uk.dsxt.voting.common.networking.WalletManager;
@@ -50,15 +57,14 @@ import uk.dsxt.voting.common.utils.InternalLogicException;
 import uk.dsxt.voting.common.utils.PropertiesHelper;
 import uk.dsxt.voting.common.utils.crypto.CryptoHelper;
 import uk.dsxt.voting.common.utils.crypto.CryptoHelperImpl;
+import uk.dsxt.voting.common.utils.crypto.MeteredCryptoHelper;
 import uk.dsxt.voting.common.utils.crypto.MockCryptoHelper;
+import uk.dsxt.voting.common.utils.crypto.ParticipantKeyStore;
 import uk.dsxt.voting.common.utils.web.JettyRunner;
 
 import javax.ws.rs.ApplicationPath;
-import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
-import java.security.PublicKey;
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.function.Function;
@@ -72,12 +78,19 @@ public class ClientApplication extends ResourceConfig {
     private final NetworkScheduler networkScheduler;
     private final MessageHandler messageHandler;
     private final WalletManager walletManager;
+    private final WalletMessageConnector walletMessageConnector;
+    private final ClientManager clientManager;
+    private final AsyncResultsBuilder resultsBuilder;
+    private final MasterNode masterNode;
 
     public ClientApplication(Properties properties, boolean isMain, String ownerId, String privateKey, String messagesFileContent, String walletOffSchedule,
                              String mainAddress, String passphrase, String nxtPropertiesPath,
                              String parentHolderUrl, String credentialsFilePath, String clientsFilePath, String stateFilePath, Logger audit) throws Exception {
         final boolean useMockCryptoHelper = Boolean.valueOf(properties.getProperty("mock.cryptoHelper", Boolean.TRUE.toString()));
-        CryptoHelper cryptoHelper = useMockCryptoHelper ? new MockCryptoHelper() : CryptoHelperImpl.DEFAULT_CRYPTO_HELPER;
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        VoteTracer.getDefault().setSampleRate(Double.parseDouble(properties.getProperty("tracing.sample_rate", "0")));
+        VoteTracer.getDefault().setTtl(Integer.parseInt(properties.getProperty("tracing.ttl", "600")) * 1000L);
+        CryptoHelper cryptoHelper = new MeteredCryptoHelper(useMockCryptoHelper ? new MockCryptoHelper() : CryptoHelperImpl.DEFAULT_CRYPTO_HELPER, metrics);
 
         long newMessagesRequestInterval = Integer.parseInt(properties.getProperty("new_messages.request_interval", "1")) * 1000;
         long voteShedulerShift = Integer.parseInt(properties.getProperty("vote.sheduler.shift", "120"));
@@ -87,34 +100,41 @@ public class ClientApplication extends ResourceConfig {
         int readTimeout = Integer.parseInt(properties.getProperty("http.read.timeout", "60000"));
 
         final boolean useMockWallet = Boolean.valueOf(properties.getProperty("mock.wallet", Boolean.TRUE.toString()));
-        walletManager = useMockWallet ? new MockWalletManager() : new NxtWalletManager(properties, nxtPropertiesPath, ownerId, mainAddress, passphrase, connectionTimeout, readTimeout);
+        final boolean useLedgerWallet = Boolean.valueOf(properties.getProperty("ledger.wallet", Boolean.FALSE.toString()));
+        if (useLedgerWallet)
+            walletManager = new LedgerWalletManager(properties, ownerId);
+        else
+            walletManager = useMockWallet ? createMockWalletManager(properties) : new NxtWalletManager(properties, nxtPropertiesPath, ownerId, mainAddress, passphrase, connectionTimeout, readTimeout);
 
         final boolean useMockRegistriesServer = Boolean.valueOf(properties.getProperty("mock.registries", Boolean.TRUE.toString()));
-        RegistriesServer registriesServer = useMockRegistriesServer ? new FileRegisterServer(properties, null) : new RegistriesServerWeb(registriesServerUrl, connectionTimeout, readTimeout);
+        String participantsCacheFile = String.format(properties.getProperty("registries.participants.cache_file", ""), ownerId);
+        RegistriesServer registriesServer = useMockRegistriesServer ? new FileRegisterServer(properties, null)
+            : new RegistriesServerWeb(registriesServerUrl, connectionTimeout, readTimeout, participantsCacheFile);
 
         Participant[] participants = registriesServer.getParticipants();
         Map<String, Participant> participantsById = Arrays.stream(participants).collect(Collectors.toMap(Participant::getId, Function.identity()));
-        Map<String, PublicKey> participantKeysById = new HashMap<>();
-        for(Participant participant : participants) {
-            if (participant.getPublicKey() == null || participant.getPublicKey().isEmpty())
-                continue;
-            try {
-                PublicKey key = cryptoHelper.loadPublicKey(participant.getPublicKey());
-                participantKeysById.put(participant.getId(), key);
-            } catch (GeneralSecurityException e) {
-                log.error("ClientApplication. Load participant {} public key failed: {}", participant.getId(), e.getMessage());
-            }
-        }
+        int keysCacheSize = Integer.parseInt(properties.getProperty("participants.keys.cache_size", "0"));
+        int keysPreloadThreads = Integer.parseInt(properties.getProperty("participants.keys.preload_threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+        ParticipantKeyStore participantKeysById = new ParticipantKeyStore(cryptoHelper, Arrays.asList(participants), keysCacheSize);
+        if (keysPreloadThreads > 0)
+            participantKeysById.preload(keysPreloadThreads);
+        metrics.gauge("participant_keys_cached", participantKeysById::getCachedCount);
 
         PrivateKey ownerPrivateKey = cryptoHelper.loadPrivateKey(privateKey);
 
         final boolean useSimpleSerializer = Boolean.valueOf(properties.getProperty("mock.serializer", Boolean.TRUE.toString()));
-        MessagesSerializer messagesSerializer = useSimpleSerializer ? new SimpleSerializer() : new Iso20022Serializer();
+        MessagesSerializer messagesSerializer = new MeteredMessagesSerializer(useSimpleSerializer ? new SimpleSerializer() : new Iso20022Serializer(), metrics);
 
         long confirmTimeout = Integer.parseInt(properties.getProperty("messages.confirm.timeout", "180")) * 1000;
         int nxtThreads = Integer.parseInt(properties.getProperty("messages.send.threads", "20"));
-        WalletMessageConnector walletMessageConnector = new WalletMessageConnector(walletManager, messagesSerializer, 
-            cryptoHelper, participantKeysById, ownerPrivateKey, ownerId, MasterNode.MASTER_HOLDER_ID, confirmTimeout, nxtThreads);
+        boolean compressMessages = Boolean.valueOf(properties.getProperty("messages.compress", Boolean.FALSE.toString()));
+        int maxMessageBodyLength = Integer.parseInt(properties.getProperty("messages.max_body_length", "0"));
+        walletMessageConnector = new WalletMessageConnector(walletManager, messagesSerializer, 
+            cryptoHelper, participantKeysById, ownerPrivateKey, ownerId, MasterNode.MASTER_HOLDER_ID, confirmTimeout, nxtThreads,
+            compressMessages, maxMessageBodyLength);
+        long votesAggregationPeriod = Integer.parseInt(properties.getProperty("messages.votes.aggregation.period", "0"));
+        int maxAggregatedVotes = Integer.parseInt(properties.getProperty("messages.votes.aggregation.max_size", "100"));
+        walletMessageConnector.enableVotesAggregation(votesAggregationPeriod, maxAggregatedVotes);
 
         ClientNode clientNode;
         VotingOrganizer votingOrganizer;
@@ -125,22 +145,40 @@ public class ClientApplication extends ResourceConfig {
             int calculateResultsDelay = Integer.parseInt(properties.getProperty("calculate.results.delay", "60")) * 1000;
             votingOrganizer = new VotingOrganizer(messagesSerializer, cryptoHelper, participantKeysById, ownerPrivateKey, calculateResultsDelay);
             walletMessageConnector.addClient(votingOrganizer);
-            clientNode = new MasterNode(messagesSerializer, cryptoHelper, participantKeysById, ownerPrivateKey);
+            clientNode = masterNode = new MasterNode(messagesSerializer, cryptoHelper, participantKeysById, ownerPrivateKey);
             acceptorWeb = null;
         } else {
             votingOrganizer = null;
+            masterNode = null;
             StateFileSerializer stateFileSerializer = stateFilePath == null || stateFilePath.isEmpty() ? null : new StateFileSerializer(stateFilePath);
             int parentThreads = Integer.parseInt(properties.getProperty("parent.send.threads", "2"));
-            acceptorWeb = parentHolderUrl == null || parentHolderUrl.isEmpty() ? null : new CryptoVoteAcceptorWeb(parentHolderUrl, connectionTimeout, readTimeout, null, parentThreads);
+            int parentBatchSize = Integer.parseInt(properties.getProperty("parent.batch.size", "1"));
+            int parentQueueSize = Integer.parseInt(properties.getProperty("parent.queue.size", "1024"));
+            long parentRetryDelay = Integer.parseInt(properties.getProperty("parent.retry.delay", "100"));
+            long parentMaxRetryDelay = Integer.parseInt(properties.getProperty("parent.retry.max_delay", "10000"));
+            int parentMaxAttempts = Integer.parseInt(properties.getProperty("parent.retry.max_attempts", "10"));
+            String outboxDirectory = properties.getProperty("parent.outbox.directory", "");
+            int outboxSegmentSize = Integer.parseInt(properties.getProperty("parent.outbox.segment_size", "16777216"));
+            long outboxSyncInterval = Integer.parseInt(properties.getProperty("parent.outbox.sync_interval", "100"));
+            VoteOutbox outbox = parentHolderUrl == null || parentHolderUrl.isEmpty() || outboxDirectory.isEmpty() ? null
+                : new VoteOutbox(outboxDirectory, outboxSegmentSize, outboxSyncInterval);
+            acceptorWeb = parentHolderUrl == null || parentHolderUrl.isEmpty() ? null : new CryptoVoteAcceptorWeb(parentHolderUrl, connectionTimeout, readTimeout, null, parentThreads,
+                parentBatchSize, parentQueueSize, parentRetryDelay, parentMaxRetryDelay, parentMaxAttempts, outbox);
             clientNode = new ClientNode(ownerId, messagesSerializer, cryptoHelper, participantKeysById, ownerPrivateKey, acceptorWeb,
                 stateFileSerializer == null ? null : stateFileSerializer.load(), stateFileSerializer == null ? null : stateFileSerializer::save);
         }
         loadClients(clientNode, clientsFilePath);
 
         if (resultsBuilderUrl == null) {
+            resultsBuilder = null;
             walletMessageConnector.addClient(clientNode);
         } else {
-            ResultsBuilder resultsBuilder = new ResultsBuilderWeb(resultsBuilderUrl, connectionTimeout, readTimeout);
+            int resultsQueueSize = Integer.parseInt(properties.getProperty("results.builder.queue.size", "10000"));
+            int resultsBatchSize = Integer.parseInt(properties.getProperty("results.builder.batch.size", "100"));
+            long resultsFlushInterval = Integer.parseInt(properties.getProperty("results.builder.flush_interval", "200"));
+            String resultsSpillFile = properties.getProperty("results.builder.spill_file", "");
+            resultsBuilder = new AsyncResultsBuilder(new ResultsBuilderWeb(resultsBuilderUrl, connectionTimeout, readTimeout),
+                resultsQueueSize, resultsBatchSize, resultsFlushInterval, resultsSpillFile, metrics);
             walletMessageConnector.addClient(new ResultBilderDecorator(resultsBuilder, clientNode, ownerId));
         }
 
@@ -164,13 +202,40 @@ public class ClientApplication extends ResourceConfig {
         }
 
         JettyRunner.configureMapper(this);
-        HolderApiResource holderApiResource = new HolderApiResource(clientNode);
-        this.registerInstances(new VotingApiResource(new ClientManager(clientNode, cryptoHelper, messagesSerializer, audit, participantsById), new AuthManager(credentialsFilePath, audit, participantsById)), holderApiResource);
+        int acceptVoteThreads = Integer.parseInt(properties.getProperty("holder_api.threads", Integer.toString(Runtime.getRuntime().availableProcessors())));
+        int maxVotesInFlight = Integer.parseInt(properties.getProperty("holder_api.max_in_flight", "1000"));
+        int retryAfterSeconds = Integer.parseInt(properties.getProperty("holder_api.retry_after", "1"));
+        HolderApiResource holderApiResource = new HolderApiResource(clientNode, acceptVoteThreads, maxVotesInFlight, retryAfterSeconds);
+        int viewCacheSize = Integer.parseInt(properties.getProperty("client.view_cache.size", "10000"));
+        long pendingSignatureTtl = Integer.parseInt(properties.getProperty("signatures.pending.ttl", "1800")) * 1000L;
+        int maxPendingSignatures = Integer.parseInt(properties.getProperty("signatures.pending.max_size", "10000"));
+        int maxClientPendingSignatures = Integer.parseInt(properties.getProperty("signatures.pending.max_per_client", "10"));
+        String pendingSignaturesDirectory = properties.getProperty("signatures.pending.spill_directory", "");
+        PendingSignatureStore signatureStore = new PendingSignatureStore(pendingSignatureTtl, maxPendingSignatures, maxClientPendingSignatures, pendingSignaturesDirectory,
+            cryptoHelper, participantKeysById.get(ownerId), ownerPrivateKey);
+        clientManager = new ClientManager(clientNode, cryptoHelper, messagesSerializer, audit, participantsById, participantKeysById, viewCacheSize, signatureStore);
+        if (acceptorWeb != null) {
+            metrics.gauge("parent_queue_depth", acceptorWeb::getQueueDepth);
+            metrics.gauge("parent_rejected_votes", acceptorWeb::getRejectedVotes);
+            metrics.gauge("parent_dead_lettered_votes", acceptorWeb::getDeadLetteredVotes);
+        }
+        metrics.gauge("holder_api_votes_in_flight", holderApiResource::getVotesInFlight);
+        this.registerInstances(new VotingApiResource(clientManager, new AuthManager(credentialsFilePath, audit, participantsById)), holderApiResource,
+            new MetricsResource(metrics));
 
         voteScheduler = messagesFileContent == null ? null : new VoteScheduler(clientNode, messagesFileContent, ownerId, voteShedulerShift);
         networkScheduler = walletOffSchedule == null ? null : new NetworkScheduler(walletOffSchedule, walletManager, acceptorWeb, holderApiResource);
     }
 
+    private static WalletManager createMockWalletManager(Properties properties) {
+        long commitDelay = Integer.parseInt(properties.getProperty("mock.wallet.commit_delay", "0"));
+        int reorderWindow = Integer.parseInt(properties.getProperty("mock.wallet.reorder_window", "0"));
+        double duplicateRate = Double.parseDouble(properties.getProperty("mock.wallet.duplicate_rate", "0"));
+        boolean useUncommittedMessages = Boolean.valueOf(properties.getProperty("mock.wallet.useUncommittedMessages", Boolean.FALSE.toString()));
+        MessageBus bus = MessageBus.getDefault();
+        return new MockWalletManager(bus, bus.subscribe(commitDelay, reorderWindow, duplicateRate, useUncommittedMessages, System.nanoTime()));
+    }
+
     private void loadClients(ClientNode node, String clientsFilePath) {
         ClientsOnTime[] clientsOnTimes;
         try {
@@ -191,6 +256,12 @@ public class ClientApplication extends ResourceConfig {
         if (networkScheduler != null)
             networkScheduler.stop();
         messageHandler.stop();
+        walletMessageConnector.stop();
         walletManager.stop();
+        clientManager.stop();
+        if (resultsBuilder != null)
+            resultsBuilder.stop();
+        if (masterNode != null)
+            masterNode.stop();
     }
 }
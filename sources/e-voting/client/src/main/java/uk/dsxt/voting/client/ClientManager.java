@@ -21,8 +21,11 @@
 
 package uk.dsxt.voting.client;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.Value;
 import lombok.extern.log4j.Log4j2;
 import org.apache.logging.log4j.Logger;
@@ -32,49 +35,102 @@ import uk.dsxt.voting.common.domain.nodes.AssetsHolder;
 import uk.dsxt.voting.common.messaging.MessagesSerializer;
 import uk.dsxt.voting.common.utils.InternalLogicException;
 import uk.dsxt.voting.common.utils.crypto.CryptoHelper;
+import uk.dsxt.voting.common.utils.crypto.ParticipantKeyStore;
 
+import javax.ws.rs.core.StreamingOutput;
 import java.math.BigDecimal;
+import java.security.PublicKey;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Log4j2
 @Value
 public class ClientManager {
 
-    @Value
-    private class SignatureInfo {
-        VoteResult vote;
-        String xmlToSign;
+    private class ClientVotingView {
+        final Voting voting;
+        final BigDecimal packetSize;
+        final boolean hasVote;
+        final QuestionWeb[] questions;
+        final VotingInfoWeb results;
+
+        ClientVotingView(Voting voting, String clientId) {
+            this.voting = voting;
+            packetSize = assetsHolder.getClientPacketSize(voting.getId(), clientId);
+            VoteResultAndStatus clientVote = assetsHolder.getClientVote(voting.getId(), clientId);
+            hasVote = clientVote != null;
+            questions = voting.getQuestions() == null ? new QuestionWeb[0] : Arrays.stream(voting.getQuestions()).map(QuestionWeb::new).toArray(QuestionWeb[]::new);
+            if (clientVote == null) {
+                results = buildVotingResults(new VoteResult(voting.getId(), clientId), voting, packetSize, null, null);
+            } else {
+                results = buildVotingResults(clientVote.getResult(), voting, packetSize, clientVote.getStatus(), clientVote.getReceipt());
+            }
+        }
     }
 
+    private static final int MAX_PAGE_SIZE = 10000;
+
+    private static final int STREAM_PAGE_SIZE = 1000;
+
     private final ObjectMapper mapper = new ObjectMapper();
 
+    private final ObjectWriter streamWriter = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
     private final MessagesSerializer serializer;
 
     private final AssetsHolder assetsHolder;
 
     private final Logger audit;
 
-    private final ConcurrentMap<String, SignatureInfo> signInfoByKey = new ConcurrentHashMap<>();
+    private final PendingSignatureStore signatureStore;
 
     private final CryptoHelper cryptoHelper;
 
     Map<String, Participant> participantsById;
 
+    private final Map<String, PublicKey> participantKeysById;
+
+    ClientViewCache<ClientVotingView> viewCache;
+
     public ClientManager(AssetsHolder assetsHolder, CryptoHelper cryptoHelper, MessagesSerializer serializer, Logger audit, Map<String, Participant> participantsById) {
+        this(assetsHolder, cryptoHelper, serializer, audit, participantsById,
+            participantsById == null ? Collections.emptyMap() : new ParticipantKeyStore(cryptoHelper, participantsById.values(), 0),
+            0, new PendingSignatureStore(30 * 60 * 1000, 10000, 10));
+    }
+
+    /**
+     * @param participantKeysById decoded public keys of participants, shared with the node
+     * @param viewCacheSize maximal count of cached client voting views. 0 - views are not cached
+     */
+    public ClientManager(AssetsHolder assetsHolder, CryptoHelper cryptoHelper, MessagesSerializer serializer, Logger audit, Map<String, Participant> participantsById,
+                         Map<String, PublicKey> participantKeysById, int viewCacheSize, PendingSignatureStore signatureStore) {
+        this.signatureStore = signatureStore;
         this.assetsHolder = assetsHolder;
         this.audit = audit;
         this.participantsById = participantsById;
+        this.participantKeysById = participantKeysById;
         this.cryptoHelper = cryptoHelper;
         this.serializer = serializer;
+        this.viewCache = new ClientViewCache<>(viewCacheSize);
+        if (viewCacheSize > 0)
+            assetsHolder.addChangeListener(viewCache);
+    }
+
+    public void stop() {
+        signatureStore.close();
+    }
+
+    private ClientVotingView getView(Voting voting, String clientId) {
+        return viewCache.get(voting.getId(), clientId, () -> new ClientVotingView(voting, clientId));
     }
 
     public RequestResult getVotings(String clientId) {
-        final Collection<Voting> votings = assetsHolder.getVotings().stream().filter(v -> 
-            assetsHolder.getClientPacketSize(v.getId(), clientId) == null || assetsHolder.getClientPacketSize(v.getId(), clientId).compareTo(BigDecimal.ZERO) > 0).collect(Collectors.toSet());
-        return new RequestResult<>(votings.stream().map(v -> new VotingWeb(v, assetsHolder.getClientVote(v.getId(), clientId) == null)).collect(Collectors.toList()).toArray(new VotingWeb[votings.size()]), null);
+        final List<VotingWeb> votings = assetsHolder.getVotings().stream().filter(v -> v != null).map(v -> getView(v, clientId))
+            .filter(view -> view.packetSize == null || view.packetSize.compareTo(BigDecimal.ZERO) > 0)
+            .map(view -> new VotingWeb(view.voting, !view.hasVote)).collect(Collectors.toList());
+        return new RequestResult<>(votings.toArray(new VotingWeb[votings.size()]), null);
     }
 
     public RequestResult getVoting(String votingId, String clientId) {
@@ -83,12 +139,12 @@ public class ClientManager {
             log.error("getVoting. Couldn't find voting with id [{}].", votingId);
             return new RequestResult<>(APIException.VOTING_NOT_FOUND);
         }
-        BigDecimal amount = assetsHolder.getClientPacketSize(votingId, clientId);
+        ClientVotingView view = getView(voting, clientId);
         long time = -1;
         long now = System.currentTimeMillis();
         if (now >= voting.getBeginTimestamp() && now <= voting.getEndTimestamp())
             time = voting.getEndTimestamp() - now;
-        return new RequestResult<>(new VotingInfoWeb(voting, amount, time), null);
+        return new RequestResult<>(new VotingInfoWeb(view.questions, view.packetSize, time), null);
     }
 
     public RequestResult vote(String votingId, String clientId, String votingChoice) {
@@ -122,10 +178,10 @@ public class ClientManager {
                 }
             }
             //generate xml body and get vote results
-            VotingInfoWeb infoWeb = getVotingResults(result, voting, null, null);
+            VotingInfoWeb infoWeb = buildVotingResults(result, voting, packetSize, null, null);
             //serializing whole xml and put signature near xml (not using Sgnt field)
             String xmlBody = serializer.serialize(result, voting);
-            signInfoByKey.put(generateKeyForDocument(clientId, votingId), new SignatureInfo(result, xmlBody));
+            signatureStore.put(clientId, votingId, result, xmlBody);
             infoWeb.setXmlBody(xmlBody);
             return new RequestResult<>(infoWeb, null);
         } catch (JsonMappingException je) {
@@ -143,15 +199,20 @@ public class ClientManager {
             log.debug("signVote. Voting with id={} not found.", votingId);
             return new RequestResult<>(APIException.VOTING_NOT_FOUND);
         }
-        SignatureInfo info = signInfoByKey.get(generateKeyForDocument(clientId, votingId));
+        PendingSignatureStore.PendingSignature info = signatureStore.get(clientId, votingId);
         if (info == null) {
             log.error("signVote failed. Client {} doesn't have vote for voting {}", clientId, votingId);
             return new RequestResult<>(APIException.UNKNOWN_EXCEPTION);
         }
         if (isSign) {
             String documentString = info.getXmlToSign();
+            PublicKey clientKey = participantKeysById.get(clientId);
+            if (clientKey == null) {
+                log.error("signVote failed. Client {} has no public key", clientId);
+                return new RequestResult<>(APIException.INVALID_SIGNATURE);
+            }
             try {
-                boolean result = cryptoHelper.verifySignature(documentString, signature, cryptoHelper.loadPublicKey(participantsById.get(clientId).getPublicKey()));
+                boolean result = cryptoHelper.verifySignature(documentString, signature, clientKey);
                 if (!result) {
                     log.error("signVote failed. Incorrect signature {} for client {} and voting {}", signature, clientId, votingId);
                     return new RequestResult<>(APIException.INVALID_SIGNATURE);
@@ -165,34 +226,29 @@ public class ClientManager {
             audit.info("signVote. Client {} doesn't want to sign document for voting {}", clientId, votingId);
         }
         assetsHolder.addClientVote(info.getVote(), isSign ? signature : AssetsHolder.EMPTY_SIGNATURE);
-        signInfoByKey.remove(generateKeyForDocument(clientId, votingId));
+        signatureStore.remove(clientId, votingId);
         return new RequestResult(null, null);
     }
 
-    private String generateKeyForDocument(String clientId, String votingId) {
-        return String.format("%s_%s", clientId, votingId);
-    }
-
     public RequestResult votingResults(String votingId, String clientId) {
         final Voting voting = assetsHolder.getVoting(votingId);
         if (voting == null) {
             log.debug("votingResults. Voting with id={} not found.", votingId);
             return new RequestResult<>(APIException.VOTING_NOT_FOUND);
         }
-        final VoteResultAndStatus clientVote = assetsHolder.getClientVote(votingId, clientId);
-        if (clientVote == null) {
+        ClientVotingView view = getView(voting, clientId);
+        if (!view.hasVote) {
             log.debug("votingResults. Client vote result with id={} for client with id={} not found.", votingId, clientId);
-            return new RequestResult<>(getVotingResults(new VoteResult(votingId, clientId), voting, null, null), null);
         }
-        return new RequestResult<>(getVotingResults(clientVote.getResult(), voting, clientVote.getStatus(), clientVote.getReceipt()), null);
+        return new RequestResult<>(view.results, null);
     }
 
-    private VotingInfoWeb getVotingResults(VoteResult clientVote, Voting voting, VoteStatus voteStatus, ClientVoteReceipt receipt) {
+    private static VotingInfoWeb buildVotingResults(VoteResult clientVote, Voting voting, BigDecimal packetSize, VoteStatus voteStatus, ClientVoteReceipt receipt) {
         List<QuestionWeb> results = new ArrayList<>();
         for (Question question : voting.getQuestions()) {
             results.add(new QuestionWeb(question, clientVote, false));
         }
-        VotingInfoWeb answer = new VotingInfoWeb(results.toArray(new QuestionWeb[results.size()]), assetsHolder.getClientPacketSize(voting.getId(), clientVote.getHolderId()),
+        VotingInfoWeb answer = new VotingInfoWeb(results.toArray(new QuestionWeb[results.size()]), packetSize,
             null, voteStatus == null ? null : voteStatus.getMessageId(), voteStatus == null ? null : voteStatus.getStatus(),
             receipt == null ? null : receipt.getTimestamp(), receipt == null ? null : receipt.getSignature());
         if (receipt != null)
@@ -226,6 +282,72 @@ public class ClientManager {
         return new RequestResult<>(results.toArray(new VoteStatusWeb[results.size()]), null);
     }
 
+    public RequestResult<?> getClientVotesPage(String votingId, String cursor, int limit) {
+        return getPage(votingId, limit, size -> assetsHolder.getClientVotes(votingId, cursor, size), vr -> vr.getResult().getHolderId(),
+            VoteResultWeb::new, VoteResultWeb[]::new);
+    }
+
+    public RequestResult<?> getVoteStatusesPage(String votingId, String cursor, int limit) {
+        return getPage(votingId, limit, size -> assetsHolder.getVoteStatuses(votingId, cursor, size), VoteStatus::getMessageId,
+            VoteStatusWeb::new, VoteStatusWeb[]::new);
+    }
+
+    private <T, W> RequestResult<?> getPage(String votingId, int limit, Function<Integer, List<T>> pageLoader, Function<T, String> cursorGetter,
+                                         Function<T, W> webMapper, Function<Integer, W[]> arrayBuilder) {
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            log.debug("getPage. Invalid limit {}. votingId={}", limit, votingId);
+            return new RequestResult<>(APIException.INVALID_PAGE_LIMIT);
+        }
+        List<T> records = pageLoader.apply(limit);
+        if (records == null) {
+            log.debug("getPage. Voting with id={} not found.", votingId);
+            return new RequestResult<>(APIException.VOTING_NOT_FOUND);
+        }
+        String nextCursor = records.size() < limit ? null : cursorGetter.apply(records.get(records.size() - 1));
+        W[] webRecords = records.stream().map(webMapper).toArray(arrayBuilder::apply);
+        return new RequestResult<>(new RecordsPageWeb<>(webRecords, nextCursor), null);
+    }
+
+    public RequestResult<?> streamClientVotes(String votingId) {
+        return streamRecords(votingId, (cursor, size) -> assetsHolder.getClientVotes(votingId, cursor, size), vr -> vr.getResult().getHolderId(), VoteResultWeb::new);
+    }
+
+    public RequestResult<?> streamVoteStatuses(String votingId) {
+        return streamRecords(votingId, (cursor, size) -> assetsHolder.getVoteStatuses(votingId, cursor, size), VoteStatus::getMessageId, VoteStatusWeb::new);
+    }
+
+    /**
+     * Writes records as RequestResult json reading them from the node page by page, so memory does not depend on records count.
+     */
+    private <T> RequestResult<?> streamRecords(String votingId, BiFunction<String, Integer, List<T>> pageLoader, Function<T, String> cursorGetter,
+                                            Function<T, Object> webMapper) {
+        if (assetsHolder.getVoting(votingId) == null) {
+            log.debug("streamRecords. Voting with id={} not found.", votingId);
+            return new RequestResult<>(APIException.VOTING_NOT_FOUND);
+        }
+        StreamingOutput output = outputStream -> {
+            try (JsonGenerator generator = mapper.getFactory().createGenerator(outputStream)) {
+                generator.writeStartObject();
+                generator.writeArrayFieldStart("result");
+                String cursor = null;
+                List<T> records;
+                do {
+                    records = pageLoader.apply(cursor, STREAM_PAGE_SIZE);
+                    if (records == null)
+                        break;
+                    for (T record : records) {
+                        streamWriter.writeValue(generator, webMapper.apply(record));
+                    }
+                    if (!records.isEmpty())
+                        cursor = cursorGetter.apply(records.get(records.size() - 1));
+                } while (records.size() == STREAM_PAGE_SIZE);
+                generator.writeEndArray();
+                generator.writeEndObject();
+            }
+        };
+        return new RequestResult<>(output, null);
+    }
+
     public RequestResult votingTotalResults(String votingId) {
         final Voting voting = assetsHolder.getVoting(votingId);
         if (voting == null) {
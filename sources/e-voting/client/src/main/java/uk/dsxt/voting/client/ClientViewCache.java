@@ -0,0 +1,149 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.client;
+
+import lombok.extern.log4j.Log4j2;
+import uk.dsxt.voting.common.domain.nodes.AssetsChangeListener;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Bounded LRU cache of read-side views built for client and voting.
+ * Entries are dropped by AssetsHolder change events, a view built while an event happened is not stored.
+ */
+@Log4j2
+public class ClientViewCache<V> implements AssetsChangeListener {
+
+    private final int maxSize;
+
+    private final Map<String, Map<String, V>> viewsByClientIdByVotingId = new HashMap<>();
+
+    private final LinkedHashMap<Key, V> viewsByKey;
+
+    private final AtomicLong version = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private static class Key {
+        private final String votingId;
+        private final String clientId;
+
+        Key(String votingId, String clientId) {
+            this.votingId = votingId;
+            this.clientId = clientId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key other = (Key) o;
+            return votingId.equals(other.votingId) && clientId.equals(other.clientId);
+        }
+
+        @Override
+        public int hashCode() {
+            return votingId.hashCode() * 31 + clientId.hashCode();
+        }
+    }
+
+    public ClientViewCache(int maxSize) {
+        this.maxSize = maxSize;
+        viewsByKey = new LinkedHashMap<Key, V>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, V> eldest) {
+                if (size() <= ClientViewCache.this.maxSize)
+                    return false;
+                removeFromVoting(eldest.getKey());
+                return true;
+            }
+        };
+    }
+
+    public V get(String votingId, String clientId, Supplier<V> viewBuilder) {
+        if (maxSize <= 0)
+            return viewBuilder.get();
+        Key key = new Key(votingId, clientId);
+        long builtVersion;
+        synchronized (this) {
+            V view = viewsByKey.get(key);
+            if (view != null) {
+                hits.incrementAndGet();
+                return view;
+            }
+            builtVersion = version.get();
+        }
+        misses.incrementAndGet();
+        V view = viewBuilder.get();
+        if (view == null)
+            return null;
+        synchronized (this) {
+            if (builtVersion == version.get()) {
+                viewsByKey.put(key, view);
+                viewsByClientIdByVotingId.computeIfAbsent(votingId, id -> new HashMap<>()).put(clientId, view);
+            }
+        }
+        return view;
+    }
+
+    @Override
+    public synchronized void votingChanged(String votingId) {
+        version.incrementAndGet();
+        Map<String, V> views = viewsByClientIdByVotingId.remove(votingId);
+        if (views == null)
+            return;
+        for (String clientId : views.keySet()) {
+            viewsByKey.remove(new Key(votingId, clientId));
+        }
+        log.debug("votingChanged. {} views dropped. votingId={} hits={} misses={}", views.size(), votingId, hits.get(), misses.get());
+    }
+
+    @Override
+    public synchronized void clientVoteChanged(String votingId, String clientId) {
+        version.incrementAndGet();
+        Key key = new Key(votingId, clientId);
+        if (viewsByKey.remove(key) != null)
+            removeFromVoting(key);
+    }
+
+    public synchronized int size() {
+        return viewsByKey.size();
+    }
+
+    private void removeFromVoting(Key key) {
+        Map<String, V> views = viewsByClientIdByVotingId.get(key.votingId);
+        if (views == null)
+            return;
+        views.remove(key.clientId);
+        if (views.isEmpty())
+            viewsByClientIdByVotingId.remove(key.votingId);
+    }
+}
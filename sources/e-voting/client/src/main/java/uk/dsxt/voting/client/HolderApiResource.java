@@ -21,41 +21,151 @@
 
 package uk.dsxt.voting.client;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.log4j.Log4j2;
 import uk.dsxt.voting.common.demo.NetworkConnectorDemo;
-import uk.dsxt.voting.common.utils.NetworkConnector;
+import uk.dsxt.voting.common.domain.dataModel.NodeVote;
 import uk.dsxt.voting.common.domain.dataModel.NodeVoteReceipt;
+import uk.dsxt.voting.common.domain.dataModel.NodeVotesReceipt;
 import uk.dsxt.voting.common.domain.nodes.VoteAcceptor;
 
 import javax.ws.rs.FormParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
 import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Log4j2
 @Path("/holderAPI")
 public class HolderApiResource extends NetworkConnectorDemo {
     private final VoteAcceptor node;
 
+    private final ExecutorService acceptVoteExecutor;
+
+    private final int maxVotesInFlight;
+
+    private final int retryAfterSeconds;
+
+    private final AtomicInteger votesInFlight = new AtomicInteger();
+
+    private final AtomicLong rejectedVotes = new AtomicLong();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
     public HolderApiResource(VoteAcceptor node) {
+        this(node, Runtime.getRuntime().availableProcessors(), 0, 1);
+    }
+
+    /**
+     * @param acceptVoteThreads threads verifying and signing accepted votes, Jetty threads are released while votes wait for them
+     * @param maxVotesInFlight maximal count of accepted but not answered votes, other votes are answered with 503. 0 - no limit
+     * @param retryAfterSeconds Retry-After header value of 503 answer
+     */
+    public HolderApiResource(VoteAcceptor node, int acceptVoteThreads, int maxVotesInFlight, int retryAfterSeconds) {
         this.node = node;
+        this.maxVotesInFlight = maxVotesInFlight;
+        this.retryAfterSeconds = retryAfterSeconds;
+        AtomicInteger threadsCount = new AtomicInteger();
+        acceptVoteExecutor = Executors.newFixedThreadPool(acceptVoteThreads, r -> {
+            Thread thread = new Thread(r, String.format("holder-api-%d", threadsCount.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public int getVotesInFlight() {
+        return votesInFlight.get();
     }
 
     @POST
     @Path("/acceptVote")
     @Produces("application/json")
-    public NodeVoteReceipt acceptVote(@FormParam("transactionId") String transactionId, @FormParam("votingId") String votingId, @FormParam("packetSize") String packetSize,
-                                      @FormParam("clientId") String clientId, @FormParam("clientPacketResidual") String clientPacketResidual,
-                                      @FormParam("encryptedData") String encryptedData, @FormParam("voteDigest") String voteDigest, @FormParam("clientSignature") String clientSignature) {
-        if (!isNetworkOn)
-            return null;
-            
+    public void acceptVote(@FormParam("transactionId") String transactionId, @FormParam("votingId") String votingId, @FormParam("packetSize") String packetSize,
+                           @FormParam("clientId") String clientId, @FormParam("clientPacketResidual") String clientPacketResidual,
+                           @FormParam("encryptedData") String encryptedData, @FormParam("voteDigest") String voteDigest, @FormParam("clientSignature") String clientSignature,
+                           @Suspended AsyncResponse asyncResponse) {
+        if (!isNetworkOn) {
+            asyncResponse.resume(Response.noContent().build());
+            return;
+        }
+        if (!tryStartVotes(1, transactionId, asyncResponse))
+            return;
+        acceptVoteExecutor.execute(() -> {
+            try {
+                NodeVoteReceipt receipt = node.acceptVote(transactionId, votingId, new BigDecimal(packetSize), clientId, new BigDecimal(clientPacketResidual), 
+                    encryptedData, voteDigest, clientSignature);
+                asyncResponse.resume(receipt == null ? Response.noContent().build() : receipt);
+            } catch (Exception e) {
+                log.error("acceptVote fails", e);
+                asyncResponse.resume(Response.noContent().build());
+            } finally {
+                votesInFlight.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * @param votes json array of NodeVote, votes are accepted in the array order
+     */
+    @POST
+    @Path("/acceptVotes")
+    @Produces("application/json")
+    public void acceptVotes(@FormParam("votes") String votes, @Suspended AsyncResponse asyncResponse) {
+        if (!isNetworkOn) {
+            asyncResponse.resume(Response.noContent().build());
+            return;
+        }
+        if (votes == null) {
+            log.error("acceptVotes. votes is not set");
+            asyncResponse.resume(Response.status(Response.Status.BAD_REQUEST).build());
+            return;
+        }
+        NodeVote[] nodeVotes;
         try {
-            return node.acceptVote(transactionId, votingId, new BigDecimal(packetSize), clientId, new BigDecimal(clientPacketResidual), encryptedData, voteDigest, clientSignature);
-        } catch (Exception e) {
-            log.error("acceptVote fails", e);
-            return null;
+            nodeVotes = mapper.readValue(votes, NodeVote[].class);
+        } catch (IOException e) {
+            log.error("acceptVotes. Can not read votes. error={}", e.getMessage());
+            asyncResponse.resume(Response.status(Response.Status.BAD_REQUEST).build());
+            return;
+        }
+        if (nodeVotes == null || nodeVotes.length == 0 || Arrays.asList(nodeVotes).contains(null)) {
+            log.error("acceptVotes. No votes or null vote in {}", votes);
+            asyncResponse.resume(Response.status(Response.Status.BAD_REQUEST).build());
+            return;
+        }
+        if (!tryStartVotes(nodeVotes.length, nodeVotes[0].getTransactionId(), asyncResponse))
+            return;
+        acceptVoteExecutor.execute(() -> {
+            try {
+                NodeVotesReceipt receipt = node.acceptVotes(Arrays.asList(nodeVotes));
+                asyncResponse.resume(receipt == null ? Response.noContent().build() : receipt);
+            } catch (Exception e) {
+                log.error("acceptVotes fails", e);
+                asyncResponse.resume(Response.noContent().build());
+            } finally {
+                votesInFlight.addAndGet(-nodeVotes.length);
+            }
+        });
+    }
+
+    private boolean tryStartVotes(int count, String transactionId, AsyncResponse asyncResponse) {
+        int inFlight = votesInFlight.addAndGet(count);
+        if (maxVotesInFlight > 0 && inFlight > maxVotesInFlight && inFlight > count) {
+            votesInFlight.addAndGet(-count);
+            long rejected = rejectedVotes.addAndGet(count);
+            log.warn("acceptVote. Too many votes in flight {}, {} votes rejected. transactionId={} rejectedVotes={}", inFlight - count, count, transactionId, rejected);
+            asyncResponse.resume(Response.status(Response.Status.SERVICE_UNAVAILABLE).header("Retry-After", retryAfterSeconds).build());
+            return false;
         }
+        return true;
     }
 }
@@ -0,0 +1,302 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.client;
+
+import lombok.Value;
+import lombok.extern.log4j.Log4j2;
+import uk.dsxt.voting.common.domain.dataModel.VoteResult;
+import uk.dsxt.voting.common.utils.crypto.CryptoHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Votes prepared by ClientManager.vote and waiting for the client signature.
+ * Entries expire after ttl, the store keeps at most maxSize entries and maxPerClient entries of one client (oldest are dropped).
+ * If spill directory is set every entry is also written to disk encrypted with the node public key, so it can be signed after eviction
+ * from memory or restart and the votes on disk are readable by the node only.
+ * Expired entries of all stores are removed by one shared daemon thread, the owner calls close() when the store is not used anymore.
+ */
+@Log4j2
+public class PendingSignatureStore {
+
+    @Value
+    public static class PendingSignature {
+        String clientId;
+        VoteResult vote;
+        String xmlToSign;
+        long expiresAt;
+    }
+
+    private static final Charset CHARSET = Charset.forName("utf-8");
+
+    private static final long CLEANUP_PERIOD = 60000;
+
+    private final long ttl;
+
+    private final int maxSize;
+
+    private final int maxPerClient;
+
+    private final File spillDirectory;
+
+    private final CryptoHelper cryptoHelper;
+
+    private final PublicKey publicKey;
+
+    private final PrivateKey privateKey;
+
+    private final LinkedHashMap<String, PendingSignature> signaturesByKey = new LinkedHashMap<>();
+
+    private final Map<String, Integer> countsByClientId = new HashMap<>();
+
+    private static final ScheduledExecutorService CLEANER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "pending-signatures-cleaner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ScheduledFuture<?> cleanup;
+
+    private final AtomicLong addedCount = new AtomicLong();
+    private final AtomicLong signedCount = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+    private final AtomicLong diskLoadedCount = new AtomicLong();
+
+    /**
+     * Creates the store which keeps entries in memory only.
+     * @param ttl entry lifetime in milliseconds
+     */
+    public PendingSignatureStore(long ttl, int maxSize, int maxPerClient) {
+        this(ttl, maxSize, maxPerClient, null, null, null, null);
+    }
+
+    /**
+     * @param ttl entry lifetime in milliseconds
+     * @param spillDirectoryPath directory for entries on disk. null or empty - entries are kept in memory only
+     * @param publicKey node key the entries on disk are encrypted with
+     * @param privateKey node key the entries on disk are decrypted with
+     */
+    public PendingSignatureStore(long ttl, int maxSize, int maxPerClient, String spillDirectoryPath, CryptoHelper cryptoHelper, PublicKey publicKey,
+                                 PrivateKey privateKey) {
+        this.ttl = ttl;
+        this.maxSize = maxSize;
+        this.maxPerClient = maxPerClient;
+        this.cryptoHelper = cryptoHelper;
+        this.publicKey = publicKey;
+        this.privateKey = privateKey;
+        if (spillDirectoryPath == null || spillDirectoryPath.isEmpty()) {
+            spillDirectory = null;
+        } else if (cryptoHelper == null || publicKey == null || privateKey == null) {
+            log.error("PendingSignatureStore. Node keys are not set, entries are kept in memory only. spillDirectory={}", spillDirectoryPath);
+            spillDirectory = null;
+        } else {
+            spillDirectory = new File(spillDirectoryPath);
+            if (!spillDirectory.isDirectory() && !spillDirectory.mkdirs())
+                log.error("PendingSignatureStore. Couldn't create spill directory {}", spillDirectory.getAbsolutePath());
+        }
+        long period = Math.min(ttl, CLEANUP_PERIOD);
+        cleanup = CLEANER.scheduleWithFixedDelay(this::removeExpired, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops removing expired entries, entries on disk are kept.
+     */
+    public void close() {
+        cleanup.cancel(false);
+    }
+
+    public void put(String clientId, String votingId, VoteResult vote, String xmlToSign) {
+        String key = generateKey(clientId, votingId);
+        PendingSignature signature = new PendingSignature(clientId, vote, xmlToSign, System.currentTimeMillis() + ttl);
+        List<String> evictedKeys = new ArrayList<>();
+        synchronized (signaturesByKey) {
+            removeFromMemory(key);
+            if (maxPerClient > 0 && countsByClientId.getOrDefault(clientId, 0) >= maxPerClient) {
+                for (Map.Entry<String, PendingSignature> entry : signaturesByKey.entrySet()) {
+                    if (entry.getValue().getClientId().equals(clientId)) {
+                        evictedKeys.add(entry.getKey());
+                        break;
+                    }
+                }
+            }
+            for (String evictedKey : evictedKeys) {
+                removeFromMemory(evictedKey);
+            }
+            while (maxSize > 0 && signaturesByKey.size() >= maxSize) {
+                String eldestKey = signaturesByKey.keySet().iterator().next();
+                removeFromMemory(eldestKey);
+                // entry of other client stays on disk if it is spilled
+                if (spillDirectory == null)
+                    evictedCount.incrementAndGet();
+            }
+            signaturesByKey.put(key, signature);
+            countsByClientId.merge(clientId, 1, Integer::sum);
+        }
+        addedCount.incrementAndGet();
+        for (String evictedKey : evictedKeys) {
+            evictedCount.incrementAndGet();
+            deleteFile(evictedKey);
+        }
+        writeFile(key, signature);
+    }
+
+    public PendingSignature get(String clientId, String votingId) {
+        String key = generateKey(clientId, votingId);
+        PendingSignature signature;
+        synchronized (signaturesByKey) {
+            signature = signaturesByKey.get(key);
+        }
+        if (signature == null) {
+            signature = readFile(key);
+            if (signature != null)
+                diskLoadedCount.incrementAndGet();
+        }
+        if (signature != null && signature.getExpiresAt() < System.currentTimeMillis()) {
+            remove(key);
+            expiredCount.incrementAndGet();
+            return null;
+        }
+        return signature;
+    }
+
+    public void remove(String clientId, String votingId) {
+        remove(generateKey(clientId, votingId));
+        signedCount.incrementAndGet();
+    }
+
+    public int size() {
+        synchronized (signaturesByKey) {
+            return signaturesByKey.size();
+        }
+    }
+
+    private void remove(String key) {
+        synchronized (signaturesByKey) {
+            removeFromMemory(key);
+        }
+        deleteFile(key);
+    }
+
+    private void removeFromMemory(String key) {
+        PendingSignature removed = signaturesByKey.remove(key);
+        if (removed != null)
+            countsByClientId.computeIfPresent(removed.getClientId(), (id, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private void removeExpired() {
+        try {
+            long now = System.currentTimeMillis();
+            List<String> expiredKeys = new ArrayList<>();
+            int size;
+            synchronized (signaturesByKey) {
+                for (Map.Entry<String, PendingSignature> entry : signaturesByKey.entrySet()) {
+                    if (entry.getValue().getExpiresAt() < now)
+                        expiredKeys.add(entry.getKey());
+                }
+                expiredKeys.forEach(this::removeFromMemory);
+                size = signaturesByKey.size();
+            }
+            expiredKeys.forEach(this::deleteFile);
+            int expiredOnDisk = spillDirectory == null ? 0 : removeExpiredFiles(now);
+            expiredCount.addAndGet(expiredKeys.size() + expiredOnDisk);
+            log.debug("removeExpired. {} entries expired, {} of them on disk. size={} added={} signed={} expired={} evicted={} loadedFromDisk={}",
+                expiredKeys.size() + expiredOnDisk, expiredOnDisk, size, addedCount.get(), signedCount.get(), expiredCount.get(), evictedCount.get(), diskLoadedCount.get());
+        } catch (Exception e) {
+            log.error("removeExpired failed", e);
+        }
+    }
+
+    private int removeExpiredFiles(long now) {
+        File[] files = spillDirectory.listFiles();
+        if (files == null)
+            return 0;
+        int count = 0;
+        for (File file : files) {
+            // file is written once on put, so it expires ttl after its modification time
+            if (file.lastModified() + ttl < now && file.delete())
+                count++;
+        }
+        return count;
+    }
+
+    private String generateKey(String clientId, String votingId) {
+        return String.format("%s_%s", clientId, votingId);
+    }
+
+    private File getFile(String key) {
+        return new File(spillDirectory, Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(CHARSET)));
+    }
+
+    private void writeFile(String key, PendingSignature signature) {
+        if (spillDirectory == null)
+            return;
+        String content = String.format("%d\n%s\n%s\n%s", signature.getExpiresAt(), signature.getClientId(), signature.getVote(), signature.getXmlToSign());
+        try {
+            // crypto helper works with default charset bytes, so the content is encoded to ascii first
+            String encoded = Base64.getEncoder().encodeToString(content.getBytes(CHARSET));
+            Files.write(getFile(key).toPath(), cryptoHelper.encrypt(encoded, publicKey).getBytes(CHARSET));
+        } catch (IOException | GeneralSecurityException e) {
+            log.warn("writeFile. Couldn't save pending signature {}. error={}", key, e.getMessage());
+        }
+    }
+
+    private PendingSignature readFile(String key) {
+        if (spillDirectory == null)
+            return null;
+        File file = getFile(key);
+        if (!file.exists())
+            return null;
+        try {
+            String encoded = cryptoHelper.decrypt(new String(Files.readAllBytes(file.toPath()), CHARSET), privateKey);
+            String[] parts = new String(Base64.getDecoder().decode(encoded), CHARSET).split("\n", 4);
+            if (parts.length != 4) {
+                log.warn("readFile. Pending signature file {} is corrupted", file.getAbsolutePath());
+                return null;
+            }
+            return new PendingSignature(parts[1], new VoteResult(parts[2]), parts[3], Long.parseLong(parts[0]));
+        } catch (IOException | GeneralSecurityException | IllegalArgumentException e) {
+            log.warn("readFile. Couldn't read pending signature {}. error={}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    private void deleteFile(String key) {
+        if (spillDirectory == null)
+            return;
+        File file = getFile(key);
+        if (file.exists() && !file.delete())
+            log.warn("deleteFile. Couldn't delete pending signature file {}", file.getAbsolutePath());
+    }
+}
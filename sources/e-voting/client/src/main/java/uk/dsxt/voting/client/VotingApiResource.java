@@ -30,10 +30,9 @@ import uk.dsxt.voting.client.datamodel.UserRole;
 import uk.dsxt.voting.client.web.VotingAPI;
 import uk.dsxt.voting.common.utils.InternalLogicException;
 
-import javax.ws.rs.FormParam;
-import javax.ws.rs.POST;
-import javax.ws.rs.Path;
-import javax.ws.rs.Produces;
+import javax.ws.rs.*;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 
 @Log4j2
 @Path("/api")
@@ -97,6 +96,11 @@ public class VotingApiResource implements VotingAPI {
         });
     }
 
+    private Response stream(RequestResult<?> result) {
+        // streaming result is written directly to the response, errors are returned as usual RequestResult
+        return Response.ok(result.getResult() instanceof StreamingOutput ? result.getResult() : result).build();
+    }
+
     @POST
     @Path("/login")
     @Produces("application/json")
@@ -176,6 +180,39 @@ public class VotingApiResource implements VotingAPI {
         return executeClientWithRole(cookie, "getAllClientVotes", String.format("votingId=%s", votingId), UserRole.ADMIN, (clientId) -> manager.getAllClientVotes(votingId));
     }
 
+    @POST
+    @Path("/getVoteStatusesPage")
+    @Produces("application/json")
+    public RequestResult<?> getVoteStatusesPage(@FormParam("cookie") String cookie, @FormParam("votingId") String votingId,
+                                                @FormParam("cursor") String cursor, @FormParam("limit") @DefaultValue("1000") int limit) {
+        return executeClientId(cookie, "getVoteStatusesPage", String.format("votingId=%s, cursor=%s, limit=%d", votingId, cursor, limit),
+            (clientId) -> manager.getVoteStatusesPage(votingId, cursor, limit));
+    }
+
+    @POST
+    @Path("/getClientVotesPage")
+    @Produces("application/json")
+    public RequestResult<?> getClientVotesPage(@FormParam("cookie") String cookie, @FormParam("votingId") String votingId,
+                                               @FormParam("cursor") String cursor, @FormParam("limit") @DefaultValue("1000") int limit) {
+        return executeClientWithRole(cookie, "getClientVotesPage", String.format("votingId=%s, cursor=%s, limit=%d", votingId, cursor, limit), UserRole.ADMIN,
+            (clientId) -> manager.getClientVotesPage(votingId, cursor, limit));
+    }
+
+    @POST
+    @Path("/streamVoteStatuses")
+    @Produces("application/json")
+    public Response streamVoteStatuses(@FormParam("cookie") String cookie, @FormParam("votingId") String votingId) {
+        return stream(executeClientId(cookie, "streamVoteStatuses", String.format("votingId=%s", votingId), (clientId) -> manager.streamVoteStatuses(votingId)));
+    }
+
+    @POST
+    @Path("/streamClientVotes")
+    @Produces("application/json")
+    public Response streamClientVotes(@FormParam("cookie") String cookie, @FormParam("votingId") String votingId) {
+        return stream(executeClientWithRole(cookie, "streamClientVotes", String.format("votingId=%s", votingId), UserRole.ADMIN,
+            (clientId) -> manager.streamClientVotes(votingId)));
+    }
+
     @POST
     @Path("/decodeMessage")
     @Produces("application/json")
@@ -26,6 +26,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import uk.dsxt.voting.common.utils.PropertiesHelper;
 import uk.dsxt.voting.common.utils.web.JettyRunner;
+import uk.dsxt.voting.common.utils.web.PooledHttpClient;
 
 import java.util.Properties;
 
@@ -46,6 +47,8 @@ public class VotingClientMain {
             audit.info("Starting module {}...", MODULE_NAME.toUpperCase());
             
             Properties properties = PropertiesHelper.loadProperties(MODULE_NAME);
+            PooledHttpClient.setMaxIdleConnectionsPerHost(Integer.parseInt(properties.getProperty("http.max_idle_connections",
+                Integer.toString(PooledHttpClient.DEFAULT_MAX_CONNECTIONS_PER_HOST))));
             args = args == null || args.length == 0 ? null : args;
 
             String nxtPropertiesPath = args == null ? properties.getProperty("nxt.properties.path") : args[0];
@@ -66,7 +69,7 @@ public class VotingClientMain {
 
             application = new ClientApplication(properties, isMain, ownerId, privateKey, messagesFileContent, walletOffSchedule, mainAddress, passphrase, nxtPropertiesPath,
                 parentHolderUrl, credentialsFilePath, clientsFilePath, stateFilePath, audit);
-            jettyServer = JettyRunner.run(application, properties, jettyPort, webDir, "/{1}(api|holderAPI){1}/{1}.*", copyWebDir);
+            jettyServer = JettyRunner.run(application, properties, jettyPort, webDir, "/{1}((api|holderAPI){1}/{1}.*|metrics(/{1}.*)?)", copyWebDir);
             log.info("{} module is successfully started", MODULE_NAME);
         } catch (Exception e) {
             log.error(String.format("Error occurred in module %s", MODULE_NAME), e);
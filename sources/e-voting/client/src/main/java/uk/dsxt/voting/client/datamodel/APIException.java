@@ -8,6 +8,7 @@ public enum APIException {
     INCORRECT_RIGHTS,
 
     INVALID_SIGNATURE,
+    INVALID_PAGE_LIMIT,
     
     VOTING_NOT_FOUND,
     CLIENT_NOT_FOUND,
@@ -17,6 +17,10 @@ public class RequestResult<T> {
         return result;
     }
 
+    public String getError() {
+        return error;
+    }
+
     @JsonCreator
     public RequestResult(@JsonProperty("result") T result, @JsonProperty("error") String error) {
         this.result = result;
@@ -23,6 +23,8 @@ package uk.dsxt.voting.client.web;
 
 import uk.dsxt.voting.client.datamodel.RequestResult;
 
+import javax.ws.rs.core.Response;
+
 public interface VotingAPI {
 
     RequestResult login(String login, String password);
@@ -46,4 +48,12 @@ public interface VotingAPI {
     RequestResult getAllVoteStatuses(String cookie, String votingId);
 
     RequestResult getAllClientVotes(String cookie, String votingId);
+
+    RequestResult<?> getVoteStatusesPage(String cookie, String votingId, String cursor, int limit);
+
+    RequestResult<?> getClientVotesPage(String cookie, String votingId, String cursor, int limit);
+
+    Response streamVoteStatuses(String cookie, String votingId);
+
+    Response streamClientVotes(String cookie, String votingId);
 }
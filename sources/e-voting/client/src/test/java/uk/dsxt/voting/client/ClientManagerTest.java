@@ -0,0 +1,102 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+import uk.dsxt.voting.client.datamodel.APIException;
+import uk.dsxt.voting.client.datamodel.RecordsPageWeb;
+import uk.dsxt.voting.client.datamodel.RequestResult;
+import uk.dsxt.voting.common.domain.dataModel.VoteResultStatus;
+import uk.dsxt.voting.common.domain.dataModel.VoteStatus;
+import uk.dsxt.voting.common.domain.dataModel.Voting;
+import uk.dsxt.voting.common.domain.nodes.AssetsHolder;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class ClientManagerTest {
+
+    private static ClientManager createManager(int statusesCount) {
+        SortedMap<String, VoteStatus> statuses = new TreeMap<>();
+        for (int i = 0; i < statusesCount; i++) {
+            String messageId = String.format("m%05d", i);
+            statuses.put(messageId, new VoteStatus("v1", messageId, VoteResultStatus.OK, "digest", "sign"));
+        }
+        AssetsHolder holder = mock(AssetsHolder.class);
+        when(holder.getVoting("v1")).thenReturn(new Voting("v1", "voting", 0, Long.MAX_VALUE, null, "security"));
+        when(holder.getVoteStatuses(eq("v1"), anyString(), anyInt())).thenAnswer(invocation -> {
+            String after = (String) invocation.getArguments()[1];
+            int limit = (Integer) invocation.getArguments()[2];
+            List<VoteStatus> page = new ArrayList<>();
+            for (VoteStatus status : (after == null ? statuses : statuses.tailMap(after + "\0")).values()) {
+                if (page.size() == limit)
+                    break;
+                page.add(status);
+            }
+            return page;
+        });
+        when(holder.getVoteStatuses(eq("v2"), anyString(), anyInt())).thenReturn(null);
+        return new ClientManager(holder, null, null, null, null);
+    }
+
+    @Test
+    public void testVoteStatusesPages() throws Exception {
+        ClientManager manager = createManager(5);
+        RecordsPageWeb<?> page = (RecordsPageWeb<?>) manager.getVoteStatusesPage("v1", null, 2).getResult();
+        assertEquals(2, page.getRecords().length);
+        assertEquals("m00001", page.getNextCursor());
+        page = (RecordsPageWeb<?>) manager.getVoteStatusesPage("v1", page.getNextCursor(), 2).getResult();
+        page = (RecordsPageWeb<?>) manager.getVoteStatusesPage("v1", page.getNextCursor(), 2).getResult();
+        assertEquals(1, page.getRecords().length);
+        assertNull(page.getNextCursor());
+
+        assertEquals(APIException.INVALID_PAGE_LIMIT.name(), manager.getVoteStatusesPage("v1", null, 0).getError());
+        assertEquals(APIException.INVALID_PAGE_LIMIT.name(), manager.getVoteStatusesPage("v1", null, 100000).getError());
+        assertEquals(APIException.VOTING_NOT_FOUND.name(), manager.getVoteStatusesPage("v2", null, 10).getError());
+    }
+
+    @Test
+    public void testStreamVoteStatuses() throws Exception {
+        ClientManager manager = createManager(2500);
+        RequestResult<?> result = manager.streamVoteStatuses("v1");
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        ((StreamingOutput) result.getResult()).write(stream);
+
+        JsonNode root = new ObjectMapper().readTree(stream.toByteArray());
+        assertNull(root.get("error"));
+        assertEquals(2500, root.get("result").size());
+        assertEquals("m02499", root.get("result").get(2499).get("messageId").asText());
+
+        assertNull(manager.streamVoteStatuses("v2").getResult());
+    }
+}
@@ -0,0 +1,76 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.client;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class ClientViewCacheTest {
+
+    @Test
+    public void testInvalidation() throws Exception {
+        AtomicInteger builds = new AtomicInteger();
+        ClientViewCache<String> cache = new ClientViewCache<>(10);
+
+        assertEquals("v1c1-1", cache.get("v1", "c1", () -> "v1c1-" + builds.incrementAndGet()));
+        assertEquals("v1c1-1", cache.get("v1", "c1", () -> "v1c1-" + builds.incrementAndGet()));
+        assertEquals("v1c2-2", cache.get("v1", "c2", () -> "v1c2-" + builds.incrementAndGet()));
+        assertEquals("v2c1-3", cache.get("v2", "c1", () -> "v2c1-" + builds.incrementAndGet()));
+
+        cache.clientVoteChanged("v1", "c1");
+        assertEquals(2, cache.size());
+        assertEquals("v1c1-4", cache.get("v1", "c1", () -> "v1c1-" + builds.incrementAndGet()));
+        assertEquals("v1c2-2", cache.get("v1", "c2", () -> "v1c2-" + builds.incrementAndGet()));
+
+        cache.votingChanged("v1");
+        assertEquals(1, cache.size());
+        assertEquals("v2c1-3", cache.get("v2", "c1", () -> "v2c1-" + builds.incrementAndGet()));
+    }
+
+    @Test
+    public void testViewBuiltDuringChangeIsNotStored() throws Exception {
+        ClientViewCache<String> cache = new ClientViewCache<>(10);
+        assertEquals("old", cache.get("v1", "c1", () -> {
+            cache.clientVoteChanged("v1", "c1");
+            return "old";
+        }));
+        assertEquals(0, cache.size());
+        assertEquals("new", cache.get("v1", "c1", () -> "new"));
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        ClientViewCache<String> cache = new ClientViewCache<>(2);
+        cache.get("v1", "c1", () -> "1");
+        cache.get("v1", "c2", () -> "2");
+        cache.get("v1", "c1", () -> "x");
+        cache.get("v1", "c3", () -> "3");
+        assertEquals(2, cache.size());
+        assertEquals("1", cache.get("v1", "c1", () -> "x"));
+        assertEquals("new", cache.get("v1", "c2", () -> "new"));
+        cache.votingChanged("v1");
+        assertEquals(0, cache.size());
+    }
+}
@@ -55,7 +55,7 @@ public class HandleNewMessagesTest {
         CryptoHelperImpl cryptoHelper = CryptoHelperImpl.DEFAULT_CRYPTO_HELPER;
         WalletManager walletManager = new MockWalletManager();
         MessagesSerializer messagesSerializer = new Iso20022Serializer();
-        Map<String, PublicKey> participantKeysById = new HashMap();
+        Map<String, PublicKey> participantKeysById = new HashMap<>();
         PrivateKey privateKey = cryptoHelper.loadPrivateKey("MIIEvgIBADANBgkqhkiG9w0BAQEFAASCBKgwggSkAgEAAoIBAQCOcmezdk84J9QUIPl6URnlJrnCybBTsluqVcWxddVARLLE1k2dk5AA4i7gJ1xHapKAQL7F3XjcTZplitWfP2jxiTMMBcYqMG31dy5f90v+B+4juwQvpJoISYhXaBUtZxcos016ZcY8ylXTpqXTt5MCSXoSMvfSGdBE74acodG6sLXwnukNqOBSgU/SJkVWPxtjb14cEF2CXRQklNKs83B03ELDU7+08teFh89Mon9qHiUR8WqCAPMaTm0qWIbLvxGr99LZRLgxCTe8Hgj2Md2oT85voQdueldll/EKP6VpIBgzOqjBoMc/3cUjd8G5fmdQZEPK2teWE4gO9G59cTEFAgMBAAECggEAOuTiKzjHGBiffpMDkqblZfDU7MwmsvQTIiHEUtK9EI1WvDs+a+AOsc7SQqsDZCOT3qLmPTiMN8l+BG2aVPUKlpJ7IIVioR7U16Am9FZyfN0agHtaB7iuVq7QSBMoblUpJhK7/dcGVyvwwEkuVpKXnWJzrgKUo7E4gsflh+z/oYe/xHkeIAZG1C9r19ntR7s8sE/lACoD3TxZDmGbOXuoBQLTz0TYXWsNMguu7DKflp41sD8SybOfe9z8Tfq3rTqpcBZivHbtGzgR/dJxiInqtDwmAPU1xLr6Cv9KK53/UHAs557TbrBzVAAqUxSjpReA08OxYhRneHIJY8MGjU9WIQKBgQDPE/vRst6D6EK0z1nvESPuJqZQkMg5RSYu9nIMRKYV9kZl9GJ5kTaHtM27URd5ctAXHiqJYEQEIfBLwxAXksyC1jLWd3X34Zl+omzNy1+HjbwInMhifjW7nfwJXJVfKhHZFORLkCBLL5xt1erazbEeYiTfiQ9Z0g3XvveG3D1YfwKBgQCwGYx3owGfgnKbPpsCIVm3v2zd7Rh8c6HcibeomTcK0tVrkKfi4Kk9ed+iOytf+Up2HtBzJqp64R8Xs2eFccOOzx6tJN82pzcP48J4XIXQyuxpHEheQABLACHwy+WUVqR0jsUQf/7934v1Fv07B1woGMIaDjFJffFDkbQYrhJUewKBgQCNR7wSCPBJnKgORj28nrwd2l60LuN8N1Jizh9ngVqzNzA2lTKucEV89v06JIxYft28OAebbINbMnCIsBAFlVFUnqFWs3BX66JWxKhpC60kha3ZTmZk1GkClToEhRcgM0q0Cc3sQ+vUgCpAwacXGykRarJvlEpV5LsvDApDB3YPLwKBgGVHjF4SRhCzOa7Hpubmv27KjZZlkjuhVWo9Wn+A/wMeltgybhwyEaPlwBTR6vRbr9OXjVNs3YemifdbmyJId6xeusnh9u675RMibupCbEPVMXqSZZyvOnvoK50N55AU9KiEpBoFQ2ZHd3sSKboVVY9KDfhmSTp3UJcH6Yh4NNqZAoGBALRYToCYl7NJR2iGExW1nLlTWT2+LzqMb/wI32MOfKQefgiW2tYDk1GyULhCIkbEGMLsVqvziF8ntH3OwydLX30OrZwnOgkbKV+FiIBQ1qL7H8cMjBwC4b6C1JhfBp8OpNd3zu1zFAZrvEQRleKTASmPLJhLbEqydYSV4XJsgDl7");
         String publicKey ="MIIBIjANBgkqhkiG9w0BAQEFAAOCAQ8AMIIBCgKCAQEAjnJns3ZPOCfUFCD5elEZ5Sa5wsmwU7JbqlXFsXXVQESyxNZNnZOQAOIu4CdcR2qSgEC+xd143E2aZYrVnz9o8YkzDAXGKjBt9XcuX/dL/gfuI7sEL6SaCEmIV2gVLWcXKLNNemXGPMpV06al07eTAkl6EjL30hnQRO+GnKHRurC18J7pDajgUoFP0iZFVj8bY29eHBBdgl0UJJTSrPNwdNxCw1O/tPLXhYfPTKJ/ah4lEfFqggDzGk5tKliGy78Rq/fS2US4MQk3vB4I9jHdqE/Ob6EHbnpXZZfxCj+laSAYMzqowaDHP93FI3fBuX5nUGRDytrXlhOIDvRufXExBQIDAQAB";
         participantKeysById.put("00", cryptoHelper.loadPublicKey(publicKey));
@@ -69,7 +69,7 @@ public class HandleNewMessagesTest {
         String serializedVote = messagesSerializer.serialize(result, voting);
         String voteMessage = MessageBuilder.buildMessage(serializedVote, AssetsHolder.EMPTY_SIGNATURE);
         String encryptedVoteMessage = cryptoHelper.encrypt(voteMessage, cryptoHelper.loadPublicKey(publicKey));
-        Map<String, String> content = new HashMap();
+        Map<String, String> content = new HashMap<>();
         content.put("BODY", encryptedVoteMessage);
         MessageContent messageContent = new MessageContent(MessageContent.buildOutputMessage("VOTE", "00", privateKey, cryptoHelper, content));
         for(int i = 0; i < 100000; i++) {
@@ -0,0 +1,167 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ * *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ * *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ * *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ * *
+ * Removal or modification of this copyright notice is prohibited.            *
+ * *
+ ******************************************************************************/
+
+package uk.dsxt.voting.client;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.dsxt.voting.common.domain.dataModel.NodeVoteReceipt;
+import uk.dsxt.voting.common.domain.dataModel.VoteResultStatus;
+import uk.dsxt.voting.common.domain.nodes.VoteAcceptor;
+import uk.dsxt.voting.common.utils.web.JettyRunner;
+
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class HolderApiResourceTest {
+
+    private static final int THREADS = 4;
+
+    private static final int MAX_IN_FLIGHT = 8;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final AtomicInteger running = new AtomicInteger();
+
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    private final AtomicInteger nonDaemonCalls = new AtomicInteger();
+
+    private HolderApiResource resource;
+
+    private Server server;
+
+    private String acceptVoteUrl;
+
+    @Before
+    public void setUp() throws Exception {
+        VoteAcceptor node = (transactionId, votingId, packetSize, clientId, clientPacketResidual, encryptedData, voteDigest, clientSignature) -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            if (!Thread.currentThread().isDaemon())
+                nonDaemonCalls.incrementAndGet();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            return new NodeVoteReceipt(transactionId, System.currentTimeMillis(), VoteResultStatus.OK, "signature");
+        };
+        ResourceConfig application = new ResourceConfig();
+        JettyRunner.configureMapper(application);
+        resource = new HolderApiResource(node, THREADS, MAX_IN_FLIGHT, 3);
+        application.registerInstances(resource);
+        Properties properties = new Properties();
+        properties.setProperty("jetty.maxThreads", "40");
+        properties.setProperty("jetty.minThreads", "2");
+        properties.setProperty("jetty.idleTimeout", "5000");
+        properties.setProperty("jetty.maxQueueSize", "100");
+        server = JettyRunner.run(application, properties, 0);
+        acceptVoteUrl = String.format("http://localhost:%d/holderAPI/acceptVote", ((ServerConnector) server.getConnectors()[0]).getLocalPort());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        release.countDown();
+        server.stop();
+    }
+
+    private int acceptVotes(String form) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(acceptVoteUrl + "s").openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setReadTimeout(20000);
+        try (OutputStream stream = connection.getOutputStream()) {
+            stream.write(form.getBytes(StandardCharsets.UTF_8));
+        }
+        return connection.getResponseCode();
+    }
+
+    private HttpURLConnection acceptVote(int index) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(acceptVoteUrl).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setReadTimeout(20000);
+        String form = String.format("transactionId=t%d&votingId=v1&packetSize=1&clientId=c%d&clientPacketResidual=0&encryptedData=data&voteDigest=digest&clientSignature=sign",
+            index, index);
+        try (OutputStream stream = connection.getOutputStream()) {
+            stream.write(form.getBytes(StandardCharsets.UTF_8));
+        }
+        return connection;
+    }
+
+    @Test
+    public void testConcurrentVotes() throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(MAX_IN_FLIGHT);
+        List<Future<Integer>> codes = new ArrayList<>();
+        for (int i = 0; i < MAX_IN_FLIGHT; i++) {
+            int index = i;
+            codes.add(clients.submit(() -> acceptVote(index).getResponseCode()));
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while ((running.get() < THREADS || resource.getVotesInFlight() < MAX_IN_FLIGHT) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        // all accept threads are busy and other votes wait for them without holding Jetty threads
+        assertEquals(THREADS, running.get());
+        assertEquals(MAX_IN_FLIGHT, resource.getVotesInFlight());
+        HttpURLConnection rejected = acceptVote(MAX_IN_FLIGHT);
+        assertEquals(503, rejected.getResponseCode());
+        assertEquals("3", rejected.getHeaderField("Retry-After"));
+
+        release.countDown();
+        for (Future<Integer> code : codes) {
+            assertEquals(200, (int) code.get(20, TimeUnit.SECONDS));
+        }
+        assertEquals(THREADS, maxRunning.get());
+        assertEquals(0, nonDaemonCalls.get());
+        // the counter is decreased after the answer is resumed
+        while (resource.getVotesInFlight() > 0 && System.currentTimeMillis() < deadline + 10000) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, resource.getVotesInFlight());
+        clients.shutdown();
+    }
+
+    @Test
+    public void testInvalidVotesRejected() throws Exception {
+        assertEquals(400, acceptVotes("other=1"));
+        assertEquals(400, acceptVotes("votes=null"));
+        assertEquals(400, acceptVotes("votes=%5B%5D"));
+        assertEquals(400, acceptVotes("votes=%5Bnull%5D"));
+        assertEquals(400, acceptVotes("votes=%7B"));
+        assertEquals(0, resource.getVotesInFlight());
+    }
+}
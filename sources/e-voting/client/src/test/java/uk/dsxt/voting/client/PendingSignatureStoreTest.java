@@ -0,0 +1,123 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.client;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import uk.dsxt.voting.common.domain.dataModel.VoteResult;
+import uk.dsxt.voting.common.utils.crypto.CryptoHelperImpl;
+import uk.dsxt.voting.common.utils.crypto.KeyPair;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+
+import static org.junit.Assert.*;
+
+public class PendingSignatureStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static VoteResult vote(String votingId, String clientId) {
+        VoteResult result = new VoteResult(votingId, clientId, new BigDecimal("10"));
+        result.setAnswer("1", "2", new BigDecimal("10"));
+        return result;
+    }
+
+    @Test
+    public void testLimits() throws Exception {
+        PendingSignatureStore store = new PendingSignatureStore(60000, 3, 2);
+        store.put("c1", "v1", vote("v1", "c1"), "x11");
+        store.put("c1", "v2", vote("v2", "c1"), "x12");
+        store.put("c1", "v3", vote("v3", "c1"), "x13");
+        assertNull(store.get("c1", "v1"));
+        assertEquals("x12", store.get("c1", "v2").getXmlToSign());
+        assertEquals(2, store.size());
+
+        store.put("c2", "v1", vote("v1", "c2"), "x21");
+        store.put("c3", "v1", vote("v1", "c3"), "x31");
+        assertEquals(3, store.size());
+        assertNull(store.get("c1", "v2"));
+
+        store.remove("c3", "v1");
+        assertNull(store.get("c3", "v1"));
+        store.close();
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        PendingSignatureStore store = new PendingSignatureStore(50, 10, 10);
+        store.put("c1", "v1", vote("v1", "c1"), "x");
+        assertNotNull(store.get("c1", "v1"));
+        Thread.sleep(100);
+        assertNull(store.get("c1", "v1"));
+        assertEquals(0, store.size());
+        store.close();
+    }
+
+    @Test
+    public void testCleanupStopsOnClose() throws Exception {
+        PendingSignatureStore store = new PendingSignatureStore(50, 10, 10);
+        store.put("c1", "v1", vote("v1", "c1"), "x");
+        Thread.sleep(200);
+        assertEquals(0, store.size());
+
+        store.close();
+        store.put("c1", "v2", vote("v2", "c1"), "x");
+        Thread.sleep(200);
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void testSpill() throws Exception {
+        String directory = folder.getRoot().getAbsolutePath();
+        CryptoHelperImpl cryptoHelper = CryptoHelperImpl.DEFAULT_CRYPTO_HELPER;
+        KeyPair keys = cryptoHelper.createCryptoKeysGenerator().generateKeyPair();
+        PublicKey publicKey = cryptoHelper.loadPublicKey(keys.getPublicKey());
+        PrivateKey privateKey = cryptoHelper.loadPrivateKey(keys.getPrivateKey());
+        PendingSignatureStore store = new PendingSignatureStore(60000, 1, 10, directory, cryptoHelper, publicKey, privateKey);
+        store.put("МХ1", "v1", vote("v1", "МХ1"), "<xml>\n1\n</xml>");
+        store.put("c2", "v1", vote("v1", "c2"), "x2");
+        assertEquals(1, store.size());
+
+        PendingSignatureStore.PendingSignature signature = store.get("МХ1", "v1");
+        assertNotNull(signature);
+        assertEquals(vote("v1", "МХ1"), signature.getVote());
+        assertEquals("<xml>\n1\n</xml>", signature.getXmlToSign());
+        for (File file : folder.getRoot().listFiles()) {
+            String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+            assertFalse(content, content.contains("x2") || content.contains("c2"));
+        }
+
+        PendingSignatureStore restarted = new PendingSignatureStore(60000, 1, 10, directory, cryptoHelper, publicKey, privateKey);
+        assertEquals("x2", restarted.get("c2", "v1").getXmlToSign());
+        restarted.remove("c2", "v1");
+        assertNull(restarted.get("c2", "v1"));
+        store.close();
+        restarted.close();
+    }
+}
@@ -27,10 +27,8 @@ import org.joda.time.Instant;
 import uk.dsxt.voting.client.datamodel.*;
 import uk.dsxt.voting.common.domain.dataModel.VoteResultStatus;
 
-import javax.ws.rs.FormParam;
-import javax.ws.rs.POST;
-import javax.ws.rs.Path;
-import javax.ws.rs.Produces;
+import javax.ws.rs.*;
+import javax.ws.rs.core.Response;
 import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.Map;
@@ -254,4 +252,34 @@ public class MockVotingApiResource implements VotingAPI {
         questions[2] = new QuestionWeb("3", "question_3_yes_no_2", answers3, false, 1);
         return new RequestResult<>(new VotingInfoWeb(questions, BigDecimal.ZERO, null), null);
     }
+
+    @POST
+    @Path("/getVoteStatusesPage")
+    @Produces("application/json")
+    public RequestResult<?> getVoteStatusesPage(@FormParam("cookie") String cookie, @FormParam("votingId") String votingId,
+                                                @FormParam("cursor") String cursor, @FormParam("limit") @DefaultValue("1000") int limit) {
+        return new RequestResult<>(new RecordsPageWeb<>((VoteStatusWeb[]) getAllVoteStatuses(cookie, votingId).getResult(), null), null);
+    }
+
+    @POST
+    @Path("/getClientVotesPage")
+    @Produces("application/json")
+    public RequestResult<?> getClientVotesPage(@FormParam("cookie") String cookie, @FormParam("votingId") String votingId,
+                                               @FormParam("cursor") String cursor, @FormParam("limit") @DefaultValue("1000") int limit) {
+        return new RequestResult<>(new RecordsPageWeb<>((VoteResultWeb[]) getAllClientVotes(cookie, votingId).getResult(), null), null);
+    }
+
+    @POST
+    @Path("/streamVoteStatuses")
+    @Produces("application/json")
+    public Response streamVoteStatuses(@FormParam("cookie") String cookie, @FormParam("votingId") String votingId) {
+        return Response.ok(getAllVoteStatuses(cookie, votingId)).build();
+    }
+
+    @POST
+    @Path("/streamClientVotes")
+    @Produces("application/json")
+    public Response streamClientVotes(@FormParam("cookie") String cookie, @FormParam("votingId") String votingId) {
+        return Response.ok(getAllClientVotes(cookie, votingId)).build();
+    }
 }
@@ -22,17 +22,21 @@
 package uk.dsxt.voting.common.cryptoVote;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.lmax.disruptor.BatchEventProcessor;
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.RingBuffer;
 import lombok.extern.log4j.Log4j2;
-import org.eclipse.jetty.util.ArrayQueue;
-import org.eclipse.jetty.util.ConcurrentArrayQueue;
 import uk.dsxt.voting.common.demo.NetworkConnectorDemo;
+import uk.dsxt.voting.common.domain.dataModel.NodeVote;
 import uk.dsxt.voting.common.domain.dataModel.NodeVoteReceipt;
-import uk.dsxt.voting.common.domain.dataModel.VoteResultStatus;
+import uk.dsxt.voting.common.domain.dataModel.NodeVotesReceipt;
 import uk.dsxt.voting.common.domain.nodes.VoteAcceptor;
 import uk.dsxt.voting.common.utils.InternalLogicException;
-import uk.dsxt.voting.common.utils.web.HttpHelper;
+import uk.dsxt.voting.common.utils.web.PooledHttpClient;
 import uk.dsxt.voting.common.utils.web.RequestType;
 
+import javax.ws.rs.core.Response;
 import java.io.File;
 import java.io.IOException;
 import java.math.BigDecimal;
@@ -40,108 +44,424 @@ import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
+/**
+ * Forwards votes to the parent holder through ring buffers.
+ * Votes are distributed between sender lanes by transaction id, every lane has its own ring and thread and sends one request at a time.
+ * The parent checks that vote ranges of a holder do not intersect, not the order of votes, so votes of one holder may be sent by different lanes.
+ * A request failed by the parent is passed to the retry stage and resent with exponential backoff up to maxAttempts times, then its votes
+ * are dead-lettered. While the retry stage is full the lane resends the request itself. Requests rejected by the parent as invalid (400, 422)
+ * are not resent. Waiting for the network, for a parent answering 503 or, without an outbox, for a parent refusing connections is done
+ * by the lane itself and is not counted as an attempt.
+ * If an outbox is set, votes are appended to it before forwarding and acknowledged after the parent's receipt is received or rejection,
+ * dead-lettered votes stay unacknowledged in the outbox, votes left unacknowledged by the previous run are resent before any new vote.
+ */
 @Log4j2
 public class CryptoVoteAcceptorWeb extends NetworkConnectorDemo implements VoteAcceptor {
 
     private final static String ACCEPT_VOTE_URL_PART = "/acceptVote";
 
-    private final HttpHelper httpHelper;
+    private final static String ACCEPT_VOTES_URL_PART = "/acceptVotes";
+
+    private final static int DEFAULT_RING_SIZE = 1024;
+
+    private final static long DEFAULT_RETRY_DELAY = 100;
+
+    private final static long DEFAULT_MAX_RETRY_DELAY = 10000;
+
+    private final static int DEFAULT_MAX_ATTEMPTS = 10;
+
+    private final PooledHttpClient httpClient;
 
     private final String acceptVoteUrl;
-    
+
+    private final String acceptVotesUrl;
+
+    private final int batchSize;
+
+    private final long retryDelay;
+
+    private final long maxRetryDelay;
+
+    private final int maxAttempts;
+
     private final ObjectMapper mapper = new ObjectMapper();
-    
-    private final Queue<Map<String, String>> unsentVoteMessages = new ConcurrentArrayQueue<>(1000);
-    
+
     private final File receiptsFile;
 
-    private final Thread[] senders;
+    private final VoteOutbox outbox;
+
+    private final CountDownLatch replayed = new CountDownLatch(1);
+
+    private final List<LaneSender> lanes = new ArrayList<>();
+
+    private final AtomicLong sentVotes = new AtomicLong();
+
+    private final AtomicLong failedRequests = new AtomicLong();
+
+    private final AtomicLong retriedVotes = new AtomicLong();
+
+    private final AtomicLong rejectedVotes = new AtomicLong();
+
+    private final AtomicLong deadLetteredVotes = new AtomicLong();
+
+    private final ScheduledExecutorService retryExecutor;
+
+    private final int retryCapacity;
+
+    private final AtomicInteger retryingVotes = new AtomicInteger();
+
+    private enum SendResult {
+        SENT,
+        FAILED,
+        // the parent can not be connected, resend counts as an attempt only if votes are kept in outbox
+        UNREACHABLE,
+        // the parent is not ready to accept votes, resend does not count as an attempt
+        UNAVAILABLE,
+        // the parent will not accept these votes, resend is useless
+        REJECTED
+    }
+
+    private static class VoteEvent {
+        VoteOutbox.Entry entry;
+    }
 
     public CryptoVoteAcceptorWeb(String baseUrl, int connectionTimeout, int readTimeout, String receiptsFilePath, int threadCount) {
+        this(baseUrl, connectionTimeout, readTimeout, receiptsFilePath, threadCount, 1, DEFAULT_RING_SIZE, DEFAULT_RETRY_DELAY, DEFAULT_MAX_RETRY_DELAY,
+            DEFAULT_MAX_ATTEMPTS, null);
+    }
+
+    /**
+     * @param threadCount count of sender lanes, maximal count of requests in flight is one more for the retry stage
+     * @param batchSize maximal count of votes sent by one acceptVotes request. 1 - votes are sent one by one with acceptVote
+     * @param ringSize capacity of the ring of one lane, rounded up to a power of two, and maximal count of votes in the retry stage.
+     *                 acceptVote blocks when the ring is full
+     * @param retryDelay delay in milliseconds before the first resend of a failed request
+     * @param maxRetryDelay maximal delay in milliseconds between resends of a failed request
+     * @param maxAttempts maximal count of attempts to send a request, then its votes are dead-lettered
+     * @param outbox durable storage of votes until the parent's receipt, null - votes are kept in memory only
+     */
+    public CryptoVoteAcceptorWeb(String baseUrl, int connectionTimeout, int readTimeout, String receiptsFilePath, int threadCount, int batchSize,
+                                 int ringSize, long retryDelay, long maxRetryDelay, int maxAttempts, VoteOutbox outbox) {
         super();
         acceptVoteUrl = String.format("%s%s", baseUrl, ACCEPT_VOTE_URL_PART);
-        httpHelper = new HttpHelper(connectionTimeout, readTimeout);
+        acceptVotesUrl = String.format("%s%s", baseUrl, ACCEPT_VOTES_URL_PART);
+        this.batchSize = Math.max(1, batchSize);
+        this.retryDelay = Math.max(1, retryDelay);
+        this.maxRetryDelay = Math.max(this.retryDelay, maxRetryDelay);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        httpClient = new PooledHttpClient(connectionTimeout, readTimeout, Math.max(1, threadCount) + 1);
         receiptsFile = receiptsFilePath == null || receiptsFilePath.isEmpty() ? null : new File(receiptsFilePath);
-        senders = new Thread[threadCount];
-        for(int i = 0; i < threadCount; i++) {
-            senders[i] = new Thread(this::sendVotes);
-            senders[i].setPriority(Thread.MAX_PRIORITY);
-            senders[i].start();
+        this.outbox = outbox;
+
+        int capacity = Integer.highestOneBit(Math.max(2, ringSize) * 2 - 1);
+        retryCapacity = capacity;
+        retryExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "parent-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < Math.max(1, threadCount); i++) {
+            lanes.add(new LaneSender(i + 1, capacity));
+        }
+
+        if (outbox == null || outbox.getPending().isEmpty()) {
+            replayed.countDown();
+        } else {
+            Thread replayer = new Thread(this::replay, "parent-replay");
+            replayer.setDaemon(true);
+            replayer.start();
         }
     }
 
     @Override
-    public NodeVoteReceipt acceptVote(String transactionId, String votingId, BigDecimal packetSize, String clientId, BigDecimal clientPacketResidual, String encryptedData, String voteDigest, String clientSignature) {
-        Map<String, String> parameters = new HashMap<>();
-        parameters.put("transactionId", transactionId);
-        parameters.put("votingId", votingId);
-        parameters.put("packetSize", packetSize.toPlainString());
-        parameters.put("clientId", clientId);
-        parameters.put("clientPacketResidual", clientPacketResidual.toPlainString());
-        parameters.put("encryptedData", encryptedData);
-        parameters.put("voteDigest", voteDigest);
-        parameters.put("clientSignature", clientSignature);
-        unsentVoteMessages.add(parameters);
+    public NodeVoteReceipt acceptVote(String transactionId, String votingId, BigDecimal packetSize, String clientId, BigDecimal clientPacketResidual, String encryptedData, String voteDigest, String clientSignature) throws InternalLogicException {
+        NodeVote vote = new NodeVote(transactionId, votingId, packetSize, clientId, clientPacketResidual, encryptedData, voteDigest, clientSignature);
+        try {
+            replayed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InternalLogicException(String.format("acceptVote interrupted. transactionId=%s", transactionId));
+        }
+        long outboxSequence = -1;
+        if (outbox != null) {
+            try {
+                outboxSequence = outbox.append(vote);
+            } catch (IOException e) {
+                throw new InternalLogicException(String.format("Can not append vote to outbox. transactionId=%s error=%s", transactionId, e.getMessage()));
+            }
+        }
+        publish(new VoteOutbox.Entry(outboxSequence, vote));
         return null;
     }
-    
-    private void sendVotes() {
-        while(true) {
-            sendNextVote();
-            try {
-                Thread.sleep(5);
-            } catch (InterruptedException e) {
-                log.info("sendVotes interrupted");
+
+    private void publish(VoteOutbox.Entry entry) {
+        RingBuffer<VoteEvent> ring = lanes.get((entry.getVote().getTransactionId().hashCode() & Integer.MAX_VALUE) % lanes.size()).ring;
+        long sequence = ring.next();
+        try {
+            ring.get(sequence).entry = entry;
+        } finally {
+            ring.publish(sequence);
+        }
+    }
+
+    private void replay() {
+        List<VoteOutbox.Entry> pending = outbox.getPending();
+        log.info("replay. Resending {} votes from outbox", pending.size());
+        pending.forEach(this::publish);
+        replayed.countDown();
+    }
+
+    public long getQueueDepth() {
+        return lanes.stream().mapToLong(lane -> lane.ring.getBufferSize() - lane.ring.remainingCapacity()).sum() + retryingVotes.get();
+    }
+
+    public long getSentVotes() {
+        return sentVotes.get();
+    }
+
+    public long getFailedRequests() {
+        return failedRequests.get();
+    }
+
+    public long getRetriedVotes() {
+        return retriedVotes.get();
+    }
+
+    public long getRejectedVotes() {
+        return rejectedVotes.get();
+    }
+
+    public long getDeadLetteredVotes() {
+        return deadLetteredVotes.get();
+    }
+
+    private class LaneSender implements EventHandler<VoteEvent> {
+
+        private final RingBuffer<VoteEvent> ring;
+
+        private final List<VoteOutbox.Entry> batch = new ArrayList<>();
+
+        LaneSender(int number, int capacity) {
+            ring = RingBuffer.createMultiProducer(VoteEvent::new, capacity, new BlockingWaitStrategy());
+            BatchEventProcessor<VoteEvent> processor = new BatchEventProcessor<>(ring, ring.newBarrier(), this);
+            ring.addGatingSequences(processor.getSequence());
+            Thread thread = new Thread(processor, String.format("parent-sender-%d", number));
+            thread.setPriority(Thread.MAX_PRIORITY);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        @Override
+        public void onEvent(VoteEvent event, long sequence, boolean endOfBatch) {
+            batch.add(event.entry);
+            event.entry = null;
+            if (batch.size() >= batchSize || endOfBatch) {
+                List<VoteOutbox.Entry> entries = new ArrayList<>(batch);
+                batch.clear();
+                try {
+                    deliver(entries);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    deadLetter(entries, "interrupted");
+                } catch (Exception e) {
+                    log.error("onEvent. Unexpected error, votes are dead-lettered", e);
+                    deadLetter(entries, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void deliver(List<VoteOutbox.Entry> entries) throws InterruptedException {
+        long delay = retryDelay;
+        int attempts = 0;
+        boolean resent = false;
+        while (true) {
+            SendResult result = send(entries);
+            if (result == SendResult.SENT) {
+                if (resent)
+                    retriedVotes.addAndGet(entries.size());
+                return;
+            }
+            if (result == SendResult.REJECTED) {
+                reject(entries);
+                return;
+            }
+            if (isAttempt(result)) {
+                if (++attempts >= maxAttempts) {
+                    deadLetter(entries, String.format("%d attempts failed", attempts));
+                    return;
+                }
+                if (result == SendResult.FAILED && scheduleRetry(entries, attempts, delay))
+                    return;
+            }
+            log.debug("deliver. votes={} result={} attempts={} delay={}", entries.size(), result, attempts, delay);
+            Thread.sleep(delay);
+            delay = Math.min(maxRetryDelay, delay * 2);
+            resent = true;
+        }
+    }
+
+    private boolean isAttempt(SendResult result) {
+        return result == SendResult.FAILED || result == SendResult.UNREACHABLE && outbox != null;
+    }
+
+    private boolean scheduleRetry(List<VoteOutbox.Entry> entries, int attempts, long delay) {
+        if (retryingVotes.addAndGet(entries.size()) > retryCapacity) {
+            retryingVotes.addAndGet(-entries.size());
+            return false;
+        }
+        retryExecutor.schedule(() -> retry(entries, attempts, delay), delay, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    private void retry(List<VoteOutbox.Entry> entries, int attempts, long delay) {
+        try {
+            SendResult result = send(entries);
+            if (result == SendResult.SENT) {
+                retriedVotes.addAndGet(entries.size());
+            } else if (result == SendResult.REJECTED) {
+                reject(entries);
+            } else if (isAttempt(result) && attempts + 1 >= maxAttempts) {
+                deadLetter(entries, String.format("%d attempts failed", attempts + 1));
+            } else {
+                log.debug("retry. votes={} result={} attempts={} delay={}", entries.size(), result, attempts, delay);
+                long nextDelay = Math.min(maxRetryDelay, delay * 2);
+                retryExecutor.schedule(() -> retry(entries, isAttempt(result) ? attempts + 1 : attempts, nextDelay), nextDelay, TimeUnit.MILLISECONDS);
                 return;
             }
+        } catch (Exception e) {
+            log.error("retry. Unexpected error, votes are dead-lettered", e);
+            deadLetter(entries, e.getMessage());
         }
+        retryingVotes.addAndGet(-entries.size());
     }
-    
-    private void sendNextVote() {
+
+    private void reject(List<VoteOutbox.Entry> entries) {
+        rejectedVotes.addAndGet(entries.size());
+        log.error("reject. {} votes are rejected by parent and will not be resent. transactionIds={}", entries.size(), getTransactionIds(entries));
+        if (outbox != null)
+            outbox.acknowledge(entries.stream().map(VoteOutbox.Entry::getSequence).collect(Collectors.toList()));
+    }
+
+    private void deadLetter(List<VoteOutbox.Entry> entries, String reason) {
+        deadLetteredVotes.addAndGet(entries.size());
+        if (outbox != null) {
+            log.error("deadLetter. {} votes are not sent ({}), they stay in outbox until restart. transactionIds={}", entries.size(), reason, getTransactionIds(entries));
+        } else {
+            log.error("deadLetter. {} votes are lost ({}). transactionIds={}", entries.size(), reason, getTransactionIds(entries));
+        }
+    }
+
+    private static List<String> getTransactionIds(List<VoteOutbox.Entry> entries) {
+        return entries.stream().map(e -> e.getVote().getTransactionId()).collect(Collectors.toList());
+    }
+
+    private SendResult send(List<VoteOutbox.Entry> entries) {
         if (!isNetworkOn)
-            return;
-        Map<String, String> parameters = unsentVoteMessages.poll();
-        int queueSize = unsentVoteMessages.size();
-        if (parameters == null)
-            return;
-        
+            return SendResult.UNAVAILABLE;
+        SendResult result = entries.size() == 1 && batchSize == 1 ? sendVote(entries.get(0).getVote())
+            : sendVotes(entries.stream().map(VoteOutbox.Entry::getVote).collect(Collectors.toList()));
+        if (result == SendResult.SENT) {
+            sentVotes.addAndGet(entries.size());
+            if (outbox != null)
+                outbox.acknowledge(entries.stream().map(VoteOutbox.Entry::getSequence).collect(Collectors.toList()));
+        } else {
+            failedRequests.incrementAndGet();
+        }
+        return result;
+    }
+
+    private static SendResult getFailureResult(InternalLogicException e) {
+        if (!(e.getReturnValue() instanceof Integer))
+            return SendResult.FAILED;
+        int code = (Integer) e.getReturnValue();
+        if (code == Response.Status.SERVICE_UNAVAILABLE.getStatusCode())
+            return SendResult.UNAVAILABLE;
+        // only answers about invalid votes are final, other client errors (404, 405, ...) may be caused by the parent's configuration
+        if (code == Response.Status.BAD_REQUEST.getStatusCode() || code == 422)
+            return SendResult.REJECTED;
+        return SendResult.FAILED;
+    }
+
+    private SendResult sendVotes(List<NodeVote> votes) {
+        String result;
+        try {
+            result = httpClient.request(acceptVotesUrl, Collections.singletonMap("votes", mapper.writeValueAsString(votes)), RequestType.POST);
+        } catch (IOException e) {
+            log.warn("sendVotes failed. url={} votes={} error={}", acceptVotesUrl, votes.size(), e.getMessage());
+            return SendResult.UNREACHABLE;
+        } catch (InternalLogicException e) {
+            log.error("sendVotes failed. url={} votes={} error={}", acceptVotesUrl, votes.size(), e.getMessage());
+            return getFailureResult(e);
+        }
+        if (result == null || result.isEmpty()) {
+            log.error("sendVotes. result == null. url={} votes={}", acceptVotesUrl, votes.size());
+            return SendResult.FAILED;
+        }
+        saveReceipt(result);
+        try {
+            NodeVotesReceipt receipt = mapper.readValue(result, NodeVotesReceipt.class);
+            log.debug("sendVotes. {} votes sent, {} receipts received. queueDepth={}", votes.size(), receipt.getReceipts().length, getQueueDepth());
+        } catch (IOException e) {
+            log.error("sendVotes. can not read receipt {}. error={}", result, e.getMessage());
+        }
+        return SendResult.SENT;
+    }
+
+    private SendResult sendVote(NodeVote vote) {
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put("transactionId", vote.getTransactionId());
+        parameters.put("votingId", vote.getVotingId());
+        parameters.put("packetSize", vote.getPacketSize().toPlainString());
+        parameters.put("clientId", vote.getClientId());
+        parameters.put("clientPacketResidual", vote.getClientPacketResidual().toPlainString());
+        parameters.put("encryptedData", vote.getEncryptedData());
+        parameters.put("voteDigest", vote.getVoteDigest());
+        parameters.put("clientSignature", vote.getClientSignature());
+
         String result;
         try {
-            result = httpHelper.request(acceptVoteUrl, parameters, RequestType.POST);
+            result = httpClient.request(acceptVoteUrl, parameters, RequestType.POST);
         } catch (IOException e) {
-            log.warn("sendNextVote failed. url={} error={}", acceptVoteUrl, e);
-            unsentVoteMessages.add(parameters);
-            return;
+            log.warn("sendVote failed. url={} error={}", acceptVoteUrl, e.getMessage());
+            return SendResult.UNREACHABLE;
         } catch (InternalLogicException e) {
-            log.error("sendNextVote failed. url={}", acceptVoteUrl, e);
-            unsentVoteMessages.add(parameters);
-            return;
+            log.error("sendVote failed. url={} transactionId={} error={}", acceptVoteUrl, vote.getTransactionId(), e.getMessage());
+            return getFailureResult(e);
         }
         if (result == null || result.isEmpty()) {
-            log.error("sendNextVote. result == null. url={}", acceptVoteUrl);
-            unsentVoteMessages.add(parameters);
-            return;
+            log.error("sendVote. result == null. url={} transactionId={}", acceptVoteUrl, vote.getTransactionId());
+            return SendResult.FAILED;
         }
-        
+
+        saveReceipt(result);
+        try {
+            NodeVoteReceipt receipt = mapper.readValue(result, NodeVoteReceipt.class);
+            log.debug("sendVote. Vote sent, receipt.status={} clientPacketResidual={} packetSize={} queueDepth={}",
+                receipt.getStatus(), vote.getClientPacketResidual(), vote.getPacketSize(), getQueueDepth());
+        } catch (IOException e) {
+            log.error("sendVote. can not read receipt {}. error={}", result, e.getMessage());
+        }
+        return SendResult.SENT;
+    }
+
+    private void saveReceipt(String result) {
         if (receiptsFile != null) {
             synchronized (receiptsFile) {
                 try {
                     Files.write(receiptsFile.toPath(), Collections.singletonList(result), Charset.forName("utf-8"), StandardOpenOption.APPEND, StandardOpenOption.CREATE);
                 } catch (IOException e) {
-                    log.warn("sendNextVote. Couldn't save result to file: {}. result='{}' error={}", receiptsFile.getAbsolutePath(), result, e.getMessage());
+                    log.warn("saveReceipt. Couldn't save result to file: {}. result='{}' error={}", receiptsFile.getAbsolutePath(), result, e.getMessage());
                 }
             }
         }
-        try {
-            NodeVoteReceipt receipt = mapper.readValue(result, NodeVoteReceipt.class);
-            log.debug("sendNextVote. Vote sent, receipt.status={} clientPacketResidual={} packetSize={} queueSize={}",
-                receipt.getStatus(), parameters.get("clientPacketResidual"), parameters.get("packetSize"), queueSize);
-        } catch (IOException e) {
-            log.error("sendNextVote. can not read receipt {}. error={}", result, e.getMessage());
-        }
     }
 }
@@ -0,0 +1,292 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common.cryptoVote;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Value;
+import lombok.extern.log4j.Log4j2;
+import uk.dsxt.voting.common.domain.dataModel.NodeVote;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only outbox of votes awaiting delivery to the parent holder.
+ * Votes are written to memory-mapped segment files as records [length][crc][sequence][json], segments are flushed to disk
+ * every syncInterval milliseconds (0 - after each append). The sequence below which all votes are acknowledged is kept
+ * in a separate mapped file, segments containing only acknowledged votes are deleted.
+ * After restart votes appended after the last acknowledged sequence are available via getPending.
+ */
+@Log4j2
+public class VoteOutbox implements AutoCloseable {
+
+    private static final String SEGMENT_PREFIX = "outbox-";
+
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final String ACK_FILE_NAME = "outbox.ack";
+
+    private static final int HEADER_SIZE = 16;
+
+    @Value
+    public static class Entry {
+        long sequence;
+        NodeVote vote;
+    }
+
+    private static class Segment {
+        final File file;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        long lastSequence;
+
+        Segment(File file, int size) throws IOException {
+            this.file = file;
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("close. Couldn't close outbox segment {}. error={}", file.getAbsolutePath(), e.getMessage());
+            }
+        }
+    }
+
+    private final File directory;
+
+    private final int segmentSize;
+
+    private final long syncInterval;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final CRC32 crc = new CRC32();
+
+    private final Deque<Segment> segments = new ArrayDeque<>();
+
+    private final ConcurrentSkipListSet<Long> unacknowledged = new ConcurrentSkipListSet<>();
+
+    private final List<Entry> pending = new ArrayList<>();
+
+    private final FileChannel ackChannel;
+
+    private final MappedByteBuffer ackBuffer;
+
+    private final ScheduledExecutorService syncService;
+
+    private Segment current;
+
+    private long nextSequence;
+
+    private long acknowledgedSequence;
+
+    private boolean dirty;
+
+    /**
+     * @param segmentSize size of one segment file in bytes
+     * @param syncInterval period in milliseconds of flushing appended votes to disk, 0 - flush after each append
+     */
+    public VoteOutbox(String directoryPath, int segmentSize, long syncInterval) throws IOException {
+        directory = new File(directoryPath);
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException(String.format("Can not create outbox directory %s", directory.getAbsolutePath()));
+        this.segmentSize = Math.max(HEADER_SIZE * 2, segmentSize);
+        this.syncInterval = syncInterval;
+
+        ackChannel = new RandomAccessFile(new File(directory, ACK_FILE_NAME), "rw").getChannel();
+        ackBuffer = ackChannel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+        acknowledgedSequence = ackBuffer.getLong(0);
+        nextSequence = acknowledgedSequence + 1;
+        recover();
+        if (current == null)
+            roll(0);
+
+        if (syncInterval > 0) {
+            syncService = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "outbox-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncService.scheduleWithFixedDelay(this::sync, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+        } else {
+            syncService = null;
+        }
+        log.info("VoteOutbox. directory={} pending={} acknowledgedSequence={}", directory.getAbsolutePath(), pending.size(), acknowledgedSequence);
+    }
+
+    /**
+     * @return votes which were appended but not acknowledged before the outbox was opened, in order of appending
+     */
+    public List<Entry> getPending() {
+        return Collections.unmodifiableList(pending);
+    }
+
+    public int size() {
+        return unacknowledged.size();
+    }
+
+    public synchronized long getAcknowledgedSequence() {
+        return acknowledgedSequence;
+    }
+
+    public long append(NodeVote vote) throws IOException {
+        byte[] data = mapper.writeValueAsBytes(vote);
+        long sequence;
+        synchronized (this) {
+            if (current.buffer.remaining() < HEADER_SIZE + data.length + Integer.BYTES)
+                roll(HEADER_SIZE + data.length + Integer.BYTES);
+            sequence = nextSequence++;
+            crc.reset();
+            crc.update(data);
+            current.buffer.putInt(data.length);
+            current.buffer.putInt((int) crc.getValue());
+            current.buffer.putLong(sequence);
+            current.buffer.put(data);
+            current.lastSequence = sequence;
+            unacknowledged.add(sequence);
+            dirty = true;
+            if (syncInterval <= 0)
+                sync();
+        }
+        return sequence;
+    }
+
+    /**
+     * Marks votes as delivered. Acknowledgements may come in any order, the durable acknowledged sequence moves only
+     * over the continuous range of acknowledged votes.
+     */
+    public synchronized void acknowledge(Collection<Long> sequences) {
+        unacknowledged.removeAll(sequences);
+        long acknowledged = unacknowledged.isEmpty() ? nextSequence - 1 : unacknowledged.first() - 1;
+        if (acknowledged <= acknowledgedSequence)
+            return;
+        acknowledgedSequence = acknowledged;
+        ackBuffer.putLong(0, acknowledged);
+        dirty = true;
+        compact();
+    }
+
+    public synchronized void sync() {
+        if (!dirty)
+            return;
+        current.buffer.force();
+        ackBuffer.force();
+        dirty = false;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (syncService != null)
+            syncService.shutdownNow();
+        dirty = true;
+        sync();
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+        try {
+            ackChannel.close();
+        } catch (IOException e) {
+            log.warn("close. Couldn't close outbox ack file. error={}", e.getMessage());
+        }
+    }
+
+    private void compact() {
+        while (segments.size() > 1 && segments.peekFirst().lastSequence <= acknowledgedSequence) {
+            Segment segment = segments.pollFirst();
+            segment.close();
+            if (!segment.file.delete())
+                log.warn("compact. Couldn't delete outbox segment {}", segment.file.getAbsolutePath());
+        }
+    }
+
+    private void roll(int minSize) throws IOException {
+        if (current != null)
+            current.buffer.force();
+        Segment segment = new Segment(new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, nextSequence, SEGMENT_SUFFIX)), Math.max(segmentSize, minSize));
+        segment.lastSequence = nextSequence - 1;
+        segments.addLast(segment);
+        current = segment;
+        compact();
+    }
+
+    private void recover() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX));
+        if (files == null)
+            return;
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        for (File file : files) {
+            Segment segment = new Segment(file, (int) file.length());
+            segment.lastSequence = nextSequence - 1;
+            ByteBuffer buffer = segment.buffer;
+            boolean torn = false;
+            while (buffer.remaining() >= HEADER_SIZE) {
+                int position = buffer.position();
+                int length = buffer.getInt();
+                int checksum = buffer.getInt();
+                long sequence = buffer.getLong();
+                if (length <= 0 || length > buffer.remaining()) {
+                    torn = length != 0;
+                    buffer.position(position);
+                    break;
+                }
+                byte[] data = new byte[length];
+                buffer.get(data);
+                crc.reset();
+                crc.update(data);
+                if ((int) crc.getValue() != checksum) {
+                    log.warn("recover. Corrupted record in outbox segment {} at {}, rest of segment is dropped", file.getName(), position);
+                    torn = true;
+                    buffer.position(position);
+                    break;
+                }
+                segment.lastSequence = sequence;
+                nextSequence = Math.max(nextSequence, sequence + 1);
+                if (sequence > acknowledgedSequence) {
+                    pending.add(new Entry(sequence, mapper.readValue(data, NodeVote.class)));
+                    unacknowledged.add(sequence);
+                }
+            }
+            if (torn) {
+                for (int i = buffer.position(); i < buffer.limit(); i++) {
+                    buffer.put(i, (byte) 0);
+                }
+            }
+            segments.addLast(segment);
+            current = segment;
+        }
+        compact();
+    }
+}
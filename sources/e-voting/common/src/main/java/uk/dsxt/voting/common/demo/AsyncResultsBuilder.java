@@ -0,0 +1,336 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common.demo;
+
+import lombok.extern.log4j.Log4j2;
+import uk.dsxt.voting.common.metrics.Counter;
+import uk.dsxt.voting.common.metrics.LatencyHistogram;
+import uk.dsxt.voting.common.metrics.MetricsRegistry;
+import uk.dsxt.voting.common.utils.InternalLogicException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reports votes and node results to the results builder from a background thread, so the caller never waits for the results builder.
+ * Reports are queued into a bounded queue and sent by batches of up to {@code batchSize}.
+ * When the queue is full or a batch can not be delivered, reports are appended to the spill file if it is set or dropped otherwise.
+ * While the results builder is available the spill file is resent along with new reports: every sent batch of the queue is followed
+ * by a batch of spilled reports of 1/{@value #REPLAY_SHARE} of batch size, an idle queue lets spilled reports go by full batches.
+ * Every report has an id and a timestamp, so the results builder skips a resent report it has already applied and a node result
+ * older than the stored one. Reports rejected by the results builder as invalid are dropped and never resent.
+ */
+@Log4j2
+public class AsyncResultsBuilder implements ResultsBuilder {
+
+    private final static String SPILL_VOTE = "V";
+
+    private final static String SPILL_RESULT = "R";
+
+    private final static int REPLAY_SHARE = 4;
+
+    private final BatchResultsBuilder resultsBuilder;
+
+    private final BlockingQueue<ResultReport> queue;
+
+    private final int batchSize;
+
+    private final long flushInterval;
+
+    private final File spillFile;
+
+    private final File replayFile;
+
+    private Writer spillWriter;
+
+    private BufferedReader replayReader;
+
+    private String replayLine;
+
+    private int replayedReports;
+
+    private final Thread sender;
+
+    private volatile boolean isRunning = true;
+
+    private boolean isAvailable = true;
+
+    private final Counter queuedReports;
+    private final Counter sentReports;
+    private final Counter droppedReports;
+    private final Counter spilledReports;
+    private final Counter rejectedReports;
+    private final Counter failedBatches;
+    private final LatencyHistogram batchTime;
+
+    /**
+     * @param queueSize maximal count of reports waiting to be sent
+     * @param batchSize maximal count of reports sent by one request
+     * @param flushInterval time in milliseconds the sender waits for new reports before it checks the spill file
+     * @param spillFilePath file for reports which can not be queued or delivered, null or empty - such reports are dropped
+     */
+    public AsyncResultsBuilder(BatchResultsBuilder resultsBuilder, int queueSize, int batchSize, long flushInterval, String spillFilePath, MetricsRegistry metrics) {
+        this.resultsBuilder = resultsBuilder;
+        this.batchSize = Math.max(1, batchSize);
+        this.flushInterval = Math.max(1, flushInterval);
+        queue = new ArrayBlockingQueue<>(Math.max(1, queueSize));
+        spillFile = spillFilePath == null || spillFilePath.isEmpty() ? null : new File(spillFilePath);
+        replayFile = spillFile == null ? null : new File(spillFile.getPath() + ".replay");
+        queuedReports = metrics.counter("results_reporter_queued_total");
+        sentReports = metrics.counter("results_reporter_sent_total");
+        droppedReports = metrics.counter("results_reporter_dropped_total");
+        spilledReports = metrics.counter("results_reporter_spilled_total");
+        rejectedReports = metrics.counter("results_reporter_rejected_total");
+        failedBatches = metrics.counter("results_reporter_failed_batches_total");
+        batchTime = metrics.histogram("results_reporter_batch_seconds");
+        metrics.gauge("results_reporter_queue", queue::size);
+        sender = new Thread(this::run, "results-reporter");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    @Override
+    public void addResult(String holderId, String voteResult) {
+        if (holderId == null) {
+            rejectedReports.incrementAndGet();
+            log.error("addResult. holderId is null, result is dropped. voteResult={}", voteResult);
+            return;
+        }
+        enqueue(new ResultReport(UUID.randomUUID().toString(), System.currentTimeMillis(), holderId, voteResult));
+    }
+
+    @Override
+    public void addVote(String voteResult) {
+        enqueue(new ResultReport(UUID.randomUUID().toString(), System.currentTimeMillis(), null, voteResult));
+    }
+
+    private void enqueue(ResultReport report) {
+        if (queue.offer(report)) {
+            queuedReports.incrementAndGet();
+            return;
+        }
+        List<ResultReport> reports = new ArrayList<>(1);
+        reports.add(report);
+        spill(reports);
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * Sends queued reports and stops the sender, reports which were not delivered are spilled or dropped.
+     */
+    public void stop() {
+        isRunning = false;
+        try {
+            sender.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<ResultReport> batch = new ArrayList<>(batchSize);
+        int replayBatchSize = Math.max(1, batchSize / REPLAY_SHARE);
+        while (isRunning || !queue.isEmpty()) {
+            try {
+                ResultReport report = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+                if (report == null) {
+                    flushSpill();
+                    while (isAvailable && isRunning && queue.isEmpty()) {
+                        if (replaySpill(batchSize) == 0)
+                            break;
+                    }
+                    continue;
+                }
+                batch.add(report);
+                queue.drainTo(batch, batchSize - 1);
+                send(batch);
+                if (isAvailable && isRunning)
+                    replaySpill(replayBatchSize);
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                log.error("run. Can not report results", e);
+            }
+            batch.clear();
+        }
+        closeReplay();
+        flushSpill();
+    }
+
+    private boolean send(List<ResultReport> batch) {
+        long start = System.nanoTime();
+        List<String> rejected;
+        try {
+            rejected = resultsBuilder.addBatch(batch);
+        } catch (InternalLogicException e) {
+            failedBatches.incrementAndGet();
+            if (isAvailable)
+                log.error("send. Can not send {} reports. error={}", batch.size(), e.getMessage());
+            isAvailable = false;
+            spill(batch);
+            return false;
+        }
+        batchTime.recordSince(start);
+        if (!rejected.isEmpty()) {
+            rejectedReports.addAndGet(rejected.size());
+            log.error("send. {} of {} reports are rejected and dropped. ids={}", rejected.size(), batch.size(), rejected);
+        }
+        sentReports.addAndGet(batch.size() - rejected.size());
+        if (!isAvailable)
+            log.info("send. Results builder is available again");
+        isAvailable = true;
+        return true;
+    }
+
+    private synchronized void spill(List<ResultReport> reports) {
+        if (spillFile == null) {
+            droppedReports.addAndGet(reports.size());
+            return;
+        }
+        try {
+            if (spillWriter == null)
+                spillWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(spillFile, true), StandardCharsets.UTF_8));
+            for (ResultReport report : reports) {
+                if (report.isVote())
+                    spillWriter.write(String.format("%s\t%s\t%d\t%s%n", SPILL_VOTE, report.getId(), report.getTimestamp(), report.getVoteResult()));
+                else
+                    spillWriter.write(String.format("%s\t%s\t%d\t%s\t%s%n", SPILL_RESULT, report.getId(), report.getTimestamp(),
+                        report.getHolderId(), report.getVoteResult()));
+            }
+            spilledReports.addAndGet(reports.size());
+        } catch (IOException e) {
+            log.error("spill. Can not write {} reports to {}. error={}", reports.size(), spillFile, e.getMessage());
+            droppedReports.addAndGet(reports.size());
+        }
+    }
+
+    private synchronized void flushSpill() {
+        if (spillWriter == null)
+            return;
+        try {
+            spillWriter.flush();
+        } catch (IOException e) {
+            log.error("flushSpill. Can not write {}. error={}", spillFile, e.getMessage());
+        }
+    }
+
+    private synchronized boolean takeSpill() {
+        try {
+            if (spillWriter != null) {
+                spillWriter.close();
+                spillWriter = null;
+            }
+            if (!spillFile.exists() || spillFile.length() == 0)
+                return false;
+            Files.move(spillFile.toPath(), replayFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return true;
+        } catch (IOException e) {
+            log.error("takeSpill. Can not move {} to {}. error={}", spillFile, replayFile, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Sends the next reports of the spill file, the file is taken for replay when the previous one is replayed.
+     * Reports of a batch which is not delivered are spilled again, the rest of the file is resent later.
+     * @return count of reports read from the spill file
+     */
+    private int replaySpill(int maxReports) {
+        if (spillFile == null || replayReader == null && !openReplay())
+            return 0;
+        List<ResultReport> batch = new ArrayList<>(maxReports);
+        try {
+            while (batch.size() < maxReports && replayLine != null) {
+                ResultReport report = parseSpilled(replayLine);
+                if (report != null)
+                    batch.add(report);
+                else
+                    log.warn("replaySpill. Invalid line in {}: {}", replayFile, replayLine);
+                replayLine = replayReader.readLine();
+            }
+        } catch (IOException e) {
+            log.error("replaySpill. Can not read {}. error={}", replayFile, e.getMessage());
+            closeReplay();
+            return 0;
+        }
+        if (!batch.isEmpty() && send(batch))
+            replayedReports += batch.size();
+        if (replayLine == null) {
+            closeReplay();
+            if (!replayFile.delete())
+                log.error("replaySpill. Can not delete {}", replayFile);
+            log.info("replaySpill. {} spilled reports resent", replayedReports);
+            replayedReports = 0;
+        }
+        return batch.size();
+    }
+
+    private boolean openReplay() {
+        if (!replayFile.exists() && !takeSpill())
+            return false;
+        try {
+            replayReader = Files.newBufferedReader(replayFile.toPath(), StandardCharsets.UTF_8);
+            replayLine = replayReader.readLine();
+            return true;
+        } catch (IOException e) {
+            log.error("openReplay. Can not read {}. error={}", replayFile, e.getMessage());
+            closeReplay();
+            return false;
+        }
+    }
+
+    private void closeReplay() {
+        if (replayReader == null)
+            return;
+        try {
+            replayReader.close();
+        } catch (IOException e) {
+            log.warn("closeReplay. Can not close {}. error={}", replayFile, e.getMessage());
+        }
+        replayReader = null;
+        replayLine = null;
+    }
+
+    private static ResultReport parseSpilled(String line) {
+        String[] terms = line.split("\t");
+        try {
+            if (SPILL_VOTE.equals(terms[0]) && terms.length == 4)
+                return new ResultReport(terms[1], Long.parseLong(terms[2]), null, terms[3]);
+            if (SPILL_RESULT.equals(terms[0]) && terms.length == 5)
+                return new ResultReport(terms[1], Long.parseLong(terms[2]), terms[3], terms[4]);
+        } catch (NumberFormatException e) {
+            log.debug("parseSpilled. Invalid timestamp {}", terms[2]);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,36 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common.demo;
+
+import uk.dsxt.voting.common.utils.InternalLogicException;
+
+import java.util.List;
+
+public interface BatchResultsBuilder extends ResultsBuilder {
+
+    /**
+     * Adds votes and node results with one call, every report is applied separately.
+     * @return ids of reports rejected as invalid, they should not be resent
+     * @throws InternalLogicException if the batch was not delivered and may be resent
+     */
+    List<String> addBatch(List<ResultReport> reports) throws InternalLogicException;
+}
@@ -0,0 +1,68 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common.demo;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Value;
+
+/**
+ * Vote or node result reported to the results builder in a batch.
+ */
+@Value
+public class ResultReport {
+    /**
+     * unique id of the report, a report resent after it was applied is skipped
+     */
+    @JsonProperty
+    String id;
+
+    /**
+     * time in milliseconds the report was made, a node result does not replace a newer one
+     */
+    @JsonProperty
+    long timestamp;
+
+    /**
+     * node the result belongs to, null for a vote
+     */
+    @JsonProperty
+    String holderId;
+
+    @JsonProperty
+    String voteResult;
+
+    @JsonCreator
+    public ResultReport(@JsonProperty("id") String id, @JsonProperty("timestamp") long timestamp,
+                        @JsonProperty("holderId") String holderId, @JsonProperty("voteResult") String voteResult) {
+        this.id = id;
+        this.timestamp = timestamp;
+        this.holderId = holderId;
+        this.voteResult = voteResult;
+    }
+
+    @JsonIgnore
+    public boolean isVote() {
+        return holderId == null;
+    }
+}
@@ -21,36 +21,42 @@
 
 package uk.dsxt.voting.common.demo;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.log4j.Log4j2;
 import uk.dsxt.voting.common.utils.web.RequestType;
 import uk.dsxt.voting.common.utils.InternalLogicException;
-import uk.dsxt.voting.common.utils.web.HttpHelper;
+import uk.dsxt.voting.common.utils.web.PooledHttpClient;
 
 import java.io.IOException;
 import java.net.ConnectException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.stream.Collectors;
 
 @Log4j2
-public class ResultsBuilderWeb implements ResultsBuilder {
+public class ResultsBuilderWeb implements BatchResultsBuilder {
     private final static String ADD_RESULT_URL_PART = "/addResult";
     private final static String ADD_VOTE_URL_PART = "/addVote";
+    private final static String ADD_BATCH_URL_PART = "/addBatch";
 
-    private final HttpHelper httpHelper;
+    private final PooledHttpClient httpClient;
 
     private final String addResultUrl;
     private final String addVoteUrl;
+    private final String addBatchUrl;
+
+    private final ObjectMapper mapper = new ObjectMapper();
 
     public ResultsBuilderWeb(String baseUrl, int connectionTimeout, int readTimeout) {
         addResultUrl = String.format("%s%s", baseUrl, ADD_RESULT_URL_PART);
         addVoteUrl = String.format("%s%s", baseUrl, ADD_VOTE_URL_PART);
+        addBatchUrl = String.format("%s%s", baseUrl, ADD_BATCH_URL_PART);
 
-        httpHelper = new HttpHelper(connectionTimeout, readTimeout);
+        httpClient = new PooledHttpClient(connectionTimeout, readTimeout);
     }
 
     private void execute(String name, String url, Map<String, String> parameters) {
         try {
-            httpHelper.request(url, parameters, RequestType.POST);
+            httpClient.request(url, parameters, RequestType.POST);
         } catch (ConnectException | InternalLogicException e) {
             log.error("ResultsBuilderWeb: {} failed. url={}. error={}.", name, url, e.getMessage());
         } catch (IOException e) {
@@ -63,6 +69,7 @@ public class ResultsBuilderWeb implements ResultsBuilder {
         Map<String, String> parameters = new HashMap<>();
         parameters.put("holderId", holderId);
         parameters.put("voteResult", voteResult);
+        parameters.put("timestamp", Long.toString(System.currentTimeMillis()));
         execute("addResult", addResultUrl, parameters);
     }
 
@@ -72,4 +79,37 @@ public class ResultsBuilderWeb implements ResultsBuilder {
         parameters.put("voteResult", voteResult);
         execute("addVote", addVoteUrl, parameters);
     }
+
+    @Override
+    public List<String> addBatch(List<ResultReport> reports) throws InternalLogicException {
+        String response;
+        try {
+            response = httpClient.request(addBatchUrl, Collections.singletonMap("reports", mapper.writeValueAsString(reports)), RequestType.POST);
+        } catch (InternalLogicException e) {
+            if (!isRejected(e))
+                throw new InternalLogicException(String.format("addBatch failed. url=%s reports=%d error=%s", addBatchUrl, reports.size(), e.getMessage()));
+            log.error("addBatch. Batch is rejected. url={} reports={} error={}", addBatchUrl, reports.size(), e.getMessage());
+            return reports.stream().map(ResultReport::getId).collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new InternalLogicException(String.format("addBatch failed. url=%s reports=%d error=%s", addBatchUrl, reports.size(), e.getMessage()));
+        }
+        if (response == null || response.isEmpty())
+            return Collections.emptyList();
+        try {
+            return Arrays.asList(mapper.readValue(response, String[].class));
+        } catch (IOException e) {
+            log.warn("addBatch. Can not read rejected reports. url={} error={}", addBatchUrl, e.getMessage());
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * @return true if the request is refused by a client error answer, timeout and too many requests answers are temporary
+     */
+    private static boolean isRejected(InternalLogicException e) {
+        if (!(e.getReturnValue() instanceof Integer))
+            return false;
+        int code = (Integer) e.getReturnValue();
+        return code >= 400 && code < 500 && code != 408 && code != 429;
+    }
 }
@@ -0,0 +1,70 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common.domain.dataModel;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Value;
+
+import java.math.BigDecimal;
+
+@Value
+public class NodeVote {
+    @JsonProperty
+    String transactionId;
+
+    @JsonProperty
+    String votingId;
+
+    @JsonProperty
+    BigDecimal packetSize;
+
+    @JsonProperty
+    String clientId;
+
+    @JsonProperty
+    BigDecimal clientPacketResidual;
+
+    @JsonProperty
+    String encryptedData;
+
+    @JsonProperty
+    String voteDigest;
+
+    @JsonProperty
+    String clientSignature;
+
+    @JsonCreator
+    public NodeVote(@JsonProperty("transactionId") String transactionId, @JsonProperty("votingId") String votingId,
+                    @JsonProperty("packetSize") BigDecimal packetSize, @JsonProperty("clientId") String clientId,
+                    @JsonProperty("clientPacketResidual") BigDecimal clientPacketResidual, @JsonProperty("encryptedData") String encryptedData,
+                    @JsonProperty("voteDigest") String voteDigest, @JsonProperty("clientSignature") String clientSignature) {
+        this.transactionId = transactionId;
+        this.votingId = votingId;
+        this.packetSize = packetSize;
+        this.clientId = clientId;
+        this.clientPacketResidual = clientPacketResidual;
+        this.encryptedData = encryptedData;
+        this.voteDigest = voteDigest;
+        this.clientSignature = clientSignature;
+    }
+}
@@ -0,0 +1,45 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common.domain.dataModel;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Value;
+
+/**
+ * Receipts of ordered votes batch. If signature is set, it signs all receipts
+ * (MessageBuilder message of inputMessage, timestamp and status of every receipt) and receipts are not signed separately.
+ */
+@Value
+public class NodeVotesReceipt {
+    @JsonProperty
+    NodeVoteReceipt[] receipts;
+
+    @JsonProperty
+    String signature;
+
+    @JsonCreator
+    public NodeVotesReceipt(@JsonProperty("receipts") NodeVoteReceipt[] receipts, @JsonProperty("signature") String signature) {
+        this.receipts = receipts;
+        this.signature = signature;
+    }
+}
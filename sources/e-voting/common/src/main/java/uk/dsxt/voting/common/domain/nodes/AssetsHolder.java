@@ -26,6 +26,7 @@ import uk.dsxt.voting.common.utils.InternalLogicException;
 
 import java.math.BigDecimal;
 import java.util.Collection;
+import java.util.List;
 
 public interface AssetsHolder extends VoteAcceptor {
     
@@ -41,9 +42,21 @@ public interface AssetsHolder extends VoteAcceptor {
 
     Collection<VoteResultAndStatus> getClientVotes(String votingId);
 
+    /**
+     * @return at most limit statuses with message id greater than afterMessageId (all if it is null) ordered by message id
+     */
+    List<VoteStatus> getVoteStatuses(String votingId, String afterMessageId, int limit);
+
+    /**
+     * @return at most limit votes with client id greater than afterClientId (all if it is null) ordered by client id
+     */
+    List<VoteResultAndStatus> getClientVotes(String votingId, String afterClientId, int limit);
+
     VoteResultAndStatus getClientVote(String votingId, String clientId);
 
     void addClientVote(VoteResult result, String signature) throws InternalLogicException;
 
     BigDecimal getClientPacketSize(String votingId, String clientId);
+
+    void addChangeListener(AssetsChangeListener listener);
 }
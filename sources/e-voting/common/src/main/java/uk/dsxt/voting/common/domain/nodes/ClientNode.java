@@ -26,6 +26,10 @@ import lombok.extern.log4j.Log4j2;
 import org.joda.time.Instant;
 import uk.dsxt.voting.common.domain.dataModel.*;
 import uk.dsxt.voting.common.messaging.MessagesSerializer;
+import uk.dsxt.voting.common.metrics.Counter;
+import uk.dsxt.voting.common.metrics.LatencyHistogram;
+import uk.dsxt.voting.common.metrics.MetricsRegistry;
+import uk.dsxt.voting.common.metrics.VoteTracer;
 import uk.dsxt.voting.common.utils.CollectionsHelper;
 import uk.dsxt.voting.common.utils.InternalLogicException;
 import uk.dsxt.voting.common.utils.MessageBuilder;
@@ -39,7 +43,7 @@ import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -72,12 +76,18 @@ public class ClientNode implements AssetsHolder, NetworkClient {
     private final static long VOTE_MAX_DELAY = 60000;
 
     private final Map<String, OwnerRecord> ownerRecordsByMessageId = new HashMap<>();
+
+    private final List<AssetsChangeListener> changeListeners = new CopyOnWriteArrayList<>();
     
-    private final AtomicLong acceptingVotes = new AtomicLong();
-    private final AtomicLong acceptedVotes = new AtomicLong();
-    private final AtomicLong incorrectVotes = new AtomicLong();
-    private final AtomicLong addingClientVotes = new AtomicLong();
-    private final AtomicLong addedClientVotes = new AtomicLong();
+    private final Counter acceptingVotes;
+    private final Counter acceptedVotes;
+    private final Counter incorrectVotes;
+    private final Counter addingClientVotes;
+    private final Counter addedClientVotes;
+    private final LatencyHistogram acceptVoteTime;
+    private final LatencyHistogram acceptVotesTime;
+    private final LatencyHistogram addClientVoteTime;
+    private final VoteTracer tracer = VoteTracer.getDefault();
 
     public ClientNode(String participantId, MessagesSerializer messagesSerializer, CryptoHelper cryptoProvider, Map<String, PublicKey> participantKeysById, PrivateKey privateKey,
                       VoteAcceptor parentHolder, String state, Consumer<String> stateSaver)
@@ -89,6 +99,15 @@ public class ClientNode implements AssetsHolder, NetworkClient {
         this.participantKeysById = participantKeysById;
         this.parentHolder = parentHolder;
         this.stateSaver = stateSaver;
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        acceptingVotes = metrics.counter("node_accepting_votes_total", "node", participantId);
+        acceptedVotes = metrics.counter("node_accepted_votes_total", "node", participantId);
+        incorrectVotes = metrics.counter("node_incorrect_votes_total", "node", participantId);
+        addingClientVotes = metrics.counter("node_adding_client_votes_total", "node", participantId);
+        addedClientVotes = metrics.counter("node_added_client_votes_total", "node", participantId);
+        acceptVoteTime = metrics.histogram("node_accept_vote_seconds", "node", participantId);
+        acceptVotesTime = metrics.histogram("node_accept_votes_batch_seconds", "node", participantId);
+        addClientVoteTime = metrics.histogram("node_add_client_vote_seconds", "node", participantId);
         masterNodePublicKey = participantKeysById.get(MasterNode.MASTER_HOLDER_ID);
         if (masterNodePublicKey == null)
             throw new InternalLogicException(String.format("Master node %s has no public key", MasterNode.MASTER_HOLDER_ID));
@@ -101,6 +120,21 @@ public class ClientNode implements AssetsHolder, NetworkClient {
         network = networkMessagesSender;
     }
 
+    @Override
+    public void addChangeListener(AssetsChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    private void notifyListeners(Consumer<AssetsChangeListener> action) {
+        for (AssetsChangeListener listener : changeListeners) {
+            try {
+                action.accept(listener);
+            } catch (Exception e) {
+                log.error(String.format("notifyListeners fails. participantId=%s", participantId), e);
+            }
+        }
+    }
+
     public void setClientsOnTime(long timestamp, Client[] clients) {
         clientsByIdByTimestamp.put(timestamp, Arrays.stream(clients).collect(Collectors.toMap(Client::getParticipantId, Function.identity())));
         long now = System.currentTimeMillis();
@@ -110,8 +144,61 @@ public class ClientNode implements AssetsHolder, NetworkClient {
     @Override
     public NodeVoteReceipt acceptVote(String transactionId, String votingId, BigDecimal packetSize, String clientId, BigDecimal clientPacketResidual, 
                                                    String encryptedData, String voteDigest, String clientSignature) throws InternalLogicException {
+        long start = System.nanoTime();
         acceptingVotes.incrementAndGet();
         String inputMessage = buildMessage(transactionId, votingId, packetSize, clientId, clientPacketResidual, encryptedData, voteDigest);
+        VoteResultStatus status = checkAndAddVote(inputMessage, transactionId, votingId, packetSize, clientId, clientPacketResidual, encryptedData, voteDigest, clientSignature);
+        long now = System.currentTimeMillis();
+        String signedText = MessageBuilder.buildMessage(inputMessage, Long.toString(now), status.toString());
+        String receiptSign;
+        try {
+            receiptSign = cryptoHelper.createSignature(signedText, privateKey);
+        } catch (GeneralSecurityException | UnsupportedEncodingException e) {
+            throw new InternalLogicException(String.format("Can not sign vote clientId=%s transactionId=%s", clientId, transactionId));
+        }
+        acceptedVotes.incrementAndGet();
+        acceptVoteTime.recordSince(start);
+        log.debug("acceptVote. votingId={} clientId={} packetSize={} status={} acceptingVotes={} acceptedVotes={} incorrectVotes={}",
+            votingId, clientId, packetSize, status, acceptingVotes.get(), acceptedVotes.get(), incorrectVotes.get());
+        return new NodeVoteReceipt(inputMessage, now, status, receiptSign);
+    }
+
+    @Override
+    public NodeVotesReceipt acceptVotes(List<NodeVote> votes) throws InternalLogicException {
+        long start = System.nanoTime();
+        acceptingVotes.addAndGet(votes.size());
+        String[] inputMessages = new String[votes.size()];
+        VoteResultStatus[] statuses = new VoteResultStatus[votes.size()];
+        for (int i = 0; i < inputMessages.length; i++) {
+            NodeVote vote = votes.get(i);
+            inputMessages[i] = buildMessage(vote.getTransactionId(), vote.getVotingId(), vote.getPacketSize(), vote.getClientId(), vote.getClientPacketResidual(),
+                vote.getEncryptedData(), vote.getVoteDigest());
+            statuses[i] = checkAndAddVote(inputMessages[i], vote.getTransactionId(), vote.getVotingId(), vote.getPacketSize(), vote.getClientId(),
+                vote.getClientPacketResidual(), vote.getEncryptedData(), vote.getVoteDigest(), vote.getClientSignature());
+        }
+        long now = System.currentTimeMillis();
+        NodeVoteReceipt[] receipts = new NodeVoteReceipt[inputMessages.length];
+        String[] signedTexts = new String[inputMessages.length];
+        for (int i = 0; i < inputMessages.length; i++) {
+            receipts[i] = new NodeVoteReceipt(inputMessages[i], now, statuses[i], null);
+            signedTexts[i] = MessageBuilder.buildMessage(inputMessages[i], Long.toString(now), statuses[i].toString());
+        }
+        String batchSign;
+        try {
+            batchSign = cryptoHelper.createSignature(MessageBuilder.buildMessage(signedTexts), privateKey);
+        } catch (GeneralSecurityException | UnsupportedEncodingException e) {
+            throw new InternalLogicException(String.format("Can not sign batch of %d votes", votes.size()));
+        }
+        acceptedVotes.addAndGet(votes.size());
+        acceptVotesTime.recordSince(start);
+        log.debug("acceptVotes. {} votes accepted. acceptingVotes={} acceptedVotes={} incorrectVotes={}",
+            votes.size(), acceptingVotes.get(), acceptedVotes.get(), incorrectVotes.get());
+        return new NodeVotesReceipt(receipts, batchSign);
+    }
+
+    private VoteResultStatus checkAndAddVote(String inputMessage, String transactionId, String votingId, BigDecimal packetSize, String clientId,
+                                             BigDecimal clientPacketResidual, String encryptedData, String voteDigest, String clientSignature) throws InternalLogicException {
+        tracer.mark(transactionId, VoteTracer.Hop.HOLDER_ACCEPTED, participantId);
         VoteResultStatus status;
         VotingRecord votingRecord = votingsById.get(votingId);
         if (votingRecord == null) {
@@ -147,18 +234,7 @@ public class ClientNode implements AssetsHolder, NetworkClient {
         }
         if (status != VoteResultStatus.OK)
             incorrectVotes.incrementAndGet();
-        long now = System.currentTimeMillis();
-        String signedText = MessageBuilder.buildMessage(inputMessage, Long.toString(now), status.toString());
-        String receiptSign;
-        try {
-            receiptSign = cryptoHelper.createSignature(signedText, privateKey);
-        } catch (GeneralSecurityException | UnsupportedEncodingException e) {
-            throw new InternalLogicException(String.format("Can not sign vote clientId=%s transactionId=%s", clientId, transactionId));
-        }
-        acceptedVotes.incrementAndGet();
-        log.debug("acceptVote. votingId={} clientId={} packetSize={} status={} acceptingVotes={} acceptedVotes={} incorrectVotes={}",
-            votingId, clientId, packetSize, status, acceptingVotes.get(), acceptedVotes.get(), incorrectVotes.get());
-        return new NodeVoteReceipt(inputMessage, now, status, receiptSign);
+        return status;
     }
 
     private VoteResultStatus addVoteAndHandleErrors(VotingRecord votingRecord, Client client, String transactionId, 
@@ -192,6 +268,7 @@ public class ClientNode implements AssetsHolder, NetworkClient {
                 log.error("addVote. sign message to parent failed. voting={} client={} error={}", votingRecord.voting.getId(), client.getParticipantId(), e.getMessage());
             }
             if (sign != null) {
+                tracer.append(transactionId, VoteTracer.Hop.PARENT_FORWARDED, participantId);
                 parentHolder.acceptVote(transactionId, votingRecord.voting.getId(), packetSize, participantId, totalResidual, encrypted, voteDigest, sign);
             }
         } else if (status != VoteResultStatus.OK) {
@@ -263,8 +340,41 @@ public class ClientNode implements AssetsHolder, NetworkClient {
             return null;
         }
         synchronized (votingRecord) {
-            return votingRecord.voteStatusesByMessageId.values();
+            return new ArrayList<>(votingRecord.voteStatusesByMessageId.values());
+        }
+    }
+
+    @Override
+    public List<VoteStatus> getVoteStatuses(String votingId, String afterMessageId, int limit) {
+        VotingRecord votingRecord = votingsById.get(votingId);
+        if (votingRecord == null) {
+            return null;
+        }
+        synchronized (votingRecord) {
+            return getPage(votingRecord.voteStatusesByMessageId, afterMessageId, limit, Function.identity());
+        }
+    }
+
+    @Override
+    public List<VoteResultAndStatus> getClientVotes(String votingId, String afterClientId, int limit) {
+        VotingRecord votingRecord = votingsById.get(votingId);
+        if (votingRecord == null) {
+            return null;
+        }
+        synchronized (votingRecord) {
+            return getPage(votingRecord.ownerRecordsByClientId, afterClientId, limit, or -> or.resultAndStatus);
+        }
+    }
+
+    private static <T, R> List<R> getPage(SortedMap<String, T> records, String afterKey, int limit, Function<T, R> mapper) {
+        List<R> page = new ArrayList<>(Math.min(limit, records.size()));
+        for (Map.Entry<String, T> entry : (afterKey == null ? records : records.tailMap(afterKey)).entrySet()) {
+            if (page.size() >= limit)
+                break;
+            if (!entry.getKey().equals(afterKey))
+                page.add(mapper.apply(entry.getValue()));
         }
+        return page;
     }
 
     @Override
@@ -292,6 +402,7 @@ public class ClientNode implements AssetsHolder, NetworkClient {
 
     @Override
     public void addClientVote(VoteResult result, String signature) throws InternalLogicException {
+        long start = System.nanoTime();
         addingClientVotes.incrementAndGet();
         VotingRecord votingRecord = votingsById.get(result.getVotingId());
         if (votingRecord == null) {
@@ -324,6 +435,8 @@ public class ClientNode implements AssetsHolder, NetworkClient {
                 result.getVotingId(), result.getHolderId(), e.getMessage());
             return;
         }
+        tracer.mark(voteMessageId, VoteTracer.Hop.CLIENT_VOTE, participantId, start);
+        tracer.mark(voteMessageId, VoteTracer.Hop.MESSAGE_QUEUED, participantId);
         long now = System.currentTimeMillis();
         String signedText = MessageBuilder.buildMessage(serializedVote, voteMessageId, voteDigest, Long.toString(now));
         String receiptSign = null;
@@ -354,9 +467,11 @@ public class ClientNode implements AssetsHolder, NetworkClient {
         synchronized (votingRecord) {
             votingRecord.ownerRecordsByClientId.put(result.getHolderId(), ownerRecord);
         }
+        notifyListeners(l -> l.clientVoteChanged(result.getVotingId(), result.getHolderId()));
         if (stateSaver != null)
             stateSaver.accept(collectState());
         addedClientVotes.incrementAndGet();
+        addClientVoteTime.recordSince(start);
         log.debug("addClientVote. Vote added. ownerId={} votingId={} messageId={} packetSize={} addingClientVotes={} addedClientVotes={}", 
             result.getHolderId(), result.getVotingId(), voteMessageId, result.getPacketSize(), addingClientVotes.get(), addedClientVotes.get());
     }
@@ -409,6 +524,7 @@ public class ClientNode implements AssetsHolder, NetworkClient {
             }
         }
         log.debug("setVotingClients. votingId={} participantId={} totalResidual={}", votingRecord.voting.getId(), participantId, votingRecord.totalResidual);
+        notifyListeners(l -> l.votingChanged(votingRecord.voting.getId()));
     }
 
     @Override
@@ -419,6 +535,7 @@ public class ClientNode implements AssetsHolder, NetworkClient {
             return;
         }
         votingRecord.totalResult = result;
+        notifyListeners(l -> l.votingChanged(result.getVotingId()));
     }
 
     @Override
@@ -431,6 +548,7 @@ public class ClientNode implements AssetsHolder, NetworkClient {
         synchronized (votingRecord) {
             votingRecord.voteStatusesByMessageId.put(status.getMessageId(), status);
         }
+        tracer.append(status.getMessageId(), VoteTracer.Hop.STATUS_RECEIVED, participantId);
         OwnerRecord ownerRecord;
         synchronized (ownerRecordsByMessageId) {
             ownerRecord = ownerRecordsByMessageId.remove(status.getMessageId());
@@ -441,6 +559,7 @@ public class ClientNode implements AssetsHolder, NetworkClient {
             }
             log.debug("addVoteStatus. messageId={} ownerId={} status={} statusMessageId={}", 
                 status.getMessageId(), ownerRecord.resultAndStatus.getResult().getHolderId(), status.getStatus(), messageId);
+            notifyListeners(l -> l.clientVoteChanged(status.getVotingId(), ownerRecord.resultAndStatus.getResult().getHolderId()));
             if (stateSaver != null)
                 stateSaver.accept(collectState());
         }
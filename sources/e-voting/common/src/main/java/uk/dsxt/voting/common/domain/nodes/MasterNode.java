@@ -24,6 +24,10 @@ package uk.dsxt.voting.common.domain.nodes;
 import lombok.extern.log4j.Log4j2;
 import uk.dsxt.voting.common.domain.dataModel.*;
 import uk.dsxt.voting.common.messaging.MessagesSerializer;
+import uk.dsxt.voting.common.metrics.Counter;
+import uk.dsxt.voting.common.metrics.LatencyHistogram;
+import uk.dsxt.voting.common.metrics.MetricsRegistry;
+import uk.dsxt.voting.common.metrics.VoteTracer;
 import uk.dsxt.voting.common.utils.InternalLogicException;
 import uk.dsxt.voting.common.utils.MessageBuilder;
 import uk.dsxt.voting.common.utils.crypto.CryptoHelper;
@@ -34,25 +38,48 @@ import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Log4j2
 public class MasterNode extends ClientNode {
 
     public static String MASTER_HOLDER_ID = "00";
+
+    /**
+     * running nodes, master_handle_vote_queue is the total queue of them so that stopped nodes are not kept by the registry
+     */
+    private static final Set<MasterNode> masters = ConcurrentHashMap.newKeySet();
+
+    static {
+        MetricsRegistry.getDefault().gauge("master_handle_vote_queue", () -> masters.stream().mapToLong(m -> m.handleVoteExecutor.getQueue().size()).sum());
+    }
     
-    private final ExecutorService handleVoteExecutor = Executors.newFixedThreadPool(10);
+    private final ThreadPoolExecutor handleVoteExecutor = (ThreadPoolExecutor) Executors.newFixedThreadPool(10);
 
-    private final AtomicLong receivedVotes = new AtomicLong();
-    private final AtomicLong handledVotes = new AtomicLong();
-    private final AtomicLong incorrectVotes = new AtomicLong();
+    private final Counter receivedVotes;
+    private final Counter handledVotes;
+    private final Counter incorrectVotes;
+    private final LatencyHistogram handleVoteTime;
 
     public MasterNode(MessagesSerializer messagesSerializer, CryptoHelper cryptoProvider, Map<String, PublicKey> participantKeysById, PrivateKey privateKey) 
             throws InternalLogicException, GeneralSecurityException {
         super(MASTER_HOLDER_ID, messagesSerializer, cryptoProvider, participantKeysById, privateKey, null, null, null);
         parentHolder = new VoteChecker();
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        receivedVotes = metrics.counter("master_received_votes_total");
+        handledVotes = metrics.counter("master_handled_votes_total");
+        incorrectVotes = metrics.counter("master_incorrect_votes_total");
+        handleVoteTime = metrics.histogram("master_handle_vote_seconds");
+        masters.add(this);
+    }
+
+    public void stop() {
+        handleVoteExecutor.shutdown();
+        masters.remove(this);
+        log.info("MasterNode stopped");
     }
 
     private class VoteChecker implements VoteAcceptor {
@@ -60,12 +87,14 @@ public class MasterNode extends ClientNode {
         @Override
         public NodeVoteReceipt acceptVote(String transactionId, String votingId, BigDecimal packetSize, String clientId, BigDecimal clientPacketResidual, String encryptedData, String voteDigest, String clientSignature) throws InternalLogicException {
             receivedVotes.incrementAndGet();
+            VoteTracer.getDefault().mark(transactionId, VoteTracer.Hop.MASTER_ACCEPTED, MASTER_HOLDER_ID);
             handleVoteExecutor.execute(() -> handleVote(transactionId, votingId, packetSize, clientId, clientPacketResidual, encryptedData, voteDigest));
             return null; 
         }
     }
     
     private void handleVote(String transactionId, String votingId, BigDecimal packetSize, String clientId, BigDecimal clientPacketResidual, String encryptedData, String voteDigest) {
+        long start = System.nanoTime();
         VoteResultStatus status;
         try {
             status = handleVote(transactionId, votingId, encryptedData, voteDigest);
@@ -81,6 +110,8 @@ public class MasterNode extends ClientNode {
                 log.error("handleVote. send vote failed: {}", e.getMessage());
             }
         }
+        handleVoteTime.recordSince(start);
+        VoteTracer.getDefault().append(transactionId, VoteTracer.Hop.MASTER_HANDLED, MASTER_HOLDER_ID);
         if (handledVotes.incrementAndGet() % 10 == 0)
             log.debug("handleVote. received {} handled {} errors {}", receivedVotes.get(), handledVotes.get(), incorrectVotes.get());
     }
@@ -21,7 +21,9 @@
 
 package uk.dsxt.voting.common.domain.nodes;
 
+import uk.dsxt.voting.common.domain.dataModel.NodeVote;
 import uk.dsxt.voting.common.domain.dataModel.NodeVoteReceipt;
+import uk.dsxt.voting.common.domain.dataModel.NodeVotesReceipt;
 import uk.dsxt.voting.common.domain.dataModel.VoteResult;
 import uk.dsxt.voting.common.domain.dataModel.VoteResultStatus;
 import uk.dsxt.voting.common.domain.dataModel.Voting;
@@ -36,4 +38,14 @@ public interface VoteAcceptor {
 
     NodeVoteReceipt acceptVote(String transactionId, String votingId, BigDecimal packetSize, String clientId, BigDecimal clientPacketResidual, 
                                String encryptedData, String voteDigest, String clientSignature) throws InternalLogicException;
+
+    default NodeVotesReceipt acceptVotes(List<NodeVote> votes) throws InternalLogicException {
+        NodeVoteReceipt[] receipts = new NodeVoteReceipt[votes.size()];
+        for (int i = 0; i < receipts.length; i++) {
+            NodeVote vote = votes.get(i);
+            receipts[i] = acceptVote(vote.getTransactionId(), vote.getVotingId(), vote.getPacketSize(), vote.getClientId(), vote.getClientPacketResidual(),
+                vote.getEncryptedData(), vote.getVoteDigest(), vote.getClientSignature());
+        }
+        return new NodeVotesReceipt(receipts, null);
+    }
 }
@@ -31,6 +31,7 @@ import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.SortedMap;
+import java.util.TreeMap;
 import java.util.function.Function;
 
 class VotingRecord {
@@ -38,9 +39,10 @@ class VotingRecord {
     VoteResult totalResult;
     Map<String, Client> clients = new HashMap<>();
     BigDecimal totalResidual = BigDecimal.ZERO;
-    Map<String, OwnerRecord> ownerRecordsByClientId = new HashMap<>();
+    // sorted to iterate owners and statuses by cursor
+    SortedMap<String, OwnerRecord> ownerRecordsByClientId = new TreeMap<>();
     Map<String, SortedMap<BigDecimal, BigDecimal>> clientVoteRangesByClientId = new HashMap<>();
-    Map<String, VoteStatus> voteStatusesByMessageId = new HashMap<>();
+    SortedMap<String, VoteStatus> voteStatusesByMessageId = new TreeMap<>();
 
     public VotingRecord() {
     }
@@ -68,9 +70,9 @@ class VotingRecord {
         return sb.toString();
     }
 
-    private <T> Map<String, T> deserialize(String s, Function<String, T> constructor) {
+    private <T> SortedMap<String, T> deserialize(String s, Function<String, T> constructor) {
         String[] terms = s.split(";");
-        HashMap<String, T> result = new HashMap<>();
+        SortedMap<String, T> result = new TreeMap<>();
         for(int i = 0; i < terms.length-1; i+=2) {
             result.put(terms[i], constructor.apply(terms[i+1]));            
         }
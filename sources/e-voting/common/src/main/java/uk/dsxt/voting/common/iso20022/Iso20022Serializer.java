@@ -201,9 +201,13 @@ public class Iso20022Serializer extends SimpleSerializer {
         MeetingReference4 mtgRef = new MeetingReference4();
         mtgRef.setMtgId(voteResult.getVotingId());
 
+        return MessageBuilder.buildMessage(marshalInstructions(mtgRef, Collections.singletonList(instruction)), super.serialize(voting));
+    }
+
+    private String marshalInstructions(MeetingReference4 mtgRef, List<Instruction2> instructions) throws InternalLogicException {
         MeetingInstructionV04 mtgInstr = new MeetingInstructionV04();
         mtgInstr.setMtgRef(mtgRef);
-        mtgInstr.getInstr().add(instruction);
+        mtgInstr.getInstr().addAll(instructions);
 
         DocumentMeetingInstruction document = new DocumentMeetingInstruction();
         document.setMtgInstr(mtgInstr);
@@ -211,17 +215,61 @@ public class Iso20022Serializer extends SimpleSerializer {
         MeetingInstruction mi = new MeetingInstruction();
         mi.setDocument(document);
         //convert JAXB object to string
-        String voteResultString;
         try {
             Marshaller m = miContext.createMarshaller();
             m.setProperty(Marshaller.JAXB_FORMATTED_OUTPUT, Boolean.TRUE);
             ByteArrayOutputStream stream = new ByteArrayOutputStream();
             m.marshal(mi, stream);
-            voteResultString = stream.toString();
+            return stream.toString();
         } catch (JAXBException e) {
             throw new InternalLogicException(String.format("unable to serialize. Reason: %s", e.getMessage()));
         }
-        return MessageBuilder.buildMessage(voteResultString, super.serialize(voting));
+    }
+
+    private MeetingInstruction unmarshalInstruction(String xml) throws InternalLogicException {
+        try {
+            Unmarshaller unmarshaller = miContext.createUnmarshaller();
+            StringReader reader = new StringReader(xml);
+            return (MeetingInstruction) JAXBIntrospector.getValue(unmarshaller.unmarshal(reader));
+        } catch (JAXBException e) {
+            throw new InternalLogicException(String.format("Couldn't deserialize message %s. Reason: %s", xml, e.getMessage()));
+        }
+    }
+
+    @Override
+    public String aggregateVoteResults(List<String> serializedVoteResults) throws InternalLogicException {
+        if (serializedVoteResults.isEmpty())
+            throw new InternalLogicException("Nothing to aggregate");
+        MeetingReference4 mtgRef = null;
+        String serializedVoting = null;
+        List<Instruction2> instructions = new ArrayList<>();
+        for (String serializedVoteResult : serializedVoteResults) {
+            String[] messages = MessageBuilder.splitMessage(serializedVoteResult);
+            if (messages.length != 2)
+                throw new InternalLogicException("Wrong message string");
+            MeetingInstructionV04 mtgInstr = unmarshalInstruction(messages[0]).getDocument().getMtgInstr();
+            if (mtgRef == null) {
+                mtgRef = mtgInstr.getMtgRef();
+                serializedVoting = messages[1];
+            } else if (!mtgRef.getMtgId().equals(mtgInstr.getMtgRef().getMtgId()) || !serializedVoting.equals(messages[1])) {
+                throw new InternalLogicException(String.format("Can not aggregate instructions of votings %s and %s", mtgRef.getMtgId(), mtgInstr.getMtgRef().getMtgId()));
+            }
+            instructions.addAll(mtgInstr.getInstr());
+        }
+        return MessageBuilder.buildMessage(marshalInstructions(mtgRef, instructions), serializedVoting);
+    }
+
+    @Override
+    public List<String> splitVoteResults(String message) throws InternalLogicException {
+        String[] messages = MessageBuilder.splitMessage(message);
+        if (messages.length != 2)
+            throw new InternalLogicException("Wrong message string");
+        MeetingInstructionV04 mtgInstr = unmarshalInstruction(messages[0]).getDocument().getMtgInstr();
+        List<String> serializedVoteResults = new ArrayList<>();
+        for (Instruction2 instruction : mtgInstr.getInstr()) {
+            serializedVoteResults.add(MessageBuilder.buildMessage(marshalInstructions(mtgInstr.getMtgRef(), Collections.singletonList(instruction)), messages[1]));
+        }
+        return serializedVoteResults;
     }
 
     @Override
@@ -230,17 +278,11 @@ public class Iso20022Serializer extends SimpleSerializer {
         if (messages.length != 2)
             throw new InternalLogicException("Wrong message string");
 
-        MeetingInstruction mi;
-        try {
-            Unmarshaller unmarshaller = miContext.createUnmarshaller();
-            StringReader reader = new StringReader(messages[0]);
-            mi = (MeetingInstruction) JAXBIntrospector.getValue(unmarshaller.unmarshal(reader));
-        } catch (JAXBException e) {
-            throw new InternalLogicException(String.format("Couldn't deserialize message %s. Reason: %s", messages[0], e.getMessage()));
-        }
+        MeetingInstruction mi = unmarshalInstruction(messages[0]);
         
         String votingId = mi.getDocument().getMtgInstr().getMtgRef().getMtgId();
-        Instruction2 instruction = mi.getDocument().getMtgInstr().getInstr().get(0); // for now we suggest that there is only one instruction (without aggregation from ND)
+        // aggregated instructions from nominal holders are split by splitVoteResults before deserialization
+        Instruction2 instruction = mi.getDocument().getMtgInstr().getInstr().get(0);
         String holderId = instruction.getAcctDtls().getAcctId();
         BigDecimal packetSize = instruction.getAcctDtls().getInstdBal().get(0).getBal().getUnit();
         VoteResult voteResult = new VoteResult(votingId, holderId, packetSize);
@@ -0,0 +1,334 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common.ledger;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Ordered message log shared by the nodes of a local run instead of the blockchain.
+ * Messages appended by any connected node get global sequence numbers and are written to an append-only file as records
+ * [sequence][length][crc][body]. Every commitInterval milliseconds the file is flushed to disk and all messages appended
+ * so far become committed. Readers request messages starting from their own cursor, so they can resume after reconnect.
+ * Protocol over the socket: APPEND [length][body] -> [sequence], READ [from][maxCount][includeUncommitted] ->
+ * [committedSequence][count] and count records [sequence][length][body]. A connection sending a body longer than
+ * maxMessageSize or an invalid read request is closed.
+ */
+@Log4j2
+public class LedgerServer implements AutoCloseable {
+
+    static final byte APPEND = 'A';
+
+    static final byte READ = 'R';
+
+    static final String LOG_FILE_NAME = "ledger.log";
+
+    public static final int DEFAULT_MAX_MESSAGE_SIZE = 1024 * 1024;
+
+    private static final int HEADER_SIZE = 16;
+
+    private static final int MAX_READ_BYTES = 4 * 1024 * 1024;
+
+    private final FileChannel channel;
+
+    private final ServerSocket serverSocket;
+
+    private final ExecutorService connectionsExecutor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "ledger-connection");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ScheduledExecutorService commitExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "ledger-commit");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final int maxMessageSize;
+
+    private final Object appendLock = new Object();
+
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+
+    private long[] offsets = new long[1024];
+
+    private volatile long lastSequence;
+
+    private volatile long committedSequence;
+
+    private long position;
+
+    private volatile boolean isRunning = true;
+
+    public LedgerServer(File directory, int port, long commitInterval) throws IOException {
+        this(directory, port, commitInterval, DEFAULT_MAX_MESSAGE_SIZE);
+    }
+
+    /**
+     * @param maxMessageSize max length in bytes of appended message body
+     */
+    public LedgerServer(File directory, int port, long commitInterval, int maxMessageSize) throws IOException {
+        this.maxMessageSize = maxMessageSize;
+        if (!directory.exists() && !directory.mkdirs())
+            throw new IOException(String.format("Can't create ledger directory %s", directory.getAbsolutePath()));
+        channel = FileChannel.open(new File(directory, LOG_FILE_NAME).toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        recover();
+        committedSequence = lastSequence;
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        commitExecutor.scheduleWithFixedDelay(this::commit, commitInterval, commitInterval, TimeUnit.MILLISECONDS);
+        Thread acceptor = new Thread(this::acceptConnections, "ledger-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("LedgerServer. started on port {} with {} messages", getPort(), lastSequence);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    public long getCommittedSequence() {
+        return committedSequence;
+    }
+
+    @Override
+    public void close() {
+        isRunning = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            log.warn("close. Can't close server socket: {}", e.getMessage());
+        }
+        for (Socket socket : connections) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.debug("close. {}", e.getMessage());
+            }
+        }
+        connectionsExecutor.shutdownNow();
+        commitExecutor.shutdownNow();
+        try {
+            commitExecutor.awaitTermination(1, TimeUnit.SECONDS);
+            connectionsExecutor.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (appendLock) {
+            commit();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("close. Can't close ledger file: {}", e.getMessage());
+            }
+        }
+        log.info("LedgerServer. stopped, lastSequence={}", lastSequence);
+    }
+
+    private void recover() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        long size = channel.size();
+        while (position + HEADER_SIZE <= size) {
+            header.clear();
+            readFully(header, position);
+            header.flip();
+            long sequence = header.getLong();
+            int length = header.getInt();
+            int crc = header.getInt();
+            if (sequence != lastSequence + 1 || length < 0 || position + HEADER_SIZE + length > size)
+                break;
+            ByteBuffer body = ByteBuffer.allocate(length);
+            readFully(body, position + HEADER_SIZE);
+            if (crc(body.array()) != crc)
+                break;
+            addOffset(sequence, position);
+            lastSequence = sequence;
+            position += HEADER_SIZE + length;
+        }
+        if (position < size) {
+            log.warn("recover. Torn tail of {} bytes after message {} is truncated", size - position, lastSequence);
+            channel.truncate(position);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long from) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, from + buffer.position()) < 0)
+                throw new EOFException();
+        }
+    }
+
+    private static int crc(byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    private void addOffset(long sequence, long offset) {
+        int index = (int) (sequence - 1);
+        if (index >= offsets.length)
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        offsets[index] = offset;
+    }
+
+    long append(byte[] body) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(HEADER_SIZE + body.length);
+        synchronized (appendLock) {
+            long sequence = lastSequence + 1;
+            record.putLong(sequence).putInt(body.length).putInt(crc(body)).put(body).flip();
+            while (record.hasRemaining()) {
+                channel.write(record, position + record.position());
+            }
+            addOffset(sequence, position);
+            position += record.limit();
+            lastSequence = sequence;
+            return sequence;
+        }
+    }
+
+    private void commit() {
+        long sequence = lastSequence;
+        if (sequence == committedSequence)
+            return;
+        try {
+            channel.force(false);
+            committedSequence = sequence;
+        } catch (IOException e) {
+            log.error("commit. Can't flush ledger: {}", e.getMessage());
+        }
+    }
+
+    private void acceptConnections() {
+        while (isRunning) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                connectionsExecutor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (isRunning)
+                    log.error("acceptConnections. Accept failed: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()))) {
+            while (isRunning) {
+                int command = in.read();
+                if (command < 0)
+                    return;
+                if (command == APPEND) {
+                    int length = in.readInt();
+                    if (length < 0 || length > maxMessageSize) {
+                        log.error("serve. Invalid message length {} from {}, maxMessageSize={}", length, s.getRemoteSocketAddress(), maxMessageSize);
+                        return;
+                    }
+                    byte[] body = new byte[length];
+                    in.readFully(body);
+                    out.writeLong(append(body));
+                } else if (command == READ) {
+                    long from = in.readLong();
+                    int maxCount = in.readInt();
+                    boolean includeUncommitted = in.readBoolean();
+                    if (maxCount <= 0) {
+                        log.error("serve. Invalid read count {} from {}", maxCount, s.getRemoteSocketAddress());
+                        return;
+                    }
+                    writeMessages(out, from, maxCount, includeUncommitted);
+                } else {
+                    log.error("serve. Unknown command {} from {}", command, s.getRemoteSocketAddress());
+                    return;
+                }
+                out.flush();
+            }
+        } catch (EOFException | SocketException e) {
+            log.debug("serve. Connection closed: {}", e.getMessage());
+        } catch (IOException e) {
+            if (isRunning)
+                log.error("serve. Connection failed: {}", e.getMessage());
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    private void writeMessages(DataOutputStream out, long from, int maxCount, boolean includeUncommitted) throws IOException {
+        long committed = committedSequence;
+        long last = includeUncommitted ? lastSequence : committed;
+        long first = Math.max(1, from);
+        long to = Math.min(last, first + maxCount - 1);
+        long start, end;
+        synchronized (appendLock) {
+            if (first > to) {
+                out.writeLong(committed);
+                out.writeInt(0);
+                return;
+            }
+            start = offsets[(int) (first - 1)];
+            end = to == lastSequence ? position : offsets[(int) to];
+        }
+        if (end - start > MAX_READ_BYTES) {
+            synchronized (appendLock) {
+                while (to > first && offsets[(int) (to - 1)] - start > MAX_READ_BYTES) {
+                    to--;
+                }
+                end = to == lastSequence ? position : offsets[(int) to];
+            }
+        }
+        ByteBuffer records = ByteBuffer.allocate((int) (end - start));
+        readFully(records, start);
+        records.flip();
+        out.writeLong(committed);
+        out.writeInt((int) (to - first + 1));
+        while (records.hasRemaining()) {
+            long sequence = records.getLong();
+            int length = records.getInt();
+            records.getInt();
+            out.writeLong(sequence);
+            out.writeInt(length);
+            out.write(records.array(), records.position(), length);
+            records.position(records.position() + length);
+        }
+    }
+}
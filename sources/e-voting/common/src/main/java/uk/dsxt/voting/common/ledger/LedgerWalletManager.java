@@ -0,0 +1,252 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common.ledger;
+
+import lombok.extern.log4j.Log4j2;
+import uk.dsxt.voting.common.messaging.Message;
+import uk.dsxt.voting.common.networking.WalletManager;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Wallet manager over the {@link LedgerServer} log, for runs without NXT.
+ * Node with ledger.server=true hosts the log, other nodes connect to it at ledger.port. Each node reads messages from
+ * its own cursor, so every message is returned once. Only committed messages are read unless
+ * ledger.useUncommittedMessages is set, then messages are returned as soon as they are appended and are not returned
+ * again when they become committed, like unconfirmed NXT transactions.
+ * The cursor is stored to ledger.cursor_file (formatted with the wallet name) when the next poll begins, that is after messages of
+ * the previous poll are handed over, so a restarted node continues from the last handed over message instead of the log start.
+ * Empty ledger.cursor_file keeps the cursor in memory only.
+ */
+@Log4j2
+public class LedgerWalletManager implements WalletManager {
+
+    private final String name;
+    private final String host;
+    private final int port;
+    private final boolean isServer;
+    private final File directory;
+    private final long commitInterval;
+    private final int readBatchSize;
+    private final int connectionTimeout;
+    private final int maxMessageSize;
+    private final boolean useUncommittedMessages;
+    private final File cursorFile;
+
+    private final Connection writer = new Connection();
+    private final Connection reader = new Connection();
+
+    private LedgerServer server;
+    private volatile boolean isRunning;
+
+    private long cursor = 1;
+    private long savedCursor = 1;
+
+    private class Connection {
+        private Socket socket;
+        private DataInputStream in;
+        private DataOutputStream out;
+
+        DataOutputStream output() throws IOException {
+            if (socket == null) {
+                Socket s = new Socket();
+                s.setTcpNoDelay(true);
+                s.connect(new InetSocketAddress(host == null || host.isEmpty() ? InetAddress.getLoopbackAddress() : InetAddress.getByName(host), port), connectionTimeout);
+                socket = s;
+                in = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+                out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            }
+            return out;
+        }
+
+        DataInputStream input() {
+            return in;
+        }
+
+        void close() {
+            if (socket == null)
+                return;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.debug("close. {}", e.getMessage());
+            }
+            socket = null;
+        }
+    }
+
+    public LedgerWalletManager(Properties properties, String name) {
+        this.name = name;
+        host = properties.getProperty("ledger.host", "localhost");
+        port = Integer.parseInt(properties.getProperty("ledger.port", "9800"));
+        isServer = Boolean.valueOf(properties.getProperty("ledger.server", Boolean.FALSE.toString()));
+        directory = new File(properties.getProperty("ledger.directory", "ledger"));
+        commitInterval = Integer.parseInt(properties.getProperty("ledger.commit_interval", "1000"));
+        readBatchSize = Integer.parseInt(properties.getProperty("ledger.read_batch_size", "10000"));
+        connectionTimeout = Integer.parseInt(properties.getProperty("http.connection.timeout", "15000"));
+        maxMessageSize = Integer.parseInt(properties.getProperty("ledger.max_message_size", Integer.toString(LedgerServer.DEFAULT_MAX_MESSAGE_SIZE)));
+        useUncommittedMessages = Boolean.valueOf(properties.getProperty("ledger.useUncommittedMessages", Boolean.FALSE.toString()));
+        String cursorFilePath = properties.getProperty("ledger.cursor_file", "");
+        cursorFile = cursorFilePath.isEmpty() ? null : new File(String.format(cursorFilePath, name));
+    }
+
+    @Override
+    public void start() {
+        if (isServer) {
+            try {
+                server = new LedgerServer(directory, port, commitInterval, maxMessageSize);
+            } catch (IOException e) {
+                String errorMessage = String.format("Couldn't start ledger server. Error: %s", e.getMessage());
+                log.error(errorMessage, e);
+                throw new RuntimeException(errorMessage);
+            }
+        }
+        synchronized (reader) {
+            cursor = savedCursor = loadCursor();
+        }
+        isRunning = true;
+        log.info("connector started. name={} port={} server={} cursor={}", name, port, isServer, cursor);
+    }
+
+    @Override
+    public void stop() {
+        isRunning = false;
+        synchronized (writer) {
+            writer.close();
+        }
+        synchronized (reader) {
+            reader.close();
+        }
+        if (server != null)
+            server.close();
+        log.info("connector stopped");
+    }
+
+    @Override
+    public String sendMessage(byte[] body) {
+        if (!isRunning)
+            return null;
+        if (body.length > maxMessageSize) {
+            log.error("sendMessage. Wallet {} can't append message of {} bytes, maxMessageSize={}", name, body.length, maxMessageSize);
+            return null;
+        }
+        synchronized (writer) {
+            try {
+                DataOutputStream out = writer.output();
+                out.write(LedgerServer.APPEND);
+                out.writeInt(body.length);
+                out.write(body);
+                out.flush();
+                return Long.toString(writer.input().readLong());
+            } catch (IOException e) {
+                log.error("sendMessage. Wallet {} can't append message: {}", name, e.getMessage());
+                writer.close();
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public List<Message> getNewMessages(long timestamp) {
+        if (!isRunning)
+            return null;
+        synchronized (reader) {
+            saveCursor();
+            List<Message> result = new ArrayList<>();
+            // reads are repeatable, so a connection broken since the last poll (e.g. by ledger restart) is reopened once
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    while (read(result) == readBatchSize) {
+                    }
+                    return result;
+                } catch (IOException e) {
+                    reader.close();
+                    if (attempt > 0 || !result.isEmpty()) {
+                        log.error("getNewMessages. Wallet {} can't read messages from {}: {}", name, cursor, e.getMessage());
+                        return result.isEmpty() ? null : result;
+                    }
+                }
+            }
+        }
+    }
+
+    private long loadCursor() {
+        if (cursorFile == null || !cursorFile.exists())
+            return 1;
+        try {
+            return Math.max(1, Long.parseLong(new String(Files.readAllBytes(cursorFile.toPath()), StandardCharsets.UTF_8).trim()));
+        } catch (IOException | NumberFormatException e) {
+            log.warn("loadCursor. Cursor can not be read, messages are read from the log start. file={} error={}", cursorFile, e.getMessage());
+            return 1;
+        }
+    }
+
+    private void saveCursor() {
+        if (cursorFile == null || cursor == savedCursor)
+            return;
+        File tmp = null;
+        try {
+            File directory = cursorFile.getAbsoluteFile().getParentFile();
+            directory.mkdirs();
+            tmp = File.createTempFile(cursorFile.getName(), ".tmp", directory);
+            Files.write(tmp.toPath(), Long.toString(cursor).getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp.toPath(), cursorFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            savedCursor = cursor;
+        } catch (IOException e) {
+            if (tmp != null)
+                tmp.delete();
+            log.warn("saveCursor. Cursor can not be stored. file={} cursor={} error={}", cursorFile, cursor, e.getMessage());
+        }
+    }
+
+    private int read(List<Message> result) throws IOException {
+        DataOutputStream out = reader.output();
+        out.write(LedgerServer.READ);
+        out.writeLong(cursor);
+        out.writeInt(readBatchSize);
+        out.writeBoolean(useUncommittedMessages);
+        out.flush();
+        DataInputStream in = reader.input();
+        long committed = in.readLong();
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            long sequence = in.readLong();
+            int length = in.readInt();
+            if (length < 0 || length > maxMessageSize)
+                throw new IOException(String.format("Invalid length %d of message %d", length, sequence));
+            byte[] body = new byte[length];
+            in.readFully(body);
+            result.add(new Message(Long.toString(sequence), body, sequence <= committed));
+            cursor = sequence + 1;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,122 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common.messaging;
+
+import uk.dsxt.voting.common.utils.InternalLogicException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+public class MessageCompressor {
+
+    /**
+     * Identifier of the compression format written to the message header.
+     * Must be changed together with DICTIONARY, otherwise old messages can not be inflated.
+     */
+    public static final String DEFLATE_V1 = "DEFLATE1";
+
+    private static final int MAX_DECOMPRESSED_LENGTH = 16 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 4096;
+
+    // fragments of MeetingNotification/MeetingInstruction documents and of serialized votings,
+    // the most frequent ones are placed at the end as deflate prefers the closest matches
+    private static final byte[] DICTIONARY = String.join("",
+        "{\"id\":\"\",\"name\":\"GMET_\",\"beginTimestamp\":,\"endTimestamp\":,\"questions\":[",
+        "],\"security\":\"\"}",
+        "<MeetingNotification><Document><MtgNtfctn><Mtg><MtgId></MtgId><Tp>GMET</Tp><AnncmntDt></AnncmntDt>",
+        "<AttndncReqrd>false</AttndncReqrd></Mtg><Scty><Id><Id><ISIN></ISIN></Id></Id></Scty>",
+        "<Vote><PrtlVoteAllwd>false</PrtlVoteAllwd><SpltVoteAllwd>false</SpltVoteAllwd><VoteDdln><Dt></Dt></VoteDdln>",
+        "<BnfclOwnrDsclsr>false</BnfclOwnrDsclsr></Vote></MtgNtfctn></Document></MeetingNotification>",
+        "<Rsltn><IssrLabl></IssrLabl><Desc></Desc><Titl>candidate</Titl><Titl>resolution</Titl><ForInfOnly>false</ForInfOnly>",
+        "<SubmittdBySctyHldr>false</SubmittdBySctyHldr><VoteInstrTp>CFOR</VoteInstrTp><VoteInstrTp>CAGS</VoteInstrTp>",
+        "<VoteInstrTp>ABST</VoteInstrTp></Rsltn>",
+        "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n<MeetingInstruction>\n    <Document>\n        <MtgInstr>\n",
+        "            <MtgRef>\n                <MtgId></MtgId>\n            </MtgRef>\n            <Instr>\n",
+        "                <VoteExctnConf>false</VoteExctnConf>\n                <AcctDtls>\n                    <AcctId></AcctId>\n",
+        "                    <InstdBal>\n                        <Bal>\n                            <Unit></Unit>\n                        </Bal>\n",
+        "                    </InstdBal>\n                </AcctDtls>\n                <VoteDtls>\n                    <VoteInstrForAgndRsltn>\n",
+        "                    </VoteInstrForAgndRsltn>\n                </VoteDtls>\n            </Instr>\n        </MtgInstr>\n",
+        "    </Document>\n</MeetingInstruction>\n",
+        "\"canSelectMultiple\":false,\"multiplicator\":1},{\"id\":\"\",\"question\":\"\",\"answers\":[{\"id\":\"1\",\"name\":\"\"},",
+        "{\"id\":\"2\",\"name\":\"\"},{\"id\":\"3\",\"name\":\"\"}],",
+        "                        <VoteInstr>\n                            <IssrLabl></IssrLabl>\n",
+        "                            <For></For>\n                            <Agnst></Agnst>\n                            <Abstn></Abstn>\n",
+        "                        </VoteInstr>\n"
+    ).getBytes(StandardCharsets.UTF_8);
+
+    public static String compress(String text) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setDictionary(DICTIONARY);
+            deflater.setInput(text.getBytes(StandardCharsets.UTF_8));
+            deflater.finish();
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                stream.write(buffer, 0, length);
+            }
+            return Base64.getEncoder().withoutPadding().encodeToString(stream.toByteArray());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public static String decompress(String compressed) throws InternalLogicException {
+        byte[] data;
+        try {
+            data = Base64.getDecoder().decode(compressed);
+        } catch (IllegalArgumentException e) {
+            throw new InternalLogicException(String.format("Compressed message is not in Base64: %s", e.getMessage()));
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!inflater.finished()) {
+                int length = inflater.inflate(buffer);
+                if (length == 0 && !inflater.finished()) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(DICTIONARY);
+                        continue;
+                    }
+                    if (inflater.needsInput())
+                        throw new InternalLogicException("Compressed message is truncated");
+                }
+                if (stream.size() + length > MAX_DECOMPRESSED_LENGTH)
+                    throw new InternalLogicException(String.format("Decompressed message exceeds %d bytes", MAX_DECOMPRESSED_LENGTH));
+                stream.write(buffer, 0, length);
+            }
+            return new String(stream.toByteArray(), StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            throw new InternalLogicException(String.format("Can not decompress message: %s", e.getMessage()));
+        } finally {
+            inflater.end();
+        }
+    }
+}
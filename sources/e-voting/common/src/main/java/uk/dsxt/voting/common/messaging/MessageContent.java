@@ -94,7 +94,7 @@ public class MessageContent {
         fields.put(FIELD_TYPE, type);
         fields.put(FIELD_AUTHOR, authorId);
         fields.put(FIELD_TIMESTAMP, Long.toString(System.currentTimeMillis()));
-        fields.put(FIELD_UID, UUID.randomUUID().toString());
+        fields.putIfAbsent(FIELD_UID, UUID.randomUUID().toString());
         String contentString = buildContentWithoutSign(fields);
         String signature = cryptoHelper.createSignature(contentString, privateKey);
         contentString += String.format(";%s=%s", FIELD_SIGN, signature);
@@ -26,6 +26,8 @@ import uk.dsxt.voting.common.domain.dataModel.VoteStatus;
 import uk.dsxt.voting.common.domain.dataModel.Voting;
 import uk.dsxt.voting.common.utils.InternalLogicException;
 
+import java.util.List;
+
 public interface MessagesSerializer {
 
     String serialize(Voting voting);
@@ -36,6 +38,10 @@ public interface MessagesSerializer {
 
     VoteResult deserializeVoteResult(String message) throws InternalLogicException;
 
+    String aggregateVoteResults(List<String> serializedVoteResults) throws InternalLogicException;
+
+    List<String> splitVoteResults(String message) throws InternalLogicException;
+
     String serialize(VoteStatus voteStatus);
 
     VoteStatus deserializeVoteStatus(String message) throws InternalLogicException;
@@ -0,0 +1,124 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common.messaging;
+
+import uk.dsxt.voting.common.domain.dataModel.VoteResult;
+import uk.dsxt.voting.common.domain.dataModel.VoteStatus;
+import uk.dsxt.voting.common.domain.dataModel.Voting;
+import uk.dsxt.voting.common.metrics.LatencyHistogram;
+import uk.dsxt.voting.common.metrics.MetricsRegistry;
+import uk.dsxt.voting.common.utils.InternalLogicException;
+
+import java.util.List;
+
+/**
+ * Records the time of every operation of the wrapped serializer in serialization_seconds{op=...} histograms.
+ */
+public class MeteredMessagesSerializer implements MessagesSerializer {
+
+    @FunctionalInterface
+    private interface Operation<T> {
+        T run() throws InternalLogicException;
+    }
+
+    private final MessagesSerializer serializer;
+
+    private final LatencyHistogram serializeVotingTime;
+    private final LatencyHistogram deserializeVotingTime;
+    private final LatencyHistogram serializeVoteTime;
+    private final LatencyHistogram deserializeVoteTime;
+    private final LatencyHistogram aggregateVotesTime;
+    private final LatencyHistogram splitVotesTime;
+    private final LatencyHistogram serializeStatusTime;
+    private final LatencyHistogram deserializeStatusTime;
+
+    public MeteredMessagesSerializer(MessagesSerializer serializer, MetricsRegistry registry) {
+        this.serializer = serializer;
+        serializeVotingTime = registry.histogram("serialization_seconds", "op", "serialize_voting");
+        deserializeVotingTime = registry.histogram("serialization_seconds", "op", "deserialize_voting");
+        serializeVoteTime = registry.histogram("serialization_seconds", "op", "serialize_vote");
+        deserializeVoteTime = registry.histogram("serialization_seconds", "op", "deserialize_vote");
+        aggregateVotesTime = registry.histogram("serialization_seconds", "op", "aggregate_votes");
+        splitVotesTime = registry.histogram("serialization_seconds", "op", "split_votes");
+        serializeStatusTime = registry.histogram("serialization_seconds", "op", "serialize_status");
+        deserializeStatusTime = registry.histogram("serialization_seconds", "op", "deserialize_status");
+    }
+
+    private static <T> T measure(LatencyHistogram histogram, Operation<T> operation) throws InternalLogicException {
+        long start = System.nanoTime();
+        try {
+            return operation.run();
+        } finally {
+            histogram.recordSince(start);
+        }
+    }
+
+    @Override
+    public String serialize(Voting voting) {
+        long start = System.nanoTime();
+        try {
+            return serializer.serialize(voting);
+        } finally {
+            serializeVotingTime.recordSince(start);
+        }
+    }
+
+    @Override
+    public Voting deserializeVoting(String message) throws InternalLogicException {
+        return measure(deserializeVotingTime, () -> serializer.deserializeVoting(message));
+    }
+
+    @Override
+    public String serialize(VoteResult voteResult, Voting voting) throws InternalLogicException {
+        return measure(serializeVoteTime, () -> serializer.serialize(voteResult, voting));
+    }
+
+    @Override
+    public VoteResult deserializeVoteResult(String message) throws InternalLogicException {
+        return measure(deserializeVoteTime, () -> serializer.deserializeVoteResult(message));
+    }
+
+    @Override
+    public String aggregateVoteResults(List<String> serializedVoteResults) throws InternalLogicException {
+        return measure(aggregateVotesTime, () -> serializer.aggregateVoteResults(serializedVoteResults));
+    }
+
+    @Override
+    public List<String> splitVoteResults(String message) throws InternalLogicException {
+        return measure(splitVotesTime, () -> serializer.splitVoteResults(message));
+    }
+
+    @Override
+    public String serialize(VoteStatus voteStatus) {
+        long start = System.nanoTime();
+        try {
+            return serializer.serialize(voteStatus);
+        } finally {
+            serializeStatusTime.recordSince(start);
+        }
+    }
+
+    @Override
+    public VoteStatus deserializeVoteStatus(String message) throws InternalLogicException {
+        return measure(deserializeStatusTime, () -> serializer.deserializeVoteStatus(message));
+    }
+}
@@ -26,8 +26,11 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.log4j.Log4j2;
 import uk.dsxt.voting.common.domain.dataModel.*;
 import uk.dsxt.voting.common.utils.InternalLogicException;
+import uk.dsxt.voting.common.utils.MessageBuilder;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 
 @Log4j2
 public class SimpleSerializer implements MessagesSerializer {
@@ -62,6 +65,16 @@ public class SimpleSerializer implements MessagesSerializer {
     public VoteResult deserializeVoteResult(String message) throws InternalLogicException {
         return new VoteResult(message);
     }
+
+    @Override
+    public String aggregateVoteResults(List<String> serializedVoteResults) throws InternalLogicException {
+        return MessageBuilder.buildMessage(serializedVoteResults.toArray(new String[serializedVoteResults.size()]));
+    }
+
+    @Override
+    public List<String> splitVoteResults(String message) throws InternalLogicException {
+        return Arrays.asList(MessageBuilder.splitMessage(message));
+    }
     
     @Override
     public String serialize(VoteStatus voteStatus) {
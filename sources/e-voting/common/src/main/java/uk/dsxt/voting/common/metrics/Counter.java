@@ -0,0 +1,45 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Monotonic counter registered in {@link MetricsRegistry}. Keeps the {@link AtomicLong} methods,
+ * so it can replace a plain counter field without changing the code around it.
+ */
+public class Counter {
+
+    private final AtomicLong value = new AtomicLong();
+
+    public long incrementAndGet() {
+        return value.incrementAndGet();
+    }
+
+    public long addAndGet(long delta) {
+        return value.addAndGet(delta);
+    }
+
+    public long get() {
+        return value.get();
+    }
+}
@@ -0,0 +1,154 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Named counters, gauges and latency histograms of the process, rendered in the Prometheus text format by
+ * {@link MetricsResource}. Metrics are created on first use and live as long as the registry; labels are
+ * name-value pairs, e.g. {@code counter("votes_accepted_total", "node", participantId)}.
+ * Histograms are recorded in nanoseconds and rendered in seconds.
+ */
+public class MetricsRegistry {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private static final MetricsRegistry defaultRegistry = new MetricsRegistry();
+
+    private static class Entry {
+        final String name;
+        final String labels;
+        final Object metric;
+
+        Entry(String name, String labels, Object metric) {
+            this.name = name;
+            this.labels = labels;
+            this.metric = metric;
+        }
+    }
+
+    private final Map<String, Entry> entriesByKey = new ConcurrentSkipListMap<>();
+
+    static {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        defaultRegistry.gauge("jvm_heap_used_bytes", () -> memory.getHeapMemoryUsage().getUsed());
+        defaultRegistry.gauge("jvm_heap_committed_bytes", () -> memory.getHeapMemoryUsage().getCommitted());
+        defaultRegistry.gauge("jvm_threads", () -> ManagementFactory.getThreadMXBean().getThreadCount());
+        defaultRegistry.gauge("jvm_gc_collections", () -> ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(gc -> gc.getCollectionCount()).sum());
+        defaultRegistry.gauge("jvm_gc_time_ms", () -> ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(gc -> gc.getCollectionTime()).sum());
+    }
+
+    public static MetricsRegistry getDefault() {
+        return defaultRegistry;
+    }
+
+    private static String formatLabels(String[] labels) {
+        if (labels.length % 2 != 0)
+            throw new IllegalArgumentException("labels should be name-value pairs");
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0)
+                builder.append(',');
+            builder.append(labels[i]).append("=\"").append(labels[i + 1] == null ? "" : labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+        }
+        return builder.toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T getOrAdd(String name, String[] labels, Class<T> type, Supplier<T> factory) {
+        String formattedLabels = formatLabels(labels);
+        Entry entry = entriesByKey.computeIfAbsent(name + '{' + formattedLabels + '}', k -> new Entry(name, formattedLabels, factory.get()));
+        if (!type.isInstance(entry.metric))
+            throw new IllegalArgumentException(String.format("metric %s is already registered as %s", name, entry.metric.getClass().getSimpleName()));
+        return (T) entry.metric;
+    }
+
+    public Counter counter(String name, String... labels) {
+        return getOrAdd(name, labels, Counter.class, Counter::new);
+    }
+
+    public LatencyHistogram histogram(String name, String... labels) {
+        return getOrAdd(name, labels, LatencyHistogram.class, LatencyHistogram::new);
+    }
+
+    /**
+     * Registers a value read on every scrape, e.g. a queue depth. A gauge with the same name and labels is replaced.
+     */
+    public void gauge(String name, LongSupplier value, String... labels) {
+        String formattedLabels = formatLabels(labels);
+        entriesByKey.put(name + '{' + formattedLabels + '}', new Entry(name, formattedLabels, value));
+    }
+
+    public void remove(String name, String... labels) {
+        entriesByKey.remove(name + '{' + formatLabels(labels) + '}');
+    }
+
+    private static String series(String name, String labels, String extraLabel) {
+        if (labels.isEmpty() && extraLabel == null)
+            return name;
+        if (labels.isEmpty())
+            return name + '{' + extraLabel + '}';
+        return name + '{' + labels + (extraLabel == null ? "" : "," + extraLabel) + '}';
+    }
+
+    public String toText() {
+        StringBuilder builder = new StringBuilder();
+        String lastName = null;
+        for (Entry entry : entriesByKey.values()) {
+            Object metric = entry.metric;
+            long gaugeValue = 0;
+            if (metric instanceof LongSupplier) {
+                try {
+                    gaugeValue = ((LongSupplier) metric).getAsLong();
+                } catch (RuntimeException e) {
+                    continue;
+                }
+            }
+            if (!entry.name.equals(lastName)) {
+                String type = metric instanceof Counter ? "counter" : metric instanceof LatencyHistogram ? "summary" : "gauge";
+                builder.append("# TYPE ").append(entry.name).append(' ').append(type).append('\n');
+                lastName = entry.name;
+            }
+            if (metric instanceof Counter) {
+                builder.append(series(entry.name, entry.labels, null)).append(' ').append(((Counter) metric).get()).append('\n');
+            } else if (metric instanceof LatencyHistogram) {
+                LatencyHistogram histogram = (LatencyHistogram) metric;
+                for (double quantile : QUANTILES) {
+                    builder.append(series(entry.name, entry.labels, "quantile=\"" + quantile + '"')).append(' ')
+                        .append(histogram.getPercentile(quantile) / 1e9).append('\n');
+                }
+                builder.append(series(entry.name + "_max", entry.labels, null)).append(' ').append(histogram.getMax() / 1e9).append('\n');
+                builder.append(series(entry.name + "_sum", entry.labels, null)).append(' ').append(histogram.getSum() / 1e9).append('\n');
+                builder.append(series(entry.name + "_count", entry.labels, null)).append(' ').append(histogram.getCount()).append('\n');
+            } else {
+                builder.append(series(entry.name, entry.labels, null)).append(' ').append(gaugeValue).append('\n');
+            }
+        }
+        return builder.toString();
+    }
+}
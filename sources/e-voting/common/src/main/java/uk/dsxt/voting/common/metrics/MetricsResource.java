@@ -0,0 +1,82 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common.metrics;
+
+import javax.inject.Singleton;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.ContainerResponseContext;
+import javax.ws.rs.container.ContainerResponseFilter;
+
+/**
+ * Text endpoints with all metrics of the process and the waterfall of traced votes, also times every matched request of the application it is registered in.
+ */
+@Singleton
+@Path("metrics")
+public class MetricsResource implements ContainerRequestFilter, ContainerResponseFilter {
+
+    private static final String START_PROPERTY = "metrics.start";
+
+    private final MetricsRegistry registry;
+
+    public MetricsResource() {
+        this(MetricsRegistry.getDefault());
+    }
+
+    public MetricsResource(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @GET
+    @Produces("text/plain; version=0.0.4")
+    public String getMetrics() {
+        return registry.toText();
+    }
+
+    @GET
+    @Path("traces")
+    @Produces("text/plain")
+    public String getTraces() {
+        return VoteTracer.getDefault().getReport();
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext) {
+        requestContext.setProperty(START_PROPERTY, System.nanoTime());
+    }
+
+    @Override
+    public void filter(ContainerRequestContext requestContext, ContainerResponseContext responseContext) {
+        Object start = requestContext.getProperty(START_PROPERTY);
+        if (start == null)
+            return;
+        String path = requestContext.getUriInfo().getPath();
+        if (path.startsWith("metrics"))
+            return;
+        registry.histogram("http_request_seconds", "path", path).recordSince((Long) start);
+        if (responseContext.getStatus() >= 500)
+            registry.counter("http_errors_total", "path", path).incrementAndGet();
+    }
+}
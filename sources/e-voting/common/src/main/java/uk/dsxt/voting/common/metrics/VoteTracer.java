@@ -0,0 +1,285 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common.metrics;
+
+import lombok.extern.log4j.Log4j2;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Traces the way of sampled votes through the nodes, keyed by the vote message UID returned by {@code NetworkMessagesSender.addVote}.
+ * A vote is sampled by the hash of its UID, so all processes of the network trace the same votes and their spans can be joined by UID.
+ * A trace ends with the vote status or after the ttl; its hops are logged as one span line and aggregated into
+ * per-hop latency histograms: time since the first hop seen by the process and time since the previous hop.
+ */
+@Log4j2
+public class VoteTracer {
+
+    public enum Hop {
+        /** the owner's vote is accepted by its holder node */
+        CLIENT_VOTE,
+        /** the vote message is queued for sending to the wallet */
+        MESSAGE_QUEUED,
+        /** the vote message is sent to the wallet */
+        MESSAGE_SENT,
+        /** the vote is accepted by the parent holder node */
+        HOLDER_ACCEPTED,
+        /** the vote is forwarded to the parent holder */
+        PARENT_FORWARDED,
+        /** the vote message is received from the wallet before it is committed */
+        MESSAGE_RECEIVED,
+        /** the vote message is committed to the ledger */
+        MESSAGE_COMMITTED,
+        /** the vote is received by the master node */
+        MASTER_ACCEPTED,
+        /** the vote is checked by the master node and its status is sent */
+        MASTER_HANDLED,
+        /** the vote status is received, ends the trace */
+        STATUS_RECEIVED
+    }
+
+    private static final long DEFAULT_TTL = TimeUnit.MINUTES.toNanos(10);
+
+    private static final int DEFAULT_MAX_TRACES = 10000;
+
+    private static final VoteTracer defaultTracer = new VoteTracer(MetricsRegistry.getDefault());
+
+    private final MetricsRegistry metrics;
+
+    private final long baseMillis = System.currentTimeMillis();
+
+    private final long baseNanos = System.nanoTime();
+
+    private volatile long sampleThreshold;
+
+    private volatile long ttl = DEFAULT_TTL;
+
+    private volatile int maxTraces = DEFAULT_MAX_TRACES;
+
+    private final ConcurrentMap<String, Trace> tracesById = new ConcurrentHashMap<>();
+
+    private final Queue<Trace> tracesOrder = new ConcurrentLinkedQueue<>();
+
+    private final Map<String, HopStats> statsByHop = new ConcurrentHashMap<>();
+
+    private final AtomicLong completedTraces = new AtomicLong();
+
+    private final AtomicLong expiredTraces = new AtomicLong();
+
+    private static class Event {
+        final Hop hop;
+        final String nodeId;
+        final long nanos;
+
+        Event(Hop hop, String nodeId, long nanos) {
+            this.hop = hop;
+            this.nodeId = nodeId;
+            this.nanos = nanos;
+        }
+    }
+
+    private static class Trace {
+        final String voteId;
+        final long created;
+        final List<Event> events = new ArrayList<>();
+        boolean finished;
+
+        Trace(String voteId, long created) {
+            this.voteId = voteId;
+            this.created = created;
+        }
+    }
+
+    private static class HopStats {
+        final String hop;
+        final LatencyHistogram sinceStart;
+        final LatencyHistogram sincePrevious;
+
+        HopStats(String hop, MetricsRegistry metrics) {
+            this.hop = hop;
+            sinceStart = metrics.histogram("vote_trace_offset_seconds", "hop", hop);
+            sincePrevious = metrics.histogram("vote_trace_hop_seconds", "hop", hop);
+        }
+    }
+
+    public VoteTracer(MetricsRegistry metrics) {
+        this.metrics = metrics;
+        metrics.gauge("vote_trace_active", tracesById::size);
+        metrics.gauge("vote_trace_completed_total", completedTraces::get);
+        metrics.gauge("vote_trace_expired_total", expiredTraces::get);
+    }
+
+    public static VoteTracer getDefault() {
+        return defaultTracer;
+    }
+
+    /**
+     * @param sampleRate share of votes to trace in 0..1 range, 0 disables tracing
+     */
+    public void setSampleRate(double sampleRate) {
+        sampleThreshold = (long) (Math.max(0, Math.min(1, sampleRate)) * (1L << 31));
+    }
+
+    public void setTtl(long ttlMillis) {
+        ttl = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+
+    public void setMaxTraces(int maxTraces) {
+        this.maxTraces = maxTraces;
+    }
+
+    public boolean isSampled(String voteId) {
+        long threshold = sampleThreshold;
+        return threshold != 0 && voteId != null && (voteId.hashCode() & Integer.MAX_VALUE) < threshold;
+    }
+
+    /**
+     * Records the hop of a sampled vote now, starts the trace if the vote is not traced by this process yet.
+     */
+    public void mark(String voteId, Hop hop, String nodeId) {
+        if (isSampled(voteId))
+            add(voteId, hop, nodeId, System.nanoTime(), true);
+    }
+
+    /**
+     * Records the hop of a sampled vote happened at {@code nanos} taken from {@link System#nanoTime()}.
+     */
+    public void mark(String voteId, Hop hop, String nodeId, long nanos) {
+        if (isSampled(voteId))
+            add(voteId, hop, nodeId, nanos, true);
+    }
+
+    /**
+     * Records the hop only if the vote is already traced by this process,
+     * for hops seen by every node such as ledger messages and statuses.
+     */
+    public void append(String voteId, Hop hop, String nodeId) {
+        if (isSampled(voteId))
+            add(voteId, hop, nodeId, System.nanoTime(), false);
+    }
+
+    private void add(String voteId, Hop hop, String nodeId, long nanos, boolean start) {
+        Trace trace = tracesById.get(voteId);
+        boolean created = false;
+        if (trace == null) {
+            if (!start)
+                return;
+            Trace newTrace = new Trace(voteId, System.nanoTime());
+            trace = tracesById.putIfAbsent(voteId, newTrace);
+            if (trace == null) {
+                trace = newTrace;
+                tracesOrder.add(trace);
+                created = true;
+            }
+        }
+        synchronized (trace) {
+            if (trace.finished)
+                return;
+            trace.events.add(new Event(hop, nodeId, nanos));
+        }
+        if (created)
+            expire(trace.created);
+        if (hop == Hop.STATUS_RECEIVED && tracesById.remove(voteId, trace)) {
+            finish(trace);
+            completedTraces.incrementAndGet();
+        }
+    }
+
+    private void expire(long now) {
+        Trace head;
+        while ((head = tracesOrder.peek()) != null && (head.created + ttl <= now || tracesById.size() > maxTraces)) {
+            if (!tracesOrder.remove(head))
+                continue;
+            if (tracesById.remove(head.voteId, head)) {
+                finish(head);
+                expiredTraces.incrementAndGet();
+            }
+        }
+    }
+
+    private void finish(Trace trace) {
+        List<Event> events;
+        synchronized (trace) {
+            trace.finished = true;
+            events = new ArrayList<>(trace.events);
+        }
+        if (events.isEmpty())
+            return;
+        events.sort(Comparator.comparingLong(e -> e.nanos));
+        long start = events.get(0).nanos;
+        long previous = start;
+        Map<Hop, Integer> occurrences = new EnumMap<>(Hop.class);
+        StringBuilder span = new StringBuilder();
+        for (Event event : events) {
+            int occurrence = occurrences.merge(event.hop, 1, Integer::sum);
+            String hop = occurrence == 1 ? event.hop.name().toLowerCase() : String.format("%s_%d", event.hop.name().toLowerCase(), occurrence);
+            HopStats stats = statsByHop.computeIfAbsent(hop, h -> new HopStats(h, metrics));
+            stats.sinceStart.record(event.nanos - start);
+            stats.sincePrevious.record(event.nanos - previous);
+            previous = event.nanos;
+            if (span.length() > 0)
+                span.append(' ');
+            span.append(hop).append('@').append(event.nodeId).append('+').append(TimeUnit.NANOSECONDS.toMicros(event.nanos - start));
+        }
+        log.info("trace. voteId={} start={} durationUs={} hops={}",
+            trace.voteId, baseMillis + TimeUnit.NANOSECONDS.toMillis(start - baseNanos), TimeUnit.NANOSECONDS.toMicros(previous - start), span);
+    }
+
+    /**
+     * Ends all traces in progress, e.g. before the final report.
+     */
+    public void flush() {
+        expire(Long.MAX_VALUE);
+    }
+
+    /**
+     * @return waterfall of hops ordered by median time since the trace start, with latencies in milliseconds
+     */
+    public String getReport() {
+        List<HopStats> stats = new ArrayList<>(statsByHop.values());
+        stats.sort(Comparator.comparingLong((HopStats s) -> s.sinceStart.getPercentile(0.5)).thenComparing(s -> s.hop));
+        long scale = 1;
+        for (HopStats s : stats) {
+            scale = Math.max(scale, s.sinceStart.getPercentile(0.5));
+        }
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("Vote traces: %d completed, %d expired, %d active%n", completedTraces.get(), expiredTraces.get(), tracesById.size()));
+        builder.append(String.format("%-22s %8s %10s %10s %10s %10s  %s%n", "hop", "count", "start p50", "start p99", "step p50", "step p99", "waterfall"));
+        for (HopStats s : stats) {
+            long offset = s.sinceStart.getPercentile(0.5);
+            long step = s.sincePrevious.getPercentile(0.5);
+            int begin = (int) (Math.max(0, offset - step) * 40 / scale);
+            int end = (int) (offset * 40 / scale);
+            char[] bar = new char[end + 1];
+            Arrays.fill(bar, 0, begin, ' ');
+            Arrays.fill(bar, begin, end + 1, '#');
+            builder.append(String.format("%-22s %8d %10.3f %10.3f %10.3f %10.3f  %s%n", s.hop, s.sinceStart.getCount(),
+                offset / 1e6, s.sinceStart.getPercentile(0.99) / 1e6, step / 1e6, s.sincePrevious.getPercentile(0.99) / 1e6, new String(bar)));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,176 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common.networking;
+
+import uk.dsxt.voting.common.messaging.Message;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * In-memory ordered message log shared by wallet managers of one JVM.
+ * Appends are lock-free: a sequence number is taken from a counter and the message is stored into its slot of a
+ * segmented array. Every reader owns a {@link Subscription} with its own cursor, so a poll costs only the new messages.
+ * A subscription can emulate the network: messages become committed commitDelay milliseconds after append, are
+ * shuffled within windows of reorderWindow messages and delivered twice with probability duplicateRate.
+ */
+public class MessageBus {
+
+    private static final int SEGMENT_BITS = 16;
+
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+
+    private static final int MAX_SEGMENTS = 1 << 16;
+
+    private static volatile MessageBus defaultBus = new MessageBus();
+
+    private final AtomicReferenceArray<AtomicReferenceArray<Entry>> segments = new AtomicReferenceArray<>(MAX_SEGMENTS);
+
+    private final AtomicLong nextSequence = new AtomicLong();
+
+    private static class Entry {
+        final Message message;
+        final long appendTime;
+
+        Entry(Message message, long appendTime) {
+            this.message = message;
+            this.appendTime = appendTime;
+        }
+    }
+
+    public static MessageBus getDefault() {
+        return defaultBus;
+    }
+
+    /**
+     * Replaces the bus used by wallet managers created afterwards without explicit bus, e.g. to start an isolated cluster.
+     */
+    public static void setDefault(MessageBus bus) {
+        defaultBus = bus;
+    }
+
+    public String append(byte[] body) {
+        long sequence = nextSequence.getAndIncrement();
+        if (sequence >= (long) MAX_SEGMENTS * SEGMENT_SIZE)
+            throw new IllegalStateException("Message bus is full");
+        String id = "MSG-" + (sequence + 1);
+        segment(sequence).set((int) (sequence & (SEGMENT_SIZE - 1)), new Entry(new Message(id, body, true), System.currentTimeMillis()));
+        return id;
+    }
+
+    public long size() {
+        return nextSequence.get();
+    }
+
+    private AtomicReferenceArray<Entry> segment(long sequence) {
+        int index = (int) (sequence >>> SEGMENT_BITS);
+        AtomicReferenceArray<Entry> segment = segments.get(index);
+        if (segment == null) {
+            segments.compareAndSet(index, null, new AtomicReferenceArray<>(SEGMENT_SIZE));
+            segment = segments.get(index);
+        }
+        return segment;
+    }
+
+    private Entry get(long sequence) {
+        AtomicReferenceArray<Entry> segment = segments.get((int) (sequence >>> SEGMENT_BITS));
+        return segment == null ? null : segment.get((int) (sequence & (SEGMENT_SIZE - 1)));
+    }
+
+    public Subscription subscribe() {
+        return subscribe(0, 0, 0, false, System.nanoTime());
+    }
+
+    /**
+     * @param commitDelay milliseconds after append when a message becomes committed
+     * @param reorderWindow count of consecutive messages shuffled between each other, 0 or 1 - no reordering
+     * @param duplicateRate probability of a message to be delivered once more in the next poll
+     * @param includeUncommitted deliver messages before they are committed (as not committed), otherwise wait for commit
+     */
+    public Subscription subscribe(long commitDelay, int reorderWindow, double duplicateRate, boolean includeUncommitted, long seed) {
+        return new Subscription(commitDelay, reorderWindow, duplicateRate, includeUncommitted, seed);
+    }
+
+    public class Subscription {
+        private final long commitDelay;
+        private final int reorderWindow;
+        private final double duplicateRate;
+        private final boolean includeUncommitted;
+        private final Random random;
+
+        private long cursor;
+        private long uncommittedCursor;
+        private List<Message> duplicates = new ArrayList<>();
+
+        private Subscription(long commitDelay, int reorderWindow, double duplicateRate, boolean includeUncommitted, long seed) {
+            this.commitDelay = commitDelay;
+            this.reorderWindow = reorderWindow;
+            this.duplicateRate = duplicateRate;
+            this.includeUncommitted = includeUncommitted;
+            random = new Random(seed);
+        }
+
+        /**
+         * @return messages appended since the previous poll in append order (up to reordering), committed messages are
+         * returned once, uncommitted ones are not returned again when they become committed
+         */
+        public synchronized List<Message> poll() {
+            long committedBefore = System.currentTimeMillis() - commitDelay;
+            List<Message> result = duplicates;
+            duplicates = new ArrayList<>();
+            long end = nextSequence.get();
+            for (; cursor < end; cursor++) {
+                Entry entry = get(cursor);
+                // slot is taken by an append which is not finished yet
+                if (entry == null || entry.appendTime > committedBefore)
+                    break;
+                if (cursor >= uncommittedCursor)
+                    add(entry.message, result);
+            }
+            uncommittedCursor = Math.max(uncommittedCursor, cursor);
+            if (includeUncommitted) {
+                for (; uncommittedCursor < end; uncommittedCursor++) {
+                    Entry entry = get(uncommittedCursor);
+                    if (entry == null)
+                        break;
+                    add(entry.appendTime > committedBefore ? new Message(entry.message.getId(), entry.message.getBody(), false) : entry.message, result);
+                }
+            }
+            if (reorderWindow > 1) {
+                for (int from = 0; from < result.size(); from += reorderWindow) {
+                    Collections.shuffle(result.subList(from, Math.min(result.size(), from + reorderWindow)), random);
+                }
+            }
+            return result;
+        }
+
+        private void add(Message message, List<Message> result) {
+            result.add(message);
+            if (duplicateRate > 0 && random.nextDouble() < duplicateRate)
+                duplicates.add(message);
+        }
+    }
+}
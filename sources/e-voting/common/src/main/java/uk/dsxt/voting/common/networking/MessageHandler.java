@@ -24,13 +24,17 @@ package uk.dsxt.voting.common.networking;
 import lombok.extern.log4j.Log4j2;
 import uk.dsxt.voting.common.messaging.Message;
 import uk.dsxt.voting.common.messaging.MessageContent;
+import uk.dsxt.voting.common.metrics.Counter;
+import uk.dsxt.voting.common.metrics.LatencyHistogram;
+import uk.dsxt.voting.common.metrics.MetricsRegistry;
 import uk.dsxt.voting.common.utils.crypto.CryptoHelper;
 
 import java.security.PublicKey;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
 @Log4j2
@@ -43,6 +47,15 @@ public class MessageHandler {
 
     private static final long MAX_MESSAGE_DELAY = 30 * 60 * 1000;
 
+    /**
+     * running handlers, message_handler_queue is the total queue of them so that stopped handlers are not kept by the registry
+     */
+    private static final Set<MessageHandler> handlers = ConcurrentHashMap.newKeySet();
+
+    static {
+        MetricsRegistry.getDefault().gauge("message_handler_queue", () -> handlers.stream().mapToLong(h -> h.messagesHandler.getQueue().size()).sum());
+    }
+
     private final WalletManager walletManager;
 
     private final CryptoHelper cryptoHelper;
@@ -57,15 +70,22 @@ public class MessageHandler {
 
     private final ScheduledExecutorService handleMessagesService = Executors.newSingleThreadScheduledExecutor();
 
-    private final ExecutorService messagesHandler = Executors.newFixedThreadPool(10);
-    
-    private long totalReceivedMessageCnt = 0;
+    private final ThreadPoolExecutor messagesHandler = (ThreadPoolExecutor) Executors.newFixedThreadPool(10);
+
+    private final MetricsRegistry metrics = MetricsRegistry.getDefault();
+    private final Counter totalReceivedMessageCnt = metrics.counter("wallet_received_messages_total");
+    private final Counter skippedMessageCnt = metrics.counter("wallet_duplicate_messages_total");
+    private final Counter rejectedMessageCnt = metrics.counter("wallet_rejected_messages_total");
+    private final LatencyHistogram pollTime = metrics.histogram("wallet_poll_seconds");
+    private final LatencyHistogram verifyTime = metrics.histogram("message_verify_seconds");
+    private final LatencyHistogram dispatchTime = metrics.histogram("message_dispatch_seconds");
 
     public MessageHandler(WalletManager walletManager, CryptoHelper cryptoHelper, Map<String, PublicKey> participantKeysById, MessageReceiver messageReceiver) {
         this.walletManager = walletManager;
         this.cryptoHelper = cryptoHelper;
         this.messageReceiver = messageReceiver;
         publicKeysById = participantKeysById;
+        handlers.add(this);
 
         walletManager.start();
     }
@@ -75,6 +95,7 @@ public class MessageHandler {
         this.cryptoHelper = cryptoHelper;
         this.messageReceiver = null;
         publicKeysById = participantKeysById;
+        handlers.add(this);
 
         walletManager.start();
     }
@@ -93,13 +114,17 @@ public class MessageHandler {
 
     public void stop() {
         handleMessagesService.shutdownNow();
+        messagesHandler.shutdown();
+        handlers.remove(this);
         log.info("MessageHandler stopped");
     }
 
     private void checkNewMessages() {
         //log.debug("checkNewMessages begins");
         long now = System.currentTimeMillis();
+        long start = System.nanoTime();
         List<Message> newMessages = walletManager.getNewMessages(Math.max(0, lastNewMessagesRequestTime-MAX_MESSAGE_DELAY));
+        pollTime.recordSince(start);
         lastNewMessagesRequestTime = now;
         if (newMessages == null) {
             log.debug("checkNewMessages ends - no messages");
@@ -115,8 +140,9 @@ public class MessageHandler {
                 messagesHandler.execute(() -> handleMessage(message));
             }
         }
-        totalReceivedMessageCnt += newMessages.size();
-        log.debug("checkNewMessages ends allCnt={}, skippedCnt={}, totalReceivedMessageCnt={}", newMessages.size(), skippedCnt, totalReceivedMessageCnt);
+        skippedMessageCnt.addAndGet(skippedCnt);
+        log.debug("checkNewMessages ends allCnt={}, skippedCnt={}, totalReceivedMessageCnt={}", newMessages.size(), skippedCnt,
+            totalReceivedMessageCnt.addAndGet(newMessages.size()));
     }
 
     private void handleMessage(Message message) {
@@ -127,15 +153,22 @@ public class MessageHandler {
             PublicKey authorKey = publicKeysById.get(authorId);
             if (authorKey == null) {
                 log.warn("Message {} author {} not found", message.getId(), messageContent.getAuthor());
+                rejectedMessageCnt.incrementAndGet();
                 return;
             }
             //log.debug("checkNewMessages. message id={} has key", message.getId());
-            if (!messageContent.checkSign(authorKey, cryptoHelper)) {
+            long start = System.nanoTime();
+            boolean isSignCorrect = messageContent.checkSign(authorKey, cryptoHelper);
+            verifyTime.recordSince(start);
+            if (!isSignCorrect) {
                 log.warn("Message {} author {} signature is incorrect", message.getId(), messageContent.getAuthor());
+                rejectedMessageCnt.incrementAndGet();
                 return;
             }
             //log.debug("checkNewMessages. message id={} signature verified", message.getId());
+            start = System.nanoTime();
             handleNewMessage(messageContent, message.getId(), message.isCommitted(), authorId);
+            dispatchTime.recordSince(start);
             //log.debug("checkNewMessages. message id={} handled", message.getId());
         } catch (Exception e) {
             log.error("Can not handle message {}: {}", message.getId(), e.getMessage());
@@ -3,17 +3,29 @@ package uk.dsxt.voting.common.networking;
 import lombok.extern.log4j.Log4j2;
 import uk.dsxt.voting.common.messaging.Message;
 
-import java.util.ArrayList;
 import java.util.List;
 
 @Log4j2
 public class MockWalletManager implements WalletManager {
 
-    private static final List<Message> allMessages = new ArrayList<>();
+    private final MessageBus bus;
 
-    private static long lastMessageId;
+    private final MessageBus.Subscription subscription;
 
-    private boolean isRunning = false;
+    private volatile boolean isRunning = false;
+
+    public MockWalletManager() {
+        this(MessageBus.getDefault());
+    }
+
+    public MockWalletManager(MessageBus bus) {
+        this(bus, bus.subscribe());
+    }
+
+    public MockWalletManager(MessageBus bus, MessageBus.Subscription subscription) {
+        this.bus = bus;
+        this.subscription = subscription;
+    }
 
     @Override
     public void start() {
@@ -31,19 +43,13 @@ public class MockWalletManager implements WalletManager {
     public String sendMessage(byte[] body) {
         if (!isRunning)
             return null;
-        synchronized (allMessages) {
-            String id = String.format("MSG-%d", ++lastMessageId);
-            allMessages.add(new Message(id, body, true));
-            return id;
-        }
+        return bus.append(body);
     }
 
     @Override
     public List<Message> getNewMessages(long timestamp) {
         if (!isRunning)
             return null;
-        synchronized (allMessages) {
-            return new ArrayList<>(allMessages);
-        }
+        return subscription.poll();
     }
 }
@@ -22,14 +22,21 @@
 package uk.dsxt.voting.common.networking;
 
 import lombok.AllArgsConstructor;
+import lombok.Value;
 import lombok.extern.log4j.Log4j2;
 import org.joda.time.Instant;
 import uk.dsxt.voting.common.domain.dataModel.VoteResult;
 import uk.dsxt.voting.common.domain.dataModel.VoteStatus;
 import uk.dsxt.voting.common.domain.dataModel.Voting;
 import uk.dsxt.voting.common.domain.nodes.*;
+import uk.dsxt.voting.common.messaging.MessageCompressor;
 import uk.dsxt.voting.common.messaging.MessageContent;
 import uk.dsxt.voting.common.messaging.MessagesSerializer;
+import uk.dsxt.voting.common.metrics.Counter;
+import uk.dsxt.voting.common.metrics.LatencyHistogram;
+import uk.dsxt.voting.common.metrics.MetricsRegistry;
+import uk.dsxt.voting.common.metrics.VoteTracer;
+import uk.dsxt.voting.common.utils.CollectionsHelper;
 import uk.dsxt.voting.common.utils.InternalLogicException;
 import uk.dsxt.voting.common.utils.MessageBuilder;
 import uk.dsxt.voting.common.utils.crypto.CryptoHelper;
@@ -39,23 +46,33 @@ import java.security.GeneralSecurityException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @AllArgsConstructor
 @Log4j2
 public class WalletMessageConnector implements NetworkMessagesSender {
 
     private static final String TYPE_VOTE = "VOTE";
+    private static final String TYPE_VOTES = "VOTES";
     private static final String TYPE_VOTE_STATUS = "VOTE_STATUS";
     private static final String TYPE_VOTING = "VOTING";
     private static final String TYPE_VOTING_TOTAL_RESULT = "VOTING_TOTAL_RESULT";
 
     private static final String FIELD_BODY = "BODY";
+    private static final String FIELD_COMPRESSION = "COMPRESSION";
+    private static final String FIELD_CHUNK_GROUP = "CHUNK_GROUP";
+    private static final String FIELD_CHUNK_INDEX = "CHUNK_INDEX";
+    private static final String FIELD_CHUNK_COUNT = "CHUNK_COUNT";
+
+    private static final long CHUNK_GROUP_TIMEOUT = 30 * 60 * 1000;
+
+    private static final long STOP_TIMEOUT = 10000;
 
     private final WalletManager walletManager;
 
@@ -77,16 +94,19 @@ public class WalletMessageConnector implements NetworkMessagesSender {
 
     private final ScheduledExecutorService unconfirmedMessagesChecker = Executors.newSingleThreadScheduledExecutor();
 
-    private final ExecutorService messagesSender;
+    private final ThreadPoolExecutor messagesSender;
 
     private static class MessageRecord {
         private long timestamp;
+        private final long created = System.nanoTime();
         private final String uid;
         private final byte[] body;
+        private final List<String> voteIds;
 
-        MessageRecord(String uid, byte[] body) {
+        MessageRecord(String uid, byte[] body, List<String> voteIds) {
             this.uid = uid;
             this.body = body;
+            this.voteIds = voteIds;
             markUnsent();
         }
 
@@ -101,15 +121,74 @@ public class WalletMessageConnector implements NetworkMessagesSender {
 
     private final Map<String, MessageRecord> unconfirmedMessages = new HashMap<>();
 
+    /**
+     * traced vote ids of own VOTES messages by message id, the master only can decrypt them, kept till the message is committed
+     */
+    private final Map<String, List<String>> tracedVoteIdsByMessageId = new ConcurrentHashMap<>();
+
+    private static class ChunkGroup {
+        private final long timestamp = System.currentTimeMillis();
+        private final String[] parts;
+        private int receivedCount;
+        private boolean isCommitted = true;
+
+        ChunkGroup(int count) {
+            parts = new String[count];
+        }
+    }
+
+    private final Map<String, ChunkGroup> chunkGroupsByKey = new HashMap<>();
+
+    @Value
+    private static class AssembledMessage {
+        String body;
+        boolean isCommitted;
+    }
+
+    private static class PendingVote {
+        private final String voteId;
+        private final String serializedVote;
+        private final String ownerSignature;
+
+        PendingVote(String voteId, String serializedVote, String ownerSignature) {
+            this.voteId = voteId;
+            this.serializedVote = serializedVote;
+            this.ownerSignature = ownerSignature;
+        }
+    }
+
+    private final Map<String, List<PendingVote>> pendingVotesByVotingId = new HashMap<>();
+
+    private volatile int maxAggregatedVotes;
+
     private final long confirmTimeout;
 
-    private final AtomicLong sentMessageCount = new AtomicLong();
-    private final AtomicLong sentMessageTryCount = new AtomicLong();
-    private final AtomicLong receivedMessageCount = new AtomicLong();
-    private final AtomicLong receivedSelfMessageCount = new AtomicLong();
+    private final boolean compressBodies;
+
+    private final int maxBodyLength;
+
+    private final Counter sentMessageCount;
+    private final Counter sentMessageTryCount;
+    private final Counter receivedMessageCount;
+    private final Counter receivedSelfMessageCount;
+    private final Counter sentChunkCount;
+    private final Counter sentBodyLength;
+    private final Counter aggregatedVoteCount;
+    private final LatencyHistogram sendTime;
+    private final LatencyHistogram confirmationTime;
 
     public WalletMessageConnector(WalletManager walletManager, MessagesSerializer serializer, CryptoHelper cryptoHelper, Map<String, PublicKey> participantKeysById,
                                   PrivateKey privateKey, String holderId, String masterId, long confirmTimeout, int sendMessagesThreads) {
+        this(walletManager, serializer, cryptoHelper, participantKeysById, privateKey, holderId, masterId, confirmTimeout, sendMessagesThreads, false, 0);
+    }
+
+    /**
+     * @param compressBodies deflate message bodies (before encryption for votes) and mark them in the message header
+     * @param maxBodyLength maximal body length of one wallet message, longer bodies are sent in several chunks. 0 - no limit
+     */
+    public WalletMessageConnector(WalletManager walletManager, MessagesSerializer serializer, CryptoHelper cryptoHelper, Map<String, PublicKey> participantKeysById,
+                                  PrivateKey privateKey, String holderId, String masterId, long confirmTimeout, int sendMessagesThreads,
+                                  boolean compressBodies, int maxBodyLength) {
         this.walletManager = walletManager;
         this.serializer = serializer;
         this.cryptoHelper = cryptoHelper;
@@ -118,9 +197,57 @@ public class WalletMessageConnector implements NetworkMessagesSender {
         this.holderId = holderId;
         this.masterId = masterId;
         this.confirmTimeout = confirmTimeout;
+        this.compressBodies = compressBodies;
+        this.maxBodyLength = maxBodyLength;
         this.masterKey = participantKeysById.get(masterId);
         unconfirmedMessagesChecker.scheduleWithFixedDelay(this::checkUnconfirmedMessages, new Random().nextInt(120), 120, TimeUnit.SECONDS);
-        messagesSender = Executors.newFixedThreadPool(sendMessagesThreads);
+        messagesSender = (ThreadPoolExecutor) Executors.newFixedThreadPool(sendMessagesThreads);
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        sentMessageCount = metrics.counter("connector_sent_messages_total", "holder", holderId);
+        sentMessageTryCount = metrics.counter("connector_send_tries_total", "holder", holderId);
+        receivedMessageCount = metrics.counter("connector_received_messages_total", "holder", holderId);
+        receivedSelfMessageCount = metrics.counter("connector_confirmed_messages_total", "holder", holderId);
+        sentChunkCount = metrics.counter("connector_sent_chunks_total", "holder", holderId);
+        sentBodyLength = metrics.counter("connector_sent_body_chars_total", "holder", holderId);
+        aggregatedVoteCount = metrics.counter("connector_aggregated_votes_total", "holder", holderId);
+        sendTime = metrics.histogram("wallet_send_seconds", "holder", holderId);
+        confirmationTime = metrics.histogram("message_confirmation_seconds", "holder", holderId);
+        metrics.gauge("connector_send_queue", () -> messagesSender.getQueue().size(), "holder", holderId);
+        metrics.gauge("connector_unconfirmed_messages", () -> {
+            synchronized (unconfirmedMessages) {
+                return unconfirmedMessages.size();
+            }
+        }, "holder", holderId);
+    }
+
+    /**
+     * Votes of one voting are collected during aggregationPeriod and sent to master as one VOTES message
+     * with one meeting instruction containing all of them.
+     * @param maxAggregatedVotes votes count which causes immediate sending
+     */
+    public void enableVotesAggregation(long aggregationPeriod, int maxAggregatedVotes) {
+        if (aggregationPeriod <= 0 || maxAggregatedVotes <= 1)
+            return;
+        this.maxAggregatedVotes = maxAggregatedVotes;
+        unconfirmedMessagesChecker.scheduleWithFixedDelay(this::flushPendingVotes, aggregationPeriod, aggregationPeriod, TimeUnit.MILLISECONDS);
+        log.info("enableVotesAggregation. period={} maxVotes={} holderId={}", aggregationPeriod, maxAggregatedVotes, holderId);
+    }
+
+    /**
+     * Sends pending aggregated votes and waits until queued messages are passed to the wallet.
+     */
+    public void stop() {
+        unconfirmedMessagesChecker.shutdownNow();
+        flushPendingVotes();
+        messagesSender.shutdown();
+        try {
+            if (!messagesSender.awaitTermination(STOP_TIMEOUT, TimeUnit.MILLISECONDS))
+                log.warn("stop. {} messages are not sent. holderId={}", messagesSender.shutdownNow().size(), holderId);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        MetricsRegistry.getDefault().remove("connector_send_queue", "holder", holderId);
+        MetricsRegistry.getDefault().remove("connector_unconfirmed_messages", "holder", holderId);
     }
 
     public void addClient(NetworkClient client) {
@@ -154,29 +281,172 @@ public class WalletMessageConnector implements NetworkMessagesSender {
 
     @Override
     public String addVote(VoteResult result, String serializedVote, String ownerSignature) {
+        if (maxAggregatedVotes > 1)
+            return addPendingVote(result.getVotingId(), serializedVote, ownerSignature);
+        return sendVote(null, serializedVote, ownerSignature);
+    }
+
+    /**
+     * Sends one vote as VOTE message.
+     * @param voteId id of the message, new id is generated if null
+     */
+    private String sendVote(String voteId, String serializedVote, String ownerSignature) {
+        String messageId = voteId == null ? UUID.randomUUID().toString() : voteId;
         String message = MessageBuilder.buildMessage(serializedVote, ownerSignature);
+        if (compressBodies)
+            message = MessageCompressor.compress(message);
         String encryptedMessage;
         try {
             encryptedMessage = cryptoHelper.encrypt(message, masterKey);
         } catch (GeneralSecurityException | UnsupportedEncodingException e) {
-            log.error("addVote. can not encrypt message. receiverId={}. error={} holderId={}", masterId, e.getMessage(), holderId);
+            log.error("addVote. can not encrypt message. receiverId={}. error={} holderId={} voteId={}", masterId, e.getMessage(), holderId, messageId);
             return null;
         }
-        return send(TYPE_VOTE, encryptedMessage);
+        return send(TYPE_VOTE, encryptedMessage, compressBodies, messageId, Collections.singletonList(messageId));
+    }
+
+    private String addPendingVote(String votingId, String serializedVote, String ownerSignature) {
+        String voteId = UUID.randomUUID().toString();
+        List<PendingVote> readyVotes = null;
+        synchronized (pendingVotesByVotingId) {
+            List<PendingVote> votes = CollectionsHelper.getOrAdd(pendingVotesByVotingId, votingId, ArrayList::new);
+            votes.add(new PendingVote(voteId, serializedVote, ownerSignature));
+            if (votes.size() >= maxAggregatedVotes)
+                readyVotes = pendingVotesByVotingId.remove(votingId);
+        }
+        if (readyVotes != null)
+            sendVotes(votingId, readyVotes);
+        return voteId;
+    }
+
+    private void flushPendingVotes() {
+        Map<String, List<PendingVote>> readyVotes;
+        synchronized (pendingVotesByVotingId) {
+            if (pendingVotesByVotingId.isEmpty())
+                return;
+            readyVotes = new HashMap<>(pendingVotesByVotingId);
+            pendingVotesByVotingId.clear();
+        }
+        for (Map.Entry<String, List<PendingVote>> entry : readyVotes.entrySet()) {
+            try {
+                sendVotes(entry.getKey(), entry.getValue());
+            } catch (Exception e) {
+                log.error(String.format("flushPendingVotes fails. votingId=%s holderId=%s", entry.getKey(), holderId), e);
+            }
+        }
+    }
+
+    private void sendVotes(String votingId, List<PendingVote> votes) {
+        String aggregatedVotes;
+        try {
+            aggregatedVotes = serializer.aggregateVoteResults(votes.stream().map(v -> v.serializedVote).collect(Collectors.toList()));
+        } catch (InternalLogicException e) {
+            log.error("sendVotes. Can not aggregate {} votes, send them separately. votingId={} holderId={} error={}", votes.size(), votingId, holderId, e.getMessage());
+            sendSeparately(votingId, votes);
+            return;
+        }
+        String[] parts = new String[1 + votes.size() * 2];
+        parts[0] = aggregatedVotes;
+        for (int i = 0; i < votes.size(); i++) {
+            parts[1 + i * 2] = votes.get(i).voteId;
+            parts[2 + i * 2] = votes.get(i).ownerSignature;
+        }
+        String message = MessageBuilder.buildMessage(parts);
+        if (compressBodies)
+            message = MessageCompressor.compress(message);
+        String encryptedMessage;
+        try {
+            encryptedMessage = cryptoHelper.encrypt(message, masterKey);
+        } catch (GeneralSecurityException | UnsupportedEncodingException e) {
+            log.error("sendVotes. Can not encrypt {} votes, send them separately. receiverId={}. error={} holderId={} votingId={}", votes.size(), masterId, e.getMessage(), holderId,
+                votingId);
+            sendSeparately(votingId, votes);
+            return;
+        }
+        List<String> voteIds = votes.stream().map(v -> v.voteId).collect(Collectors.toList());
+        String messageId = UUID.randomUUID().toString();
+        List<String> tracedVoteIds = voteIds.stream().filter(VoteTracer.getDefault()::isSampled).collect(Collectors.toList());
+        if (!tracedVoteIds.isEmpty())
+            tracedVoteIdsByMessageId.put(messageId, tracedVoteIds);
+        String id = send(TYPE_VOTES, encryptedMessage, compressBodies, messageId, voteIds);
+        if (id == null)
+            tracedVoteIdsByMessageId.remove(messageId);
+        aggregatedVoteCount.addAndGet(votes.size());
+        log.debug("sendVotes. {} votes sent. votingId={} messageId={} holderId={}", votes.size(), votingId, id, holderId);
+    }
+
+    /**
+     * Sends votes as separate VOTE messages, ids were already returned to callers, so every vote keeps its id as message id.
+     */
+    private void sendSeparately(String votingId, List<PendingVote> votes) {
+        for (PendingVote vote : votes) {
+            if (sendVote(vote.voteId, vote.serializedVote, vote.ownerSignature) == null)
+                log.error("sendSeparately. Vote is lost. votingId={} voteId={} holderId={}", votingId, vote.voteId, holderId);
+        }
     }
 
     private String send(String messageType, String messageBody) {
-        Map<String, String> fields = new HashMap<>();
-        fields.put(FIELD_BODY, messageBody);
+        if (messageBody == null || !compressBodies)
+            return send(messageType, messageBody, false);
+        return send(messageType, MessageCompressor.compress(messageBody), true);
+    }
+
+    private String send(String messageType, String messageBody, boolean isCompressed) {
+        return send(messageType, messageBody, isCompressed, null, Collections.emptyList());
+    }
+
+    /**
+     * @param messageId id of the message (of the chunk group for long bodies), new id is generated if null
+     * @param voteIds ids of votes sent by the message, used for tracing
+     */
+    private String send(String messageType, String messageBody, boolean isCompressed, String messageId, List<String> voteIds) {
+        sentMessageCount.incrementAndGet();
+        if (messageBody != null)
+            sentBodyLength.addAndGet(messageBody.length());
+        if (maxBodyLength <= 0 || messageBody == null || messageBody.length() <= maxBodyLength) {
+            Map<String, String> fields = new HashMap<>();
+            fields.put(FIELD_BODY, messageBody);
+            if (isCompressed)
+                fields.put(FIELD_COMPRESSION, MessageCompressor.DEFLATE_V1);
+            if (messageId != null)
+                fields.put(MessageContent.FIELD_UID, messageId);
+            return send(messageType, fields, voteIds);
+        }
+        List<String> parts = new ArrayList<>();
+        for (int begin = 0; begin < messageBody.length(); ) {
+            int end = Math.min(begin + maxBodyLength, messageBody.length());
+            if (end < messageBody.length() && Character.isHighSurrogate(messageBody.charAt(end - 1)))
+                end--;
+            parts.add(messageBody.substring(begin, end));
+            begin = end;
+        }
+        String groupId = messageId == null ? UUID.randomUUID().toString() : messageId;
+        for (int i = 0; i < parts.size(); i++) {
+            Map<String, String> fields = new HashMap<>();
+            fields.put(FIELD_BODY, parts.get(i));
+            fields.put(FIELD_CHUNK_GROUP, groupId);
+            fields.put(FIELD_CHUNK_INDEX, Integer.toString(i));
+            fields.put(FIELD_CHUNK_COUNT, Integer.toString(parts.size()));
+            if (isCompressed)
+                fields.put(FIELD_COMPRESSION, MessageCompressor.DEFLATE_V1);
+            // votes are sent when the last chunk is
+            if (send(messageType, fields, i == parts.size() - 1 ? voteIds : Collections.emptyList()) == null)
+                return null;
+            sentChunkCount.incrementAndGet();
+        }
+        log.debug("send. {} message {} split into {} chunks. holderId={}", messageType, groupId, parts.size(), holderId);
+        return groupId;
+    }
+
+    private String send(String messageType, Map<String, String> fields, List<String> voteIds) {
         byte[] body;
         try {
             body = MessageContent.buildOutputMessage(messageType, holderId, privateKey, cryptoHelper, fields);
-            sentMessageCount.incrementAndGet();
         } catch (GeneralSecurityException | UnsupportedEncodingException e) {
             log.error("send {} fails: {}. holderId={}", messageType, e.getMessage(), holderId);
             return null;
         }
-        MessageRecord messageRecord = new MessageRecord(fields.get(MessageContent.FIELD_UID), body);
+        MessageRecord messageRecord = new MessageRecord(fields.get(MessageContent.FIELD_UID), body, voteIds);
         synchronized (unconfirmedMessages) {
             unconfirmedMessages.put(messageRecord.uid, messageRecord);
         }
@@ -187,11 +457,16 @@ public class WalletMessageConnector implements NetworkMessagesSender {
     private void send(MessageRecord messageRecord) {
         messageRecord.markSentNow();
         sentMessageTryCount.incrementAndGet();
+        long start = System.nanoTime();
         String id = walletManager.sendMessage(messageRecord.body);
+        sendTime.recordSince(start);
         if (id == null) {
             log.error("send fails. holderId={} messageId={}", holderId, messageRecord.uid);
         }
         else {
+            for (String voteId : messageRecord.voteIds) {
+                VoteTracer.getDefault().mark(voteId, VoteTracer.Hop.MESSAGE_SENT, holderId);
+            }
             log.info("sent. holderId={} messageId={} tranId={}", holderId, messageRecord.uid, id);
         }
     }
@@ -212,8 +487,54 @@ public class WalletMessageConnector implements NetworkMessagesSender {
         for(MessageRecord messageRecord : overdueMessages) {
             messagesSender.execute(() -> send(messageRecord));
         }
-        log.debug("checkUnconfirmedMessages. {} messages resent. Total sent {} received {}, self received {}, send try {}", 
-            overdueMessages.size(), sentMessageCount.get(), receivedMessageCount.get(), receivedSelfMessageCount.get(), sentMessageTryCount.get());
+        int expiredGroups = 0;
+        long groupThresholdTime = System.currentTimeMillis() - CHUNK_GROUP_TIMEOUT;
+        synchronized (chunkGroupsByKey) {
+            for (Iterator<ChunkGroup> iterator = chunkGroupsByKey.values().iterator(); iterator.hasNext(); ) {
+                if (iterator.next().timestamp < groupThresholdTime) {
+                    iterator.remove();
+                    expiredGroups++;
+                }
+            }
+        }
+        log.debug("checkUnconfirmedMessages. {} messages resent, {} incomplete chunk groups dropped. Total sent {} received {}, self received {}, send try {}, chunks {}, body length {}, aggregated votes {}",
+            overdueMessages.size(), expiredGroups, sentMessageCount.get(), receivedMessageCount.get(), receivedSelfMessageCount.get(), sentMessageTryCount.get(),
+            sentChunkCount.get(), sentBodyLength.get(), aggregatedVoteCount.get());
+    }
+
+    /**
+     * @return reassembled body when all chunks are received, committed only if every chunk is committed
+     */
+    private AssembledMessage addChunk(MessageContent messageContent, boolean isCommitted) {
+        String groupId = messageContent.getField(FIELD_CHUNK_GROUP);
+        int index, count;
+        try {
+            index = Integer.parseInt(messageContent.getField(FIELD_CHUNK_INDEX));
+            count = Integer.parseInt(messageContent.getField(FIELD_CHUNK_COUNT));
+        } catch (NumberFormatException e) {
+            log.error("addChunk. Invalid chunk header. messageId={} groupId={} holderId={}", messageContent.getUID(), groupId, holderId);
+            return null;
+        }
+        if (count <= 0 || index < 0 || index >= count) {
+            log.error("addChunk. Invalid chunk {} of {}. messageId={} groupId={} holderId={}", index, count, messageContent.getUID(), groupId, holderId);
+            return null;
+        }
+        String key = MessageBuilder.buildMessage(messageContent.getAuthor(), groupId);
+        synchronized (chunkGroupsByKey) {
+            ChunkGroup group = CollectionsHelper.getOrAdd(chunkGroupsByKey, key, () -> new ChunkGroup(count));
+            if (group.parts.length != count) {
+                log.error("addChunk. Chunk count {} differs from {}. groupId={} holderId={}", count, group.parts.length, groupId, holderId);
+                return null;
+            }
+            if (group.parts[index] != null)
+                return null;
+            group.parts[index] = messageContent.getField(FIELD_BODY);
+            group.isCommitted &= isCommitted;
+            if (++group.receivedCount < count)
+                return null;
+            chunkGroupsByKey.remove(key);
+            return new AssembledMessage(String.join("", group.parts), group.isCommitted);
+        }
     }
 
     private void sendMessage(Consumer<NetworkMessagesReceiver> action) {
@@ -233,16 +554,49 @@ public class WalletMessageConnector implements NetworkMessagesSender {
         boolean isSelf = holderId.equals(messageContent.getAuthor());
         String messageId = messageContent.getUID();
         log.debug("handleNewMessage. message type={}. holderId={} authorId={}  messageId={} tranId={}", type, holderId, authorId, messageId, msgId);
+        MessageRecord confirmedRecord;
         synchronized (unconfirmedMessages) {
-            if (unconfirmedMessages.remove(messageId) != null) {
-                receivedSelfMessageCount.incrementAndGet();
-            }
+            confirmedRecord = unconfirmedMessages.remove(messageId);
+        }
+        if (confirmedRecord != null) {
+            receivedSelfMessageCount.incrementAndGet();
+            confirmationTime.recordSince(confirmedRecord.created);
         }
+        if (messageContent.getField(FIELD_CHUNK_GROUP) != null) {
+            AssembledMessage message = addChunk(messageContent, isCommitted);
+            if (message == null)
+                return;
+            body = message.getBody();
+            isCommitted = message.isCommitted();
+            messageId = messageContent.getField(FIELD_CHUNK_GROUP);
+            log.debug("handleNewMessage. all chunks of message {} received. holderId={}", messageId, holderId);
+        }
+        handleNewMessage(type, messageId, body, messageContent.getField(FIELD_COMPRESSION), messageContent.getAuthor(), isCommitted, isSelf);
+    }
+
+    private void handleNewMessage(String type, String messageId, String body, String compression, String author, boolean isCommitted, boolean isSelf) {
         try {
+            if (compression != null && !type.equals(TYPE_VOTE) && !type.equals(TYPE_VOTES))
+                body = decompress(body, compression);
             switch (type) {
                 case TYPE_VOTE:
                     if (holderId.equals(MasterNode.MASTER_HOLDER_ID)) {
-                        addVoteToMaster(messageId, body, isCommitted, isSelf);
+                        addVoteToMaster(messageId, body, compression, isCommitted, isSelf);
+                    } else if (isSelf) {
+                        VoteTracer.getDefault().append(messageId, isCommitted ? VoteTracer.Hop.MESSAGE_COMMITTED : VoteTracer.Hop.MESSAGE_RECEIVED, holderId);
+                    }
+                    sendMessage(r -> r.notifyVote(messageId, isCommitted, isSelf));
+                    break;
+                case TYPE_VOTES:
+                    if (holderId.equals(MasterNode.MASTER_HOLDER_ID)) {
+                        addVotesToMaster(messageId, body, compression, isCommitted, isSelf);
+                    } else if (isSelf) {
+                        List<String> voteIds = isCommitted ? tracedVoteIdsByMessageId.remove(messageId) : tracedVoteIdsByMessageId.get(messageId);
+                        if (voteIds != null) {
+                            for (String voteId : voteIds) {
+                                VoteTracer.getDefault().append(voteId, isCommitted ? VoteTracer.Hop.MESSAGE_COMMITTED : VoteTracer.Hop.MESSAGE_RECEIVED, holderId);
+                            }
+                        }
                     }
                     sendMessage(r -> r.notifyVote(messageId, isCommitted, isSelf));
                     break;
@@ -251,16 +605,16 @@ public class WalletMessageConnector implements NetworkMessagesSender {
                     sendMessage(r -> r.addVoteStatus(status, messageId, isCommitted, isSelf));
                     break;
                 case TYPE_VOTING:
-                    if (!masterId.equals(messageContent.getAuthor())) {
-                        log.error("TYPE_VOTING message {} author {} is not master {}. holderId={}", messageId, messageContent.getAuthor(), masterId, holderId);
+                    if (!masterId.equals(author)) {
+                        log.error("TYPE_VOTING message {} author {} is not master {}. holderId={}", messageId, author, masterId, holderId);
                         break;
                     }
                     Voting voting = serializer.deserializeVoting(body);
                     sendMessage(r -> r.addVoting(voting));
                     break;
                 case TYPE_VOTING_TOTAL_RESULT:
-                    if (!masterId.equals(messageContent.getAuthor())) {
-                        log.error("TYPE_VOTING_TOTAL_RESULT message {} author {} is not master {}. holderId={}", messageId, messageContent.getAuthor(), masterId, holderId);
+                    if (!masterId.equals(author)) {
+                        log.error("TYPE_VOTING_TOTAL_RESULT message {} author {} is not master {}. holderId={}", messageId, author, masterId, holderId);
                         break;
                     }
                     VoteResult result = serializer.deserializeVoteResult(body);
@@ -274,40 +628,96 @@ public class WalletMessageConnector implements NetworkMessagesSender {
         }
     }
 
-    private void addVoteToMaster(String messageId, String body, boolean isCommitted, boolean isSelf) {
-        try{
-            String decryptedBody;
+    private String decompress(String body, String compression) throws InternalLogicException {
+        if (!MessageCompressor.DEFLATE_V1.equals(compression))
+            throw new InternalLogicException(String.format("Unknown compression %s", compression));
+        return MessageCompressor.decompress(body);
+    }
+
+    private String decryptVotes(String messageId, String body, String compression) {
+        String decryptedBody;
+        try {
+            decryptedBody = cryptoHelper.decrypt(body, privateKey);
+        } catch (GeneralSecurityException | UnsupportedEncodingException e) {
+            log.error("handleVote. Undecrypted VOTE message {}. holderId={}", messageId, holderId);
+            return null;
+        }
+        if (compression != null) {
             try {
-                decryptedBody = cryptoHelper.decrypt(body, privateKey);
-            } catch (GeneralSecurityException | UnsupportedEncodingException e) {
-                log.error("handleVote. Undecrypted VOTE message {}. holderId={}", messageId, holderId);
-                return;
+                decryptedBody = decompress(decryptedBody, compression);
+            } catch (InternalLogicException e) {
+                log.error("handleVote. Can not decompress VOTE message {}. holderId={} error={}", messageId, holderId, e.getMessage());
+                return null;
             }
+        }
+        return decryptedBody;
+    }
+
+    private void addVoteToMaster(String messageId, String body, String compression, boolean isCommitted, boolean isSelf) {
+        try{
+            String decryptedBody = decryptVotes(messageId, body, compression);
+            if (decryptedBody == null)
+                return;
             String[] messageParts = MessageBuilder.splitMessage(decryptedBody);
             if (messageParts.length != 2) {
                 log.error("handleVote. VOTE message {} has invalid number of parts {}. holderId={} decryptedBody={}", messageId, messageParts.length, holderId, decryptedBody);
                 return;
             }
-            VoteResult result;
+            handleVoteToMaster(messageId, messageParts[0], messageParts[1], isCommitted, isSelf);
+        } catch (Exception e) {
+            log.error(String.format("handleVote fails. messageId=%s holderId=%s", messageId, holderId), e);
+        }
+    }
+
+    private void addVotesToMaster(String messageId, String body, String compression, boolean isCommitted, boolean isSelf) {
+        try{
+            String decryptedBody = decryptVotes(messageId, body, compression);
+            if (decryptedBody == null)
+                return;
+            String[] messageParts = MessageBuilder.splitMessage(decryptedBody);
+            if (messageParts.length < 3 || messageParts.length % 2 != 1) {
+                log.error("handleVotes. VOTES message {} has invalid number of parts {}. holderId={}", messageId, messageParts.length, holderId);
+                return;
+            }
+            List<String> serializedVotes;
             try {
-                result = serializer.deserializeVoteResult(messageParts[0]);
+                serializedVotes = serializer.splitVoteResults(messageParts[0]);
             } catch (InternalLogicException e) {
-                log.error("handleVote fails. deserializeVoteResult fails. messageId={} holderId={} error={}", messageId, holderId, e.getMessage());
+                log.error("handleVotes fails. splitVoteResults fails. messageId={} holderId={} error={}", messageId, holderId, e.getMessage());
                 return;
             }
-            try {
-                if (!messageParts[1].equals(AssetsHolder.EMPTY_SIGNATURE) &&
-                    !cryptoHelper.verifySignature(messageParts[0], messageParts[1], participantKeysById.get(result.getHolderId()))) {
-                    log.error("handleVote. VOTE message {} has invalid owner signature. holderId={} result={} decryptedBody={}", messageId, holderId, result, decryptedBody);
-                    return;
-                }
-            } catch (GeneralSecurityException | UnsupportedEncodingException e) {
-                log.error("handleVote fails. messageId={} holderId={} error={}", messageId, holderId, e.getMessage());
+            if (serializedVotes.size() * 2 + 1 != messageParts.length) {
+                log.error("handleVotes. VOTES message {} contains {} votes but {} signatures. holderId={}", messageId, serializedVotes.size(), messageParts.length / 2, holderId);
+                return;
+            }
+            for (int i = 0; i < serializedVotes.size(); i++) {
+                handleVoteToMaster(messageParts[1 + i * 2], serializedVotes.get(i), messageParts[2 + i * 2], isCommitted, isSelf);
             }
-            sendMessage(r -> r.addVoteToMaster(result, messageId, messageParts[0], isCommitted, isSelf));
-            log.debug("VOTE handled  messageId={} holderId={}", messageId, holderId);
+            log.debug("VOTES handled  messageId={} votes={} holderId={}", messageId, serializedVotes.size(), holderId);
         } catch (Exception e) {
-            log.error(String.format("handleVote fails. messageId=%s holderId=%s", messageId, holderId), e);
+            log.error(String.format("handleVotes fails. messageId=%s holderId=%s", messageId, holderId), e);
+        }
+    }
+
+    private void handleVoteToMaster(String voteId, String serializedVote, String ownerSignature, boolean isCommitted, boolean isSelf) {
+        VoteTracer.getDefault().append(voteId, isCommitted ? VoteTracer.Hop.MESSAGE_COMMITTED : VoteTracer.Hop.MESSAGE_RECEIVED, holderId);
+        VoteResult result;
+        try {
+            result = serializer.deserializeVoteResult(serializedVote);
+        } catch (InternalLogicException e) {
+            log.error("handleVote fails. deserializeVoteResult fails. messageId={} holderId={} error={}", voteId, holderId, e.getMessage());
+            return;
+        }
+        try {
+            if (!ownerSignature.equals(AssetsHolder.EMPTY_SIGNATURE) &&
+                !cryptoHelper.verifySignature(serializedVote, ownerSignature, participantKeysById.get(result.getHolderId()))) {
+                log.error("handleVote. VOTE message {} has invalid owner signature. holderId={} result={}", voteId, holderId, result);
+                return;
+            }
+        } catch (GeneralSecurityException | UnsupportedEncodingException e) {
+            log.error("handleVote fails. messageId={} holderId={} error={}", voteId, holderId, e.getMessage());
         }
+        sendMessage(r -> r.addVoteToMaster(result, voteId, serializedVote, isCommitted, isSelf));
+        log.debug("VOTE handled  messageId={} holderId={}", voteId, holderId);
     }
 }
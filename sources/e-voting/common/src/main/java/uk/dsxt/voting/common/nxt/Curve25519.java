@@ -0,0 +1,312 @@
+package uk.dsxt.voting.common.nxt;
+
+import java.math.BigInteger;
+
+/**
+ * Constant time Curve25519 operations on secret scalars: Montgomery ladder over 16 limbs field elements and arithmetic
+ * modulo the group order (after TweetNaCl, public domain). No branch or memory access depends on secret values.
+ */
+final class Curve25519 {
+
+    private static final long[] A24 = {121665 & 0xFFFF, 121665 >> 16, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+
+    private static final long[] TWO_A = {(2 * 486662) & 0xFFFF, (2 * 486662) >> 16, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+
+    private static final long[] BASE_X = {9, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+
+    private static final long[] ORDER = {0xED, 0xD3, 0xF5, 0x5C, 0x1A, 0x63, 0x12, 0x58, 0xD6, 0x9C, 0xF7, 0xA2, 0xDE, 0xF9, 0xDE, 0x14,
+        0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0x10};
+
+    /**
+     * 2 * y of the base point, y as in NxtCrypto verification
+     */
+    private static final long[] BASE_TWO_Y;
+
+    static {
+        BigInteger p = BigInteger.ONE.shiftLeft(255).subtract(BigInteger.valueOf(19));
+        BigInteger y = p.subtract(new BigInteger("14781619447589544791020593568409986887264606134616475288964881837755586237401"));
+        BASE_TWO_Y = unpack(toBytes(y.shiftLeft(1).mod(p)));
+    }
+
+    private Curve25519() {
+    }
+
+    /**
+     * @param k clamped scalar
+     * @return x coordinate of k * G
+     */
+    static byte[] multiplyBase(byte[] k) {
+        long[][] ladder = ladder(k);
+        return pack(multiply(ladder[0], invert(ladder[1])));
+    }
+
+    /**
+     * @param k clamped scalar
+     * @return 1 if y coordinate of k * G is odd, 0 otherwise
+     */
+    static int baseMultipleYParity(byte[] k) {
+        long[][] ladder = ladder(k);
+        long[] x1 = ladder[0], z1 = ladder[1], x2 = ladder[2], z2 = ladder[3];
+        // Okeya-Sakurai recovery of y(kG) from x(kG) and x((k + 1)G), kept projective up to the single inversion
+        long[] z1x = multiply(z1, BASE_X);
+        long[] numerator = multiply(multiply(add(multiply(x1, BASE_X), z1), add(add(x1, z1x), multiply(TWO_A, z1))), z2);
+        long[] z1z1z2 = multiply(square(z1), z2);
+        numerator = subtract(numerator, multiply(TWO_A, z1z1z2));
+        numerator = subtract(numerator, multiply(square(subtract(x1, z1x)), x2));
+        long[] y = multiply(numerator, invert(multiply(BASE_TWO_Y, z1z1z2)));
+        return pack(y)[0] & 1;
+    }
+
+    /**
+     * @return (order - a) if negate is 1, a if negate is 0, both modulo order
+     */
+    static byte[] reduce(byte[] a, int negate) {
+        byte[] reduced = reduce(widen(a));
+        byte[] negated = new byte[32];
+        long borrow = 0;
+        for (int i = 0; i < 32; i++) {
+            long difference = ORDER[i] - (reduced[i] & 0xFF) - borrow;
+            negated[i] = (byte) difference;
+            borrow = (difference >> 8) & 1;
+        }
+        int mask = -negate;
+        for (int i = 0; i < 32; i++) {
+            reduced[i] ^= (reduced[i] ^ negated[i]) & mask;
+        }
+        return reduce(widen(reduced));
+    }
+
+    /**
+     * @return a^-1 modulo order as a^(order - 2)
+     */
+    static byte[] invertModOrder(byte[] a) {
+        byte[] exponent = new byte[32];
+        for (int i = 0; i < 32; i++) {
+            exponent[i] = (byte) ORDER[i];
+        }
+        exponent[0] -= 2;
+        byte[] result = new byte[32];
+        result[0] = 1;
+        for (int i = 252; i >= 0; i--) {
+            result = multiplyModOrder(result, result);
+            if (((exponent[i >> 3] >> (i & 7)) & 1) == 1)
+                result = multiplyModOrder(result, a);
+        }
+        return result;
+    }
+
+    /**
+     * @return (x - h) * s modulo order
+     */
+    static byte[] sign(byte[] h, byte[] x, byte[] s) {
+        byte[] negated = reduce(h, 1);
+        long[] sum = widen(x);
+        for (int i = 0; i < 32; i++) {
+            sum[i] += negated[i] & 0xFF;
+            sum[i + 1] += sum[i] >> 8;
+            sum[i] &= 255;
+        }
+        return multiplyModOrder(reduce(sum), s);
+    }
+
+    private static byte[] multiplyModOrder(byte[] a, byte[] b) {
+        long[] product = new long[64];
+        for (int i = 0; i < 32; i++) {
+            for (int j = 0; j < 32; j++) {
+                product[i + j] += (long) (a[i] & 0xFF) * (b[j] & 0xFF);
+            }
+        }
+        return reduce(product);
+    }
+
+    private static long[] widen(byte[] a) {
+        long[] wide = new long[64];
+        for (int i = 0; i < 32; i++) {
+            wide[i] = a[i] & 0xFF;
+        }
+        return wide;
+    }
+
+    /**
+     * reduces 64 limbs of 8 bits modulo order, x is overwritten
+     */
+    private static byte[] reduce(long[] x) {
+        long carry;
+        int i, j;
+        for (i = 63; i >= 32; i--) {
+            carry = 0;
+            for (j = i - 32; j < i - 12; j++) {
+                x[j] += carry - 16 * x[i] * ORDER[j - (i - 32)];
+                carry = (x[j] + 128) >> 8;
+                x[j] -= carry << 8;
+            }
+            x[j] += carry;
+            x[i] = 0;
+        }
+        carry = 0;
+        for (j = 0; j < 32; j++) {
+            x[j] += carry - (x[31] >> 4) * ORDER[j];
+            carry = x[j] >> 8;
+            x[j] &= 255;
+        }
+        for (j = 0; j < 32; j++) {
+            x[j] -= carry * ORDER[j];
+        }
+        byte[] result = new byte[32];
+        for (i = 0; i < 32; i++) {
+            x[i + 1] += x[i] >> 8;
+            result[i] = (byte) (x[i] & 255);
+        }
+        return result;
+    }
+
+    /**
+     * @return {x2, z2, x3, z3} of k * G and (k + 1) * G
+     */
+    private static long[][] ladder(byte[] k) {
+        long[] a = new long[16], b = BASE_X.clone(), c = new long[16], d = new long[16], e, f;
+        a[0] = 1;
+        d[0] = 1;
+        for (int i = 254; i >= 0; i--) {
+            int bit = (k[i >> 3] >> (i & 7)) & 1;
+            select(a, b, bit);
+            select(c, d, bit);
+            e = add(a, c);
+            a = subtract(a, c);
+            c = add(b, d);
+            b = subtract(b, d);
+            d = square(e);
+            f = square(a);
+            a = multiply(c, a);
+            c = multiply(b, e);
+            e = add(a, c);
+            a = subtract(a, c);
+            b = square(a);
+            c = subtract(d, f);
+            a = add(multiply(c, A24), d);
+            c = multiply(c, a);
+            a = multiply(d, f);
+            d = multiply(b, BASE_X);
+            b = square(e);
+            select(a, b, bit);
+            select(c, d, bit);
+        }
+        return new long[][]{a, c, b, d};
+    }
+
+    private static void carry(long[] o) {
+        for (int i = 0; i < 16; i++) {
+            o[i] += 1L << 16;
+            long c = o[i] >> 16;
+            if (i < 15)
+                o[i + 1] += c - 1;
+            else
+                o[0] += 38 * (c - 1);
+            o[i] -= c << 16;
+        }
+    }
+
+    /**
+     * swaps p and q if bit is 1 without branching
+     */
+    private static void select(long[] p, long[] q, int bit) {
+        long mask = ~(bit - 1L);
+        for (int i = 0; i < 16; i++) {
+            long t = mask & (p[i] ^ q[i]);
+            p[i] ^= t;
+            q[i] ^= t;
+        }
+    }
+
+    private static long[] add(long[] a, long[] b) {
+        long[] o = new long[16];
+        for (int i = 0; i < 16; i++) {
+            o[i] = a[i] + b[i];
+        }
+        return o;
+    }
+
+    private static long[] subtract(long[] a, long[] b) {
+        long[] o = new long[16];
+        for (int i = 0; i < 16; i++) {
+            o[i] = a[i] - b[i];
+        }
+        return o;
+    }
+
+    private static long[] multiply(long[] a, long[] b) {
+        long[] t = new long[31];
+        for (int i = 0; i < 16; i++) {
+            for (int j = 0; j < 16; j++) {
+                t[i + j] += a[i] * b[j];
+            }
+        }
+        for (int i = 0; i < 15; i++) {
+            t[i] += 38 * t[i + 16];
+        }
+        long[] o = new long[16];
+        System.arraycopy(t, 0, o, 0, 16);
+        carry(o);
+        carry(o);
+        return o;
+    }
+
+    private static long[] square(long[] a) {
+        return multiply(a, a);
+    }
+
+    /**
+     * a^(p - 2), the exponent is public
+     */
+    private static long[] invert(long[] a) {
+        long[] c = a.clone();
+        for (int i = 253; i >= 0; i--) {
+            c = square(c);
+            if (i != 2 && i != 4)
+                c = multiply(c, a);
+        }
+        return c;
+    }
+
+    private static byte[] pack(long[] n) {
+        long[] m = new long[16], t = n.clone();
+        carry(t);
+        carry(t);
+        carry(t);
+        for (int j = 0; j < 2; j++) {
+            m[0] = t[0] - 0xFFED;
+            for (int i = 1; i < 15; i++) {
+                m[i] = t[i] - 0xFFFF - ((m[i - 1] >> 16) & 1);
+                m[i - 1] &= 0xFFFF;
+            }
+            m[15] = t[15] - 0x7FFF - ((m[14] >> 16) & 1);
+            int borrow = (int) ((m[15] >> 16) & 1);
+            m[14] &= 0xFFFF;
+            select(t, m, 1 - borrow);
+        }
+        byte[] o = new byte[32];
+        for (int i = 0; i < 16; i++) {
+            o[2 * i] = (byte) t[i];
+            o[2 * i + 1] = (byte) (t[i] >> 8);
+        }
+        return o;
+    }
+
+    private static long[] unpack(byte[] n) {
+        long[] o = new long[16];
+        for (int i = 0; i < 16; i++) {
+            o[i] = (n[2 * i] & 0xFF) + ((long) (n[2 * i + 1] & 0xFF) << 8);
+        }
+        o[15] &= 0x7FFF;
+        return o;
+    }
+
+    private static byte[] toBytes(BigInteger value) {
+        byte[] bytes = new byte[32];
+        byte[] bigEndian = value.toByteArray();
+        for (int i = 0; i < 32 && i < bigEndian.length; i++) {
+            bytes[i] = bigEndian[bigEndian.length - 1 - i];
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,202 @@
+package uk.dsxt.voting.common.nxt;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.log4j.Log4j2;
+import uk.dsxt.voting.common.nxt.walletapi.WalletRequestType;
+import uk.dsxt.voting.common.utils.InternalLogicException;
+import uk.dsxt.voting.common.utils.web.PooledHttpClient;
+import uk.dsxt.voting.common.utils.web.RequestType;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * RPC layer over the NXT http api.
+ * Identical read requests in flight are executed once and share the response, responses marked as immutable by the caller
+ * (blocks, confirmed transactions) are cached by request. Count of simultaneous requests to the wallet is limited,
+ * requests over the limit wait in a queue.
+ */
+@Log4j2
+public class NxtApiClient {
+
+    private static final Set<WalletRequestType> WRITE_REQUESTS = EnumSet.of(WalletRequestType.SEND_MESSAGE, WalletRequestType.SEND_MONEY,
+        WalletRequestType.START_FORGING, WalletRequestType.BROADCAST_TRANSACTION);
+
+    private final PooledHttpClient httpClient;
+
+    private final ObjectMapper mapper;
+
+    private final String apiUrl;
+
+    private final Semaphore permits;
+
+    private final Map<String, CompletableFuture<Object>> inFlightRequests = new ConcurrentHashMap<>();
+
+    private final Map<String, Object> immutableResponses;
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong coalescedRequests = new AtomicLong();
+
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    private final AtomicInteger queueLength = new AtomicInteger();
+
+    private final AtomicInteger maxQueueLength = new AtomicInteger();
+
+    private final AtomicLong totalQueueNanos = new AtomicLong();
+
+    /**
+     * Reads the response directly from the parser positioned before the first token, without binding it to a full DTO.
+     */
+    public interface ResponseDecoder<T> {
+        T decode(JsonParser parser) throws IOException;
+    }
+
+    /**
+     * @param maxConcurrentRequests maximal count of requests executed by the wallet simultaneously
+     * @param cacheSize maximal count of cached immutable responses
+     */
+    public NxtApiClient(PooledHttpClient httpClient, ObjectMapper mapper, String apiUrl, int maxConcurrentRequests, int cacheSize) {
+        this.httpClient = httpClient;
+        this.mapper = mapper;
+        this.apiUrl = apiUrl;
+        permits = new Semaphore(Math.max(1, maxConcurrentRequests), true);
+        immutableResponses = Collections.synchronizedMap(new LinkedHashMap<String, Object>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                return size() > cacheSize;
+            }
+        });
+    }
+
+    public <T> T request(WalletRequestType type, Map<String, String> arguments, Class<T> tClass) throws IOException, InternalLogicException {
+        return request(type, arguments, tClass, null);
+    }
+
+    /**
+     * @param isImmutable returns true for responses which never change for the same request and can be cached, null - nothing is cached
+     * @return parsed response or null if the response can not be parsed
+     */
+    public <T> T request(WalletRequestType type, Map<String, String> arguments, Class<T> tClass, Predicate<T> isImmutable) throws IOException, InternalLogicException {
+        return request(type, arguments, tClass.getName(), parser -> mapper.readValue(parser, tClass), isImmutable);
+    }
+
+    /**
+     * Same as {@link #request(WalletRequestType, Map, Class, Predicate)}, but the response is read by the decoder.
+     * Requests with different decoders are neither coalesced nor share cached responses.
+     */
+    public <T> T request(WalletRequestType type, Map<String, String> arguments, ResponseDecoder<T> decoder, Predicate<T> isImmutable) throws IOException, InternalLogicException {
+        return request(type, arguments, decoder.getClass().getName(), decoder, isImmutable);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T request(WalletRequestType type, Map<String, String> arguments, String resultName, ResponseDecoder<T> decoder,
+                          Predicate<T> isImmutable) throws IOException, InternalLogicException {
+        if (WRITE_REQUESTS.contains(type))
+            return execute(type, arguments, decoder);
+
+        String key = String.format("%s%s:%s", type, arguments, resultName);
+        if (isImmutable != null) {
+            Object cached = immutableResponses.get(key);
+            if (cached != null) {
+                cacheHits.incrementAndGet();
+                return (T) cached;
+            }
+        }
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = inFlightRequests.putIfAbsent(key, future);
+        if (inFlight != null) {
+            coalescedRequests.incrementAndGet();
+            return (T) await(inFlight, type);
+        }
+        try {
+            T result = execute(type, arguments, decoder);
+            if (result != null && isImmutable != null && isImmutable.test(result))
+                immutableResponses.put(key, result);
+            future.complete(result);
+            return result;
+        } catch (IOException | InternalLogicException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightRequests.remove(key, future);
+        }
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getCoalescedRequests() {
+        return coalescedRequests.get();
+    }
+
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    public int getQueueLength() {
+        return queueLength.get();
+    }
+
+    public int getMaxQueueLength() {
+        return maxQueueLength.get();
+    }
+
+    public long getTotalQueueMillis() {
+        return totalQueueNanos.get() / 1000000;
+    }
+
+    private Object await(CompletableFuture<Object> future, WalletRequestType type) throws IOException, InternalLogicException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.format("%s interrupted", type));
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            if (cause instanceof InternalLogicException)
+                throw (InternalLogicException) cause;
+            throw (RuntimeException) cause;
+        }
+    }
+
+    private <T> T execute(WalletRequestType type, Map<String, String> arguments, ResponseDecoder<T> decoder) throws IOException, InternalLogicException {
+        long start = System.nanoTime();
+        maxQueueLength.accumulateAndGet(queueLength.incrementAndGet(), Math::max);
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.format("%s interrupted", type));
+        } finally {
+            queueLength.decrementAndGet();
+        }
+        totalQueueNanos.addAndGet(System.nanoTime() - start);
+        try {
+            requests.incrementAndGet();
+            return httpClient.request(apiUrl, arguments, RequestType.POST, in -> {
+                try (JsonParser parser = mapper.getFactory().createParser(in)) {
+                    return decoder.decode(parser);
+                } catch (JsonProcessingException e) {
+                    log.error("execute. Can't parse response of {}. Error message: {}", type, e.getMessage());
+                    return null;
+                }
+            });
+        } finally {
+            permits.release();
+        }
+    }
+}
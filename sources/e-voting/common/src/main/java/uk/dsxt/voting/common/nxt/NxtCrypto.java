@@ -0,0 +1,240 @@
+package uk.dsxt.voting.common.nxt;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * NXT account keys and transaction signatures (Curve25519 EC-KCDSA as used by the NXT wallet).
+ * Keys are derived once from the passphrase, signing does not use shared state and can be done from many threads.
+ * Operations on the passphrase derived secrets run in constant time in {@link Curve25519}, verification works only with public
+ * values and uses affine arithmetic.
+ */
+public class NxtCrypto {
+
+    private static final BigInteger P = BigInteger.ONE.shiftLeft(255).subtract(BigInteger.valueOf(19));
+
+    private static final BigInteger A = BigInteger.valueOf(486662);
+
+    private static final BigInteger TWO = BigInteger.valueOf(2);
+
+    private static final BigInteger THREE = BigInteger.valueOf(3);
+
+    private static final BigInteger SQRT_MINUS_ONE = TWO.modPow(P.subtract(BigInteger.ONE).shiftRight(2), P);
+
+    private static final BigInteger[] BASE = {BigInteger.valueOf(9), P.subtract(new BigInteger("14781619447589544791020593568409986887264606134616475288964881837755586237401"))};
+
+    private static final String RS_ALPHABET = "23456789ABCDEFGHJKLMNPQRSTUVWXYZ";
+
+    private static final int[] RS_CODEWORD_MAP = {3, 2, 1, 0, 7, 6, 5, 4, 13, 14, 15, 16, 12, 8, 9, 10, 11};
+
+    private static final int[] GF_EXP = {1, 2, 4, 8, 16, 5, 10, 20, 13, 26, 17, 7, 14, 28, 29, 31, 27, 19, 3, 6, 12, 24, 21, 15, 30, 25, 23, 11, 22, 9, 18, 1};
+
+    private static final int[] GF_LOG = new int[32];
+
+    static {
+        for (int i = 0; i < 31; i++) {
+            GF_LOG[GF_EXP[i]] = i;
+        }
+    }
+
+    private final byte[] publicKey;
+
+    private final byte[] signingKey;
+
+    public NxtCrypto(String secretPhrase) {
+        byte[] k = clamp(sha256(secretPhrase.getBytes(StandardCharsets.UTF_8)));
+        publicKey = Curve25519.multiplyBase(k);
+        // signing key s satisfies s * abs(publicKey) = G, where abs takes the point with even y
+        signingKey = Curve25519.invertModOrder(Curve25519.reduce(k, Curve25519.baseMultipleYParity(k)));
+    }
+
+    public byte[] getPublicKey() {
+        return publicKey.clone();
+    }
+
+    public long getAccountId() {
+        return getAccountId(publicKey);
+    }
+
+    /**
+     * @return 64 bytes signature of message
+     */
+    public byte[] sign(byte[] message) {
+        MessageDigest digest = sha256();
+        byte[] m = digest.digest(message);
+        digest.update(m);
+        byte[] x = clamp(digest.digest(signingKey));
+        byte[] y = Curve25519.multiplyBase(x);
+        digest.update(m);
+        byte[] h = digest.digest(y);
+        byte[] signature = new byte[64];
+        System.arraycopy(Curve25519.sign(h, x, signingKey), 0, signature, 0, 32);
+        System.arraycopy(h, 0, signature, 32, 32);
+        return signature;
+    }
+
+    public static boolean verify(byte[] signature, byte[] message, byte[] publicKey) {
+        BigInteger px = fromBytes(publicKey);
+        BigInteger py = sqrt(px.pow(3).add(A.multiply(px.pow(2))).add(px).mod(P));
+        if (py == null)
+            return false;
+        if (py.testBit(0))
+            py = P.subtract(py);
+        BigInteger[] y = add(multiply(fromBytes(Arrays.copyOfRange(signature, 0, 32)), new BigInteger[]{px, py}),
+            multiply(fromBytes(Arrays.copyOfRange(signature, 32, 64)), BASE));
+        if (y == null)
+            return false;
+        MessageDigest digest = sha256();
+        digest.update(digest.digest(message));
+        return Arrays.equals(digest.digest(toBytes(y[0])), Arrays.copyOfRange(signature, 32, 64));
+    }
+
+    public static long getAccountId(byte[] publicKey) {
+        return idFromHash(sha256().digest(publicKey));
+    }
+
+    /**
+     * @return transaction id: first 8 bytes of hash as little-endian long
+     */
+    public static long idFromHash(byte[] hash) {
+        long id = 0;
+        for (int i = 7; i >= 0; i--) {
+            id = (id << 8) | (hash[i] & 0xFF);
+        }
+        return id;
+    }
+
+    /**
+     * @param address account in Reed-Solomon format NXT-XXXX-XXXX-XXXX-XXXXX or numeric id
+     */
+    public static long parseAccountId(String address) {
+        if (!address.toUpperCase().startsWith("NXT-"))
+            return Long.parseUnsignedLong(address);
+        String code = address.substring(4).replace("-", "").toUpperCase();
+        if (code.length() != RS_CODEWORD_MAP.length)
+            throw new IllegalArgumentException(String.format("Invalid account %s", address));
+        int[] codeword = new int[RS_CODEWORD_MAP.length];
+        for (int i = 0; i < code.length(); i++) {
+            int index = RS_ALPHABET.indexOf(code.charAt(i));
+            if (index < 0)
+                throw new IllegalArgumentException(String.format("Invalid account %s", address));
+            codeword[RS_CODEWORD_MAP[i]] = index;
+        }
+        BigInteger id = BigInteger.ZERO;
+        for (int i = 12; i >= 0; i--) {
+            id = id.shiftLeft(5).add(BigInteger.valueOf(codeword[i]));
+        }
+        if (id.bitLength() > 64 || !toAddress(id.longValue()).equals("NXT-" + address.substring(4).toUpperCase()))
+            throw new IllegalArgumentException(String.format("Invalid account %s", address));
+        return id.longValue();
+    }
+
+    public static String toAddress(long accountId) {
+        int[] codeword = new int[RS_CODEWORD_MAP.length];
+        BigInteger id = new BigInteger(Long.toUnsignedString(accountId));
+        for (int i = 0; i < 13; i++) {
+            codeword[i] = id.intValue() & 31;
+            id = id.shiftRight(5);
+        }
+        int[] parity = new int[4];
+        for (int i = 12; i >= 0; i--) {
+            int feedback = codeword[i] ^ parity[3];
+            parity[3] = parity[2] ^ gfMultiply(30, feedback);
+            parity[2] = parity[1] ^ gfMultiply(6, feedback);
+            parity[1] = parity[0] ^ gfMultiply(9, feedback);
+            parity[0] = gfMultiply(17, feedback);
+        }
+        System.arraycopy(parity, 0, codeword, 13, 4);
+        StringBuilder address = new StringBuilder("NXT-");
+        for (int i = 0; i < RS_CODEWORD_MAP.length; i++) {
+            address.append(RS_ALPHABET.charAt(codeword[RS_CODEWORD_MAP[i]]));
+            if ((i & 3) == 3 && i < 13)
+                address.append('-');
+        }
+        return address.toString();
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] sha256(byte[] data) {
+        return sha256().digest(data);
+    }
+
+    private static int gfMultiply(int a, int b) {
+        if (a == 0 || b == 0)
+            return 0;
+        return GF_EXP[(GF_LOG[a] + GF_LOG[b]) % 31];
+    }
+
+    private static byte[] clamp(byte[] key) {
+        key[31] &= 0x7F;
+        key[31] |= 0x40;
+        key[0] &= 0xF8;
+        return key;
+    }
+
+    private static BigInteger fromBytes(byte[] bytes) {
+        byte[] reversed = new byte[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            reversed[i] = bytes[bytes.length - 1 - i];
+        }
+        return new BigInteger(1, reversed);
+    }
+
+    private static byte[] toBytes(BigInteger value) {
+        byte[] bytes = new byte[32];
+        byte[] bigEndian = value.toByteArray();
+        for (int i = 0; i < 32 && i < bigEndian.length; i++) {
+            bytes[i] = bigEndian[bigEndian.length - 1 - i];
+        }
+        return bytes;
+    }
+
+    private static BigInteger[] multiply(BigInteger k, BigInteger[] point) {
+        BigInteger[] result = null;
+        for (int i = k.bitLength() - 1; i >= 0; i--) {
+            result = add(result, result);
+            if (k.testBit(i))
+                result = add(result, point);
+        }
+        return result;
+    }
+
+    /**
+     * affine addition on y^2 = x^3 + A x^2 + x, null is the point at infinity
+     */
+    private static BigInteger[] add(BigInteger[] p1, BigInteger[] p2) {
+        if (p1 == null)
+            return p2;
+        if (p2 == null)
+            return p1;
+        BigInteger lambda;
+        if (p1[0].equals(p2[0])) {
+            if (!p1[1].equals(p2[1]) || p1[1].signum() == 0)
+                return null;
+            lambda = THREE.multiply(p1[0].pow(2)).add(TWO.multiply(A).multiply(p1[0])).add(BigInteger.ONE)
+                .multiply(TWO.multiply(p1[1]).modInverse(P)).mod(P);
+        } else {
+            lambda = p2[1].subtract(p1[1]).multiply(p2[0].subtract(p1[0]).modInverse(P)).mod(P);
+        }
+        BigInteger x = lambda.pow(2).subtract(A).subtract(p1[0]).subtract(p2[0]).mod(P);
+        BigInteger y = lambda.multiply(p1[0].subtract(x)).subtract(p1[1]).mod(P);
+        return new BigInteger[]{x, y};
+    }
+
+    private static BigInteger sqrt(BigInteger a) {
+        BigInteger root = a.modPow(P.add(THREE).shiftRight(3), P);
+        if (!root.multiply(root).mod(P).equals(a))
+            root = root.multiply(SQRT_MINUS_ONE).mod(P);
+        return root.multiply(root).mod(P).equals(a) ? root : null;
+    }
+}
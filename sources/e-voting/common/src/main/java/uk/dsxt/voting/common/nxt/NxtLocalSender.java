@@ -0,0 +1,293 @@
+package uk.dsxt.voting.common.nxt;
+
+import lombok.extern.log4j.Log4j2;
+import uk.dsxt.voting.common.nxt.walletapi.ECBlockResponse;
+import uk.dsxt.voting.common.nxt.walletapi.SendTransactionResponse;
+import uk.dsxt.voting.common.nxt.walletapi.WalletRequestType;
+
+import javax.xml.bind.DatatypeConverter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds and signs NXT arbitrary message transactions in the calling thread and broadcasts the signed bytes
+ * from a pool of broadcaster threads, so the wallet does not sign transactions itself.
+ * Transaction id is computed locally and returned before the broadcast; not broadcasted messages are resent by
+ * the caller as unconfirmed ones. The broadcast queue is bounded: when it is full the caller waits for free space
+ * and gets null if none appears in time.
+ */
+@Log4j2
+public class NxtLocalSender {
+
+    private static final byte TYPE_MESSAGING = 1;
+
+    private static final byte SUBTYPE_ARBITRARY_MESSAGE = 0;
+
+    private static final byte TRANSACTION_VERSION = 1;
+
+    private static final byte MESSAGE_VERSION = 1;
+
+    private static final int SIGNATURE_OFFSET = 96;
+
+    private static final int SIGNATURE_LENGTH = 64;
+
+    private static final int HEADER_LENGTH = 176;
+
+    private static final short DEADLINE = 60;
+
+    private static final int BROADCAST_ATTEMPTS = 3;
+
+    private static final long ENQUEUE_TIMEOUT = 10000;
+
+    private final NxtApiClient apiClient;
+
+    private final NxtCrypto crypto;
+
+    private final String secretPhrase;
+
+    private final long recipientId;
+
+    private final long ecBlockRefreshInterval;
+
+    private final BlockingQueue<byte[]> broadcastQueue;
+
+    private final ExecutorService broadcasters;
+
+    private final AtomicLong signedTransactions = new AtomicLong();
+
+    private final AtomicLong broadcastedTransactions = new AtomicLong();
+
+    private final AtomicLong failedBroadcasts = new AtomicLong();
+
+    private final AtomicLong rejectedTransactions = new AtomicLong();
+
+    private volatile ECBlock ecBlock;
+
+    private static class ECBlock {
+        final long id;
+        final int height;
+        final int timestamp;
+        final long loadedAt;
+
+        ECBlock(long id, int height, int timestamp, long loadedAt) {
+            this.id = id;
+            this.height = height;
+            this.timestamp = timestamp;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    /**
+     * @param recipient account receiving messages in Reed-Solomon or numeric format
+     * @param broadcastThreads count of threads sending signed transactions to the wallet
+     * @param broadcastQueueSize max count of signed transactions waiting for broadcast
+     * @param ecBlockRefreshInterval period in milliseconds of reloading the economic clustering block used in transactions
+     */
+    public NxtLocalSender(NxtApiClient apiClient, String secretPhrase, String recipient, int broadcastThreads, int broadcastQueueSize,
+                          long ecBlockRefreshInterval) {
+        this.apiClient = apiClient;
+        broadcastQueue = new ArrayBlockingQueue<>(Math.max(1, broadcastQueueSize));
+        this.secretPhrase = secretPhrase;
+        this.ecBlockRefreshInterval = ecBlockRefreshInterval;
+        crypto = new NxtCrypto(secretPhrase);
+        recipientId = NxtCrypto.parseAccountId(recipient);
+        broadcasters = Executors.newFixedThreadPool(Math.max(1, broadcastThreads), r -> {
+            Thread thread = new Thread(r, "nxt-broadcast");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < Math.max(1, broadcastThreads); i++) {
+            broadcasters.execute(this::broadcast);
+        }
+    }
+
+    /**
+     * Asks the wallet to build and sign a message without broadcasting and compares the result with the local one.
+     * @return true if locally built transactions are identical to the wallet's
+     */
+    public boolean selfCheck() {
+        try {
+            Map<String, String> arguments = new LinkedHashMap<>();
+            arguments.put("requestType", WalletRequestType.SEND_MESSAGE.toString());
+            arguments.put("secretPhrase", secretPhrase);
+            arguments.put("recipient", Long.toUnsignedString(recipientId));
+            arguments.put("feeNQT", "0");
+            arguments.put("message", "self-check");
+            arguments.put("deadline", Short.toString(DEADLINE));
+            arguments.put("broadcast", "false");
+            SendTransactionResponse response = apiClient.request(WalletRequestType.SEND_MESSAGE, arguments, SendTransactionResponse.class);
+            if (response == null || response.getUnsignedTransactionBytes() == null || response.getTransactionBytes() == null) {
+                log.error("selfCheck. wallet did not return transaction bytes");
+                return false;
+            }
+            ByteBuffer walletBytes = ByteBuffer.wrap(DatatypeConverter.parseHexBinary(response.getUnsignedTransactionBytes())).order(ByteOrder.LITTLE_ENDIAN);
+            byte[] unsigned = buildMessageTransaction(walletBytes.getInt(2), walletBytes.getInt(164), walletBytes.getLong(168),
+                "self-check".getBytes(StandardCharsets.UTF_8));
+            if (!Arrays.equals(unsigned, walletBytes.array())) {
+                log.error("selfCheck. local transaction bytes differ from wallet's. local={} wallet={}",
+                    DatatypeConverter.printHexBinary(unsigned), response.getUnsignedTransactionBytes());
+                return false;
+            }
+            byte[] signed = sign(unsigned);
+            if (!Arrays.equals(signed, DatatypeConverter.parseHexBinary(response.getTransactionBytes()))) {
+                log.error("selfCheck. local signature differs from wallet's");
+                return false;
+            }
+            if (response.getTransactionId() != null && !Long.toUnsignedString(getTransactionId(signed)).equals(response.getTransactionId())) {
+                log.error("selfCheck. local transaction id {} differs from wallet's {}", Long.toUnsignedString(getTransactionId(signed)), response.getTransactionId());
+                return false;
+            }
+            log.info("selfCheck. local signing is compatible with wallet. account={}", NxtCrypto.toAddress(crypto.getAccountId()));
+            return true;
+        } catch (Exception e) {
+            log.error("selfCheck failed. error={}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * @param body UTF-8 text of the message
+     * @return id of signed transaction or null if the economic clustering block is not available or the broadcast queue
+     * stays full
+     */
+    public String sendMessage(byte[] body) {
+        ECBlock block = getECBlock();
+        if (block == null)
+            return null;
+        int timestamp = block.timestamp + (int) ((System.currentTimeMillis() - block.loadedAt) / 1000);
+        byte[] transaction = sign(buildMessageTransaction(timestamp, block.height, block.id, body));
+        signedTransactions.incrementAndGet();
+        try {
+            if (!broadcastQueue.offer(transaction, ENQUEUE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                rejectedTransactions.incrementAndGet();
+                log.warn("sendMessage. broadcast queue is full. queueSize={} rejected={}", broadcastQueue.size(), rejectedTransactions.get());
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        return Long.toString(getTransactionId(transaction));
+    }
+
+    public long getSignedTransactions() {
+        return signedTransactions.get();
+    }
+
+    public long getBroadcastedTransactions() {
+        return broadcastedTransactions.get();
+    }
+
+    public long getFailedBroadcasts() {
+        return failedBroadcasts.get();
+    }
+
+    public long getRejectedTransactions() {
+        return rejectedTransactions.get();
+    }
+
+    public int getBroadcastQueueSize() {
+        return broadcastQueue.size();
+    }
+
+    public void stop() {
+        broadcasters.shutdownNow();
+    }
+
+    byte[] buildMessageTransaction(int timestamp, int ecBlockHeight, long ecBlockId, byte[] message) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_LENGTH + 1 + Integer.BYTES + message.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(TYPE_MESSAGING);
+        buffer.put((byte) ((TRANSACTION_VERSION << 4) | SUBTYPE_ARBITRARY_MESSAGE));
+        buffer.putInt(timestamp);
+        buffer.putShort(DEADLINE);
+        buffer.put(crypto.getPublicKey());
+        buffer.putLong(recipientId);
+        buffer.putLong(0);
+        buffer.putLong(0);
+        buffer.put(new byte[32]);
+        buffer.put(new byte[SIGNATURE_LENGTH]);
+        buffer.putInt(1);
+        buffer.putInt(ecBlockHeight);
+        buffer.putLong(ecBlockId);
+        buffer.put(MESSAGE_VERSION);
+        buffer.putInt(message.length | Integer.MIN_VALUE);
+        buffer.put(message);
+        return buffer.array();
+    }
+
+    byte[] sign(byte[] unsigned) {
+        byte[] signed = unsigned.clone();
+        System.arraycopy(crypto.sign(unsigned), 0, signed, SIGNATURE_OFFSET, SIGNATURE_LENGTH);
+        return signed;
+    }
+
+    static long getTransactionId(byte[] signed) {
+        byte[] unsigned = signed.clone();
+        Arrays.fill(unsigned, SIGNATURE_OFFSET, SIGNATURE_OFFSET + SIGNATURE_LENGTH, (byte) 0);
+        MessageDigest digest = NxtCrypto.sha256();
+        byte[] signatureHash = digest.digest(Arrays.copyOfRange(signed, SIGNATURE_OFFSET, SIGNATURE_OFFSET + SIGNATURE_LENGTH));
+        digest.update(unsigned);
+        return NxtCrypto.idFromHash(digest.digest(signatureHash));
+    }
+
+    private ECBlock getECBlock() {
+        ECBlock block = ecBlock;
+        if (block != null && System.currentTimeMillis() - block.loadedAt < ecBlockRefreshInterval)
+            return block;
+        try {
+            Map<String, String> arguments = new LinkedHashMap<>();
+            arguments.put("requestType", WalletRequestType.GET_EC_BLOCK.toString());
+            ECBlockResponse response = apiClient.request(WalletRequestType.GET_EC_BLOCK, arguments, ECBlockResponse.class);
+            if (response != null && response.getEcBlockId() != null)
+                ecBlock = block = new ECBlock(Long.parseUnsignedLong(response.getEcBlockId()), response.getEcBlockHeight(), response.getTimestamp(),
+                    System.currentTimeMillis());
+            else
+                log.error("getECBlock. wallet returned no block. error={}", response == null ? null : response.getErrorDescription());
+        } catch (Exception e) {
+            log.error("getECBlock failed. error={}", e.getMessage());
+        }
+        return block;
+    }
+
+    private void broadcast() {
+        List<byte[]> batch = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(broadcastQueue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            broadcastQueue.drainTo(batch, 100);
+            for (byte[] transaction : batch) {
+                broadcast(transaction);
+            }
+            log.debug("broadcast. {} transactions sent. queueSize={} signed={} broadcasted={} failed={}",
+                batch.size(), broadcastQueue.size(), signedTransactions.get(), broadcastedTransactions.get(), failedBroadcasts.get());
+            batch.clear();
+        }
+    }
+
+    private void broadcast(byte[] transaction) {
+        Map<String, String> arguments = new LinkedHashMap<>();
+        arguments.put("requestType", WalletRequestType.BROADCAST_TRANSACTION.toString());
+        arguments.put("transactionBytes", DatatypeConverter.printHexBinary(transaction).toLowerCase());
+        for (int attempt = 1; attempt <= BROADCAST_ATTEMPTS; attempt++) {
+            try {
+                SendTransactionResponse response = apiClient.request(WalletRequestType.BROADCAST_TRANSACTION, arguments, SendTransactionResponse.class);
+                if (response != null && response.getTransactionId() != null) {
+                    broadcastedTransactions.incrementAndGet();
+                    return;
+                }
+                log.warn("broadcast. wallet rejected transaction {}. attempt={}", Long.toUnsignedString(getTransactionId(transaction)), attempt);
+            } catch (Exception e) {
+                log.warn("broadcast failed. transaction={} attempt={} error={}", Long.toUnsignedString(getTransactionId(transaction)), attempt, e.getMessage());
+            }
+        }
+        failedBroadcasts.incrementAndGet();
+    }
+}
@@ -10,15 +10,15 @@ import uk.dsxt.voting.common.messaging.Message;
 import uk.dsxt.voting.common.networking.WalletManager;
 import uk.dsxt.voting.common.nxt.walletapi.*;
 import uk.dsxt.voting.common.utils.PropertiesHelper;
-import uk.dsxt.voting.common.utils.web.HttpHelper;
-import uk.dsxt.voting.common.utils.web.RequestType;
+import uk.dsxt.voting.common.utils.web.PooledHttpClient;
 
 import java.io.File;
 import java.io.FileOutputStream;
-import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 @Log4j2
@@ -29,21 +29,28 @@ public class NxtWalletManager implements WalletManager {
     private final ObjectMapper mapper;
     private final String mainAddress;
     private final String port;
-    private final HttpHelper httpHelper;
+    private final NxtApiClient apiClient;
     private final List<String> javaOptions = new ArrayList<>();
 
     private final String passphrase;
     private final String name;
     private final String nxtPropertiesPath;
     private final boolean useUncommittedTransactions;
+    private final boolean useLocalSigning;
+    private final int broadcastThreads;
+    private final int broadcastQueueSize;
+    private final long ecBlockRefreshInterval;
+    private final int unconfirmedFetchLimit;
 
     private String accountId;
     private String selfAccount;
     private Process nxtProcess;
     private boolean isInitialized = false;
+    private volatile NxtLocalSender localSender;
+    private volatile boolean unconfirmedIdsSupported = true;
 
-    private Set<String> loadedTransactions = new HashSet<>();
-    private Set<String> loadedBlocks = new HashSet<>();
+    private final TransactionTracker transactionTracker;
+    private final Set<String> loadedBlocks = ConcurrentHashMap.newKeySet();
 
     public NxtWalletManager(Properties properties, String nxtPropertiesPath, String name, String mainAddress, String passphrase, 
                             int connectionTimeout, int readTimeout) {
@@ -52,6 +59,12 @@ public class NxtWalletManager implements WalletManager {
         this.mainAddress = mainAddress;
         this.passphrase = passphrase;
         this.useUncommittedTransactions = Boolean.valueOf(properties.getProperty("nxt.useUncommittedTransactions", Boolean.FALSE.toString()));
+        this.useLocalSigning = Boolean.valueOf(properties.getProperty("nxt.local_signing", Boolean.FALSE.toString()));
+        this.broadcastThreads = Integer.parseInt(properties.getProperty("nxt.broadcast.threads", "4"));
+        this.broadcastQueueSize = Integer.parseInt(properties.getProperty("nxt.broadcast.queue_size", "10000"));
+        this.ecBlockRefreshInterval = Integer.parseInt(properties.getProperty("nxt.ec_block.refresh_interval", "1000"));
+        this.unconfirmedFetchLimit = Integer.parseInt(properties.getProperty("nxt.unconfirmed.fetch_limit", "100"));
+        transactionTracker = new TransactionTracker(Long.parseLong(properties.getProperty("nxt.unconfirmed.ttl", "3600000")));
         workingDir = new File(System.getProperty("user.dir"));
         log.info("Working directory (user.dir): {}", workingDir.getAbsolutePath());
 
@@ -65,14 +78,16 @@ public class NxtWalletManager implements WalletManager {
             }
         }
 
-        httpHelper = new HttpHelper(connectionTimeout, readTimeout);
-
         mapper = new ObjectMapper();
         mapper.setNodeFactory(JsonNodeFactory.withExactBigDecimals(true));
         mapper.enable(SerializationFeature.INDENT_OUTPUT);
 
         Properties nxtProperties = PropertiesHelper.loadPropertiesFromPath(nxtPropertiesPath);
         port = properties.getProperty("nxt.apiServerPort");
+        int maxConcurrentRequests = Integer.parseInt(properties.getProperty("nxt.api.max_concurrent_requests", "8"));
+        int cacheSize = Integer.parseInt(properties.getProperty("nxt.api.cache_size", "10000"));
+        apiClient = new NxtApiClient(new PooledHttpClient(connectionTimeout, readTimeout, maxConcurrentRequests), mapper,
+            String.format("http://localhost:%s/nxt", port), maxConcurrentRequests, cacheSize);
         nxtProperties.setProperty("nxt.peerServerPort", properties.getProperty("nxt.peerServerPort"));
         nxtProperties.setProperty("nxt.apiServerPort", port);
         nxtProperties.setProperty("nxt.dbDir", properties.getProperty("nxt.dbDir"));
@@ -99,21 +114,29 @@ public class NxtWalletManager implements WalletManager {
     }
 
     private <T> T sendApiRequest(WalletRequestType type, Consumer<Map<String, String>> argumentsBuilder, Class<T> tClass) {
+        return sendApiRequest(type, argumentsBuilder, tClass, null);
+    }
+
+    private <T> T sendApiRequest(WalletRequestType type, Consumer<Map<String, String>> argumentsBuilder, Class<T> tClass, Predicate<T> isImmutable) {
+        return sendApiRequest(type, argumentsBuilder, (arguments, predicate) -> apiClient.request(type, arguments, tClass, predicate), isImmutable);
+    }
+
+    private <T> T sendApiRequest(WalletRequestType type, Consumer<Map<String, String>> argumentsBuilder, NxtApiClient.ResponseDecoder<T> decoder, Predicate<T> isImmutable) {
+        return sendApiRequest(type, argumentsBuilder, (arguments, predicate) -> apiClient.request(type, arguments, decoder, predicate), isImmutable);
+    }
+
+    private interface ApiCall<T> {
+        T execute(Map<String, String> arguments, Predicate<T> isImmutable) throws Exception;
+    }
+
+    private <T> T sendApiRequest(WalletRequestType type, Consumer<Map<String, String>> argumentsBuilder, ApiCall<T> call, Predicate<T> isImmutable) {
         try {
             if (type != WalletRequestType.GET_ACCOUNT_ID)
                 waitInitialize();
             Map<String, String> arguments = new LinkedHashMap<>();
             arguments.put("requestType", type.toString());
             argumentsBuilder.accept(arguments);
-            String response = httpHelper.request(String.format("http://localhost:%s/nxt", port), arguments, RequestType.POST);
-            T result = null;
-            try {
-                result = mapper.readValue(response, tClass);
-            } catch (IOException e) {
-                if (isInitialized)
-                    log.error("Wallet {}. Can't parse response: {}. Error message: {}", name, response, e.getMessage());
-            }
-            return result;
+            return call.execute(arguments, isImmutable);
         } catch (Exception e) {
             if (isInitialized)
                 log.error("Wallet {}. Method {} failed. Error message {}", name, type, e.getMessage());
@@ -151,6 +174,8 @@ public class NxtWalletManager implements WalletManager {
     @Override
     public void stop() {
         isInitialized = false;
+        if (localSender != null)
+            localSender.stop();
         try {
             if (nxtProcess.isAlive())
                 nxtProcess.destroyForcibly();
@@ -162,6 +187,9 @@ public class NxtWalletManager implements WalletManager {
 
     @Override
     public String sendMessage(byte[] body) {
+        NxtLocalSender sender = localSender;
+        if (sender != null)
+            return sender.sendMessage(body);
         return sendMessage(mainAddress, body, passphrase);
     }
 
@@ -184,7 +212,14 @@ public class NxtWalletManager implements WalletManager {
         List<Message> confirmedMessages = getConfirmedMessages();
         List<Message> unconfirmedMessages = useUncommittedTransactions ? getUnconfirmedMessages() : null;
         log.debug("getNewMessages confirmed={} unconfirmed={}", 
-            confirmedMessages == null ? "null" : Integer.toString(confirmedMessages.size()), unconfirmedMessages == null ? "null" : Integer.toString(unconfirmedMessages.size()) );        
+            confirmedMessages == null ? "null" : Integer.toString(confirmedMessages.size()), unconfirmedMessages == null ? "null" : Integer.toString(unconfirmedMessages.size()) );
+        log.debug("getNewMessages. api requests={} coalesced={} cacheHits={} queueLength={} maxQueueLength={} totalQueueMillis={}", apiClient.getRequests(),
+            apiClient.getCoalescedRequests(), apiClient.getCacheHits(), apiClient.getQueueLength(), apiClient.getMaxQueueLength(), apiClient.getTotalQueueMillis());
+        if (useUncommittedTransactions) {
+            log.debug("getNewMessages. pool={} provisional={} promoted={} expired={} avgLag={} maxLag={}", transactionTracker.getPoolSize(),
+                transactionTracker.getProvisionalCount(), transactionTracker.getPromotedCount(), transactionTracker.getExpiredCount(),
+                transactionTracker.getAveragePromotionLag(), transactionTracker.getMaxPromotionLag());
+        }
         if (confirmedMessages != null) {
             resultIds.addAll(confirmedMessages.stream().map(Message::getId).collect(Collectors.toList()));
             confirmedMessages.stream().forEach(result::add);
@@ -202,40 +237,44 @@ public class NxtWalletManager implements WalletManager {
         List<Message> result = new ArrayList<>();
         for(String blockId = statusResult.getLastBlock(); blockId != null && !loadedBlocks.contains(blockId);) {
             final String currentBlock = blockId;
-            BlockResponse blockResponse = sendApiRequest(WalletRequestType.GET_BLOCK, keyToValue -> {
+            BlockTransactions blockResponse = sendApiRequest(WalletRequestType.GET_BLOCK, keyToValue -> {
                 keyToValue.put("block", currentBlock);
                 keyToValue.put("timestamp", "0");
-            }, BlockResponse.class);
+            }, WalletResponseDecoders.BLOCK, block -> true);
             if (blockResponse == null)
                 break;
             boolean breakOnTransaction = false;
-            int allCnt = 0, dupCnt = 0, loadedCnt = 0, otherCnt = 0;
+            int allCnt = 0, dupCnt = 0, loadedCnt = 0, otherCnt = 0, promotedCnt = 0;
+            long now = System.currentTimeMillis();
             for(String transactionId : blockResponse.getTransactions()) {
                 allCnt++;
-                if (!loadedTransactions.contains(transactionId)) {
-                    Transaction transaction = sendApiRequest(WalletRequestType.GET_TRANSACTION, keyToValue -> {
+                if (transactionTracker.promote(transactionId, now)) {
+                    promotedCnt++;
+                } else if (!transactionTracker.isCommitted(transactionId)) {
+                    MessageTransaction transaction = sendApiRequest(WalletRequestType.GET_TRANSACTION, keyToValue -> {
                         keyToValue.put("transaction", transactionId);
-                    }, Transaction.class);
+                    }, WalletResponseDecoders.TRANSACTION, t -> t.getBlock() != null);
                     if (transaction == null) {
                         breakOnTransaction = true;
                         log.warn("break on transaction {} in block {}", getNxtId(transactionId), getNxtId(blockId));
                         break;
                     }
-                    if (transaction.getAttachment() != null && transaction.getAttachment().isMessageIsText()) {
-                        result.add(new Message(getNxtId(transactionId), transaction.getAttachment().getMessage().getBytes(StandardCharsets.UTF_8), true));
+                    if (transaction.isMessageIsText() && transaction.getMessage() != null) {
+                        result.add(new Message(getNxtId(transactionId), transaction.getMessage().getBytes(StandardCharsets.UTF_8), true));
                         loadedCnt++;
                     } else {
                         log.debug("transaction without message {} in block {} at {} type {}", 
                             getNxtId(transactionId), getNxtId(blockId), new Instant(transaction.getTimestamp()* 1000L), transaction.getType());
                         otherCnt++;
                     }
-                    loadedTransactions.add(transactionId);
+                    transactionTracker.addCommitted(transactionId);
                 } else
                     dupCnt++;
             }
             if (!breakOnTransaction) {
                 loadedBlocks.add(blockId);
-                log.debug("getConfirmedMessages all {} duplicates {} loaded {} other {} transactions from block {}", allCnt, dupCnt, loadedCnt, otherCnt, getNxtId(blockId));                
+                log.debug("getConfirmedMessages all {} duplicates {} promoted {} loaded {} other {} transactions from block {}",
+                    allCnt, dupCnt, promotedCnt, loadedCnt, otherCnt, getNxtId(blockId));
             }
             blockId = blockResponse.getPreviousBlock();
         }
@@ -243,19 +282,62 @@ public class NxtWalletManager implements WalletManager {
     }
 
     private List<Message> getUnconfirmedMessages() {
-        UnconfirmedTransactionsResponse result = sendApiRequest(WalletRequestType.GET_UNCONFIRMED_TRANSACTIONS,
-            keyToValue -> keyToValue.put("account", mainAddress), UnconfirmedTransactionsResponse.class);
-        if (result == null)
+        long now = System.currentTimeMillis();
+        transactionTracker.expire(now);
+        if (!unconfirmedIdsSupported)
+            return getUnconfirmedMessagesFromPool(now);
+        UnconfirmedTransactionIdsResponse idsResponse = sendApiRequest(WalletRequestType.GET_UNCONFIRMED_TRANSACTION_IDS,
+            keyToValue -> keyToValue.put("account", mainAddress), UnconfirmedTransactionIdsResponse.class);
+        if (idsResponse == null)
             return null;
-        try {
-            return Arrays.asList(result.getUnconfirmedTransactions()).stream().
-                filter(t -> t.getAttachment() != null && t.getAttachment().isMessageIsText() && loadedTransactions.add(t.getTransaction())).
-                map(t -> new Message(getNxtId(t.getTransaction()), t.getAttachment().getMessage().getBytes(StandardCharsets.UTF_8), false)).
-                collect(Collectors.toList());
-        } catch (Exception e) {
-            log.error("getUnconfirmedMessages failed. Message: {}", e.getMessage());
+        if (idsResponse.getErrorCode() != 0 || idsResponse.getUnconfirmedTransactionIds() == null) {
+            log.warn("getUnconfirmedMessages. {} is not supported by wallet ({}), full unconfirmed pool is loaded instead",
+                WalletRequestType.GET_UNCONFIRMED_TRANSACTION_IDS, idsResponse.getErrorDescription());
+            unconfirmedIdsSupported = false;
+            return getUnconfirmedMessagesFromPool(now);
+        }
+        String[] ids = idsResponse.getUnconfirmedTransactionIds();
+        transactionTracker.setPoolSize(ids.length);
+        List<String> newIds = new ArrayList<>();
+        for (String id : ids) {
+            if (!transactionTracker.isKnown(id))
+                newIds.add(id);
+        }
+        if (newIds.isEmpty())
+            return Collections.emptyList();
+        if (newIds.size() > unconfirmedFetchLimit)
+            return getUnconfirmedMessagesFromPool(now);
+        List<Message> result = new ArrayList<>();
+        for (String transactionId : newIds) {
+            MessageTransaction transaction = sendApiRequest(WalletRequestType.GET_TRANSACTION, keyToValue -> {
+                keyToValue.put("transaction", transactionId);
+            }, WalletResponseDecoders.TRANSACTION, t -> t.getBlock() != null);
+            // already in a block or gone from the pool: the confirmed path or the next poll takes care of it
+            if (transaction == null || transaction.getBlock() != null)
+                continue;
+            addUnconfirmedMessage(transactionId, transaction, now, result);
+        }
+        return result;
+    }
+
+    private List<Message> getUnconfirmedMessagesFromPool(long now) {
+        List<MessageTransaction> transactions = sendApiRequest(WalletRequestType.GET_UNCONFIRMED_TRANSACTIONS,
+            keyToValue -> keyToValue.put("account", mainAddress), WalletResponseDecoders.UNCONFIRMED_TRANSACTIONS, null);
+        if (transactions == null)
             return null;
+        transactionTracker.setPoolSize(transactions.size());
+        List<Message> result = new ArrayList<>();
+        for (MessageTransaction transaction : transactions) {
+            addUnconfirmedMessage(transaction.getTransaction(), transaction, now, result);
         }
+        return result;
+    }
+
+    private void addUnconfirmedMessage(String transactionId, MessageTransaction transaction, long now, List<Message> result) {
+        if (!transactionTracker.addProvisional(transactionId, now))
+            return;
+        if (transaction.isMessageIsText() && transaction.getMessage() != null)
+            result.add(new Message(getNxtId(transactionId), transaction.getMessage().getBytes(StandardCharsets.UTF_8), false));
     }
 
     private boolean startForging() {
@@ -292,6 +374,15 @@ public class NxtWalletManager implements WalletManager {
         while (!startForging() && !Thread.currentThread().isInterrupted()) {
             sleep(100);
         }
+        if (useLocalSigning && localSender == null) {
+            NxtLocalSender sender = new NxtLocalSender(apiClient, passphrase, mainAddress, broadcastThreads, broadcastQueueSize, ecBlockRefreshInterval);
+            if (sender.selfCheck()) {
+                localSender = sender;
+            } else {
+                sender.stop();
+                log.error("waitInitialize. local signing is not compatible with wallet, messages are signed by wallet");
+            }
+        }
         log.info("waitInitialize. finished.");
         isInitialized = true;
     }
@@ -0,0 +1,135 @@
+package uk.dsxt.voting.common.nxt;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers which transactions were already delivered, either provisionally from the unconfirmed pool or from a block.
+ * Provisional entries are promoted to committed when their block arrives, so the transaction is not loaded and
+ * delivered again, and expire after {@code provisionalTtl} if they never make it into a block.
+ */
+public class TransactionTracker {
+
+    private final long provisionalTtl;
+
+    private final Set<String> committed = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<String, Long> provisional = new ConcurrentHashMap<>();
+    private final Queue<SeenTransaction> provisionalOrder = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong promotedCount = new AtomicLong();
+    private final AtomicLong expiredCount = new AtomicLong();
+    private final AtomicLong totalPromotionLag = new AtomicLong();
+    private final AtomicLong maxPromotionLag = new AtomicLong();
+    private volatile int poolSize;
+
+    private static class SeenTransaction {
+        final String id;
+        final long timestamp;
+
+        SeenTransaction(String id, long timestamp) {
+            this.id = id;
+            this.timestamp = timestamp;
+        }
+    }
+
+    public TransactionTracker(long provisionalTtl) {
+        this.provisionalTtl = provisionalTtl;
+    }
+
+    public boolean isKnown(String transactionId) {
+        return committed.contains(transactionId) || provisional.containsKey(transactionId);
+    }
+
+    public boolean isCommitted(String transactionId) {
+        return committed.contains(transactionId);
+    }
+
+    /**
+     * @return true if the transaction was not seen before and should be delivered as uncommitted
+     */
+    public boolean addProvisional(String transactionId, long now) {
+        if (committed.contains(transactionId) || provisional.putIfAbsent(transactionId, now) != null)
+            return false;
+        if (committed.contains(transactionId)) {
+            provisional.remove(transactionId);
+            return false;
+        }
+        provisionalOrder.add(new SeenTransaction(transactionId, now));
+        return true;
+    }
+
+    /**
+     * Moves a provisionally delivered transaction to committed.
+     * @return true if the transaction was delivered from the unconfirmed pool and needs no further processing
+     */
+    public boolean promote(String transactionId, long now) {
+        Long firstSeen = provisional.get(transactionId);
+        if (firstSeen == null)
+            return false;
+        committed.add(transactionId);
+        if (!provisional.remove(transactionId, firstSeen))
+            return true;
+        long lag = Math.max(0, now - firstSeen);
+        promotedCount.incrementAndGet();
+        totalPromotionLag.addAndGet(lag);
+        maxPromotionLag.accumulateAndGet(lag, Math::max);
+        return true;
+    }
+
+    public void addCommitted(String transactionId) {
+        committed.add(transactionId);
+        provisional.remove(transactionId);
+    }
+
+    /**
+     * Forgets provisional transactions which stayed unconfirmed longer than the ttl, e.g. dropped from the pool.
+     * @return count of expired transactions
+     */
+    public int expire(long now) {
+        int count = 0;
+        SeenTransaction head;
+        while ((head = provisionalOrder.peek()) != null && head.timestamp + provisionalTtl <= now) {
+            if (provisionalOrder.remove(head) && provisional.remove(head.id, head.timestamp))
+                count++;
+        }
+        expiredCount.addAndGet(count);
+        return count;
+    }
+
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public int getProvisionalCount() {
+        return provisional.size();
+    }
+
+    public int getCommittedCount() {
+        return committed.size();
+    }
+
+    public long getPromotedCount() {
+        return promotedCount.get();
+    }
+
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    public long getMaxPromotionLag() {
+        return maxPromotionLag.get();
+    }
+
+    public long getAveragePromotionLag() {
+        long promoted = promotedCount.get();
+        return promoted == 0 ? 0 : totalPromotionLag.get() / promoted;
+    }
+}
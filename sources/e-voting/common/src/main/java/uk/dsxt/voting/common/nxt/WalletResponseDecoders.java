@@ -0,0 +1,161 @@
+package uk.dsxt.voting.common.nxt;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import uk.dsxt.voting.common.nxt.walletapi.BlockTransactions;
+import uk.dsxt.voting.common.nxt.walletapi.MessageTransaction;
+import uk.dsxt.voting.common.nxt.walletapi.WalletApiException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming decoders of the wallet responses read while polling for messages.
+ * Only the fields used to deliver messages are read, all other values are skipped by the parser without building
+ * strings, numbers or nested objects for them.
+ * A response with an error code is reported by {@link WalletApiException}.
+ */
+public final class WalletResponseDecoders {
+
+    public static final NxtApiClient.ResponseDecoder<MessageTransaction> TRANSACTION = WalletResponseDecoders::readTransactionResponse;
+
+    public static final NxtApiClient.ResponseDecoder<BlockTransactions> BLOCK = WalletResponseDecoders::readBlockResponse;
+
+    public static final NxtApiClient.ResponseDecoder<List<MessageTransaction>> UNCONFIRMED_TRANSACTIONS = WalletResponseDecoders::readUnconfirmedTransactionsResponse;
+
+    private WalletResponseDecoders() {
+    }
+
+    private static MessageTransaction readTransactionResponse(JsonParser parser) throws IOException {
+        startResponse(parser);
+        ErrorFields error = new ErrorFields();
+        MessageTransaction transaction = readTransaction(parser, error);
+        error.check();
+        return transaction;
+    }
+
+    private static BlockTransactions readBlockResponse(JsonParser parser) throws IOException {
+        startResponse(parser);
+        ErrorFields error = new ErrorFields();
+        String block = null, previousBlock = null;
+        int timestamp = 0;
+        List<String> transactions = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "block":
+                    block = parser.getValueAsString();
+                    break;
+                case "previousBlock":
+                    previousBlock = parser.getValueAsString();
+                    break;
+                case "timestamp":
+                    timestamp = parser.getValueAsInt();
+                    break;
+                case "transactions":
+                    if (token == JsonToken.START_ARRAY) {
+                        while (parser.nextToken() != JsonToken.END_ARRAY) {
+                            transactions.add(parser.getValueAsString());
+                        }
+                    }
+                    break;
+                default:
+                    if (!error.read(field, parser))
+                        parser.skipChildren();
+            }
+        }
+        error.check();
+        return new BlockTransactions(block, previousBlock, timestamp, transactions.toArray(new String[transactions.size()]));
+    }
+
+    private static List<MessageTransaction> readUnconfirmedTransactionsResponse(JsonParser parser) throws IOException {
+        startResponse(parser);
+        ErrorFields error = new ErrorFields();
+        List<MessageTransaction> transactions = new ArrayList<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            if ("unconfirmedTransactions".equals(field) && token == JsonToken.START_ARRAY) {
+                while (parser.nextToken() == JsonToken.START_OBJECT) {
+                    transactions.add(readTransaction(parser, null));
+                }
+            } else if (!error.read(field, parser)) {
+                parser.skipChildren();
+            }
+        }
+        error.check();
+        return transactions;
+    }
+
+    private static MessageTransaction readTransaction(JsonParser parser, ErrorFields error) throws IOException {
+        String transaction = null, block = null, message = null;
+        int type = 0, timestamp = 0;
+        boolean messageIsText = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken token = parser.nextToken();
+            switch (field) {
+                case "transaction":
+                    transaction = parser.getValueAsString();
+                    break;
+                case "block":
+                    block = parser.getValueAsString();
+                    break;
+                case "type":
+                    type = parser.getValueAsInt();
+                    break;
+                case "timestamp":
+                    timestamp = parser.getValueAsInt();
+                    break;
+                case "attachment":
+                    if (token != JsonToken.START_OBJECT)
+                        break;
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String attachmentField = parser.getCurrentName();
+                        parser.nextToken();
+                        if ("messageIsText".equals(attachmentField))
+                            messageIsText = parser.getValueAsBoolean();
+                        else if ("message".equals(attachmentField))
+                            message = parser.getValueAsString();
+                        else
+                            parser.skipChildren();
+                    }
+                    break;
+                default:
+                    if (error == null || !error.read(field, parser))
+                        parser.skipChildren();
+            }
+        }
+        return new MessageTransaction(transaction, block, type, timestamp, messageIsText, message);
+    }
+
+    private static void startResponse(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT)
+            throw new JsonParseException("Wallet response is not an object", parser.getCurrentLocation());
+    }
+
+    private static class ErrorFields {
+        int errorCode;
+        String errorDescription;
+
+        boolean read(String field, JsonParser parser) throws IOException {
+            if ("errorCode".equals(field)) {
+                errorCode = parser.getValueAsInt();
+                return true;
+            }
+            if ("errorDescription".equals(field)) {
+                errorDescription = parser.getValueAsString();
+                return true;
+            }
+            return false;
+        }
+
+        void check() {
+            if (errorCode != 0)
+                throw new WalletApiException(String.format("Wallet error %d: %s", errorCode, errorDescription));
+        }
+    }
+}
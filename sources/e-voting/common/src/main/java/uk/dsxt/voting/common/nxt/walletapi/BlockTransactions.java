@@ -0,0 +1,14 @@
+package uk.dsxt.voting.common.nxt.walletapi;
+
+import lombok.Value;
+
+/**
+ * Fields of a block which are needed to walk the chain, see {@link uk.dsxt.voting.common.nxt.WalletResponseDecoders}.
+ */
+@Value
+public class BlockTransactions {
+    String block;
+    String previousBlock;
+    int timestamp;
+    String[] transactions;
+}
@@ -0,0 +1,26 @@
+package uk.dsxt.voting.common.nxt.walletapi;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.EqualsAndHashCode;
+import lombok.Value;
+
+@Value
+@EqualsAndHashCode(callSuper=false)
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ECBlockResponse extends BaseWalletResponse {
+    String ecBlockId;
+    int ecBlockHeight;
+    int timestamp;
+
+    @JsonCreator
+    public ECBlockResponse(@JsonProperty("ecBlockId") String ecBlockId, @JsonProperty("ecBlockHeight") int ecBlockHeight,
+                           @JsonProperty("timestamp") int timestamp, @JsonProperty("requestProcessingTime") int requestProcessingTime,
+                           @JsonProperty("errorDescription") String errorDescription, @JsonProperty("errorCode") int errorCode) {
+        super(errorDescription, errorCode, requestProcessingTime);
+        this.ecBlockId = ecBlockId;
+        this.ecBlockHeight = ecBlockHeight;
+        this.timestamp = timestamp;
+    }
+}
@@ -0,0 +1,16 @@
+package uk.dsxt.voting.common.nxt.walletapi;
+
+import lombok.Value;
+
+/**
+ * Fields of a transaction which are needed to deliver its message, see {@link uk.dsxt.voting.common.nxt.WalletResponseDecoders}.
+ */
+@Value
+public class MessageTransaction {
+    String transaction;
+    String block;
+    int type;
+    int timestamp;
+    boolean messageIsText;
+    String message;
+}
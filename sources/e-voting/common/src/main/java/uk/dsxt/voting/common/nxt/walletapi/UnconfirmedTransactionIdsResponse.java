@@ -0,0 +1,22 @@
+package uk.dsxt.voting.common.nxt.walletapi;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.EqualsAndHashCode;
+import lombok.Value;
+
+@Value
+@EqualsAndHashCode(callSuper=false)
+public class UnconfirmedTransactionIdsResponse extends BaseWalletResponse {
+
+    String[] unconfirmedTransactionIds;
+
+    @JsonCreator
+    protected UnconfirmedTransactionIdsResponse(@JsonProperty("unconfirmedTransactionIds") String[] unconfirmedTransactionIds,
+                                                @JsonProperty("errorDescription") String errorDescription,
+                                                @JsonProperty("errorCode") int errorCode,
+                                                @JsonProperty("requestProcessingTime") int requestProcessingTime) {
+        super(errorDescription, errorCode, requestProcessingTime);
+        this.unconfirmedTransactionIds = unconfirmedTransactionIds;
+    }
+}
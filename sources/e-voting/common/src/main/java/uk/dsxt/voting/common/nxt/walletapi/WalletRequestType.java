@@ -5,6 +5,7 @@ public enum WalletRequestType {
     GET_BALANCE ("getBalance"),
     GET_ACCOUNT_ID ("getAccountId"),
     GET_UNCONFIRMED_TRANSACTIONS("getUnconfirmedTransactions"),
+    GET_UNCONFIRMED_TRANSACTION_IDS("getUnconfirmedTransactionIds"),
     GET_BLOCKCHAIN_TRANSACTIONS ("getBlockchainTransactions"),
     GET_BLOCKCHAIN_STATUS("getBlockchainStatus"),
     SEND_MESSAGE("sendMessage"),
@@ -12,7 +13,9 @@ public enum WalletRequestType {
     SEND_MONEY("sendMoney"),
     GET_TRANSACTION("getTransaction"),
     START_FORGING("startForging"),
-    GET_BLOCK("getBlock");
+    GET_BLOCK("getBlock"),
+    GET_EC_BLOCK("getECBlock"),
+    BROADCAST_TRANSACTION("broadcastTransaction");
 
     private final String strValue;
 
@@ -0,0 +1,58 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common.registries;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Value;
+import uk.dsxt.voting.common.domain.dataModel.Participant;
+
+/**
+ * Changes of the participant list between two versions. Full delta replaces the whole list and is sent when the
+ * requested version is unknown to the server (another epoch or older than the kept history), otherwise the delta
+ * applies only to the list with baseEtag.
+ */
+@Value
+public class ParticipantDelta {
+    String epoch;
+    long fromVersion;
+    long version;
+    String baseEtag;
+    String etag;
+    boolean full;
+    Participant[] changed;
+    String[] removed;
+
+    @JsonCreator
+    public ParticipantDelta(@JsonProperty("epoch") String epoch, @JsonProperty("fromVersion") long fromVersion, @JsonProperty("version") long version,
+                            @JsonProperty("baseEtag") String baseEtag, @JsonProperty("etag") String etag, @JsonProperty("full") boolean full,
+                            @JsonProperty("changed") Participant[] changed, @JsonProperty("removed") String[] removed) {
+        this.epoch = epoch;
+        this.fromVersion = fromVersion;
+        this.version = version;
+        this.baseEtag = baseEtag;
+        this.etag = etag;
+        this.full = full;
+        this.changed = changed;
+        this.removed = removed;
+    }
+}
@@ -0,0 +1,200 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common.registries;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Value;
+import lombok.extern.log4j.Log4j2;
+import uk.dsxt.voting.common.domain.dataModel.Participant;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Versioned participant list of the registries server. Every update which changes the list gets the next version,
+ * changes of the last historySize versions are kept to answer delta requests. Responses are serialized once per version
+ * (deltas once per requested version) in plain and gzip form, so a fleet of nodes syncing at once costs no re-serialization.
+ */
+@Log4j2
+public class ParticipantRegistry {
+
+    private static final String FULL_DELTA_KEY = "full";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final String epoch;
+
+    private final int historySize;
+
+    private volatile State state;
+
+    @Value
+    public static class EncodedBody {
+        String etag;
+        byte[] plain;
+        byte[] gzip;
+    }
+
+    @Value
+    private static class Change {
+        long version;
+        String baseEtag;
+        Map<String, Participant> changed;
+        Set<String> removed;
+    }
+
+    private static class State {
+        final ParticipantSnapshot snapshot;
+        final Map<String, Participant> participantsById;
+        final List<Change> history;
+        final ConcurrentMap<String, EncodedBody> encoded = new ConcurrentHashMap<>();
+
+        State(ParticipantSnapshot snapshot, Map<String, Participant> participantsById, List<Change> history) {
+            this.snapshot = snapshot;
+            this.participantsById = participantsById;
+            this.history = history;
+        }
+    }
+
+    public ParticipantRegistry(Participant[] participants, int historySize) {
+        this(Long.toString(System.currentTimeMillis(), 36), participants, historySize);
+    }
+
+    public ParticipantRegistry(String epoch, Participant[] participants, int historySize) {
+        this.epoch = epoch;
+        this.historySize = historySize;
+        Map<String, Participant> participantsById = new LinkedHashMap<>();
+        for (Participant participant : participants) {
+            participantsById.put(participant.getId(), participant);
+        }
+        state = new State(new ParticipantSnapshot(epoch, 1, ParticipantSnapshot.digest(participants), participants), participantsById, Collections.emptyList());
+    }
+
+    /**
+     * Replaces the participant list, the version is incremented only if the list content changed.
+     * @return true if the list changed
+     */
+    public synchronized boolean update(Participant[] participants) {
+        State current = state;
+        String etag = ParticipantSnapshot.digest(participants);
+        if (etag.equals(current.snapshot.getEtag()))
+            return false;
+        Map<String, Participant> participantsById = new LinkedHashMap<>();
+        Map<String, Participant> changed = new HashMap<>();
+        for (Participant participant : participants) {
+            participantsById.put(participant.getId(), participant);
+            if (!participant.equals(current.participantsById.get(participant.getId())))
+                changed.put(participant.getId(), participant);
+        }
+        Set<String> removed = new HashSet<>(current.participantsById.keySet());
+        removed.removeAll(participantsById.keySet());
+
+        long version = current.snapshot.getVersion() + 1;
+        List<Change> history = new ArrayList<>(current.history);
+        history.add(new Change(version, current.snapshot.getEtag(), changed, removed));
+        if (history.size() > historySize)
+            history = new ArrayList<>(history.subList(history.size() - historySize, history.size()));
+        state = new State(new ParticipantSnapshot(epoch, version, etag, participants), participantsById, history);
+        log.info("update. Participants changed. version={} count={} changed={} removed={}", version, participants.length, changed.size(), removed.size());
+        return true;
+    }
+
+    public ParticipantSnapshot getSnapshot() {
+        return state.snapshot;
+    }
+
+    /**
+     * @return changes since the given version or full list if the version is unknown, empty delta if the list with
+     * fromEtag equals the current one (e.g. the server restarted with the same participants)
+     */
+    public ParticipantDelta getDelta(String fromEpoch, long fromVersion, String fromEtag) {
+        return getDelta(state, fromEpoch, fromVersion, fromEtag);
+    }
+
+    private ParticipantDelta getDelta(State current, String fromEpoch, long fromVersion, String fromEtag) {
+        ParticipantSnapshot snapshot = current.snapshot;
+        if (snapshot.getEtag().equals(fromEtag))
+            return new ParticipantDelta(epoch, fromVersion, snapshot.getVersion(), fromEtag, snapshot.getEtag(), false, new Participant[0], new String[0]);
+        int first = current.history.isEmpty() ? -1 : (int) (fromVersion + 1 - current.history.get(0).getVersion());
+        if (!epoch.equals(fromEpoch) || fromVersion >= snapshot.getVersion() || first < 0 || !current.history.get(first).getBaseEtag().equals(fromEtag))
+            return new ParticipantDelta(epoch, fromVersion, snapshot.getVersion(), null, snapshot.getEtag(), true, snapshot.getParticipants(), new String[0]);
+
+        Map<String, Participant> changed = new LinkedHashMap<>();
+        Set<String> removed = new TreeSet<>();
+        for (Change change : current.history.subList(first, current.history.size())) {
+            for (String id : change.getRemoved()) {
+                changed.remove(id);
+                removed.add(id);
+            }
+            for (Participant participant : change.getChanged().values()) {
+                changed.put(participant.getId(), participant);
+                removed.remove(participant.getId());
+            }
+        }
+        return new ParticipantDelta(epoch, fromVersion, snapshot.getVersion(), fromEtag, snapshot.getEtag(), false,
+            changed.values().toArray(new Participant[changed.size()]), removed.toArray(new String[removed.size()]));
+    }
+
+    public EncodedBody getEncodedParticipants() {
+        State current = state;
+        return current.encoded.computeIfAbsent("participants", key -> encode(current.snapshot.getEtag(), current.snapshot.getParticipants()));
+    }
+
+    public EncodedBody getEncodedSnapshot() {
+        State current = state;
+        return current.encoded.computeIfAbsent("snapshot", key -> encode(current.snapshot.getEtag(), current.snapshot));
+    }
+
+    /**
+     * @return encoded delta, null if the caller already has the current version
+     */
+    public EncodedBody getEncodedDelta(String fromEpoch, long fromVersion, String fromEtag) {
+        State current = state;
+        if (epoch.equals(fromEpoch) && fromVersion == current.snapshot.getVersion() && current.snapshot.getEtag().equals(fromEtag))
+            return null;
+        ParticipantDelta delta = getDelta(current, fromEpoch, fromVersion, fromEtag);
+        if (delta.isFull())
+            return current.encoded.computeIfAbsent(FULL_DELTA_KEY, key -> encode(delta.getEtag(), delta));
+        if (delta.getChanged().length == 0 && delta.getRemoved().length == 0)
+            return encode(delta.getEtag(), delta);
+        // keys of partial deltas are limited by the history size, the epoch and base etag are already checked
+        return current.encoded.computeIfAbsent(Long.toString(fromVersion), key -> encode(delta.getEtag(), delta));
+    }
+
+    private EncodedBody encode(String etag, Object value) {
+        try {
+            byte[] plain = mapper.writeValueAsBytes(value);
+            ByteArrayOutputStream gzip = new ByteArrayOutputStream(plain.length / 4 + 64);
+            try (GZIPOutputStream out = new GZIPOutputStream(gzip)) {
+                out.write(plain);
+            }
+            return new EncodedBody(etag, plain, gzip.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
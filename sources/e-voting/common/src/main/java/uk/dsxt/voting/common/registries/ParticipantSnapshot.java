@@ -0,0 +1,94 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common.registries;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Value;
+import uk.dsxt.voting.common.domain.dataModel.Participant;
+import uk.dsxt.voting.common.utils.InternalLogicException;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Participant list of the registries server at some version. Version numbers are valid only within one epoch
+ * (one run of the server), etag is a digest of the list content and does not depend on the order of participants.
+ */
+@Value
+public class ParticipantSnapshot {
+    String epoch;
+    long version;
+    String etag;
+    Participant[] participants;
+
+    @JsonCreator
+    public ParticipantSnapshot(@JsonProperty("epoch") String epoch, @JsonProperty("version") long version,
+                               @JsonProperty("etag") String etag, @JsonProperty("participants") Participant[] participants) {
+        this.epoch = epoch;
+        this.version = version;
+        this.etag = etag;
+        this.participants = participants;
+    }
+
+    /**
+     * @return snapshot with the delta applied, unchanged participants keep their positions and new ones are appended
+     * @throws InternalLogicException if the delta does not start at this snapshot or the result does not match the delta etag
+     */
+    public ParticipantSnapshot apply(ParticipantDelta delta) throws InternalLogicException {
+        Map<String, Participant> participantsById = new LinkedHashMap<>();
+        if (!delta.isFull()) {
+            if (!etag.equals(delta.getBaseEtag()))
+                throw new InternalLogicException(String.format("apply failed. delta from %s can not be applied to %s", delta.getBaseEtag(), etag));
+            for (Participant participant : participants) {
+                participantsById.put(participant.getId(), participant);
+            }
+            for (String id : delta.getRemoved()) {
+                participantsById.remove(id);
+            }
+        }
+        for (Participant participant : delta.getChanged()) {
+            participantsById.put(participant.getId(), participant);
+        }
+        Participant[] result = participantsById.values().toArray(new Participant[participantsById.size()]);
+        String resultEtag = digest(result);
+        if (!resultEtag.equals(delta.getEtag()))
+            throw new InternalLogicException(String.format("apply failed. etag %s of the result differs from delta etag %s", resultEtag, delta.getEtag()));
+        return new ParticipantSnapshot(delta.getEpoch(), delta.getVersion(), resultEtag, result);
+    }
+
+    public static String digest(Participant[] participants) {
+        Participant[] sorted = participants.clone();
+        Arrays.sort(sorted, Comparator.comparing(Participant::getId));
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (Participant participant : sorted) {
+                digest.update(String.format("%s\n%s\n%s\n", participant.getId(), participant.getName(), participant.getPublicKey()).getBytes(StandardCharsets.UTF_8));
+            }
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+}
@@ -22,19 +22,37 @@
 package uk.dsxt.voting.common.registries;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.Value;
 import lombok.extern.log4j.Log4j2;
 import uk.dsxt.voting.common.domain.dataModel.Participant;
-import uk.dsxt.voting.common.utils.web.HttpHelper;
+import uk.dsxt.voting.common.utils.web.PooledHttpClient;
 import uk.dsxt.voting.common.utils.InternalLogicException;
 import uk.dsxt.voting.common.utils.web.RequestType;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.net.ConnectException;
+import java.net.URLEncoder;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
 
+/**
+ * Loads participants from the registries server. The last snapshot is kept in memory and, if cacheFilePath is set,
+ * in a local file, so after a restart only changes since the cached version are requested (usually 304 Not Modified).
+ * If the server is unavailable the cached snapshot is used after a few attempts.
+ */
 @Log4j2
-@Value
 public class RegistriesServerWeb implements RegistriesServer {
-    private static final String PARTICIPANTS_URL_PART = "/participants";
+    private static final String SNAPSHOT_URL_PART = "/participants/snapshot";
+    private static final String DELTA_URL_PART = "/participants/delta";
+
+    private static final int RETRY_DELAY = 1000;
+    private static final int CACHED_ATTEMPTS = 3;
+
+    private static final Map<String, String> HEADERS = Collections.singletonMap("Accept-Encoding", PooledHttpClient.GZIP_ENCODING);
 
     public static final String EMPTY_ERROR = "Empty answer";
     public static final String INTERNAL_LOGIC_ERROR = "Internal logic exception";
@@ -42,42 +60,123 @@ public class RegistriesServerWeb implements RegistriesServer {
 
     private final ObjectMapper mapper = new ObjectMapper();
 
-    private final HttpHelper httpHelper;
+    private final PooledHttpClient httpClient;
+
+    private final String snapshotUrl;
+
+    private final String deltaUrl;
 
-    private final String participantUrl;
+    private final File cacheFile;
+
+    private final Random random = new Random();
+
+    private ParticipantSnapshot snapshot;
 
     public RegistriesServerWeb(String baseUrl, int connectionTimeout, int readTimeout) {
-        participantUrl = String.format("%s%s", baseUrl, PARTICIPANTS_URL_PART);
+        this(baseUrl, connectionTimeout, readTimeout, null);
+    }
 
-        httpHelper = new HttpHelper(connectionTimeout, readTimeout);
+    public RegistriesServerWeb(String baseUrl, int connectionTimeout, int readTimeout, String cacheFilePath) {
+        snapshotUrl = String.format("%s%s", baseUrl, SNAPSHOT_URL_PART);
+        deltaUrl = String.format("%s%s", baseUrl, DELTA_URL_PART);
+        cacheFile = cacheFilePath == null || cacheFilePath.isEmpty() ? null : new File(cacheFilePath);
+
+        httpClient = new PooledHttpClient(connectionTimeout, readTimeout);
     }
 
-    private <T> T execute(String name, String url, Class<T> clazz) {
+    @Override
+    public synchronized Participant[] getParticipants() {
+        if (snapshot == null)
+            snapshot = loadCache();
         try {
-            while (!Thread.currentThread().isInterrupted()) {
+            for (int attempt = 1; !Thread.currentThread().isInterrupted(); attempt++) {
                 try {
-                    String answer = httpHelper.request(url, RequestType.GET);
-                    T value = mapper.readValue(answer, clazz);
-                    if (value != null)
-                        return value;
-                    log.error("{} failed. value is null. url={}", name, url);
+                    ParticipantSnapshot updated = snapshot == null ? download() : synchronize(snapshot);
+                    if (updated != null) {
+                        if (updated != snapshot)
+                            saveCache(updated);
+                        snapshot = updated;
+                        return snapshot.getParticipants();
+                    }
+                    log.error("getParticipants failed. value is null. url={}", snapshotUrl);
                 } catch (InternalLogicException e) {
-                    log.error("{} failed. Logic exception. url={}. Reason: {}", name, url, e.getMessage());
+                    log.error("getParticipants failed. Logic exception. url={}. Reason: {}", snapshotUrl, e.getMessage());
                 } catch (ConnectException connEx) {
-                    log.error("{} failed. Couldn't establish connection. url={}. Reason: {}", name, url, connEx.getMessage());
+                    log.error("getParticipants failed. Couldn't establish connection. url={}. Reason: {}", snapshotUrl, connEx.getMessage());
                 } catch (Exception ex) {
-                    log.error(String.format("%s failed. url=%s", name, url), ex);
+                    log.error(String.format("getParticipants failed. url=%s", snapshotUrl), ex);
+                }
+                if (snapshot != null && attempt >= CACHED_ATTEMPTS) {
+                    log.warn("getParticipants. Registries server is unavailable, cached participants are used. version={} etag={}",
+                        snapshot.getVersion(), snapshot.getEtag());
+                    return snapshot.getParticipants();
                 }
-                Thread.sleep(1000);
+                // random part spreads retries of nodes started at the same time
+                Thread.sleep(RETRY_DELAY + random.nextInt(RETRY_DELAY));
             }
         } catch (InterruptedException e) {
-            log.error("{} failed. InterruptedException. url={}", name, url);
+            log.error("getParticipants failed. InterruptedException. url={}", snapshotUrl);
+        }
+        return snapshot == null ? null : snapshot.getParticipants();
+    }
+
+    private ParticipantSnapshot download() throws IOException, InternalLogicException {
+        ParticipantSnapshot downloaded = httpClient.request(snapshotUrl, RequestType.GET, HEADERS, in -> mapper.readValue(in, ParticipantSnapshot.class));
+        if (downloaded != null && !ParticipantSnapshot.digest(downloaded.getParticipants()).equals(downloaded.getEtag()))
+            throw new InternalLogicException(String.format("download failed. participants do not match etag %s", downloaded.getEtag()));
+        if (downloaded != null)
+            log.info("download. Participants snapshot loaded. version={} count={}", downloaded.getVersion(), downloaded.getParticipants().length);
+        return downloaded;
+    }
+
+    private ParticipantSnapshot synchronize(ParticipantSnapshot cached) throws IOException, InternalLogicException {
+        String url = String.format("%s?epoch=%s&version=%d&etag=%s", deltaUrl, encode(cached.getEpoch()), cached.getVersion(), encode(cached.getEtag()));
+        ParticipantDelta delta = httpClient.request(url, RequestType.GET, HEADERS, in -> mapper.readValue(in, ParticipantDelta.class));
+        if (delta == null)
+            return cached;
+        try {
+            ParticipantSnapshot updated = cached.apply(delta);
+            log.info("synchronize. Participants updated. version={} full={} changed={} removed={}",
+                updated.getVersion(), delta.isFull(), delta.getChanged().length, delta.getRemoved().length);
+            return updated;
+        } catch (InternalLogicException e) {
+            log.warn("synchronize. Delta can not be applied, loading snapshot. Reason: {}", e.getMessage());
+            return download();
+        }
+    }
+
+    private ParticipantSnapshot loadCache() {
+        if (cacheFile == null || !cacheFile.exists())
+            return null;
+        try {
+            ParticipantSnapshot cached = mapper.readValue(cacheFile, ParticipantSnapshot.class);
+            if (cached.getParticipants() != null && ParticipantSnapshot.digest(cached.getParticipants()).equals(cached.getEtag()))
+                return cached;
+            log.warn("loadCache. Cached participants do not match etag, ignored. file={}", cacheFile);
+        } catch (IOException e) {
+            log.warn("loadCache. Cached participants can not be read. file={} error={}", cacheFile, e.getMessage());
         }
         return null;
     }
 
-    @Override
-    public Participant[] getParticipants() {
-        return execute("getParticipants", participantUrl, Participant[].class);
+    private void saveCache(ParticipantSnapshot updated) {
+        if (cacheFile == null)
+            return;
+        File tmp = null;
+        try {
+            File directory = cacheFile.getAbsoluteFile().getParentFile();
+            directory.mkdirs();
+            tmp = File.createTempFile(cacheFile.getName(), ".tmp", directory);
+            mapper.writeValue(tmp, updated);
+            Files.move(tmp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            if (tmp != null)
+                tmp.delete();
+            log.warn("saveCache. Participants can not be cached. file={} error={}", cacheFile, e.getMessage());
+        }
+    }
+
+    private static String encode(String value) throws UnsupportedEncodingException {
+        return URLEncoder.encode(value, "UTF-8");
     }
 }
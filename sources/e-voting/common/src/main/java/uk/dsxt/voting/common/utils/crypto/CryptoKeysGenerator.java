@@ -27,6 +27,7 @@ import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.Arrays;
 import java.util.Base64;
+import java.util.stream.IntStream;
 
 public class CryptoKeysGenerator {
 
@@ -47,6 +48,25 @@ public class CryptoKeysGenerator {
         return keys;
     }
 
+    /**
+     * Generates keys on the common fork-join pool, key generation is CPU bound and independent for every pair.
+     */
+    public KeyPair[] generateKeysParallel(int count) throws Exception {
+        KeyPair[] keys = new KeyPair[count];
+        try {
+            IntStream.range(0, count).parallel().forEach(i -> {
+                try {
+                    keys[i] = generateKeyPair();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } catch (IllegalStateException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+        return keys;
+    }
+
     public KeyPair generateKeyPair() throws Exception {
         final KeyPairGenerator keyGen = KeyPairGenerator.getInstance(algorithm);
         keyGen.initialize(keyLength);
@@ -0,0 +1,114 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common.utils.crypto;
+
+import uk.dsxt.voting.common.metrics.LatencyHistogram;
+import uk.dsxt.voting.common.metrics.MetricsRegistry;
+
+import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+
+/**
+ * Records the time of every crypto operation of the wrapped helper in crypto_seconds{op=...} histograms.
+ */
+public class MeteredCryptoHelper implements CryptoHelper {
+
+    private final CryptoHelper cryptoHelper;
+
+    private final LatencyHistogram signTime;
+    private final LatencyHistogram verifyTime;
+    private final LatencyHistogram encryptTime;
+    private final LatencyHistogram decryptTime;
+    private final LatencyHistogram digestTime;
+
+    public MeteredCryptoHelper(CryptoHelper cryptoHelper, MetricsRegistry registry) {
+        this.cryptoHelper = cryptoHelper;
+        signTime = registry.histogram("crypto_seconds", "op", "sign");
+        verifyTime = registry.histogram("crypto_seconds", "op", "verify");
+        encryptTime = registry.histogram("crypto_seconds", "op", "encrypt");
+        decryptTime = registry.histogram("crypto_seconds", "op", "decrypt");
+        digestTime = registry.histogram("crypto_seconds", "op", "digest");
+    }
+
+    @Override
+    public PrivateKey loadPrivateKey(String key64) throws GeneralSecurityException {
+        return cryptoHelper.loadPrivateKey(key64);
+    }
+
+    @Override
+    public PublicKey loadPublicKey(String stored) throws GeneralSecurityException {
+        return cryptoHelper.loadPublicKey(stored);
+    }
+
+    @Override
+    public String createSignature(String originalText, PrivateKey privateKey) throws GeneralSecurityException, UnsupportedEncodingException {
+        long start = System.nanoTime();
+        try {
+            return cryptoHelper.createSignature(originalText, privateKey);
+        } finally {
+            signTime.recordSince(start);
+        }
+    }
+
+    @Override
+    public boolean verifySignature(String originalText, String signature, PublicKey publicKey) throws GeneralSecurityException, UnsupportedEncodingException {
+        long start = System.nanoTime();
+        try {
+            return cryptoHelper.verifySignature(originalText, signature, publicKey);
+        } finally {
+            verifyTime.recordSince(start);
+        }
+    }
+
+    @Override
+    public String encrypt(String text, PublicKey key) throws GeneralSecurityException, UnsupportedEncodingException {
+        long start = System.nanoTime();
+        try {
+            return cryptoHelper.encrypt(text, key);
+        } finally {
+            encryptTime.recordSince(start);
+        }
+    }
+
+    @Override
+    public String decrypt(String cipherText, PrivateKey key) throws GeneralSecurityException, UnsupportedEncodingException {
+        long start = System.nanoTime();
+        try {
+            return cryptoHelper.decrypt(cipherText, key);
+        } finally {
+            decryptTime.recordSince(start);
+        }
+    }
+
+    @Override
+    public String getDigest(String text) throws NoSuchAlgorithmException {
+        long start = System.nanoTime();
+        try {
+            return cryptoHelper.getDigest(text);
+        } finally {
+            digestTime.recordSince(start);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common.utils.crypto;
+
+import lombok.extern.log4j.Log4j2;
+import uk.dsxt.voting.common.domain.dataModel.Participant;
+
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Public keys of participants by participant id, decoded from their stored form on first use.
+ * Decoded keys are kept in a bounded LRU cache split into stripes, so lookups from many threads do not contend on one lock
+ * and a registry of millions of participants does not need all its keys in memory. Participants with invalid keys are
+ * logged once and treated as participants without a key.
+ * The store is read-only: {@link #get} is cheap, iteration decodes every key.
+ */
+@Log4j2
+public class ParticipantKeyStore extends AbstractMap<String, PublicKey> {
+
+    private static final int STRIPES_COUNT = 64;
+
+    private final CryptoHelper cryptoHelper;
+
+    private final Map<String, String> storedKeysById = new HashMap<>();
+
+    private final Set<String> invalidIds = ConcurrentHashMap.newKeySet();
+
+    private final List<Stripe> stripes = new ArrayList<>(STRIPES_COUNT);
+
+    private final int stripeCapacity;
+
+    /**
+     * @param cacheSize maximal count of decoded keys kept in memory, 0 - all keys are kept
+     */
+    public ParticipantKeyStore(CryptoHelper cryptoHelper, Collection<Participant> participants, int cacheSize) {
+        this.cryptoHelper = cryptoHelper;
+        for (Participant participant : participants) {
+            if (participant.getPublicKey() != null && !participant.getPublicKey().isEmpty())
+                storedKeysById.put(participant.getId(), participant.getPublicKey());
+        }
+        stripeCapacity = cacheSize <= 0 ? Integer.MAX_VALUE : Math.max(1, cacheSize / STRIPES_COUNT);
+        for (int i = 0; i < STRIPES_COUNT; i++) {
+            stripes.add(new Stripe(stripeCapacity));
+        }
+    }
+
+    private static class Stripe extends LinkedHashMap<String, PublicKey> {
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+
+        Stripe(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PublicKey> eldest) {
+            return size() > capacity;
+        }
+    }
+
+    private Stripe getStripe(String id) {
+        int hash = id.hashCode();
+        return stripes.get((hash ^ (hash >>> 16)) & (STRIPES_COUNT - 1));
+    }
+
+    /**
+     * Decodes keys of all participants, or as many as the cache size, with {@code threadsCount} threads.
+     * @return count of decoded keys, some of them may be already evicted from the cache if it is bounded
+     */
+    public int preload(int threadsCount) throws InterruptedException {
+        long start = System.currentTimeMillis();
+        List<String> ids = new ArrayList<>(storedKeysById.keySet());
+        if (stripeCapacity != Integer.MAX_VALUE)
+            ids = ids.subList(0, Math.min(ids.size(), stripeCapacity * STRIPES_COUNT));
+        AtomicInteger loaded = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threadsCount));
+        int chunkSize = Math.max(1, ids.size() / Math.max(1, threadsCount) / 16);
+        for (int begin = 0; begin < ids.size(); begin += chunkSize) {
+            List<String> chunk = ids.subList(begin, Math.min(ids.size(), begin + chunkSize));
+            executor.execute(() -> {
+                for (String id : chunk) {
+                    if (get(id) != null)
+                        loaded.incrementAndGet();
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        log.info("preload. {} of {} participant keys decoded in {} ms", loaded.get(), storedKeysById.size(), System.currentTimeMillis() - start);
+        return loaded.get();
+    }
+
+    @Override
+    public PublicKey get(Object key) {
+        if (!(key instanceof String))
+            return null;
+        String id = (String) key;
+        Stripe stripe = getStripe(id);
+        PublicKey publicKey;
+        synchronized (stripe) {
+            publicKey = stripe.get(id);
+        }
+        if (publicKey != null)
+            return publicKey;
+        String storedKey = storedKeysById.get(id);
+        if (storedKey == null || invalidIds.contains(id))
+            return null;
+        try {
+            publicKey = cryptoHelper.loadPublicKey(storedKey);
+        } catch (GeneralSecurityException | RuntimeException e) {
+            if (invalidIds.add(id))
+                log.error("get. Load participant {} public key failed: {}", id, e.getMessage());
+            return null;
+        }
+        synchronized (stripe) {
+            stripe.put(id, publicKey);
+        }
+        return publicKey;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return storedKeysById.containsKey(key) && !invalidIds.contains(key);
+    }
+
+    @Override
+    public int size() {
+        return storedKeysById.size() - invalidIds.size();
+    }
+
+    public int getCachedCount() {
+        int count = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                count += stripe.size();
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public Set<Entry<String, PublicKey>> entrySet() {
+        Set<Entry<String, PublicKey>> entries = new HashSet<>();
+        for (String id : storedKeysById.keySet()) {
+            PublicKey publicKey = get(id);
+            if (publicKey != null)
+                entries.add(new SimpleImmutableEntry<>(id, publicKey));
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,260 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common.utils.web;
+
+import lombok.Value;
+import uk.dsxt.voting.common.utils.InternalLogicException;
+
+import javax.ws.rs.core.Response;
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * HTTP client reusing keep-alive connections. Every response body is read to the end and closed so the connection
+ * goes back to the JDK keep-alive cache, count of simultaneous requests to one host is limited by maxConnectionsPerHost.
+ * The keep-alive cache is shared by the whole JVM, its size is set once at startup with setMaxIdleConnectionsPerHost.
+ * Request and response bodies are streamed as bytes, timing is collected per endpoint (method and url without query).
+ * Gzip-encoded responses are decoded transparently, 304 Not Modified is returned as null without calling the reader.
+ * Other unexpected status codes are thrown as InternalLogicException with the code as return value.
+ */
+public class PooledHttpClient {
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 16;
+
+    public static final String GZIP_ENCODING = "gzip";
+
+    private static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded; charset=UTF-8";
+
+    private static final int BUFFER_SIZE = 8192;
+
+    @FunctionalInterface
+    public interface BodyWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface ResponseReader<T> {
+        T read(InputStream in) throws IOException;
+    }
+
+    @Value
+    public static class EndpointStatistics {
+        long requests;
+        long errors;
+        long totalMillis;
+        long maxMillis;
+    }
+
+    private static class EndpointTimer {
+        final AtomicLong requests = new AtomicLong();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong totalNanos = new AtomicLong();
+        final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos, boolean success) {
+            requests.incrementAndGet();
+            if (!success)
+                errors.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+    }
+
+    private final int connectionTimeout;
+
+    private final int readTimeout;
+
+    private final int maxConnectionsPerHost;
+
+    private final Map<String, Semaphore> connectionsByHost = new ConcurrentHashMap<>();
+
+    private final Map<String, EndpointTimer> timersByEndpoint = new ConcurrentHashMap<>();
+
+    public PooledHttpClient(int connectionTimeout, int readTimeout) {
+        this(connectionTimeout, readTimeout, DEFAULT_MAX_CONNECTIONS_PER_HOST);
+    }
+
+    /**
+     * @param maxConnectionsPerHost maximal count of simultaneous requests of this client to one host
+     */
+    public PooledHttpClient(int connectionTimeout, int readTimeout, int maxConnectionsPerHost) {
+        this.connectionTimeout = connectionTimeout;
+        this.readTimeout = readTimeout;
+        this.maxConnectionsPerHost = Math.max(1, maxConnectionsPerHost);
+    }
+
+    /**
+     * Sets count of idle connections kept by the JDK per host for all clients of the JVM.
+     * Has effect only before the first connection is opened, value set with -Dhttp.maxConnections is not changed.
+     */
+    public static void setMaxIdleConnectionsPerHost(int maxIdleConnections) {
+        if (System.getProperty("http.maxConnections") == null)
+            System.setProperty("http.maxConnections", Integer.toString(Math.max(1, maxIdleConnections)));
+    }
+
+    public String request(String urlString, RequestType type) throws IOException, InternalLogicException {
+        return request(urlString, (Map<String, String>) null, type);
+    }
+
+    public String request(String urlString, Map<String, String> parameters, RequestType type) throws IOException, InternalLogicException {
+        return request(urlString, parameters, type, PooledHttpClient::readString);
+    }
+
+    public <T> T request(String urlString, Map<String, String> parameters, RequestType type, ResponseReader<T> reader) throws IOException, InternalLogicException {
+        if (parameters == null || type != RequestType.POST)
+            return execute(urlString, type, null, null, null, -1, reader);
+        byte[] content = buildContent(parameters).getBytes(StandardCharsets.UTF_8);
+        return execute(urlString, type, null, FORM_CONTENT_TYPE, out -> out.write(content), content.length, reader);
+    }
+
+    /**
+     * Sends request without body and with additional headers, e.g. If-None-Match or Accept-Encoding.
+     */
+    public <T> T request(String urlString, RequestType type, Map<String, String> headers, ResponseReader<T> reader) throws IOException, InternalLogicException {
+        return execute(urlString, type, headers, null, null, -1, reader);
+    }
+
+    /**
+     * Sends body written by bodyWriter with chunked transfer encoding and reads response with reader.
+     */
+    public <T> T request(String urlString, RequestType type, String contentType, BodyWriter bodyWriter, ResponseReader<T> reader) throws IOException, InternalLogicException {
+        return execute(urlString, type, null, contentType, bodyWriter, -1, reader);
+    }
+
+    public Map<String, EndpointStatistics> getStatistics() {
+        Map<String, EndpointStatistics> statistics = new TreeMap<>();
+        timersByEndpoint.forEach((endpoint, timer) -> statistics.put(endpoint, new EndpointStatistics(timer.requests.get(), timer.errors.get(),
+            timer.totalNanos.get() / 1000000, timer.maxNanos.get() / 1000000)));
+        return statistics;
+    }
+
+    private <T> T execute(String urlString, RequestType type, Map<String, String> headers, String contentType, BodyWriter bodyWriter, long contentLength,
+                          ResponseReader<T> reader)
+        throws IOException, InternalLogicException {
+        URL url = new URL(urlString);
+        EndpointTimer timer = timersByEndpoint.computeIfAbsent(String.format("%s %s://%s%s", type, url.getProtocol(), url.getAuthority(), url.getPath()),
+            endpoint -> new EndpointTimer());
+        Semaphore connections = connectionsByHost.computeIfAbsent(url.getAuthority(), host -> new Semaphore(maxConnectionsPerHost, true));
+        long start = System.nanoTime();
+        try {
+            connections.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.format("request interrupted. url %s", urlString));
+        }
+        boolean success = false;
+        try {
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            connection.setRequestMethod(type.toString());
+            connection.setConnectTimeout(connectionTimeout);
+            connection.setReadTimeout(readTimeout);
+            if (headers != null)
+                headers.forEach(connection::setRequestProperty);
+
+            if (bodyWriter != null) {
+                connection.setDoOutput(true);
+                if (contentType != null)
+                    connection.setRequestProperty("Content-Type", contentType);
+                if (contentLength >= 0)
+                    connection.setFixedLengthStreamingMode(contentLength);
+                else
+                    connection.setChunkedStreamingMode(BUFFER_SIZE);
+                try (OutputStream out = connection.getOutputStream()) {
+                    bodyWriter.write(out);
+                }
+            }
+
+            int code = connection.getResponseCode();
+            if (code == Response.Status.NOT_MODIFIED.getStatusCode()) {
+                try (InputStream in = connection.getInputStream()) {
+                    drain(in);
+                }
+                success = true;
+                return null;
+            }
+            if (code != Response.Status.OK.getStatusCode() && code != Response.Status.NO_CONTENT.getStatusCode()) {
+                InputStream error = connection.getErrorStream();
+                if (error != null) {
+                    try (InputStream in = error) {
+                        drain(in);
+                    }
+                }
+                throw new InternalLogicException(code, String.format("request failed. code %s for url %s", code, urlString));
+            }
+
+            try (InputStream in = connection.getInputStream()) {
+                // readers like ObjectMapper close the stream, the rest of the body still has to be read to keep the connection
+                InputStream body = new FilterInputStream(in) {
+                    @Override
+                    public void close() {
+                    }
+                };
+                T result = reader.read(GZIP_ENCODING.equalsIgnoreCase(connection.getContentEncoding()) ? new GZIPInputStream(body) : body);
+                drain(in);
+                success = true;
+                return result;
+            }
+        } finally {
+            connections.release();
+            timer.record(System.nanoTime() - start, success);
+        }
+    }
+
+    private static String readString(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int count;
+        while ((count = in.read(buffer)) >= 0) {
+            out.write(buffer, 0, count);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (in.read(buffer) >= 0) {
+        }
+    }
+
+    private static String buildContent(Map<String, String> parameters) throws UnsupportedEncodingException {
+        StringBuilder paramString = new StringBuilder();
+        for (Map.Entry<String, String> param : parameters.entrySet()) {
+            if (param.getValue() == null)
+                continue;
+            if (paramString.length() > 0)
+                paramString.append('&');
+            paramString.append(param.getKey());
+            paramString.append('=');
+            paramString.append(URLEncoder.encode(param.getValue(), "UTF-8"));
+        }
+        return paramString.toString();
+    }
+}
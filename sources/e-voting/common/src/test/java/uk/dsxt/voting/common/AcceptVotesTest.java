@@ -0,0 +1,80 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common;
+
+import org.junit.Test;
+import uk.dsxt.voting.common.domain.dataModel.*;
+import uk.dsxt.voting.common.domain.nodes.ClientNode;
+import uk.dsxt.voting.common.domain.nodes.MasterNode;
+import uk.dsxt.voting.common.messaging.SimpleSerializer;
+import uk.dsxt.voting.common.utils.MessageBuilder;
+import uk.dsxt.voting.common.utils.crypto.CryptoHelperImpl;
+import uk.dsxt.voting.common.utils.crypto.KeyPair;
+
+import java.math.BigDecimal;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class AcceptVotesTest {
+
+    private final CryptoHelperImpl cryptoHelper = CryptoHelperImpl.DEFAULT_CRYPTO_HELPER;
+
+    @Test
+    public void testBatchReceiptSignature() throws Exception {
+        KeyPair nodeKeys = cryptoHelper.createCryptoKeysGenerator().generateKeyPair();
+        KeyPair clientKeys = cryptoHelper.createCryptoKeysGenerator().generateKeyPair();
+        PublicKey nodePublicKey = cryptoHelper.loadPublicKey(nodeKeys.getPublicKey());
+        PrivateKey clientPrivateKey = cryptoHelper.loadPrivateKey(clientKeys.getPrivateKey());
+        Map<String, PublicKey> keys = new HashMap<>();
+        keys.put(MasterNode.MASTER_HOLDER_ID, nodePublicKey);
+        keys.put("node", nodePublicKey);
+        keys.put("client", cryptoHelper.loadPublicKey(clientKeys.getPublicKey()));
+
+        ClientNode node = new ClientNode("node", new SimpleSerializer(), cryptoHelper, keys, cryptoHelper.loadPrivateKey(nodeKeys.getPrivateKey()), null, null, null);
+        long now = System.currentTimeMillis();
+        node.setClientsOnTime(now - 2000, new Client[]{new Client("client", Collections.singletonMap("security", new BigDecimal(100)), ParticipantRole.NominalHolder)});
+        node.addVoting(new Voting("v1", "voting", now - 1000, now + 60000, new Question[0], "security"));
+
+        List<NodeVote> votes = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            BigDecimal packetSize = BigDecimal.TEN;
+            BigDecimal residual = new BigDecimal(i * 10);
+            String transactionId = "t" + i;
+            String signed = MessageBuilder.buildMessage(transactionId, "v1", packetSize.toPlainString(), "client", residual.toPlainString(), "data", "digest");
+            String signature = cryptoHelper.createSignature(i == 1 ? signed + "x" : signed, clientPrivateKey);
+            votes.add(new NodeVote(transactionId, "v1", packetSize, "client", residual, "data", "digest", signature));
+        }
+
+        NodeVotesReceipt receipt = node.acceptVotes(votes);
+        assertEquals(3, receipt.getReceipts().length);
+        assertEquals(VoteResultStatus.OK, receipt.getReceipts()[0].getStatus());
+        assertEquals(VoteResultStatus.SignatureFailed, receipt.getReceipts()[1].getStatus());
+        assertEquals(VoteResultStatus.OK, receipt.getReceipts()[2].getStatus());
+
+        String[] signedTexts = Arrays.stream(receipt.getReceipts())
+            .map(r -> MessageBuilder.buildMessage(r.getInputMessage(), Long.toString(r.getTimestamp()), r.getStatus().toString())).toArray(String[]::new);
+        assertTrue(cryptoHelper.verifySignature(MessageBuilder.buildMessage(signedTexts), receipt.getSignature(), nodePublicKey));
+    }
+}
@@ -0,0 +1,63 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ * *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ * *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ * *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ * *
+ * Removal or modification of this copyright notice is prohibited.            *
+ * *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common;
+
+import org.junit.Test;
+import uk.dsxt.voting.common.domain.dataModel.VoteResult;
+import uk.dsxt.voting.common.domain.dataModel.Voting;
+import uk.dsxt.voting.common.iso20022.Iso20022Serializer;
+import uk.dsxt.voting.common.messaging.MessagesSerializer;
+import uk.dsxt.voting.common.messaging.SimpleSerializer;
+import uk.dsxt.voting.common.utils.MessageBuilder;
+import uk.dsxt.voting.common.utils.PropertiesHelper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AggregatedVotesTest {
+
+    @Test
+    public void testAggregatedVoteResultsSerialization() throws Exception {
+        Iso20022Serializer serializer = new Iso20022Serializer();
+        MessagesSerializer simpleSerializer = new SimpleSerializer();
+        String votingXml = PropertiesHelper.getResourceString("voting_simple.xml", "windows-1251");
+        Voting voting = serializer.deserializeVoting(votingXml);
+        String voteResultXml = PropertiesHelper.getResourceString("voteResult_simple.xml", "windows-1251");
+        VoteResult voteResult = serializer.deserializeVoteResult(MessageBuilder.buildMessage(voteResultXml, simpleSerializer.serialize(voting)));
+
+        List<String> serializedVoteResults = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            serializedVoteResults.add(serializer.serialize(new VoteResult(voteResult, "holder" + i), voting));
+        }
+        String aggregated = serializer.aggregateVoteResults(serializedVoteResults);
+        //one instruction document for all votes is shorter than separate ones
+        assertTrue(aggregated.length() < serializedVoteResults.stream().mapToInt(String::length).sum());
+
+        //split results are the same as separately serialized, so owner signatures and digests stay valid
+        List<String> splitVoteResults = serializer.splitVoteResults(aggregated);
+        assertEquals(serializedVoteResults, splitVoteResults);
+        assertEquals("holder2", serializer.deserializeVoteResult(splitVoteResults.get(2)).getHolderId());
+    }
+}
@@ -0,0 +1,282 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ * *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ * *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ * *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ * *
+ * Removal or modification of this copyright notice is prohibited.            *
+ * *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import uk.dsxt.voting.common.demo.AsyncResultsBuilder;
+import uk.dsxt.voting.common.demo.BatchResultsBuilder;
+import uk.dsxt.voting.common.demo.ResultReport;
+import uk.dsxt.voting.common.metrics.MetricsRegistry;
+import uk.dsxt.voting.common.utils.InternalLogicException;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AsyncResultsBuilderTest {
+
+    private File directory;
+
+    private static class RecordingResultsBuilder implements BatchResultsBuilder {
+        final List<String> votes = new ArrayList<>();
+        final List<String> results = new ArrayList<>();
+        final List<String> ids = new ArrayList<>();
+        final List<Integer> batchSizes = new ArrayList<>();
+        volatile boolean isAvailable = true;
+        volatile boolean isResponseLost;
+        volatile String invalidVote;
+        volatile CountDownLatch blocker;
+
+        @Override
+        public synchronized List<String> addBatch(List<ResultReport> reports) throws InternalLogicException {
+            if (blocker != null) {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (!isAvailable)
+                throw new InternalLogicException("unavailable");
+            List<String> rejected = new ArrayList<>();
+            for (ResultReport report : reports) {
+                ids.add(report.getId());
+                if (report.getVoteResult().equals(invalidVote))
+                    rejected.add(report.getId());
+                else if (report.isVote())
+                    votes.add(report.getVoteResult());
+                else
+                    results.add(report.getHolderId() + "=" + report.getVoteResult());
+            }
+            batchSizes.add(reports.size());
+            if (isResponseLost)
+                throw new InternalLogicException("response is lost");
+            return rejected;
+        }
+
+        @Override
+        public void addResult(String holderId, String voteResult) {
+        }
+
+        @Override
+        public void addVote(String voteResult) {
+        }
+
+        synchronized int size() {
+            return votes.size() + results.size();
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("results").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private static void waitFor(RecordingResultsBuilder target, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (target.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, target.size());
+    }
+
+    @Test
+    public void testBatches() throws Exception {
+        RecordingResultsBuilder target = new RecordingResultsBuilder();
+        target.blocker = new CountDownLatch(1);
+        MetricsRegistry metrics = new MetricsRegistry();
+        AsyncResultsBuilder builder = new AsyncResultsBuilder(target, 100, 10, 10, null, metrics);
+        builder.addVote("v0");
+        Thread.sleep(50);
+        for (int i = 1; i < 25; i++) {
+            builder.addVote("v" + i);
+        }
+        builder.addResult("1", "r1");
+        target.blocker.countDown();
+        waitFor(target, 26);
+        builder.stop();
+        assertEquals("v0", target.votes.get(0));
+        assertEquals("v24", target.votes.get(24));
+        assertEquals(Arrays.asList("1=r1"), target.results);
+        assertEquals(Arrays.asList(1, 10, 10, 5), target.batchSizes);
+        assertTrue(metrics.toText().contains("results_reporter_sent_total 26\n"));
+    }
+
+    @Test
+    public void testDrop() throws Exception {
+        RecordingResultsBuilder target = new RecordingResultsBuilder();
+        target.blocker = new CountDownLatch(1);
+        MetricsRegistry metrics = new MetricsRegistry();
+        AsyncResultsBuilder builder = new AsyncResultsBuilder(target, 5, 10, 10, null, metrics);
+        builder.addVote("v0");
+        Thread.sleep(50);
+        long start = System.nanoTime();
+        for (int i = 1; i < 20; i++) {
+            builder.addVote("v" + i);
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(100));
+        target.blocker.countDown();
+        waitFor(target, 6);
+        builder.stop();
+        assertTrue(metrics.toText().contains("results_reporter_dropped_total 14\n"));
+    }
+
+    @Test
+    public void testSpill() throws Exception {
+        RecordingResultsBuilder target = new RecordingResultsBuilder();
+        target.isAvailable = false;
+        File spillFile = new File(directory, "spill.txt");
+        MetricsRegistry metrics = new MetricsRegistry();
+        AsyncResultsBuilder builder = new AsyncResultsBuilder(target, 100, 3, 10, spillFile.getPath(), metrics);
+        for (int i = 0; i < 10; i++) {
+            builder.addVote("v" + i);
+            builder.addResult(Integer.toString(i), "r" + i);
+        }
+        Thread.sleep(200);
+        assertEquals(0, target.size());
+        assertEquals(20, Files.readAllLines(spillFile.toPath()).size());
+
+        target.isAvailable = true;
+        builder.addVote("v10");
+        waitFor(target, 21);
+        builder.stop();
+        assertEquals(11, target.votes.size());
+        for (int i = 0; i < 10; i++) {
+            assertTrue(target.votes.contains("v" + i));
+            assertTrue(target.results.contains(i + "=r" + i));
+        }
+        assertFalse(new File(directory, "spill.txt.replay").exists());
+        assertTrue(metrics.toText().contains("results_reporter_sent_total 21\n"));
+    }
+
+    @Test
+    public void testSpillReplayedUnderLoad() throws Exception {
+        RecordingResultsBuilder target = new RecordingResultsBuilder();
+        target.isAvailable = false;
+        File spillFile = new File(directory, "spill.txt");
+        MetricsRegistry metrics = new MetricsRegistry();
+        AsyncResultsBuilder builder = new AsyncResultsBuilder(target, 100, 4, 1000, spillFile.getPath(), metrics);
+        for (int i = 0; i < 10; i++) {
+            builder.addResult(Integer.toString(i), "r" + i);
+        }
+        Thread.sleep(100);
+        assertTrue(metrics.toText().contains("results_reporter_spilled_total 10\n"));
+
+        // the queue never stays idle for flushInterval, spilled reports are resent along with new ones
+        target.isAvailable = true;
+        long deadline = System.currentTimeMillis() + 10000;
+        for (int i = 0; target.results.size() < 10 && System.currentTimeMillis() < deadline; i++) {
+            builder.addVote("v" + i);
+            Thread.sleep(5);
+        }
+        builder.stop();
+        assertEquals(10, target.results.size());
+        assertFalse(new File(directory, "spill.txt.replay").exists());
+    }
+
+    @Test
+    public void testNullHolderRejected() throws Exception {
+        RecordingResultsBuilder target = new RecordingResultsBuilder();
+        File spillFile = new File(directory, "spill.txt");
+        MetricsRegistry metrics = new MetricsRegistry();
+        AsyncResultsBuilder builder = new AsyncResultsBuilder(target, 100, 10, 10, spillFile.getPath(), metrics);
+        builder.addResult(null, "r0");
+        builder.addResult("1", "r1");
+        waitFor(target, 1);
+        builder.stop();
+        assertEquals(Arrays.asList("1=r1"), target.results);
+        assertTrue(target.votes.isEmpty());
+        assertTrue(metrics.toText().contains("results_reporter_rejected_total 1\n"));
+    }
+
+    @Test
+    public void testRejectedReportsDropped() throws Exception {
+        RecordingResultsBuilder target = new RecordingResultsBuilder();
+        target.invalidVote = "bad";
+        File spillFile = new File(directory, "spill.txt");
+        MetricsRegistry metrics = new MetricsRegistry();
+        AsyncResultsBuilder builder = new AsyncResultsBuilder(target, 100, 10, 10, spillFile.getPath(), metrics);
+        builder.addVote("bad");
+        builder.addVote("v1");
+        waitFor(target, 1);
+        builder.stop();
+        assertEquals(Arrays.asList("v1"), target.votes);
+        assertFalse(spillFile.exists());
+        assertTrue(metrics.toText().contains("results_reporter_rejected_total 1\n"));
+        assertTrue(metrics.toText().contains("results_reporter_sent_total 1\n"));
+    }
+
+    @Test
+    public void testResentReportsKeepIds() throws Exception {
+        RecordingResultsBuilder target = new RecordingResultsBuilder();
+        target.isResponseLost = true;
+        File spillFile = new File(directory, "spill.txt");
+        AsyncResultsBuilder builder = new AsyncResultsBuilder(target, 100, 10, 10, spillFile.getPath(), new MetricsRegistry());
+        builder.addVote("v0");
+        builder.addResult("1", "r1");
+        waitFor(target, 2);
+        Thread.sleep(100);
+        target.isResponseLost = false;
+        builder.addVote("v2");
+        long deadline = System.currentTimeMillis() + 10000;
+        while (spillFile.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        builder.stop();
+        List<String> ids;
+        synchronized (target) {
+            ids = new ArrayList<>(target.ids);
+        }
+        assertEquals(3, new HashSet<>(ids).size());
+        assertTrue(ids.size() >= 5);
+    }
+
+    @Test
+    @Ignore
+    public void testPerformance() throws Exception {
+        RecordingResultsBuilder target = new RecordingResultsBuilder();
+        AsyncResultsBuilder builder = new AsyncResultsBuilder(target, 10000, 100, 10, null, new MetricsRegistry());
+        int count = 1000000;
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            builder.addVote("1,1,10,1-1-10");
+        }
+        System.out.println(String.format("%d votes reported, %d ns per vote on the caller thread", count, (System.nanoTime() - start) / count));
+        builder.stop();
+    }
+}
@@ -0,0 +1,207 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.dsxt.voting.common.cryptoVote.CryptoVoteAcceptorWeb;
+import uk.dsxt.voting.common.cryptoVote.VoteOutbox;
+import uk.dsxt.voting.common.domain.dataModel.NodeVoteReceipt;
+import uk.dsxt.voting.common.domain.dataModel.VoteResultStatus;
+import uk.dsxt.voting.common.utils.web.JettyRunner;
+
+import javax.ws.rs.FormParam;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Response;
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CryptoVoteAcceptorWebTest {
+
+    @Path("/parent")
+    public static class ParentResource {
+        final List<String> transactionIds = Collections.synchronizedList(new ArrayList<>());
+
+        final Map<String, AtomicInteger> callsByTransactionId = new ConcurrentHashMap<>();
+
+        final AtomicInteger failures = new AtomicInteger();
+
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        volatile long delay;
+
+        @POST
+        @Path("/acceptVote")
+        @Produces("application/json")
+        public Response acceptVote(@FormParam("transactionId") String transactionId, @FormParam("clientId") String clientId) throws InterruptedException {
+            int current = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(current, Math::max);
+            try {
+                Thread.sleep(delay);
+                callsByTransactionId.computeIfAbsent(transactionId, id -> new AtomicInteger()).incrementAndGet();
+                if (transactionId.startsWith("bad"))
+                    return Response.status(Response.Status.BAD_REQUEST).build();
+                if (transactionId.startsWith("missing"))
+                    return Response.status(Response.Status.NOT_FOUND).build();
+                if (transactionId.startsWith("poison") || failures.getAndDecrement() > 0)
+                    return Response.serverError().build();
+                assertEquals(HOLDER_ID, clientId);
+                transactionIds.add(transactionId);
+                return Response.ok(new NodeVoteReceipt(transactionId, System.currentTimeMillis(), VoteResultStatus.OK, "signature")).build();
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    // ClientNode forwards every vote with its own participant id as client id
+    private static final String HOLDER_ID = "holder";
+
+    private final ParentResource parent = new ParentResource();
+
+    private Server server;
+
+    private int port;
+
+    private String parentUrl;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        server = startParent(0);
+        port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        parentUrl = String.format("http://localhost:%d/parent", port);
+        directory = Files.createTempDirectory("outbox").toFile();
+    }
+
+    private Server startParent(int port) {
+        ResourceConfig application = new ResourceConfig();
+        JettyRunner.configureMapper(application);
+        application.registerInstances(parent);
+        Properties properties = new Properties();
+        properties.setProperty("jetty.maxThreads", "20");
+        properties.setProperty("jetty.minThreads", "2");
+        properties.setProperty("jetty.idleTimeout", "5000");
+        properties.setProperty("jetty.maxQueueSize", "100");
+        return JettyRunner.run(application, properties, port);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private static void accept(CryptoVoteAcceptorWeb acceptor, String transactionId) throws Exception {
+        acceptor.acceptVote(transactionId, "v", BigDecimal.ONE, HOLDER_ID, BigDecimal.ZERO, "encrypted", "digest", "signature");
+    }
+
+    private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 20000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    public void testLanesSendVotesOfOneHolderInParallel() throws Exception {
+        parent.failures.set(5);
+        parent.delay = 20;
+        CryptoVoteAcceptorWeb acceptor = new CryptoVoteAcceptorWeb(parentUrl, 5000, 5000, null, 3, 1, 16, 5, 20, 10, null);
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 60; i++) {
+            accept(acceptor, "t" + i);
+            expected.add("t" + i);
+        }
+        waitFor(() -> acceptor.getSentVotes() == 60 && acceptor.getQueueDepth() == 0);
+
+        assertEquals(expected, new HashSet<>(parent.transactionIds));
+        assertEquals(60, parent.transactionIds.size());
+        assertTrue(parent.maxInFlight.get() > 1);
+        assertEquals(5, acceptor.getFailedRequests());
+        assertTrue(acceptor.getRetriedVotes() > 0);
+        assertEquals(0, acceptor.getDeadLetteredVotes());
+    }
+
+    @Test
+    public void testRejectedAndDeadLetteredVotes() throws Exception {
+        VoteOutbox outbox = new VoteOutbox(directory.getAbsolutePath(), 4096, 0);
+        CryptoVoteAcceptorWeb acceptor = new CryptoVoteAcceptorWeb(parentUrl, 5000, 5000, null, 1, 1, 16, 5, 20, 3, outbox);
+        accept(acceptor, "ok1");
+        accept(acceptor, "bad");
+        accept(acceptor, "poison");
+        accept(acceptor, "missing");
+        accept(acceptor, "ok2");
+        waitFor(() -> acceptor.getSentVotes() == 2 && acceptor.getDeadLetteredVotes() == 2 && acceptor.getQueueDepth() == 0);
+
+        assertEquals(Arrays.asList("ok1", "ok2"), parent.transactionIds);
+        // invalid vote is not resent, failing votes and votes not found by the parent are resent maxAttempts times and then skipped
+        assertEquals(1, parent.callsByTransactionId.get("bad").get());
+        assertEquals(3, parent.callsByTransactionId.get("poison").get());
+        assertEquals(3, parent.callsByTransactionId.get("missing").get());
+        assertEquals(1, acceptor.getRejectedVotes());
+
+        // sent and rejected votes are acknowledged, dead-lettered votes stay in outbox and are resent after restart
+        assertEquals(2, outbox.size());
+        outbox.close();
+        VoteOutbox restarted = new VoteOutbox(directory.getAbsolutePath(), 4096, 0);
+        Set<String> pending = new HashSet<>();
+        restarted.getPending().forEach(entry -> pending.add(entry.getVote().getTransactionId()));
+        assertTrue(pending.containsAll(Arrays.asList("poison", "missing")));
+        restarted.close();
+    }
+
+    @Test
+    public void testUnreachableParentWithoutOutbox() throws Exception {
+        server.stop();
+        CryptoVoteAcceptorWeb acceptor = new CryptoVoteAcceptorWeb(parentUrl, 5000, 5000, null, 1, 1, 16, 5, 20, 2, null);
+        accept(acceptor, "t1");
+        accept(acceptor, "t2");
+        waitFor(() -> acceptor.getFailedRequests() > 5);
+        // without outbox refused connections are waited for, votes are not dead-lettered
+        assertEquals(0, acceptor.getDeadLetteredVotes());
+
+        server = startParent(port);
+        waitFor(() -> acceptor.getSentVotes() == 2);
+        assertEquals(Arrays.asList("t1", "t2"), parent.transactionIds);
+        assertEquals(0, acceptor.getDeadLetteredVotes());
+    }
+}
@@ -0,0 +1,75 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common;
+
+import org.junit.Test;
+import uk.dsxt.voting.common.domain.dataModel.Question;
+import uk.dsxt.voting.common.domain.dataModel.VoteResult;
+import uk.dsxt.voting.common.domain.dataModel.Voting;
+import uk.dsxt.voting.common.iso20022.Iso20022Serializer;
+import uk.dsxt.voting.common.messaging.MessageCompressor;
+import uk.dsxt.voting.common.utils.InternalLogicException;
+import uk.dsxt.voting.common.utils.PropertiesHelper;
+
+import java.math.BigDecimal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MessageCompressorTest {
+
+    private final Iso20022Serializer serializer = new Iso20022Serializer();
+
+    @Test
+    public void testVotingRoundTrip() throws Exception {
+        Voting voting = serializer.deserializeVoting(PropertiesHelper.getResourceString("voting_simple.xml", "windows-1251"));
+        String serialized = serializer.serialize(voting);
+        String compressed = MessageCompressor.compress(serialized);
+        assertEquals(serialized, MessageCompressor.decompress(compressed));
+        assertTrue(compressed.length() < serialized.length() / 2);
+    }
+
+    @Test
+    public void testVoteResultRoundTrip() throws Exception {
+        Voting voting = serializer.deserializeVoting(PropertiesHelper.getResourceString("voting_cumulative.xml", "windows-1251"));
+        VoteResult result = new VoteResult(voting.getId(), "client1", new BigDecimal("100"));
+        Question question = voting.getQuestions()[0];
+        result.setAnswer(question.getId(), question.getAnswers()[0].getId(), new BigDecimal("100"));
+        String serialized = serializer.serialize(result, voting);
+        String compressed = MessageCompressor.compress(serialized);
+        assertEquals(serialized, MessageCompressor.decompress(compressed));
+        assertTrue(compressed.length() < serialized.length() / 2);
+    }
+
+    @Test
+    public void testNonAsciiText() throws Exception {
+        String text = "Утвердить годовой отчет @ `; !=";
+        assertEquals(text, MessageCompressor.decompress(MessageCompressor.compress(text)));
+        assertEquals("", MessageCompressor.decompress(MessageCompressor.compress("")));
+    }
+
+    @Test(expected = InternalLogicException.class)
+    public void testCorruptedMessage() throws Exception {
+        String compressed = MessageCompressor.compress("some text to compress");
+        MessageCompressor.decompress(compressed.substring(0, compressed.length() / 2));
+    }
+}
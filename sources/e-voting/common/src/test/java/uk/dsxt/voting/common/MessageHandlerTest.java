@@ -26,6 +26,7 @@ import org.junit.Test;
 import uk.dsxt.voting.common.domain.dataModel.Participant;
 import uk.dsxt.voting.common.messaging.Message;
 import uk.dsxt.voting.common.messaging.MessageContent;
+import uk.dsxt.voting.common.metrics.MetricsRegistry;
 import uk.dsxt.voting.common.networking.MessageHandler;
 import uk.dsxt.voting.common.networking.WalletManager;
 import uk.dsxt.voting.common.utils.crypto.CryptoHelperImpl;
@@ -36,6 +37,8 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.mock;
@@ -90,4 +93,22 @@ public class MessageHandlerTest {
         assertEquals("m3", filteredIds.get(1));
         assertEquals("X3", filteredContents.get(1).getType());
     }
+
+    @Test
+    public void testQueueGaugeIsSharedByHandlers() throws Exception {
+        WalletManager walletManager = mock(WalletManager.class);
+        MessageHandler first = new MessageHandler(walletManager, cryptoHelper, new HashMap<>(), (content, id, isCommitted, authorId) -> {});
+        MessageHandler second = new MessageHandler(walletManager, cryptoHelper, new HashMap<>(), (content, id, isCommitted, authorId) -> {});
+        assertEquals("message_handler_queue 0", queueSeries());
+        first.stop();
+        second.stop();
+        assertEquals("message_handler_queue 0", queueSeries());
+    }
+
+    private static String queueSeries() {
+        List<String> series = Stream.of(MetricsRegistry.getDefault().toText().split("\n"))
+            .filter(line -> line.startsWith("message_handler_queue")).collect(Collectors.toList());
+        assertEquals(series.toString(), 1, series.size());
+        return series.get(0);
+    }
 }
@@ -0,0 +1,126 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ * *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ * *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ * *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ * *
+ * Removal or modification of this copyright notice is prohibited.            *
+ * *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common;
+
+import org.junit.BeforeClass;
+import org.junit.Ignore;
+import org.junit.Test;
+import uk.dsxt.voting.common.domain.dataModel.Participant;
+import uk.dsxt.voting.common.utils.crypto.CryptoHelperImpl;
+import uk.dsxt.voting.common.utils.crypto.KeyPair;
+import uk.dsxt.voting.common.utils.crypto.ParticipantKeyStore;
+
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ParticipantKeyStoreTest {
+
+    private static final CryptoHelperImpl cryptoHelper = CryptoHelperImpl.DEFAULT_CRYPTO_HELPER;
+
+    private static KeyPair[] keys;
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        keys = cryptoHelper.createCryptoKeysGenerator().generateKeys(4);
+    }
+
+    private static List<Participant> participants(int count) {
+        List<Participant> participants = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            participants.add(new Participant(Integer.toString(i), "participant " + i, keys[i % keys.length].getPublicKey()));
+        }
+        return participants;
+    }
+
+    @Test
+    public void testLazyDecoding() throws Exception {
+        List<Participant> participants = new ArrayList<>(participants(3));
+        participants.add(new Participant("empty", "no key", ""));
+        participants.add(new Participant("null", "no key", null));
+        participants.add(new Participant("invalid", "bad key", "not a key"));
+        ParticipantKeyStore store = new ParticipantKeyStore(cryptoHelper, participants, 0);
+
+        assertEquals(0, store.getCachedCount());
+        PublicKey key = store.get("1");
+        assertEquals(cryptoHelper.loadPublicKey(keys[1].getPublicKey()), key);
+        assertSame(key, store.get("1"));
+        assertEquals(1, store.getCachedCount());
+        String signature = cryptoHelper.createSignature("text", cryptoHelper.loadPrivateKey(keys[2].getPrivateKey()));
+        assertTrue(cryptoHelper.verifySignature("text", signature, store.get("2")));
+
+        assertNull(store.get("empty"));
+        assertNull(store.get("null"));
+        assertNull(store.get("unknown"));
+        assertNull(store.get(1));
+        assertTrue(store.containsKey("invalid"));
+        assertNull(store.get("invalid"));
+        assertFalse(store.containsKey("invalid"));
+        assertFalse(store.containsKey("empty"));
+        assertEquals(3, store.size());
+        assertEquals(3, store.entrySet().size());
+    }
+
+    @Test
+    public void testBoundedCache() throws Exception {
+        ParticipantKeyStore store = new ParticipantKeyStore(cryptoHelper, participants(2000), 640);
+        assertEquals(640, store.preload(4));
+        assertTrue(store.getCachedCount() > 0);
+        assertTrue(store.getCachedCount() <= 640);
+        for (int i = 0; i < 2000; i++) {
+            assertEquals(cryptoHelper.loadPublicKey(keys[i % keys.length].getPublicKey()), store.get(Integer.toString(i)));
+        }
+        assertTrue(store.getCachedCount() <= 640);
+    }
+
+    @Test
+    public void testPreload() throws Exception {
+        ParticipantKeyStore store = new ParticipantKeyStore(cryptoHelper, participants(1000), 0);
+        assertEquals(1000, store.preload(4));
+        assertEquals(1000, store.getCachedCount());
+    }
+
+    @Test
+    @Ignore
+    public void testPerformance() throws Exception {
+        List<Participant> participants = participants(1000000);
+        for (int round = 0; round < 3; round++) {
+            long start = System.currentTimeMillis();
+            for (Participant participant : participants) {
+                cryptoHelper.loadPublicKey(participant.getPublicKey());
+            }
+            System.out.println(String.format("Serial decoding of %d keys: %d ms", participants.size(), System.currentTimeMillis() - start));
+
+            start = System.currentTimeMillis();
+            new ParticipantKeyStore(cryptoHelper, participants, 0).preload(Runtime.getRuntime().availableProcessors());
+            System.out.println(String.format("Parallel preload of %d keys: %d ms", participants.size(), System.currentTimeMillis() - start));
+
+            start = System.currentTimeMillis();
+            ParticipantKeyStore store = new ParticipantKeyStore(cryptoHelper, participants, 10000);
+            System.out.println(String.format("Lazy store of %d keys: %d ms", participants.size(), System.currentTimeMillis() - start));
+            Arrays.asList("1", "2", "3").forEach(store::get);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import uk.dsxt.voting.common.cryptoVote.VoteOutbox;
+import uk.dsxt.voting.common.domain.dataModel.NodeVote;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class VoteOutboxTest {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("outbox").toFile();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private static NodeVote vote(int i) {
+        return new NodeVote("t" + i, "v", BigDecimal.ONE, "c", new BigDecimal(i), "encrypted" + i, "digest", "signature");
+    }
+
+    private File[] segments() {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".log"));
+        Arrays.sort(files);
+        return files;
+    }
+
+    @Test
+    public void testPendingAfterRestart() throws Exception {
+        VoteOutbox outbox = new VoteOutbox(directory.getAbsolutePath(), 1024, 0);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i + 1, outbox.append(vote(i)));
+        }
+        outbox.acknowledge(Arrays.asList(1L, 2L, 4L));
+        assertEquals(2, outbox.getAcknowledgedSequence());
+        outbox.close();
+
+        VoteOutbox restarted = new VoteOutbox(directory.getAbsolutePath(), 1024, 0);
+        List<VoteOutbox.Entry> pending = restarted.getPending();
+        assertEquals(8, pending.size());
+        assertEquals(3, pending.get(0).getSequence());
+        assertEquals(vote(2), pending.get(0).getVote());
+        assertEquals(vote(9), pending.get(7).getVote());
+        assertEquals(11, restarted.append(vote(10)));
+        restarted.close();
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        VoteOutbox outbox = new VoteOutbox(directory.getAbsolutePath(), 512, 0);
+        for (int i = 0; i < 20; i++) {
+            outbox.append(vote(i));
+        }
+        int segmentsCount = segments().length;
+        for (long i = 1; i <= 20; i++) {
+            outbox.acknowledge(Collections.singletonList(i));
+        }
+        assertEquals(20, outbox.getAcknowledgedSequence());
+        assertEquals(0, outbox.size());
+        assertEquals(1, segments().length);
+        assertEquals(true, segmentsCount > 1);
+        outbox.close();
+
+        VoteOutbox restarted = new VoteOutbox(directory.getAbsolutePath(), 512, 0);
+        assertEquals(0, restarted.getPending().size());
+        assertEquals(21, restarted.append(vote(20)));
+        restarted.close();
+    }
+
+    @Test
+    public void testTornRecord() throws Exception {
+        VoteOutbox outbox = new VoteOutbox(directory.getAbsolutePath(), 4096, 0);
+        for (int i = 0; i < 3; i++) {
+            outbox.append(vote(i));
+        }
+        outbox.close();
+        File segment = segments()[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            long end = 0;
+            while (true) {
+                file.seek(end);
+                int length = file.readInt();
+                if (length == 0)
+                    break;
+                end += 16 + length;
+            }
+            file.seek(end - 1);
+            file.write('x');
+        }
+
+        VoteOutbox restarted = new VoteOutbox(directory.getAbsolutePath(), 4096, 0);
+        assertEquals(2, restarted.getPending().size());
+        assertEquals(3, restarted.append(vote(3)));
+        restarted.close();
+        VoteOutbox reopened = new VoteOutbox(directory.getAbsolutePath(), 4096, 0);
+        assertEquals(3, reopened.getPending().size());
+        assertEquals(vote(3), reopened.getPending().get(2).getVote());
+        reopened.close();
+    }
+
+    @Test
+    @Ignore
+    public void testPerformance() throws Exception {
+        NodeVote vote = new NodeVote("transaction", "voting", BigDecimal.ONE, "client", BigDecimal.TEN, String.format("%0512d", 0), "digest", String.format("%0256d", 0));
+        for (long syncInterval : new long[]{0, 1, 10, 100}) {
+            FileUtils.cleanDirectory(directory);
+            VoteOutbox outbox = new VoteOutbox(directory.getAbsolutePath(), 64 * 1024 * 1024, syncInterval);
+            long start = System.currentTimeMillis();
+            int cnt = 0;
+            List<Long> sent = new ArrayList<>();
+            while (System.currentTimeMillis() - start < 10000) {
+                sent.add(outbox.append(vote));
+                if (sent.size() == 100) {
+                    outbox.acknowledge(sent);
+                    sent.clear();
+                }
+                cnt++;
+            }
+            outbox.close();
+            System.out.println(String.format("Append with sync interval %d ms: %d per second", syncInterval, cnt / 10));
+        }
+    }
+}
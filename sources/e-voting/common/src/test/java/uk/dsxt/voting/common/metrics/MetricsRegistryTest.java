@@ -0,0 +1,144 @@
+package uk.dsxt.voting.common.metrics;
+
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.Ignore;
+import org.junit.Test;
+import uk.dsxt.voting.common.utils.web.JettyRunner;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class MetricsRegistryTest {
+
+    @Path("echo")
+    public static class EchoResource {
+        @GET
+        public String echo() {
+            return "echo";
+        }
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 10000; i++) {
+            histogram.record(i * 1000);
+        }
+        assertEquals(10000, histogram.getCount());
+        assertEquals(10000000, histogram.getMax());
+        assertEquals(5000000, histogram.getPercentile(0.5), 5000000 * 0.04);
+        assertEquals(9900000, histogram.getPercentile(0.99), 9900000 * 0.04);
+        assertEquals(10000000, histogram.getPercentile(1));
+
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.getPercentile(1));
+        assertEquals(0, new LatencyHistogram().getPercentile(0.5));
+    }
+
+    @Test
+    public void testBucketBounds() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            long value = i < 1000 ? i : random.nextLong() >>> 1 + random.nextInt(63);
+            long highest = LatencyHistogram.bucketHighestValue(LatencyHistogram.bucketIndex(value));
+            assertTrue(highest >= value);
+            assertTrue(highest - value <= value / 32);
+        }
+    }
+
+    @Test
+    public void testText() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("votes_total", "node", "1").incrementAndGet();
+        registry.counter("votes_total", "node", "2").addAndGet(5);
+        assertSame(registry.counter("votes_total", "node", "1"), registry.counter("votes_total", "node", "1"));
+        AtomicLong depth = new AtomicLong(7);
+        registry.gauge("queue", depth::get);
+        registry.histogram("send_seconds", "holder", "a\"b").record(2000000);
+        registry.gauge("broken", () -> {
+            throw new IllegalStateException();
+        });
+
+        String text = registry.toText();
+        assertTrue(text.contains("# TYPE votes_total counter\nvotes_total{node=\"1\"} 1\nvotes_total{node=\"2\"} 5\n"));
+        assertTrue(text.contains("# TYPE queue gauge\nqueue 7\n"));
+        assertTrue(text.contains("send_seconds{holder=\"a\\\"b\",quantile=\"0.5\"} 0.002"));
+        assertTrue(text.contains("send_seconds_count{holder=\"a\\\"b\"} 1\n"));
+        assertFalse(text.contains("broken "));
+
+        depth.set(3);
+        assertTrue(registry.toText().contains("queue 3\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTypeConflict() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("metric");
+        registry.histogram("metric");
+    }
+
+    @Test
+    public void testEndpoint() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("test_total").incrementAndGet();
+        ResourceConfig application = new ResourceConfig();
+        application.registerInstances(new MetricsResource(registry), new EchoResource());
+        Properties properties = new Properties();
+        properties.setProperty("jetty.maxThreads", "10");
+        properties.setProperty("jetty.minThreads", "2");
+        properties.setProperty("jetty.idleTimeout", "5000");
+        properties.setProperty("jetty.maxQueueSize", "100");
+        Server server = JettyRunner.run(application, properties, 0);
+        try {
+            URL url = new URL(String.format("http://localhost:%d/metrics", ((ServerConnector) server.getConnectors()[0]).getLocalPort()));
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertTrue(connection.getContentType().startsWith("text/plain"));
+            assertTrue(IOUtils.toString(connection.getInputStream(), StandardCharsets.UTF_8).contains("test_total 1\n"));
+
+            assertEquals(200, ((HttpURLConnection) new URL(url, "/echo").openConnection()).getResponseCode());
+            assertEquals(404, ((HttpURLConnection) new URL(url, "/unknown").openConnection()).getResponseCode());
+            String text = registry.toText();
+            assertTrue(text.contains("http_request_seconds_count{path=\"echo\"} 1\n"));
+            assertFalse(text.contains("unknown"));
+            assertFalse(text.contains("path=\"metrics\""));
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    @Ignore
+    public void testPerformance() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        int threads = 8, count = 10000000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < count / threads; i++) {
+                    histogram.recordSince(System.nanoTime() - i);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        long time = System.nanoTime() - start;
+        System.out.println(String.format("%d threads: %d ns per record", threads, time * threads / count));
+    }
+}
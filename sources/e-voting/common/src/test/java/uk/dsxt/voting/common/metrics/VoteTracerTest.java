@@ -0,0 +1,100 @@
+package uk.dsxt.voting.common.metrics;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+public class VoteTracerTest {
+
+    @Test
+    public void testSampling() {
+        VoteTracer tracer = new VoteTracer(new MetricsRegistry());
+        assertFalse(tracer.isSampled("vote"));
+        tracer.setSampleRate(1);
+        assertTrue(tracer.isSampled("vote"));
+        assertFalse(tracer.isSampled(null));
+
+        tracer.setSampleRate(0.1);
+        VoteTracer other = new VoteTracer(new MetricsRegistry());
+        other.setSampleRate(0.1);
+        int sampled = 0;
+        for (int i = 0; i < 100000; i++) {
+            String id = UUID.randomUUID().toString();
+            assertEquals(tracer.isSampled(id), other.isSampled(id));
+            if (tracer.isSampled(id))
+                sampled++;
+        }
+        assertEquals(10000, sampled, 1000);
+    }
+
+    @Test
+    public void testWaterfall() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        VoteTracer tracer = new VoteTracer(registry);
+        tracer.setSampleRate(1);
+        long start = System.nanoTime();
+        tracer.append("1", VoteTracer.Hop.MESSAGE_SENT, "2");
+        tracer.mark("1", VoteTracer.Hop.CLIENT_VOTE, "2", start);
+        tracer.append("1", VoteTracer.Hop.MESSAGE_SENT, "2");
+        tracer.mark("1", VoteTracer.Hop.HOLDER_ACCEPTED, "1");
+        Thread.sleep(5);
+        tracer.mark("1", VoteTracer.Hop.HOLDER_ACCEPTED, "00");
+        tracer.mark("1", VoteTracer.Hop.MASTER_ACCEPTED, "00");
+        tracer.append("1", VoteTracer.Hop.STATUS_RECEIVED, "2");
+        tracer.append("1", VoteTracer.Hop.STATUS_RECEIVED, "2");
+
+        assertEquals(1, registry.histogram("vote_trace_offset_seconds", "hop", "message_sent").getCount());
+        assertEquals(1, registry.histogram("vote_trace_offset_seconds", "hop", "holder_accepted_2").getCount());
+        assertEquals(1, registry.histogram("vote_trace_offset_seconds", "hop", "status_received").getCount());
+        assertEquals(0, registry.histogram("vote_trace_offset_seconds", "hop", "client_vote").getMax());
+        assertTrue(registry.histogram("vote_trace_hop_seconds", "hop", "holder_accepted_2").getMax() >= 5000000);
+        assertTrue(registry.histogram("vote_trace_offset_seconds", "hop", "status_received").getMax() >= 5000000);
+
+        String report = tracer.getReport();
+        assertTrue(report.startsWith("Vote traces: 1 completed, 0 expired, 0 active"));
+        assertTrue(report.indexOf("client_vote") < report.indexOf("holder_accepted_2"));
+        assertTrue(report.indexOf("holder_accepted_2") < report.indexOf("status_received"));
+    }
+
+    @Test
+    public void testExpire() {
+        MetricsRegistry registry = new MetricsRegistry();
+        VoteTracer tracer = new VoteTracer(registry);
+        tracer.setSampleRate(1);
+        tracer.setMaxTraces(2);
+        for (int i = 0; i < 5; i++) {
+            tracer.mark(Integer.toString(i), VoteTracer.Hop.MASTER_ACCEPTED, "00");
+        }
+        assertTrue(tracer.getReport().startsWith("Vote traces: 0 completed, 3 expired, 2 active"));
+        tracer.append("0", VoteTracer.Hop.MASTER_HANDLED, "00");
+        tracer.flush();
+        assertTrue(tracer.getReport().startsWith("Vote traces: 0 completed, 5 expired, 0 active"));
+        assertEquals(5, registry.histogram("vote_trace_offset_seconds", "hop", "master_accepted").getCount());
+        assertEquals(0, registry.histogram("vote_trace_offset_seconds", "hop", "master_handled").getCount());
+    }
+
+    @Test
+    @Ignore
+    public void testPerformance() {
+        VoteTracer tracer = new VoteTracer(new MetricsRegistry());
+        String[] ids = new String[1000000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = UUID.randomUUID().toString();
+        }
+        for (double rate : new double[]{0, 0.01, 1}) {
+            tracer.setSampleRate(rate);
+            for (int round = 0; round < 3; round++) {
+                long start = System.nanoTime();
+                for (String id : ids) {
+                    tracer.mark(id, VoteTracer.Hop.CLIENT_VOTE, "1");
+                    tracer.append(id, VoteTracer.Hop.MESSAGE_SENT, "1");
+                    tracer.append(id, VoteTracer.Hop.STATUS_RECEIVED, "1");
+                }
+                System.out.println(String.format("Sample rate %.2f: %d ns per vote", rate, (System.nanoTime() - start) / ids.length));
+            }
+        }
+    }
+}
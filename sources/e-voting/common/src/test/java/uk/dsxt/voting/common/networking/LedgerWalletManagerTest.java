@@ -0,0 +1,195 @@
+package uk.dsxt.voting.common.networking;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import uk.dsxt.voting.common.ledger.LedgerServer;
+import uk.dsxt.voting.common.ledger.LedgerWalletManager;
+import uk.dsxt.voting.common.messaging.Message;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class LedgerWalletManagerTest {
+
+    private File directory;
+
+    private LedgerServer server;
+
+    private final List<LedgerWalletManager> managers = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("ledger").toFile();
+        server = new LedgerServer(directory, 0, 100);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        managers.forEach(LedgerWalletManager::stop);
+        server.close();
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private LedgerWalletManager createManager(String name, boolean useUncommittedMessages) {
+        return createManager(name, useUncommittedMessages, new Properties());
+    }
+
+    private LedgerWalletManager createManager(String name, boolean useUncommittedMessages, Properties properties) {
+        properties.setProperty("ledger.port", Integer.toString(server.getPort()));
+        properties.setProperty("ledger.read_batch_size", "7");
+        properties.setProperty("ledger.useUncommittedMessages", Boolean.toString(useUncommittedMessages));
+        LedgerWalletManager manager = new LedgerWalletManager(properties, name);
+        manager.start();
+        managers.add(manager);
+        return manager;
+    }
+
+    private static byte[] body(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String text(Message message) {
+        return new String(message.getBody(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testOrderAndCommit() throws Exception {
+        LedgerWalletManager writer1 = createManager("1", false);
+        LedgerWalletManager writer2 = createManager("2", false);
+        LedgerWalletManager reader = createManager("3", false);
+        LedgerWalletManager uncommittedReader = createManager("4", true);
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Integer.toString(i * 2 + 1), writer1.sendMessage(body("a" + i)));
+            assertEquals(Integer.toString(i * 2 + 2), writer2.sendMessage(body("b" + i)));
+        }
+        List<Message> uncommitted = uncommittedReader.getNewMessages(0);
+        assertEquals(20, uncommitted.size());
+        assertFalse(uncommitted.get(19).isCommitted());
+
+        Thread.sleep(300);
+        assertEquals(20, server.getCommittedSequence());
+        List<Message> messages = reader.getNewMessages(0);
+        assertEquals(20, messages.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(Integer.toString(i + 1), messages.get(i).getId());
+            assertEquals((i % 2 == 0 ? "a" : "b") + i / 2, text(messages.get(i)));
+            assertTrue(messages.get(i).isCommitted());
+        }
+        assertTrue(reader.getNewMessages(0).isEmpty());
+        assertTrue(uncommittedReader.getNewMessages(0).isEmpty());
+    }
+
+    @Test
+    public void testRestart() throws Exception {
+        LedgerWalletManager manager = createManager("1", true);
+        for (int i = 0; i < 5; i++) {
+            manager.sendMessage(body("m" + i));
+        }
+        assertEquals(5, manager.getNewMessages(0).size());
+        server.close();
+        try (RandomAccessFile file = new RandomAccessFile(new File(directory, "ledger.log"), "rw")) {
+            file.seek(file.length());
+            file.write(new byte[]{0, 0, 0, 0, 0, 0, 0, 6, 0, 0});
+        }
+
+        assertNull(manager.sendMessage(body("lost")));
+        server = new LedgerServer(directory, server.getPort(), 100);
+        assertEquals(5, server.getCommittedSequence());
+        assertEquals("6", manager.sendMessage(body("m5")));
+        List<Message> messages = manager.getNewMessages(0);
+        assertEquals(1, messages.size());
+        assertEquals("m5", text(messages.get(0)));
+        assertEquals(6, createManager("2", true).getNewMessages(0).size());
+    }
+
+    @Test
+    public void testCursorStoredBetweenRestarts() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("ledger.cursor_file", new File(directory, "cursor-%s.txt").getPath());
+        LedgerWalletManager manager = createManager("1", true, properties);
+        for (int i = 0; i < 5; i++) {
+            manager.sendMessage(body("m" + i));
+        }
+        assertEquals(5, manager.getNewMessages(0).size());
+        manager.sendMessage(body("m5"));
+        // messages of the last poll may be unhandled yet, they are returned again after restart
+        assertEquals(1, manager.getNewMessages(0).size());
+        manager.stop();
+
+        manager = createManager("1", true, properties);
+        List<Message> messages = manager.getNewMessages(0);
+        assertEquals(1, messages.size());
+        assertEquals("m5", text(messages.get(0)));
+        assertTrue(manager.getNewMessages(0).isEmpty());
+        manager.stop();
+        assertTrue(createManager("1", true, properties).getNewMessages(0).isEmpty());
+        assertEquals(6, createManager("2", true, properties).getNewMessages(0).size());
+    }
+
+    @Test
+    public void testInvalidLengthClosesConnection() throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort())) {
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.write('A');
+            out.writeInt(Integer.MAX_VALUE);
+            out.flush();
+            socket.setSoTimeout(5000);
+            assertEquals(-1, new DataInputStream(socket.getInputStream()).read());
+        }
+        assertEquals(0, server.getLastSequence());
+
+        Properties properties = new Properties();
+        properties.setProperty("ledger.max_message_size", "10");
+        LedgerWalletManager manager = createManager("1", true, properties);
+        assertNull(manager.sendMessage(new byte[11]));
+        assertEquals("1", manager.sendMessage(body("small")));
+        assertEquals(1, manager.getNewMessages(0).size());
+    }
+
+    @Test
+    @Ignore
+    public void testPerformance() throws Exception {
+        int writers = 8, count = 50000;
+        byte[] body = new byte[1024];
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < writers; i++) {
+            LedgerWalletManager manager = createManager(Integer.toString(i), false);
+            executor.execute(() -> {
+                for (int j = 0; j < count; j++) {
+                    manager.sendMessage(body);
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.MINUTES);
+        System.out.println("Append: " + writers * count * 1000L / (System.currentTimeMillis() - start) + " messages/s");
+
+        LedgerWalletManager reader = createManager("reader", false);
+        Thread.sleep(200);
+        start = System.currentTimeMillis();
+        int read = 0;
+        while (read < writers * count) {
+            read += reader.getNewMessages(0).size();
+        }
+        System.out.println("Read: " + read * 1000L / (System.currentTimeMillis() - start) + " messages/s");
+    }
+}
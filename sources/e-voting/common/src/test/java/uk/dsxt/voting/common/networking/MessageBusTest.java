@@ -0,0 +1,138 @@
+package uk.dsxt.voting.common.networking;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import uk.dsxt.voting.common.messaging.Message;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class MessageBusTest {
+
+    private static byte[] body(int i) {
+        return Integer.toString(i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> ids(List<Message> messages) {
+        List<String> ids = new ArrayList<>();
+        messages.forEach(m -> ids.add(m.getId()));
+        return ids;
+    }
+
+    @Test
+    public void testCursors() {
+        MessageBus bus = new MessageBus();
+        MessageBus.Subscription first = bus.subscribe();
+        for (int i = 0; i < 3; i++) {
+            bus.append(body(i));
+        }
+        assertEquals(Arrays.asList("MSG-1", "MSG-2", "MSG-3"), ids(first.poll()));
+        assertTrue(first.poll().isEmpty());
+        bus.append(body(3));
+        assertEquals(Collections.singletonList("MSG-4"), ids(first.poll()));
+        assertEquals(4, bus.subscribe().poll().size());
+    }
+
+    @Test
+    public void testCommitDelay() throws Exception {
+        MessageBus bus = new MessageBus();
+        MessageBus.Subscription committed = bus.subscribe(200, 0, 0, false, 1);
+        MessageBus.Subscription uncommitted = bus.subscribe(200, 0, 0, true, 1);
+        bus.append(body(0));
+        assertTrue(committed.poll().isEmpty());
+        List<Message> messages = uncommitted.poll();
+        assertEquals(1, messages.size());
+        assertFalse(messages.get(0).isCommitted());
+
+        Thread.sleep(300);
+        messages = committed.poll();
+        assertEquals(1, messages.size());
+        assertTrue(messages.get(0).isCommitted());
+        assertTrue(uncommitted.poll().isEmpty());
+    }
+
+    @Test
+    public void testReorderAndDuplicates() {
+        MessageBus bus = new MessageBus();
+        MessageBus.Subscription subscription = bus.subscribe(0, 10, 0.5, false, 42);
+        for (int i = 0; i < 100; i++) {
+            bus.append(body(i));
+        }
+        List<String> ids = ids(subscription.poll());
+        List<String> duplicates = ids(subscription.poll());
+        assertEquals(100, ids.size());
+        assertEquals(100, new HashSet<>(ids).size());
+        assertNotEquals(ids(bus.subscribe().poll()), ids);
+        assertFalse(duplicates.isEmpty());
+        assertTrue(ids.containsAll(duplicates));
+        assertTrue(subscription.poll().isEmpty());
+    }
+
+    @Test
+    public void testConcurrentAppends() throws Exception {
+        MessageBus bus = new MessageBus();
+        MessageBus.Subscription subscription = bus.subscribe();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        int count = 200000;
+        for (int t = 0; t < 8; t++) {
+            executor.execute(() -> {
+                for (int i = 0; i < count / 8; i++) {
+                    bus.append(body(i));
+                }
+            });
+        }
+        executor.shutdown();
+        List<Message> messages = new ArrayList<>();
+        while (messages.size() < count) {
+            messages.addAll(subscription.poll());
+        }
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        for (int i = 0; i < count; i++) {
+            assertEquals("MSG-" + (i + 1), messages.get(i).getId());
+        }
+        assertTrue(subscription.poll().isEmpty());
+    }
+
+    @Test
+    @Ignore
+    public void testPerformance() throws Exception {
+        int nodes = 100, count = 1000000;
+        MessageBus bus = new MessageBus();
+        ExecutorService executor = Executors.newFixedThreadPool(nodes);
+        List<MessageBus.Subscription> subscriptions = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) {
+            subscriptions.add(bus.subscribe());
+        }
+        long start = System.currentTimeMillis();
+        List<Future<Long>> readers = new ArrayList<>();
+        for (int i = 0; i < nodes; i++) {
+            MessageBus.Subscription subscription = subscriptions.get(i);
+            int node = i;
+            readers.add(executor.submit(() -> {
+                long received = 0;
+                for (int j = 0; j < count / nodes; j++) {
+                    bus.append(body(node));
+                    if (j % 100 == 0)
+                        received += subscription.poll().size();
+                }
+                while (received < count) {
+                    received += subscription.poll().size();
+                }
+                return received;
+            }));
+        }
+        long received = 0;
+        for (Future<Long> reader : readers) {
+            received += reader.get();
+        }
+        executor.shutdown();
+        long time = System.currentTimeMillis() - start;
+        System.out.println(String.format("%d nodes, %d messages: %d ms, %d deliveries/s", nodes, count, time, received * 1000 / time));
+    }
+}
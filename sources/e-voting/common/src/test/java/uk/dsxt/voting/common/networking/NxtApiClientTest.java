@@ -0,0 +1,112 @@
+package uk.dsxt.voting.common.networking;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.dsxt.voting.common.nxt.NxtApiClient;
+import uk.dsxt.voting.common.nxt.walletapi.WalletRequestType;
+import uk.dsxt.voting.common.utils.web.PooledHttpClient;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class NxtApiClientTest {
+
+    private HttpServer server;
+
+    private NxtApiClient apiClient;
+
+    private final AtomicInteger served = new AtomicInteger();
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicInteger maxActive = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(16));
+        server.createContext("/nxt", exchange -> {
+            served.incrementAndGet();
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                String request = IOUtils.toString(exchange.getRequestBody(), "UTF-8");
+                Thread.sleep(100);
+                byte[] answer = String.format("{\"request\":\"%s\"}", request).getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, answer.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(answer);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                active.decrementAndGet();
+            }
+        });
+        server.start();
+        String apiUrl = String.format("http://127.0.0.1:%d/nxt", server.getAddress().getPort());
+        apiClient = new NxtApiClient(new PooledHttpClient(1000, 5000, 16), new ObjectMapper(), apiUrl, 2, 100);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private static Map<String, String> arguments(WalletRequestType type, String block) {
+        Map<String, String> arguments = new LinkedHashMap<>();
+        arguments.put("requestType", type.toString());
+        arguments.put("block", block);
+        return arguments;
+    }
+
+    @Test
+    public void testSingleFlightAndCache() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Map>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(() -> apiClient.request(WalletRequestType.GET_BLOCK, arguments(WalletRequestType.GET_BLOCK, "1"), Map.class, r -> true)));
+        }
+        for (Future<Map> result : results) {
+            assertEquals("requestType=getBlock&block=1", result.get().get("request"));
+        }
+        executor.shutdown();
+        assertEquals(1, served.get());
+        assertEquals(7, apiClient.getCoalescedRequests());
+
+        assertNotNull(apiClient.request(WalletRequestType.GET_BLOCK, arguments(WalletRequestType.GET_BLOCK, "1"), Map.class, r -> true));
+        assertEquals(1, served.get());
+        assertEquals(1, apiClient.getCacheHits());
+
+        apiClient.request(WalletRequestType.GET_BLOCKCHAIN_STATUS, arguments(WalletRequestType.GET_BLOCKCHAIN_STATUS, "1"), Map.class);
+        apiClient.request(WalletRequestType.GET_BLOCKCHAIN_STATUS, arguments(WalletRequestType.GET_BLOCKCHAIN_STATUS, "1"), Map.class);
+        assertEquals(3, served.get());
+    }
+
+    @Test
+    public void testConcurrencyCap() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Map>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            String block = Integer.toString(i);
+            results.add(executor.submit(() -> apiClient.request(WalletRequestType.GET_BLOCK, arguments(WalletRequestType.GET_BLOCK, block), Map.class)));
+        }
+        for (Future<Map> result : results) {
+            assertNotNull(result.get());
+        }
+        executor.shutdown();
+        assertEquals(8, served.get());
+        assertTrue(maxActive.get() <= 2);
+        assertTrue(apiClient.getMaxQueueLength() > 0);
+        assertEquals(0, apiClient.getQueueLength());
+    }
+}
@@ -0,0 +1,51 @@
+package uk.dsxt.voting.common.networking;
+
+import org.junit.Test;
+import uk.dsxt.voting.common.nxt.NxtCrypto;
+
+import javax.xml.bind.DatatypeConverter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class NxtCryptoTest {
+
+    @Test
+    public void testAccounts() {
+        assertEquals("NXT-9PHW-CVXU-2TDY-H4878", NxtCrypto.toAddress(new NxtCrypto("master_password").getAccountId()));
+        assertEquals("NXT-B4QU-6FMA-9AJJ-H5EJ9", NxtCrypto.toAddress(new NxtCrypto("client_password").getAccountId()));
+        assertEquals("NXT-SGST-AM93-SG8M-D46X9", NxtCrypto.toAddress(new NxtCrypto("client_password_0").getAccountId()));
+        assertEquals(new NxtCrypto("victim_password").getAccountId(), NxtCrypto.parseAccountId("NXT-WSNB-TTZ4-9FE5-G2KMH"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidAddress() {
+        NxtCrypto.parseAccountId("NXT-WSNB-TTZ4-9FE5-G2KMJ");
+    }
+
+    /**
+     * signature of "message to sign" by client_password, computed with NXT Crypto.sign algorithm and constants
+     */
+    @Test
+    public void testKnownSignature() {
+        NxtCrypto crypto = new NxtCrypto("client_password");
+        byte[] message = "message to sign".getBytes(StandardCharsets.UTF_8);
+        assertEquals("1ee7ed68068a6b113a816c5425ac4ed37ee01584f1d8a5ef96084b2be399663a", DatatypeConverter.printHexBinary(crypto.getPublicKey()).toLowerCase());
+        byte[] expected = DatatypeConverter.parseHexBinary("07d6ea980d4cd595efeb11b4e83d8a308e84a943ffd865538cb5b5912bafe201" +
+            "daf171a364747f7bfea69931d3930f5a03504d0b0610b5b4fb06d52d8645fa91");
+        assertArrayEquals(expected, crypto.sign(message));
+        assertTrue(NxtCrypto.verify(expected, message, crypto.getPublicKey()));
+    }
+
+    @Test
+    public void testSignature() {
+        NxtCrypto crypto = new NxtCrypto("client_password");
+        byte[] message = "message to sign".getBytes(StandardCharsets.UTF_8);
+        byte[] signature = crypto.sign(message);
+        assertEquals(64, signature.length);
+        assertArrayEquals(signature, crypto.sign(message));
+        assertTrue(NxtCrypto.verify(signature, message, crypto.getPublicKey()));
+        assertFalse(NxtCrypto.verify(signature, "other message".getBytes(StandardCharsets.UTF_8), crypto.getPublicKey()));
+        assertFalse(NxtCrypto.verify(signature, message, new NxtCrypto("master_password").getPublicKey()));
+    }
+}
@@ -0,0 +1,50 @@
+package uk.dsxt.voting.common.networking;
+
+import org.junit.Test;
+import uk.dsxt.voting.common.nxt.TransactionTracker;
+
+import static org.junit.Assert.*;
+
+public class TransactionTrackerTest {
+
+    @Test
+    public void testPromotion() {
+        TransactionTracker tracker = new TransactionTracker(1000);
+        assertTrue(tracker.addProvisional("1", 100));
+        assertFalse(tracker.addProvisional("1", 200));
+        assertTrue(tracker.isKnown("1"));
+        assertFalse(tracker.isCommitted("1"));
+
+        assertTrue(tracker.promote("1", 350));
+        assertTrue(tracker.isCommitted("1"));
+        assertFalse(tracker.promote("1", 400));
+        assertFalse(tracker.addProvisional("1", 400));
+        assertEquals(0, tracker.getProvisionalCount());
+        assertEquals(1, tracker.getPromotedCount());
+        assertEquals(250, tracker.getMaxPromotionLag());
+        assertEquals(250, tracker.getAveragePromotionLag());
+
+        assertFalse(tracker.promote("2", 400));
+        tracker.addCommitted("2");
+        assertFalse(tracker.addProvisional("2", 500));
+    }
+
+    @Test
+    public void testExpiration() {
+        TransactionTracker tracker = new TransactionTracker(1000);
+        tracker.addProvisional("1", 100);
+        tracker.addProvisional("2", 600);
+        tracker.addProvisional("3", 700);
+        tracker.promote("3", 800);
+
+        assertEquals(0, tracker.expire(1099));
+        assertEquals(1, tracker.expire(1100));
+        assertFalse(tracker.isKnown("1"));
+        assertTrue(tracker.isKnown("2"));
+        assertEquals(1, tracker.expire(2000));
+        assertTrue(tracker.isCommitted("3"));
+        assertEquals(2, tracker.getExpiredCount());
+
+        assertTrue(tracker.addProvisional("1", 2000));
+    }
+}
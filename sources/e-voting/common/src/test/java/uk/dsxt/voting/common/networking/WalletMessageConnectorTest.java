@@ -0,0 +1,262 @@
+package uk.dsxt.voting.common.networking;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import uk.dsxt.voting.common.domain.dataModel.VoteResult;
+import uk.dsxt.voting.common.domain.dataModel.VoteResultStatus;
+import uk.dsxt.voting.common.domain.dataModel.VoteStatus;
+import uk.dsxt.voting.common.domain.nodes.AssetsHolder;
+import uk.dsxt.voting.common.domain.nodes.NetworkClient;
+import uk.dsxt.voting.common.messaging.Message;
+import uk.dsxt.voting.common.messaging.MessageContent;
+import uk.dsxt.voting.common.messaging.MessagesSerializer;
+import uk.dsxt.voting.common.messaging.SimpleSerializer;
+import uk.dsxt.voting.common.metrics.MetricsRegistry;
+import uk.dsxt.voting.common.metrics.VoteTracer;
+import uk.dsxt.voting.common.utils.InternalLogicException;
+import uk.dsxt.voting.common.utils.crypto.CryptoHelper;
+import uk.dsxt.voting.common.utils.crypto.CryptoHelperImpl;
+import uk.dsxt.voting.common.utils.crypto.KeyPair;
+
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class WalletMessageConnectorTest {
+
+    private static final CryptoHelperImpl cryptoHelper = CryptoHelperImpl.DEFAULT_CRYPTO_HELPER;
+
+    private static final String MASTER_ID = "00";
+
+    private static final String HOLDER_ID = "1";
+
+    private static final Map<String, PublicKey> publicKeysById = new HashMap<>();
+
+    private static final Map<String, PrivateKey> privateKeysById = new HashMap<>();
+
+    private static class CapturingWalletManager implements WalletManager {
+        final BlockingQueue<byte[]> bodies = new LinkedBlockingQueue<>();
+
+        @Override
+        public String sendMessage(byte[] body) {
+            bodies.add(body);
+            return UUID.randomUUID().toString();
+        }
+
+        @Override
+        public List<Message> getNewMessages(long timestamp) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        List<MessageContent> take(int count) throws InterruptedException {
+            List<MessageContent> messages = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                byte[] body = bodies.poll(10, TimeUnit.SECONDS);
+                assertNotNull(body);
+                messages.add(new MessageContent(body));
+            }
+            return messages;
+        }
+    }
+
+    @BeforeClass
+    public static void setUpKeys() throws Exception {
+        for (String id : Arrays.asList(MASTER_ID, HOLDER_ID)) {
+            KeyPair keys = cryptoHelper.createCryptoKeysGenerator().generateKeyPair();
+            publicKeysById.put(id, cryptoHelper.loadPublicKey(keys.getPublicKey()));
+            privateKeysById.put(id, cryptoHelper.loadPrivateKey(keys.getPrivateKey()));
+        }
+    }
+
+    private final List<WalletMessageConnector> connectors = new ArrayList<>();
+
+    private final MessagesSerializer serializer = new SimpleSerializer();
+
+    @After
+    public void tearDown() {
+        connectors.forEach(WalletMessageConnector::stop);
+    }
+
+    private WalletMessageConnector createConnector(WalletManager walletManager, String holderId, int maxBodyLength) {
+        return createConnector(walletManager, serializer, holderId, maxBodyLength);
+    }
+
+    private WalletMessageConnector createConnector(WalletManager walletManager, MessagesSerializer serializer, String holderId, int maxBodyLength) {
+        return createConnector(walletManager, serializer, cryptoHelper, holderId, maxBodyLength);
+    }
+
+    private WalletMessageConnector createConnector(WalletManager walletManager, MessagesSerializer serializer, CryptoHelper cryptoHelper, String holderId,
+                                                   int maxBodyLength) {
+        WalletMessageConnector connector = new WalletMessageConnector(walletManager, serializer, cryptoHelper, publicKeysById,
+            privateKeysById.get(holderId), holderId, MASTER_ID, 60000, 2, false, maxBodyLength);
+        connectors.add(connector);
+        return connector;
+    }
+
+    @Test
+    public void testChunksCommittedOnlyWhenAllChunksCommitted() throws Exception {
+        CapturingWalletManager wallet = new CapturingWalletManager();
+        WalletMessageConnector sender = createConnector(wallet, HOLDER_ID, 20);
+        WalletMessageConnector receiver = createConnector(new CapturingWalletManager(), MASTER_ID, 0);
+        NetworkClient client = mock(NetworkClient.class);
+        receiver.addClient(client);
+
+        VoteStatus status = new VoteStatus("1", "message", VoteResultStatus.OK, "digest", "signature");
+        String groupId = sender.addVoteStatus(status);
+        int count = (status.toString().length() + 19) / 20;
+        List<MessageContent> chunks = wallet.take(count);
+        for (int i = 0; i < chunks.size(); i++) {
+            receiver.handleNewMessage(chunks.get(i), "tran" + i, i != 0, HOLDER_ID);
+        }
+        verify(client).addVoteStatus(status, groupId, false, false);
+    }
+
+    @Test
+    public void testAggregatedVotesDeliveredToMaster() throws Exception {
+        CapturingWalletManager wallet = new CapturingWalletManager();
+        WalletMessageConnector sender = createConnector(wallet, HOLDER_ID, 0);
+        sender.enableVotesAggregation(60000, 2);
+        WalletMessageConnector master = createConnector(new CapturingWalletManager(), MASTER_ID, 0);
+        NetworkClient client = mock(NetworkClient.class);
+        master.addClient(client);
+
+        VoteResult result1 = new VoteResult("voting", "owner1", BigDecimal.ONE);
+        VoteResult result2 = new VoteResult("voting", "owner2", BigDecimal.TEN);
+        String voteId1 = sender.addVote(result1, result1.toString(), AssetsHolder.EMPTY_SIGNATURE);
+        String voteId2 = sender.addVote(result2, result2.toString(), AssetsHolder.EMPTY_SIGNATURE);
+        assertNotEquals(voteId1, voteId2);
+
+        MessageContent message = wallet.take(1).get(0);
+        assertEquals("VOTES", message.getType());
+        master.handleNewMessage(message, "tran", true, HOLDER_ID);
+        verify(client).addVoteToMaster(result1, voteId1, result1.toString(), true, false);
+        verify(client).addVoteToMaster(result2, voteId2, result2.toString(), true, false);
+    }
+
+    @Test
+    public void testVotesSentSeparatelyWhenAggregationFails() throws Exception {
+        MessagesSerializer failingSerializer = new SimpleSerializer() {
+            @Override
+            public String aggregateVoteResults(List<String> serializedVoteResults) throws InternalLogicException {
+                throw new InternalLogicException("aggregation is not supported");
+            }
+        };
+        CapturingWalletManager wallet = new CapturingWalletManager();
+        WalletMessageConnector sender = createConnector(wallet, failingSerializer, HOLDER_ID, 0);
+        sender.enableVotesAggregation(60000, 2);
+        WalletMessageConnector master = createConnector(new CapturingWalletManager(), MASTER_ID, 0);
+        NetworkClient client = mock(NetworkClient.class);
+        master.addClient(client);
+
+        VoteResult result1 = new VoteResult("voting", "owner1", BigDecimal.ONE);
+        VoteResult result2 = new VoteResult("voting", "owner2", BigDecimal.TEN);
+        String voteId1 = sender.addVote(result1, result1.toString(), AssetsHolder.EMPTY_SIGNATURE);
+        String voteId2 = sender.addVote(result2, result2.toString(), AssetsHolder.EMPTY_SIGNATURE);
+
+        List<MessageContent> messages = wallet.take(2);
+        Set<String> ids = new HashSet<>();
+        for (MessageContent message : messages) {
+            assertEquals("VOTE", message.getType());
+            ids.add(message.getUID());
+            master.handleNewMessage(message, message.getUID(), true, HOLDER_ID);
+        }
+        assertEquals(new HashSet<>(Arrays.asList(voteId1, voteId2)), ids);
+        verify(client).addVoteToMaster(result1, voteId1, result1.toString(), true, false);
+        verify(client).addVoteToMaster(result2, voteId2, result2.toString(), true, false);
+    }
+
+    @Test
+    public void testVotesSentSeparatelyWhenEncryptionFails() throws Exception {
+        AtomicBoolean isFirst = new AtomicBoolean(true);
+        CryptoHelper failingCryptoHelper = new CryptoHelperImpl("RSA", "AES", "SHA1WithRSA", "SHA1", 2048, 128) {
+            @Override
+            public String encrypt(String text, PublicKey key) throws GeneralSecurityException, UnsupportedEncodingException {
+                if (isFirst.getAndSet(false))
+                    throw new GeneralSecurityException("message is too long");
+                return super.encrypt(text, key);
+            }
+        };
+        CapturingWalletManager wallet = new CapturingWalletManager();
+        WalletMessageConnector sender = createConnector(wallet, serializer, failingCryptoHelper, HOLDER_ID, 0);
+        sender.enableVotesAggregation(60000, 2);
+        WalletMessageConnector master = createConnector(new CapturingWalletManager(), MASTER_ID, 0);
+        NetworkClient client = mock(NetworkClient.class);
+        master.addClient(client);
+
+        VoteResult result1 = new VoteResult("voting", "owner1", BigDecimal.ONE);
+        VoteResult result2 = new VoteResult("voting", "owner2", BigDecimal.TEN);
+        String voteId1 = sender.addVote(result1, result1.toString(), AssetsHolder.EMPTY_SIGNATURE);
+        String voteId2 = sender.addVote(result2, result2.toString(), AssetsHolder.EMPTY_SIGNATURE);
+
+        for (MessageContent message : wallet.take(2)) {
+            assertEquals("VOTE", message.getType());
+            master.handleNewMessage(message, message.getUID(), true, HOLDER_ID);
+        }
+        verify(client).addVoteToMaster(result1, voteId1, result1.toString(), true, false);
+        verify(client).addVoteToMaster(result2, voteId2, result2.toString(), true, false);
+    }
+
+    @Test
+    public void testPendingVotesSentOnStop() throws Exception {
+        CapturingWalletManager wallet = new CapturingWalletManager();
+        WalletMessageConnector sender = createConnector(wallet, HOLDER_ID, 0);
+        sender.enableVotesAggregation(60000, 10);
+
+        VoteResult result = new VoteResult("voting", "owner1", BigDecimal.ONE);
+        sender.addVote(result, result.toString(), AssetsHolder.EMPTY_SIGNATURE);
+        assertTrue(wallet.bodies.isEmpty());
+        sender.stop();
+        assertEquals("VOTES", wallet.take(1).get(0).getType());
+    }
+
+    @Test
+    public void testAggregatedVotesTraced() throws Exception {
+        VoteTracer tracer = VoteTracer.getDefault();
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        String[] hops = {"message_sent", "message_received", "message_committed"};
+        long[] counts = new long[hops.length];
+        for (int i = 0; i < hops.length; i++) {
+            counts[i] = metrics.histogram("vote_trace_offset_seconds", "hop", hops[i]).getCount();
+        }
+        tracer.setSampleRate(1);
+        try {
+            CapturingWalletManager wallet = new CapturingWalletManager();
+            WalletMessageConnector sender = createConnector(wallet, HOLDER_ID, 0);
+            sender.enableVotesAggregation(60000, 2);
+            VoteResult result1 = new VoteResult("voting", "owner1", BigDecimal.ONE);
+            VoteResult result2 = new VoteResult("voting", "owner2", BigDecimal.TEN);
+            String voteId1 = sender.addVote(result1, result1.toString(), AssetsHolder.EMPTY_SIGNATURE);
+            String voteId2 = sender.addVote(result2, result2.toString(), AssetsHolder.EMPTY_SIGNATURE);
+            MessageContent message = wallet.take(1).get(0);
+            sender.stop();
+            sender.handleNewMessage(message, "tran", false, HOLDER_ID);
+            sender.handleNewMessage(message, "tran", true, HOLDER_ID);
+            tracer.append(voteId1, VoteTracer.Hop.STATUS_RECEIVED, HOLDER_ID);
+            tracer.append(voteId2, VoteTracer.Hop.STATUS_RECEIVED, HOLDER_ID);
+        } finally {
+            tracer.setSampleRate(0);
+        }
+        for (int i = 0; i < hops.length; i++) {
+            assertEquals(hops[i], counts[i] + 2, metrics.histogram("vote_trace_offset_seconds", "hop", hops[i]).getCount());
+        }
+    }
+}
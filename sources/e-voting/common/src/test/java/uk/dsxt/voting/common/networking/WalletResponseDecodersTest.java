@@ -0,0 +1,115 @@
+package uk.dsxt.voting.common.networking;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import org.junit.Ignore;
+import org.junit.Test;
+import uk.dsxt.voting.common.nxt.NxtApiClient;
+import uk.dsxt.voting.common.nxt.WalletResponseDecoders;
+import uk.dsxt.voting.common.nxt.walletapi.*;
+import uk.dsxt.voting.common.utils.PropertiesHelper;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class WalletResponseDecodersTest {
+
+    private final ObjectMapper mapper = new ObjectMapper().setNodeFactory(JsonNodeFactory.withExactBigDecimals(true));
+
+    private <T> T decode(NxtApiClient.ResponseDecoder<T> decoder, byte[] response) throws IOException {
+        try (JsonParser parser = mapper.getFactory().createParser(new ByteArrayInputStream(response))) {
+            return decoder.decode(parser);
+        }
+    }
+
+    private static byte[] resource(String name) {
+        return PropertiesHelper.getResourceString(name, "UTF-8").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testTransaction() throws Exception {
+        byte[] response = resource("nxt/transaction.json");
+        MessageTransaction transaction = decode(WalletResponseDecoders.TRANSACTION, response);
+        Transaction expected = mapper.readValue(response, Transaction.class);
+
+        assertEquals(expected.getTransaction(), transaction.getTransaction());
+        assertEquals(expected.getBlock(), transaction.getBlock());
+        assertEquals(expected.getType(), transaction.getType());
+        assertEquals(expected.getTimestamp(), transaction.getTimestamp());
+        assertTrue(transaction.isMessageIsText());
+        assertEquals(expected.getAttachment().getMessage(), transaction.getMessage());
+    }
+
+    @Test
+    public void testBlock() throws Exception {
+        byte[] response = resource("nxt/block.json");
+        BlockTransactions block = decode(WalletResponseDecoders.BLOCK, response);
+        BlockResponse expected = mapper.readValue(response, BlockResponse.class);
+
+        assertEquals(expected.getBlock(), block.getBlock());
+        assertEquals(expected.getPreviousBlock(), block.getPreviousBlock());
+        assertEquals(expected.getTimestamp(), Integer.toString(block.getTimestamp()));
+        assertArrayEquals(expected.getTransactions(), block.getTransactions());
+    }
+
+    @Test
+    public void testUnconfirmedTransactions() throws Exception {
+        byte[] response = resource("nxt/unconfirmedTransactions.json");
+        List<MessageTransaction> transactions = decode(WalletResponseDecoders.UNCONFIRMED_TRANSACTIONS, response);
+        Transaction[] expected = mapper.readValue(response, UnconfirmedTransactionsResponse.class).getUnconfirmedTransactions();
+
+        assertEquals(expected.length, transactions.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i].getTransaction(), transactions.get(i).getTransaction());
+            assertNull(transactions.get(i).getBlock());
+            assertEquals(expected[i].getAttachment().isMessageIsText(), transactions.get(i).isMessageIsText());
+            assertEquals(expected[i].getAttachment().getMessage(), transactions.get(i).getMessage());
+        }
+    }
+
+    @Test(expected = WalletApiException.class)
+    public void testError() throws Exception {
+        decode(WalletResponseDecoders.TRANSACTION, "{\"errorDescription\":\"Unknown transaction\",\"errorCode\":5}".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @Ignore
+    public void testPerformance() throws Exception {
+        String transaction = PropertiesHelper.getResourceString("nxt/transaction.json", "UTF-8").trim();
+        StringBuilder pool = new StringBuilder("{\"unconfirmedTransactions\":[");
+        for (int i = 0; i < 50000; i++) {
+            if (i > 0)
+                pool.append(',');
+            pool.append(transaction.replace("9034157183394219882", Long.toUnsignedString(9034157183394219882L + i)));
+        }
+        byte[] response = pool.append("],\"requestProcessingTime\":120}").toString().getBytes(StandardCharsets.UTF_8);
+        System.out.println("Pool of 50000 transactions: " + response.length / 1024 + " KB");
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for (int round = 0; round < 3; round++) {
+            long bytes = threads.getThreadAllocatedBytes(threadId);
+            long start = System.currentTimeMillis();
+            int cnt = 0;
+            for (; cnt < 20; cnt++) {
+                mapper.readValue(new ByteArrayInputStream(response), UnconfirmedTransactionsResponse.class);
+            }
+            System.out.println(String.format("Data binding: %d ms, %d MB allocated per response",
+                (System.currentTimeMillis() - start) / cnt, (threads.getThreadAllocatedBytes(threadId) - bytes) / cnt / 1024 / 1024));
+
+            bytes = threads.getThreadAllocatedBytes(threadId);
+            start = System.currentTimeMillis();
+            for (cnt = 0; cnt < 20; cnt++) {
+                decode(WalletResponseDecoders.UNCONFIRMED_TRANSACTIONS, response);
+            }
+            System.out.println(String.format("Streaming decoder: %d ms, %d MB allocated per response",
+                (System.currentTimeMillis() - start) / cnt, (threads.getThreadAllocatedBytes(threadId) - bytes) / cnt / 1024 / 1024));
+        }
+    }
+}
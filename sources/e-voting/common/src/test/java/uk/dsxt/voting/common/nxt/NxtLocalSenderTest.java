@@ -0,0 +1,39 @@
+package uk.dsxt.voting.common.nxt;
+
+import org.junit.Test;
+
+import javax.xml.bind.DatatypeConverter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class NxtLocalSenderTest {
+
+    /**
+     * message transaction from client_password to master_password account, bytes and id computed with NXT transaction layout and
+     * Crypto.sign algorithm and constants
+     */
+    @Test
+    public void testKnownTransaction() {
+        NxtLocalSender sender = new NxtLocalSender(null, "client_password", "NXT-9PHW-CVXU-2TDY-H4878", 1, 1, 1000);
+        try {
+            byte[] unsigned = sender.buildMessageTransaction(83927553, 1042, 1424596483742195323L, "self-check".getBytes(StandardCharsets.UTF_8));
+            assertEquals("011001a200053c001ee7ed68068a6b113a816c5425ac4ed37ee01584f1d8a5ef96084b2be399663afcd5a3fb56c214f3" +
+                "000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000" +
+                "000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000" +
+                "0000000000000000000000000000000001000000120400007b5eb941f42ec513010a00008073656c662d636865636b", toHex(unsigned));
+            byte[] signed = sender.sign(unsigned);
+            assertEquals("011001a200053c001ee7ed68068a6b113a816c5425ac4ed37ee01584f1d8a5ef96084b2be399663afcd5a3fb56c214f3" +
+                "000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000" +
+                "d82ad4e9e4d8af0bf3260f34b5ed4f11b92282d8bbfc5de9a01aef6891d0520e8a30ca8baec0986b495c058f96f4bb9c" +
+                "d15d0b5840d42a86f3280b6d29e0818501000000120400007b5eb941f42ec513010a00008073656c662d636865636b", toHex(signed));
+            assertEquals("34874736452400420", Long.toUnsignedString(NxtLocalSender.getTransactionId(signed)));
+        } finally {
+            sender.stop();
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        return DatatypeConverter.printHexBinary(bytes).toLowerCase();
+    }
+}
@@ -0,0 +1,114 @@
+package uk.dsxt.voting.common.registries;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import uk.dsxt.voting.common.domain.dataModel.Participant;
+import uk.dsxt.voting.common.utils.InternalLogicException;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class ParticipantRegistryTest {
+
+    private static Participant participant(int id, String key) {
+        return new Participant(Integer.toString(id), "name" + id, key);
+    }
+
+    private static Participant[] participants(int count) {
+        Participant[] participants = new Participant[count];
+        for (int i = 0; i < count; i++) {
+            participants[i] = participant(i, "key" + i);
+        }
+        return participants;
+    }
+
+    @Test
+    public void testDigest() {
+        Participant[] participants = participants(3);
+        Participant[] reversed = {participants[2], participants[1], participants[0]};
+        assertEquals(ParticipantSnapshot.digest(participants), ParticipantSnapshot.digest(reversed));
+        assertNotEquals(ParticipantSnapshot.digest(participants), ParticipantSnapshot.digest(new Participant[]{participants[0], participants[1], participant(2, "other")}));
+    }
+
+    @Test
+    public void testDelta() throws Exception {
+        ParticipantRegistry registry = new ParticipantRegistry("e1", participants(5), 10);
+        ParticipantSnapshot first = registry.getSnapshot();
+        assertFalse(registry.update(participants(5)));
+        assertEquals(1, registry.getSnapshot().getVersion());
+
+        Participant[] second = participants(6);
+        second[1] = participant(1, "changed");
+        assertTrue(registry.update(second));
+        Participant[] third = Arrays.copyOfRange(second, 0, 4);
+        third[3] = participant(3, "changed");
+        assertTrue(registry.update(third));
+        assertEquals(3, registry.getSnapshot().getVersion());
+
+        ParticipantDelta delta = registry.getDelta("e1", 1, first.getEtag());
+        assertFalse(delta.isFull());
+        assertEquals(2, delta.getChanged().length);
+        assertArrayEquals(new String[]{"4", "5"}, delta.getRemoved());
+        ParticipantSnapshot updated = first.apply(delta);
+        assertEquals(3, updated.getVersion());
+        assertEquals(registry.getSnapshot().getEtag(), updated.getEtag());
+        assertArrayEquals(third, updated.getParticipants());
+
+        ParticipantDelta last = registry.getDelta("e1", 2, ParticipantSnapshot.digest(second));
+        assertEquals(1, last.getChanged().length);
+        assertEquals(2, last.getRemoved().length);
+        try {
+            first.apply(last);
+            fail();
+        } catch (InternalLogicException e) {
+            assertTrue(e.getMessage().contains("can not be applied"));
+        }
+    }
+
+    @Test
+    public void testFullAndEmptyDelta() throws Exception {
+        ParticipantRegistry registry = new ParticipantRegistry("e1", participants(3), 1);
+        ParticipantSnapshot first = registry.getSnapshot();
+        registry.update(participants(4));
+        registry.update(participants(5));
+
+        ParticipantDelta full = registry.getDelta("e1", 1, first.getEtag());
+        assertTrue(full.isFull());
+        assertEquals(5, first.apply(full).getParticipants().length);
+        assertTrue(registry.getDelta("e0", 2, ParticipantSnapshot.digest(participants(4))).isFull());
+        assertFalse(registry.getDelta("e1", 2, ParticipantSnapshot.digest(participants(4))).isFull());
+
+        ParticipantRegistry restarted = new ParticipantRegistry("e2", participants(5), 1);
+        ParticipantSnapshot cached = registry.getSnapshot();
+        ParticipantDelta empty = restarted.getDelta(cached.getEpoch(), cached.getVersion(), cached.getEtag());
+        assertFalse(empty.isFull());
+        assertEquals(0, empty.getChanged().length + empty.getRemoved().length);
+        ParticipantSnapshot updated = cached.apply(empty);
+        assertEquals("e2", updated.getEpoch());
+        assertEquals(1, updated.getVersion());
+    }
+
+    @Test
+    public void testEncoded() throws Exception {
+        ParticipantRegistry registry = new ParticipantRegistry("e1", participants(1000), 10);
+        ParticipantSnapshot first = registry.getSnapshot();
+        assertNull(registry.getEncodedDelta("e1", 1, first.getEtag()));
+        ParticipantRegistry.EncodedBody snapshot = registry.getEncodedSnapshot();
+        assertSame(snapshot, registry.getEncodedSnapshot());
+        assertTrue(snapshot.getGzip().length < snapshot.getPlain().length / 2);
+        assertArrayEquals(snapshot.getPlain(), IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(snapshot.getGzip()))));
+        ParticipantSnapshot decoded = new ObjectMapper().readValue(snapshot.getPlain(), ParticipantSnapshot.class);
+        assertArrayEquals(first.getParticipants(), decoded.getParticipants());
+
+        registry.update(participants(1001));
+        ParticipantRegistry.EncodedBody delta = registry.getEncodedDelta("e1", 1, first.getEtag());
+        assertSame(delta, registry.getEncodedDelta("e1", 1, first.getEtag()));
+        assertEquals(registry.getSnapshot().getEtag(), delta.getEtag());
+        assertTrue(delta.getPlain().length * 100 < snapshot.getPlain().length);
+        assertNotSame(snapshot, registry.getEncodedSnapshot());
+    }
+}
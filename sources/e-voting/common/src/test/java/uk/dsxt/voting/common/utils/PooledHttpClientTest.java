@@ -0,0 +1,131 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ *                                                                            *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ *                                                                            *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ *                                                                            *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ *                                                                            *
+ * Removal or modification of this copyright notice is prohibited.            *
+ *                                                                            *
+ ******************************************************************************/
+
+package uk.dsxt.voting.common.utils;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.dsxt.voting.common.utils.web.PooledHttpClient;
+import uk.dsxt.voting.common.utils.web.RequestType;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class PooledHttpClientTest {
+
+    private HttpServer server;
+
+    private String baseUrl;
+
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private final AtomicInteger maxActive = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(8));
+        server.createContext("/echo", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                String body = URLDecoder.decode(IOUtils.toString(exchange.getRequestBody(), "UTF-8").replace("text=", ""), "UTF-8");
+                Thread.sleep(20);
+                byte[] answer = body.getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, answer.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(answer);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                active.decrementAndGet();
+            }
+        });
+        server.createContext("/fail", exchange -> {
+            byte[] answer = "error".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(500, answer.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(answer);
+            }
+        });
+        server.start();
+        baseUrl = String.format("http://127.0.0.1:%d", server.getAddress().getPort());
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testBodiesAndKeepAlive() throws Exception {
+        PooledHttpClient client = new PooledHttpClient(1000, 5000, 2);
+        String text = "Голосование\nvote №1";
+        for (int i = 0; i < 5; i++) {
+            assertEquals(text, client.request(baseUrl + "/echo?i=" + i, Collections.singletonMap("text", text), RequestType.POST));
+        }
+        assertEquals(1, clientPorts.size());
+        PooledHttpClient.EndpointStatistics statistics = client.getStatistics().get(String.format("POST %s/echo", baseUrl));
+        assertEquals(5, statistics.getRequests());
+        assertEquals(0, statistics.getErrors());
+    }
+
+    @Test
+    public void testConnectionsLimit() throws Exception {
+        PooledHttpClient client = new PooledHttpClient(1000, 5000, 2);
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            String text = Integer.toString(i);
+            results.add(executor.submit(() -> client.request(baseUrl + "/echo", Collections.singletonMap("text", text), RequestType.POST)));
+        }
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(Integer.toString(i), results.get(i).get());
+        }
+        executor.shutdown();
+        assertTrue(maxActive.get() <= 2);
+    }
+
+    @Test
+    public void testFailedRequest() throws Exception {
+        PooledHttpClient client = new PooledHttpClient(1000, 5000);
+        try {
+            client.request(baseUrl + "/fail", RequestType.GET);
+            fail();
+        } catch (InternalLogicException e) {
+            assertTrue(e.getMessage().contains("500"));
+        }
+        assertEquals(1, client.getStatistics().get(String.format("GET %s/fail", baseUrl)).getErrors());
+    }
+}
@@ -31,6 +31,7 @@ angular
         "WRONG_COOKIE": "Invalid session",
         "INCORRECT_RIGHTS": "You don't have rights to do this operation",
         "INVALID_SIGNATURE": "Invalid vote's signature",
+        "INVALID_PAGE_LIMIT": "Invalid page size",
         "VOTING_NOT_FOUND": "Unknown voting",
         "CLIENT_NOT_FOUND": "Server error",
         "VOTE_NOT_FOUND": "You didn't vote for this voting",
@@ -23,13 +23,19 @@ package uk.dsxt.voting.registriesserver;
 
 import lombok.extern.log4j.Log4j2;
 import org.glassfish.jersey.server.ResourceConfig;
+import uk.dsxt.voting.common.metrics.MetricsRegistry;
+import uk.dsxt.voting.common.metrics.MetricsResource;
 import uk.dsxt.voting.common.registries.FileRegisterServer;
+import uk.dsxt.voting.common.registries.ParticipantRegistry;
 import uk.dsxt.voting.common.registries.RegistriesServer;
 import uk.dsxt.voting.common.utils.InternalLogicException;
 import uk.dsxt.voting.common.utils.web.JettyRunner;
 
 import javax.ws.rs.ApplicationPath;
 import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @Log4j2
 @ApplicationPath("")
@@ -45,10 +51,36 @@ public class RegistriesServerApplication extends ResourceConfig {
             log.info(String.format("Testing mode. subdirectory: '%s'. votingDuration: %s minutes", subdirectory, votingDuration));
         }
 
+        int historySize = Integer.parseInt(properties.getProperty("participants.history_size", "100"));
+        int reloadInterval = Integer.parseInt(properties.getProperty("participants.reload_interval", "0"));
+
         //initialization
         RegistriesServer server = new FileRegisterServer(properties, subdirectory);
+        ParticipantRegistry registry = new ParticipantRegistry(server.getParticipants(), historySize);
+        MetricsRegistry metrics = MetricsRegistry.getDefault();
+        metrics.gauge("participants_version", () -> registry.getSnapshot().getVersion());
+        metrics.gauge("participants_count", () -> registry.getSnapshot().getParticipants().length);
+        if (reloadInterval > 0)
+            scheduleReload(properties, subdirectory, registry, reloadInterval);
         JettyRunner.configureMapper(this);
-        this.registerInstances(new RegistriesServerResource(server));
+        this.registerInstances(new RegistriesServerResource(registry), new MetricsResource());
+    }
+
+    private static void scheduleReload(Properties properties, String subdirectory, ParticipantRegistry registry, int reloadInterval) {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "participants-reload");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                registry.update(new FileRegisterServer(properties, subdirectory).getParticipants());
+            } catch (InternalLogicException e) {
+                log.error("reload failed. Participants are not changed. Reason: {}", e.getMessage());
+            } catch (Exception e) {
+                log.error("reload failed. Participants are not changed.", e);
+            }
+        }, reloadInterval, reloadInterval, TimeUnit.SECONDS);
     }
 
 }
@@ -22,25 +22,27 @@
 package uk.dsxt.voting.registriesserver;
 
 import lombok.extern.log4j.Log4j2;
-import uk.dsxt.voting.common.domain.dataModel.Participant;
-import uk.dsxt.voting.common.registries.RegistriesServer;
-import uk.dsxt.voting.common.registries.SimpleRegisterServer;
+import uk.dsxt.voting.common.registries.ParticipantRegistry;
+import uk.dsxt.voting.common.utils.web.PooledHttpClient;
 
-import javax.ws.rs.GET;
-import javax.ws.rs.Path;
-import javax.ws.rs.Produces;
+import javax.ws.rs.*;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Response;
+import java.util.Arrays;
 import java.util.function.Supplier;
 
 @Log4j2
 @Path("/voting-api")
-public class RegistriesServerResource implements RegistriesServer {
-    private final RegistriesServer server;
+public class RegistriesServerResource {
+    private static final String JSON_TYPE = "application/json";
 
-    public RegistriesServerResource(RegistriesServer server) {
-        this.server = server;
+    private final ParticipantRegistry registry;
+
+    public RegistriesServerResource(ParticipantRegistry registry) {
+        this.registry = registry;
     }
 
-    private <T> T execute(String name, Supplier<T> request) {
+    private Response execute(String name, Supplier<Response> request) {
         try {
             return request.get();
         } catch (Exception ex) {
@@ -51,15 +53,44 @@ public class RegistriesServerResource implements RegistriesServer {
             } catch (Exception e) {
                 log.error("stop failed. unable to stop module.", e);
             }
-            return null;
+            return Response.serverError().build();
         }
     }
 
-    @Override
+    private static Response send(ParticipantRegistry.EncodedBody body, String ifNoneMatch, String acceptEncoding) {
+        String etag = String.format("\"%s\"", body.getEtag());
+        if (ifNoneMatch != null && Arrays.stream(ifNoneMatch.split(",")).map(String::trim).anyMatch(etag::equals))
+            return Response.notModified().header(HttpHeaders.ETAG, etag).build();
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains(PooledHttpClient.GZIP_ENCODING);
+        return Response.ok(gzip ? body.getGzip() : body.getPlain(), JSON_TYPE)
+            .header(HttpHeaders.ETAG, etag)
+            .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+            .header(HttpHeaders.CONTENT_ENCODING, gzip ? PooledHttpClient.GZIP_ENCODING : null)
+            .build();
+    }
+
     @GET
     @Path("/participants")
-    @Produces("application/json")
-    public Participant[] getParticipants() {
-        return execute("getParticipants", server::getParticipants);
+    @Produces(JSON_TYPE)
+    public Response getParticipants(@HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch, @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding) {
+        return execute("getParticipants", () -> send(registry.getEncodedParticipants(), ifNoneMatch, acceptEncoding));
+    }
+
+    @GET
+    @Path("/participants/snapshot")
+    @Produces(JSON_TYPE)
+    public Response getParticipantsSnapshot(@HeaderParam(HttpHeaders.IF_NONE_MATCH) String ifNoneMatch, @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding) {
+        return execute("getParticipantsSnapshot", () -> send(registry.getEncodedSnapshot(), ifNoneMatch, acceptEncoding));
+    }
+
+    @GET
+    @Path("/participants/delta")
+    @Produces(JSON_TYPE)
+    public Response getParticipantsDelta(@QueryParam("epoch") String epoch, @QueryParam("version") long version, @QueryParam("etag") String etag,
+                                         @HeaderParam(HttpHeaders.ACCEPT_ENCODING) String acceptEncoding) {
+        return execute(String.format("getParticipantsDelta epoch=%s version=%d", epoch, version), () -> {
+            ParticipantRegistry.EncodedBody body = registry.getEncodedDelta(epoch, version, etag);
+            return body == null ? Response.notModified().build() : send(body, null, acceptEncoding);
+        });
     }
 }
@@ -0,0 +1,95 @@
+package uk.dsxt.voting.registriesserver;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.glassfish.jersey.server.ResourceConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import uk.dsxt.voting.common.domain.dataModel.Participant;
+import uk.dsxt.voting.common.registries.ParticipantRegistry;
+import uk.dsxt.voting.common.registries.RegistriesServerWeb;
+import uk.dsxt.voting.common.utils.web.JettyRunner;
+
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class RegistriesServerResourceTest {
+
+    private ParticipantRegistry registry;
+
+    private Server server;
+
+    private String baseUrl;
+
+    private File cacheFile;
+
+    private static Participant[] participants(int count) {
+        Participant[] participants = new Participant[count];
+        for (int i = 0; i < count; i++) {
+            participants[i] = new Participant(Integer.toString(i), "name" + i, "key" + i);
+        }
+        return participants;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        registry = new ParticipantRegistry(participants(100), 10);
+        ResourceConfig application = new ResourceConfig();
+        JettyRunner.configureMapper(application);
+        application.registerInstances(new RegistriesServerResource(registry));
+        Properties properties = new Properties();
+        properties.setProperty("jetty.maxThreads", "10");
+        properties.setProperty("jetty.minThreads", "2");
+        properties.setProperty("jetty.idleTimeout", "5000");
+        properties.setProperty("jetty.maxQueueSize", "100");
+        server = JettyRunner.run(application, properties, 0);
+        baseUrl = String.format("http://localhost:%d/voting-api", ((ServerConnector) server.getConnectors()[0]).getLocalPort());
+        cacheFile = new File(Files.createTempDirectory("registries").toFile(), "participants.json");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.stop();
+        cacheFile.delete();
+        cacheFile.getParentFile().delete();
+    }
+
+    @Test
+    public void testHeaders() throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/participants").openConnection();
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("gzip", connection.getContentEncoding());
+        String etag = connection.getHeaderField("ETag");
+        assertEquals(String.format("\"%s\"", registry.getSnapshot().getEtag()), etag);
+
+        connection = (HttpURLConnection) new URL(baseUrl + "/participants/snapshot").openConnection();
+        connection.setRequestProperty("If-None-Match", etag);
+        assertEquals(304, connection.getResponseCode());
+
+        connection = (HttpURLConnection) new URL(String.format("%s/participants/delta?epoch=%s&version=1&etag=%s", baseUrl,
+            registry.getSnapshot().getEpoch(), registry.getSnapshot().getEtag())).openConnection();
+        assertEquals(304, connection.getResponseCode());
+    }
+
+    @Test
+    public void testCachedSnapshot() throws Exception {
+        assertArrayEquals(participants(100), new RegistriesServerWeb(baseUrl, 1000, 5000, cacheFile.getPath()).getParticipants());
+        assertTrue(cacheFile.exists());
+
+        registry.update(participants(101));
+        RegistriesServerWeb restarted = new RegistriesServerWeb(baseUrl, 1000, 5000, cacheFile.getPath());
+        assertArrayEquals(participants(101), restarted.getParticipants());
+        registry.update(participants(99));
+        assertArrayEquals(participants(99), restarted.getParticipants());
+
+        server.stop();
+        assertArrayEquals(participants(99), new RegistriesServerWeb(baseUrl, 1000, 5000, cacheFile.getPath()).getParticipants());
+    }
+}
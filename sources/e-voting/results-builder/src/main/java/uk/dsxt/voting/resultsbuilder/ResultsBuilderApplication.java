@@ -23,6 +23,7 @@ package uk.dsxt.voting.resultsbuilder;
 
 import lombok.extern.log4j.Log4j2;
 import org.glassfish.jersey.server.ResourceConfig;
+import uk.dsxt.voting.common.metrics.MetricsResource;
 import uk.dsxt.voting.common.utils.InternalLogicException;
 import uk.dsxt.voting.common.utils.web.JettyRunner;
 
@@ -34,6 +35,6 @@ public class ResultsBuilderApplication extends ResourceConfig {
 
     public ResultsBuilderApplication(ResultsManager manager) throws InternalLogicException {
         JettyRunner.configureMapper(this);
-        this.registerInstances(new ResultsBuilderResource(manager));
+        this.registerInstances(new ResultsBuilderResource(manager), new MetricsResource());
     }
 }
@@ -42,7 +42,7 @@ public class ResultsBuilderMain {
         try {
             log.info("Starting module {}...", MODULE_NAME.toUpperCase());
             Properties properties = PropertiesHelper.loadProperties(MODULE_NAME);
-            ResultsManager manager = new ResultsManager();
+            ResultsManager manager = new ResultsManager(Integer.parseInt(properties.getProperty("reportIdsTtl", "3600")) * 1000L);
             ResultsBuilderApplication application = new ResultsBuilderApplication(manager);
 
             jettyServer = JettyRunner.run(application, properties, "results.builder.web.port");
@@ -21,17 +21,24 @@
 
 package uk.dsxt.voting.resultsbuilder;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.log4j.Log4j2;
-import uk.dsxt.voting.common.demo.ResultsBuilder;
+import uk.dsxt.voting.common.demo.ResultReport;
 
 import javax.ws.rs.*;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 
 @Log4j2
 @Path("results-api")
-public class ResultsBuilderResource implements ResultsBuilder {
+public class ResultsBuilderResource {
 
     private final ResultsManager manager;
 
+    private final ObjectMapper mapper = new ObjectMapper();
+
     public ResultsBuilderResource(ResultsManager manager) {
         this.manager = manager;
     }
@@ -45,17 +52,51 @@ public class ResultsBuilderResource implements ResultsBuilder {
         }
     }
 
-    @Override
+    /**
+     * @param timestamp time the result was reported at by the node
+     */
     @POST
     @Path("/addResult")
-    public void addResult(@FormParam("holderId") String holderId, @FormParam("voteResult") String voteResult) {
-        execute(String.format("addResult holderId=%s voteResult=%s", holderId, voteResult), () -> manager.addResult(holderId, voteResult));
+    public void addResult(@FormParam("holderId") String holderId, @FormParam("voteResult") String voteResult, @FormParam("timestamp") Long timestamp) {
+        if (holderId == null || timestamp == null) {
+            log.error("addResult. holderId or timestamp is not set. holderId={} timestamp={} voteResult={}", holderId, timestamp, voteResult);
+            return;
+        }
+        execute(String.format("addResult holderId=%s voteResult=%s", holderId, voteResult), () -> manager.addResult(holderId, voteResult, timestamp));
     }
 
-    @Override
     @POST
     @Path("/addVote")
     public void addVote(@FormParam("voteResult") String voteResult) {
         execute(String.format("addVote voteResult=%s", voteResult), () -> manager.addVote(voteResult));
     }
+
+    /**
+     * @param reports JSON array of {@link ResultReport}
+     * @return JSON array of ids of invalid reports, 400 if the batch can not be read
+     */
+    @POST
+    @Path("/addBatch")
+    @Produces("application/json")
+    public Response addBatch(@FormParam("reports") String reports) {
+        if (reports == null) {
+            log.error("addBatch. Reports are not set");
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        ResultReport[] batch;
+        try {
+            batch = mapper.readValue(reports, ResultReport[].class);
+        } catch (IOException e) {
+            log.error("addBatch. Can not read batch. error={}", e.getMessage());
+            return Response.status(Response.Status.BAD_REQUEST).build();
+        }
+        log.debug("addBatch called. reports={}", batch.length);
+        List<String> rejectedIds = manager.addBatch(Arrays.asList(batch));
+        try {
+            return Response.ok(mapper.writeValueAsString(rejectedIds)).build();
+        } catch (IOException e) {
+            log.error("addBatch. Can not write {} rejected ids. error={}", rejectedIds.size(), e.getMessage());
+            return Response.noContent().build();
+        }
+    }
 }
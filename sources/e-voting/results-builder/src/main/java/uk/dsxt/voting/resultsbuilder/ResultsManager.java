@@ -21,79 +21,319 @@
 
 package uk.dsxt.voting.resultsbuilder;
 
+import lombok.Value;
 import lombok.extern.log4j.Log4j2;
-import uk.dsxt.voting.common.demo.ResultsBuilder;
+import uk.dsxt.voting.common.demo.ResultReport;
 import uk.dsxt.voting.common.domain.dataModel.VoteResult;
 import uk.dsxt.voting.common.domain.dataModel.VotedAnswer;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
+/**
+ * Collects votes sent by nodes into reference results and compares them with total results reported by nodes.
+ * Every voting has its own shard: votes are summed under the shard lock only, node results are kept with a digest
+ * of their canonical form computed on submission, so a check compares digests without blocking new votes and results
+ * and builds a structural diff once per distinct incorrect result.
+ * Batched reports are applied one by one: ids of applied reports are kept by the shard of their voting for reportIdsTtl
+ * milliseconds after they are applied, so a report resent within this time is not counted twice. Node results are ordered
+ * by the timestamp set by the reporting node, a node result does not replace a newer result of the node.
+ */
 @Log4j2
-public class ResultsManager implements ResultsBuilder {
+public class ResultsManager {
 
-    private final Map<String, Map<String, VoteResult>> resultsByHolderIdAndVotingId = new HashMap<>();
+    private final static long DEFAULT_REPORT_IDS_TTL = 3600000;
 
-    private final Map<String, VoteResult> referenceResultsByVotingId = new HashMap<>();
+    private final ConcurrentMap<String, VotingShard> shardsByVotingId = new ConcurrentHashMap<>();
 
-    public void addResult(String holderId, String voteResult) {
-        VoteResult result = new VoteResult(voteResult);
-        synchronized (resultsByHolderIdAndVotingId) {
-            Map<String, VoteResult> votingResults = resultsByHolderIdAndVotingId.get(result.getVotingId());
-            if (votingResults == null) {
-                votingResults = new HashMap<>();
-                resultsByHolderIdAndVotingId.put(result.getVotingId(), votingResults);
+    private final long reportIdsTtl;
+
+    @Value
+    public static class CheckResult {
+        String votingId;
+        String referenceDigest;
+        int resultsCount;
+        List<String> incorrectHolderIds;
+    }
+
+    private static class NodeResult {
+        final VoteResult result;
+        final String digest;
+        final long timestamp;
+
+        NodeResult(VoteResult result, long timestamp) {
+            this.result = result;
+            this.timestamp = timestamp;
+            digest = digest(result);
+        }
+    }
+
+    /**
+     * Sum of amounts kept as unscaled long with a common scale, falls back to BigDecimal on overflow.
+     */
+    private static class Amount {
+        long unscaled;
+        int scale;
+        BigDecimal overflow;
+
+        void add(BigDecimal value) {
+            if (overflow == null) {
+                try {
+                    if (value.scale() > scale) {
+                        unscaled = Math.multiplyExact(unscaled, BigInteger.TEN.pow(value.scale() - scale).longValueExact());
+                        scale = value.scale();
+                    }
+                    unscaled = Math.addExact(unscaled, value.setScale(scale).unscaledValue().longValueExact());
+                    return;
+                } catch (ArithmeticException e) {
+                    overflow = toBigDecimal();
+                }
+            }
+            overflow = overflow.add(value);
+        }
+
+        BigDecimal toBigDecimal() {
+            return overflow != null ? overflow : BigDecimal.valueOf(unscaled, scale);
+        }
+    }
+
+    private static class VotingShard {
+        final String votingId;
+        final Map<String, Amount> amountsByKey = new TreeMap<>();
+        final Amount packetSize = new Amount();
+        long version;
+        long referenceVersion = -1;
+        VoteResult reference;
+        String referenceDigest;
+        final ConcurrentMap<String, NodeResult> resultsByHolderId = new ConcurrentHashMap<>();
+        // applied report ids in order of application with the local time of application
+        final LinkedHashMap<String, Long> appliedAtByReportId = new LinkedHashMap<>();
+
+        VotingShard(String votingId) {
+            this.votingId = votingId;
+        }
+
+        /**
+         * @return false if the report is already applied
+         */
+        synchronized boolean markApplied(String reportId, long now, long ttl) {
+            Iterator<Long> appliedAt = appliedAtByReportId.values().iterator();
+            while (appliedAt.hasNext() && appliedAt.next() < now - ttl) {
+                appliedAt.remove();
+            }
+            return appliedAtByReportId.putIfAbsent(reportId, now) == null;
+        }
+
+        synchronized void unmarkApplied(String reportId) {
+            appliedAtByReportId.remove(reportId);
+        }
+
+        synchronized void add(VoteResult vote) {
+            packetSize.add(vote.getPacketSize());
+            for (VotedAnswer answer : vote.getAnswers()) {
+                Amount amount = amountsByKey.get(answer.getKey());
+                if (amount == null) {
+                    amount = new Amount();
+                    amountsByKey.put(answer.getKey(), amount);
+                }
+                amount.add(answer.getVoteAmount());
             }
-            votingResults.put(holderId, result);
+            version++;
         }
+
+        synchronized VoteResult getReference() {
+            if (referenceVersion != version) {
+                reference = new VoteResult(votingId, null, packetSize.toBigDecimal());
+                for (Map.Entry<String, Amount> entry : amountsByKey.entrySet()) {
+                    String[] questionAndAnswer = entry.getKey().split("-");
+                    reference.setAnswer(questionAndAnswer[0], questionAndAnswer[1], entry.getValue().toBigDecimal());
+                }
+                referenceDigest = digest(reference);
+                referenceVersion = version;
+            }
+            return reference;
+        }
+
+        synchronized String getReferenceDigest() {
+            getReference();
+            return referenceDigest;
+        }
+    }
+
+    public ResultsManager() {
+        this(DEFAULT_REPORT_IDS_TTL);
+    }
+
+    /**
+     * @param reportIdsTtl time in milliseconds ids of applied reports are kept to skip resent reports
+     */
+    public ResultsManager(long reportIdsTtl) {
+        this.reportIdsTtl = reportIdsTtl;
+    }
+
+    private VotingShard getShard(String votingId) {
+        return shardsByVotingId.computeIfAbsent(votingId, VotingShard::new);
+    }
+
+    /**
+     * @param timestamp time the result was reported at by the node
+     */
+    public void addResult(String holderId, String voteResult, long timestamp) {
+        addResult(holderId, new VoteResult(voteResult), timestamp);
+    }
+
+    private void addResult(String holderId, VoteResult voteResult, long timestamp) {
+        NodeResult result = new NodeResult(voteResult, timestamp);
+        getShard(voteResult.getVotingId()).resultsByHolderId.merge(holderId, result, (old, added) -> added.timestamp >= old.timestamp ? added : old);
     }
 
     public void addVote(String voteResult) {
         VoteResult result = new VoteResult(voteResult);
-        synchronized (referenceResultsByVotingId) {
-            VoteResult referenceResult = referenceResultsByVotingId.get(result.getVotingId());
-            if (referenceResult == null) {
-                referenceResult = new VoteResult(result.getVotingId(), null);
-                referenceResultsByVotingId.put(result.getVotingId(), referenceResult);
+        getShard(result.getVotingId()).add(result);
+    }
+
+    /**
+     * @return ids of reports rejected as invalid
+     */
+    public List<String> addBatch(List<ResultReport> reports) {
+        List<String> rejectedIds = new ArrayList<>();
+        int duplicates = 0;
+        long now = System.currentTimeMillis();
+        for (ResultReport report : reports) {
+            VoteResult voteResult;
+            try {
+                voteResult = new VoteResult(report.getVoteResult());
+            } catch (Exception e) {
+                log.error("addBatch. Invalid report {}. holderId={} voteResult={} error={}", report.getId(), report.getHolderId(), report.getVoteResult(), e.getMessage());
+                rejectedIds.add(report.getId());
+                continue;
+            }
+            VotingShard shard = getShard(voteResult.getVotingId());
+            if (report.getId() != null && !shard.markApplied(report.getId(), now, reportIdsTtl)) {
+                duplicates++;
+                continue;
+            }
+            try {
+                if (report.isVote())
+                    shard.add(voteResult);
+                else
+                    addResult(report.getHolderId(), voteResult, report.getTimestamp());
+            } catch (Exception e) {
+                log.error("addBatch. Invalid report {}. holderId={} voteResult={} error={}", report.getId(), report.getHolderId(), report.getVoteResult(), e.getMessage());
+                rejectedIds.add(report.getId());
+                if (report.getId() != null)
+                    shard.unmarkApplied(report.getId());
             }
-            referenceResult.add(result);
         }
+        if (duplicates > 0)
+            log.info("addBatch. {} resent reports skipped", duplicates);
+        return rejectedIds;
     }
 
-    public void checkVoting(String votingId) {
-        synchronized (referenceResultsByVotingId) {
-            VoteResult referenceResult = referenceResultsByVotingId.get(votingId);
-            if (referenceResult == null) {
-                referenceResult = new VoteResult(votingId, null);
-                log.info("Voting #{} - empty", votingId);
-            } else {
-                log.info("Voting #{} result: {}", votingId, printVotingResult(referenceResult));
+    public CheckResult checkVoting(String votingId) {
+        VotingShard shard = shardsByVotingId.get(votingId);
+        VoteResult referenceResult;
+        String referenceDigest;
+        boolean isEmpty;
+        if (shard == null) {
+            referenceResult = new VoteResult(votingId, null);
+            referenceDigest = digest(referenceResult);
+            isEmpty = true;
+        } else {
+            synchronized (shard) {
+                referenceResult = shard.getReference();
+                referenceDigest = shard.getReferenceDigest();
+                isEmpty = shard.version == 0;
             }
+        }
+        if (isEmpty) {
+            log.info("Voting #{} - empty", votingId);
+        } else {
+            log.info("Voting #{} result: {}", votingId, printVotingResult(referenceResult));
+        }
+        if (shard == null || shard.resultsByHolderId.isEmpty()) {
+            log.info("  No node results received on voting #{}", votingId);
+            return new CheckResult(votingId, referenceDigest, 0, Collections.emptyList());
+        }
+        int count = 0;
+        Map<String, List<String>> incorrectHolderIdsByDigest = new HashMap<>();
+        Map<String, VoteResult> incorrectResultsByDigest = new HashMap<>();
+        for (Map.Entry<String, NodeResult> holderRecord : shard.resultsByHolderId.entrySet()) {
+            count++;
+            NodeResult result = holderRecord.getValue();
+            if (result.digest.equals(referenceDigest))
+                continue;
+            incorrectHolderIdsByDigest.computeIfAbsent(result.digest, d -> new ArrayList<>()).add(holderRecord.getKey());
+            incorrectResultsByDigest.putIfAbsent(result.digest, result.result);
+        }
+        List<String> incorrectHolderIds = new ArrayList<>();
+        for (Map.Entry<String, List<String>> incorrect : incorrectHolderIdsByDigest.entrySet()) {
+            List<String> holderIds = incorrect.getValue();
+            Collections.sort(holderIds);
+            incorrectHolderIds.addAll(holderIds);
+            log.warn("    Holders {}. Voting #{}. Result is INCORRECT: {}",
+                holderIds, votingId, diff(referenceResult, incorrectResultsByDigest.get(incorrect.getKey())));
+        }
+        Collections.sort(incorrectHolderIds);
+        log.info("  Received {} node results on voting #{}. {} is correct and {} is incorrect", count, votingId, count - incorrectHolderIds.size(), incorrectHolderIds.size());
+        return new CheckResult(votingId, referenceDigest, count, incorrectHolderIds);
+    }
 
-            synchronized (resultsByHolderIdAndVotingId) {
-                Map<String, VoteResult> votingResults = resultsByHolderIdAndVotingId.get(votingId);
-                if (votingResults == null) {
-                    log.info("  No node results received on voting #{}", votingId);
-                } else {
-                    int incorrect = 0;
-                    for (Map.Entry<String, VoteResult> holderRecord : votingResults.entrySet()) {
-                        if (!referenceResult.equals(holderRecord.getValue())) {
-                            log.warn("    Holder {}. Voting #{}. Result is INCORRECT: {}",
-                                    holderRecord.getKey(), votingId, printVotingResult(holderRecord.getValue()));
-//                        } else {
-//                            log.info("    Holder {}. Voting #{}. Result is CORRECT.", holderRecord.getKey(), votingId);
-                        }
-                        if (!referenceResult.equals(holderRecord.getValue()))
-                            incorrect++;
-                    }
-                    log.info("  Received {} node results on voting #{}. {} is correct and {} is incorrect", votingResults.size(), votingId, votingResults.size() - incorrect, incorrect);
-                }
-            }
+    private static String canonicalAmount(BigDecimal amount) {
+        return amount.signum() == 0 ? "0" : amount.stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * @return SHA-256 of the result with amounts in canonical form, equal for results equal by {@link VoteResult#equals}
+     */
+    static String digest(VoteResult result) {
+        StringBuilder builder = new StringBuilder();
+        builder.append(result.getVotingId()).append(',');
+        if (result.getHolderId() != null)
+            builder.append(result.getHolderId());
+        builder.append(',').append(canonicalAmount(result.getPacketSize()));
+        for (VotedAnswer answer : result.getAnswers()) {
+            builder.append(',').append(answer.getKey()).append('-').append(canonicalAmount(answer.getVoteAmount()));
+        }
+        try {
+            return Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-256").digest(builder.toString().getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported", e);
         }
     }
 
+    /**
+     * @return differences of the result from the reference, one per line
+     */
+    static String diff(VoteResult reference, VoteResult result) {
+        StringBuilder builder = new StringBuilder();
+        if (!Objects.equals(reference.getHolderId(), result.getHolderId()))
+            appendDiff(builder, "holder", reference.getHolderId(), result.getHolderId());
+        if (reference.getPacketSize().compareTo(result.getPacketSize()) != 0)
+            appendDiff(builder, "packet size", reference.getPacketSize(), result.getPacketSize());
+        Set<String> keys = new TreeSet<>(reference.getAnswersByKey().keySet());
+        keys.addAll(result.getAnswersByKey().keySet());
+        for (String key : keys) {
+            VotedAnswer expected = reference.getAnswerByKey(key);
+            VotedAnswer actual = result.getAnswerByKey(key);
+            if (expected == null || actual == null || expected.getVoteAmount().compareTo(actual.getVoteAmount()) != 0)
+                appendDiff(builder, String.format("answer %s", key), expected == null ? null : expected.getVoteAmount(), actual == null ? null : actual.getVoteAmount());
+        }
+        return builder.toString();
+    }
+
+    private static void appendDiff(StringBuilder builder, String name, Object expected, Object actual) {
+        builder.append(System.lineSeparator()).append(String.format("      %s: expected %s, received %s", name,
+            expected == null ? "none" : expected, actual == null ? "none" : actual));
+    }
+
     private String printVotingResult(VoteResult result) {
         StringBuilder builder = new StringBuilder();
         builder.append(System.lineSeparator());
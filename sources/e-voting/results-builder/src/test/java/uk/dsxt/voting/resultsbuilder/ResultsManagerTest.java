@@ -2,6 +2,18 @@ package uk.dsxt.voting.resultsbuilder;
 
 import org.junit.Ignore;
 import org.junit.Test;
+import uk.dsxt.voting.common.demo.ResultReport;
+import uk.dsxt.voting.common.domain.dataModel.VoteResult;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
 
 public class ResultsManagerTest {
 
@@ -14,9 +26,137 @@ public class ResultsManagerTest {
         manager.checkVoting("2");
         manager.addVote("1,1,2 3 5,6 7 8");
         manager.checkVoting("1");
-        manager.addResult("2", "1,,2 3 9,6 7 8");
-        manager.addResult("3", "1,,2 3 9");
+        manager.addResult("2", "1,,2 3 9,6 7 8", 1);
+        manager.addResult("3", "1,,2 3 9", 1);
         manager.checkVoting("1");
     }
 
+    @Test
+    public void testDigest() {
+        String[][] results = {
+            {"1,,10,1-1-3,1-2-7", "1,,10.00,1-2-7.0,1-1-3"},
+            {"1,,0,", "1,,0.0"},
+            {"1,2,10,1-1-3", "1,2,1E+1,1-1-3.000"},
+        };
+        for (String[] equal : results) {
+            VoteResult first = new VoteResult(equal[0]);
+            VoteResult second = new VoteResult(equal[1]);
+            assertEquals(first, second);
+            assertEquals(ResultsManager.digest(first), ResultsManager.digest(second));
+        }
+        String[] different = {"1,,10,1-1-3", "1,,10,1-1-4", "1,,11,1-1-3", "1,2,10,1-1-3", "2,,10,1-1-3", "1,,10,1-1-3,1-2-0", "1,,10,1-2-3"};
+        for (int i = 0; i < different.length; i++) {
+            for (int j = i + 1; j < different.length; j++) {
+                assertNotEquals(different[i] + " " + different[j],
+                    ResultsManager.digest(new VoteResult(different[i])), ResultsManager.digest(new VoteResult(different[j])));
+            }
+        }
+    }
+
+    @Test
+    public void testReconciliation() {
+        ResultsManager manager = new ResultsManager();
+        assertEquals(0, manager.checkVoting("1").getResultsCount());
+        manager.addVote("1,10,2,1-1-2");
+        manager.addVote("1,11,3.5,1-1-1.5,1-2-2");
+        manager.addVote("1,12,0.25,1-2-0.25");
+        manager.addResult("10", "1,,5.75,1-1-3.5,1-2-2.25", 1);
+        manager.addResult("11", "1,,5.750,1-1-3.50,1-2-2.25", 1);
+        manager.addResult("12", "1,,5.75,1-1-3.5,1-2-2", 1);
+        manager.addResult("13", "1,,5.75,1-1-3.5,1-2-2", 1);
+        manager.addResult("14", "1,,5.75,1-1-3.5", 1);
+        manager.addResult("15", "2,,5.75,1-1-3.5,1-2-2.25", 1);
+
+        ResultsManager.CheckResult result = manager.checkVoting("1");
+        assertEquals(5, result.getResultsCount());
+        assertEquals(Arrays.asList("12", "13", "14"), result.getIncorrectHolderIds());
+        assertEquals(ResultsManager.digest(new VoteResult("1,,5.75,1-1-3.5,1-2-2.25")), result.getReferenceDigest());
+        assertEquals(Collections.singletonList("15"), manager.checkVoting("2").getIncorrectHolderIds());
+
+        manager.addVote("1,16,1,1-2-1");
+        manager.addResult("12", "1,,6.75,1-1-3.5,1-2-3.25", 2);
+        assertEquals(Arrays.asList("10", "11", "13", "14"), manager.checkVoting("1").getIncorrectHolderIds());
+    }
+
+    @Test
+    public void testAddBatch() {
+        ResultsManager manager = new ResultsManager();
+        List<String> rejected = manager.addBatch(Arrays.asList(new ResultReport("v1", 1, null, "1,10,2,1-1-2"),
+            new ResultReport("v2", 1, null, "invalid"), new ResultReport("v3", 1, null, "1,11,3,1-2-3"),
+            new ResultReport("r1", 2, "10", "1,,5,1-1-2,1-2-3"), new ResultReport("r2", 2, "11", "1,,5,1-1-2")));
+        assertEquals(Collections.singletonList("v2"), rejected);
+        ResultsManager.CheckResult result = manager.checkVoting("1");
+        assertEquals(2, result.getResultsCount());
+        assertEquals(Collections.singletonList("11"), result.getIncorrectHolderIds());
+
+        // resent votes are not counted twice, stale results do not replace newer ones
+        manager.addBatch(Arrays.asList(new ResultReport("v1", 1, null, "1,10,2,1-1-2"), new ResultReport("r3", 1, "10", "1,,2,1-1-2"),
+            new ResultReport("r4", 3, "11", "1,,5,1-1-2,1-2-3")));
+        result = manager.checkVoting("1");
+        assertEquals(ResultsManager.digest(new VoteResult("1,,5,1-1-2,1-2-3")), result.getReferenceDigest());
+        assertEquals(Collections.emptyList(), result.getIncorrectHolderIds());
+    }
+
+    @Test
+    public void testAppliedReportIdsExpire() throws Exception {
+        ResultsManager manager = new ResultsManager(50);
+        manager.addBatch(Collections.singletonList(new ResultReport("v1", 1, null, "1,10,2,1-1-2")));
+        manager.addBatch(Collections.singletonList(new ResultReport("v1", 1, null, "1,10,2,1-1-2")));
+        assertEquals(ResultsManager.digest(new VoteResult("1,,2,1-1-2")), manager.checkVoting("1").getReferenceDigest());
+        Thread.sleep(100);
+        // the id is forgotten after ttl, ids of other votings are kept apart
+        manager.addBatch(Collections.singletonList(new ResultReport("v2", 1, null, "2,10,2,1-1-2")));
+        manager.addBatch(Collections.singletonList(new ResultReport("v1", 1, null, "1,10,2,1-1-2")));
+        assertEquals(ResultsManager.digest(new VoteResult("1,,4,1-1-4")), manager.checkVoting("1").getReferenceDigest());
+    }
+
+    @Test
+    public void testDiff() {
+        String diff = ResultsManager.diff(new VoteResult("1,,5,1-1-3,1-2-2"), new VoteResult("1,,6,1-1-3.0,1-2-1,1-3-2"));
+        assertTrue(diff.contains("packet size: expected 5, received 6"));
+        assertFalse(diff.contains("answer 1-1"));
+        assertTrue(diff.contains("answer 1-2: expected 2, received 1"));
+        assertTrue(diff.contains("answer 1-3: expected none, received 2"));
+    }
+
+    @Test
+    public void testAmountOverflow() {
+        ResultsManager manager = new ResultsManager();
+        manager.addVote(String.format("1,1,%d,1-1-0.000000001", Long.MAX_VALUE));
+        manager.addVote(String.format("1,2,%d,1-1-%d", Long.MAX_VALUE, Long.MAX_VALUE));
+        manager.addResult("1", String.format("1,,18446744073709551614,1-1-%d.000000001", Long.MAX_VALUE), 1);
+        assertEquals(Collections.emptyList(), manager.checkVoting("1").getIncorrectHolderIds());
+    }
+
+    @Test
+    @Ignore
+    public void testPerformance() throws Exception {
+        int votings = 20, holders = 500, votes = 1000000;
+        ResultsManager manager = new ResultsManager();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        long start = System.currentTimeMillis();
+        for (int t = 0; t < 8; t++) {
+            executor.execute(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < votes / 8; i++) {
+                    manager.addVote(String.format("%d,%d,10,1-%d-10", random.nextInt(votings), random.nextInt(holders), random.nextInt(5)));
+                }
+            });
+        }
+        Thread checker = new Thread(() -> {
+            while (!executor.isTerminated()) {
+                for (int v = 0; v < votings; v++) {
+                    for (int h = 0; h < holders; h++) {
+                        manager.addResult(Integer.toString(h), String.format("%d,,10,1-1-10", v), System.currentTimeMillis());
+                    }
+                    manager.checkVoting(Integer.toString(v));
+                }
+            }
+        });
+        checker.start();
+        executor.shutdown();
+        executor.awaitTermination(10, TimeUnit.MINUTES);
+        System.out.println(String.format("%d votes added in %d ms while checking %d votings of %d holders", votes, System.currentTimeMillis() - start, votings, holders));
+        checker.join();
+    }
 }
@@ -0,0 +1,385 @@
+/******************************************************************************
+ * e-voting system                                                            *
+ * Copyright (C) 2016 DSX Technologies Limited.                               *
+ * *
+ * This program is free software; you can redistribute it and/or modify       *
+ * it under the terms of the GNU General Public License as published by       *
+ * the Free Software Foundation; either version 2 of the License, or          *
+ * (at your option) any later version.                                        *
+ * *
+ * This program is distributed in the hope that it will be useful,            *
+ * but WITHOUT ANY WARRANTY; without even the implied                         *
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.           *
+ * See the GNU General Public License for more details.                       *
+ * *
+ * You can find copy of the GNU General Public License in LICENSE.txt file    *
+ * at the top-level directory of this distribution.                           *
+ * *
+ * Removal or modification of this copyright notice is prohibited.            *
+ * *
+ ******************************************************************************/
+
+package uk.dsxt.voting.tests;
+
+import lombok.extern.log4j.Log4j2;
+import uk.dsxt.voting.common.domain.dataModel.*;
+import uk.dsxt.voting.common.domain.nodes.*;
+import uk.dsxt.voting.common.messaging.MessagesSerializer;
+import uk.dsxt.voting.common.messaging.SimpleSerializer;
+import uk.dsxt.voting.common.metrics.VoteTracer;
+import uk.dsxt.voting.common.networking.MessageBus;
+import uk.dsxt.voting.common.networking.MessageHandler;
+import uk.dsxt.voting.common.networking.MockWalletManager;
+import uk.dsxt.voting.common.networking.WalletMessageConnector;
+import uk.dsxt.voting.common.utils.InternalLogicException;
+import uk.dsxt.voting.common.utils.crypto.CryptoHelper;
+import uk.dsxt.voting.common.utils.crypto.CryptoHelperImpl;
+import uk.dsxt.voting.common.utils.crypto.KeyPair;
+import uk.dsxt.voting.common.utils.crypto.MockCryptoHelper;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.math.BigDecimal;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a whole voting cluster in one JVM: master node with voting organizer, layers of intermediate holders and owners
+ * on the bottom holders. Nodes exchange wallet messages through a shared {@link MessageBus} and pass votes to parents
+ * through in-process acceptors, so throughput and latency of the node logic can be measured without NXT and HTTP.
+ */
+@Log4j2
+public class ClusterSimulator {
+
+    private final static String MASTER_ID = MasterNode.MASTER_HOLDER_ID;
+
+    private final MessageBus bus = new MessageBus();
+    private final CryptoHelper cryptoHelper;
+    private final MessagesSerializer serializer = new SimpleSerializer();
+    private final long pollInterval;
+
+    private final Map<String, PublicKey> participantKeysById = new HashMap<>();
+    private final Map<String, PrivateKey> privateKeysById = new HashMap<>();
+    private final List<MessageHandler> handlers = new ArrayList<>();
+    private final List<WalletMessageConnector> connectors = new ArrayList<>();
+    private final List<ClientNode> nodes = new ArrayList<>();
+
+    private final LatencyStats submitLatency = new LatencyStats("submit");
+    private final List<LatencyStats> hopLatencies = new ArrayList<>();
+    private final LatencyStats masterLatency = new LatencyStats("to master");
+    private final LatencyStats statusLatency = new LatencyStats("end to end");
+
+    private final Map<String, Long> chainStartById = new ConcurrentHashMap<>();
+    private final Map<String, Long> submitTimeByOwnerId = new ConcurrentHashMap<>();
+    private final AtomicLong submittedVotes = new AtomicLong();
+    private final AtomicLong failedVotes = new AtomicLong();
+    private final AtomicLong masterVotes = new AtomicLong();
+    private final AtomicLong confirmedVotes = new AtomicLong();
+    private final AtomicLong rejectedVotes = new AtomicLong();
+
+    private static class LatencyStats {
+        private final String name;
+        private long[] values = new long[1024];
+        private int count;
+
+        LatencyStats(String name) {
+            this.name = name;
+        }
+
+        synchronized void add(long nanos) {
+            if (count == values.length)
+                values = Arrays.copyOf(values, count * 2);
+            values[count++] = nanos;
+        }
+
+        synchronized String report() {
+            if (count == 0)
+                return String.format("%-12s no data", name);
+            long[] sorted = Arrays.copyOf(values, count);
+            Arrays.sort(sorted);
+            return String.format("%-12s count=%d p50=%.2f p90=%.2f p99=%.2f max=%.2f ms", name, count,
+                percentile(sorted, 0.5), percentile(sorted, 0.9), percentile(sorted, 0.99), sorted[count - 1] / 1e6);
+        }
+
+        private static double percentile(long[] sorted, double fraction) {
+            return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))] / 1e6;
+        }
+    }
+
+    /**
+     * Passes votes to the parent node asynchronously like a holder API client and measures the time each hop takes.
+     */
+    private class InProcessVoteAcceptor implements VoteAcceptor {
+        private final VoteAcceptor parent;
+        private final LatencyStats hopLatency;
+        private final boolean isChainStart;
+        private final boolean isMaster;
+        private final ExecutorService executor;
+
+        InProcessVoteAcceptor(VoteAcceptor parent, LatencyStats hopLatency, boolean isChainStart, boolean isMaster, int threads) {
+            this.parent = parent;
+            this.hopLatency = hopLatency;
+            this.isChainStart = isChainStart;
+            this.isMaster = isMaster;
+            executor = Executors.newFixedThreadPool(threads);
+        }
+
+        @Override
+        public NodeVoteReceipt acceptVote(String transactionId, String votingId, BigDecimal packetSize, String clientId, BigDecimal clientPacketResidual,
+                                          String encryptedData, String voteDigest, String clientSignature) throws InternalLogicException {
+            long enqueued = System.nanoTime();
+            if (isChainStart)
+                chainStartById.put(transactionId, enqueued);
+            executor.execute(() -> {
+                try {
+                    parent.acceptVote(transactionId, votingId, packetSize, clientId, clientPacketResidual, encryptedData, voteDigest, clientSignature);
+                } catch (Exception e) {
+                    log.error("acceptVote failed. transactionId={} clientId={} error={}", transactionId, clientId, e.getMessage());
+                }
+                long now = System.nanoTime();
+                hopLatency.add(now - enqueued);
+                if (isMaster) {
+                    masterVotes.incrementAndGet();
+                    Long chainStart = chainStartById.remove(transactionId);
+                    if (chainStart != null)
+                        masterLatency.add(now - chainStart);
+                }
+            });
+            return null;
+        }
+    }
+
+    public ClusterSimulator(CryptoHelper cryptoHelper, long pollInterval) {
+        this.cryptoHelper = cryptoHelper;
+        this.pollInterval = pollInterval;
+    }
+
+    public static void main(String[] args) {
+        try {
+            if (args.length > 0 && args.length < 5) {
+                System.out.println("<holdersByLevel> <ownersCount> <votesPerSecond> <realCrypto> <pollInterval> [traceSampleRate]");
+                throw new IllegalArgumentException("Invalid arguments count exception.");
+            }
+            int argId = 0;
+            String levels = args.length == 0 ? "3,9" : args[argId++];
+            int ownersCount = args.length == 0 ? 10000 : Integer.parseInt(args[argId++]);
+            int votesPerSecond = args.length == 0 ? 500 : Integer.parseInt(args[argId++]);
+            boolean realCrypto = args.length == 0 ? false : Boolean.parseBoolean(args[argId++]);
+            long pollInterval = args.length == 0 ? 50 : Long.parseLong(args[argId++]);
+            double traceSampleRate = args.length > argId ? Double.parseDouble(args[argId]) : 0.01;
+            int[] holdersByLevel = Arrays.stream(levels.split(",")).mapToInt(Integer::parseInt).toArray();
+
+            VoteTracer.getDefault().setSampleRate(traceSampleRate);
+            ClusterSimulator simulator = new ClusterSimulator(realCrypto ? CryptoHelperImpl.DEFAULT_CRYPTO_HELPER : new MockCryptoHelper(), pollInterval);
+            simulator.run(holdersByLevel, ownersCount, votesPerSecond);
+        } catch (Exception e) {
+            log.error("Cluster simulation failed.", e);
+        }
+        System.exit(0);
+    }
+
+    public void run(int[] holdersByLevel, int ownersCount, int votesPerSecond) throws Exception {
+        int holdersCount = Arrays.stream(holdersByLevel).sum();
+        long start = System.currentTimeMillis();
+        KeyPair[] keys = cryptoHelper instanceof CryptoHelperImpl
+            ? ((CryptoHelperImpl) cryptoHelper).createCryptoKeysGenerator().generateKeys(holdersCount + 1)
+            : new KeyPair[holdersCount + 1];
+        for (int i = 0; i <= holdersCount; i++) {
+            String id = i == 0 ? MASTER_ID : Integer.toString(i);
+            participantKeysById.put(id, cryptoHelper.loadPublicKey(keys[i] == null ? "" : keys[i].getPublicKey()));
+            privateKeysById.put(id, cryptoHelper.loadPrivateKey(keys[i] == null ? "" : keys[i].getPrivateKey()));
+        }
+        log.info("run. {} holder keys loaded in {} ms", holdersCount + 1, System.currentTimeMillis() - start);
+
+        //build hierarchy: parent of each holder is a random holder of the previous level, owners are spread over the last level
+        List<List<String>> idsByLevel = new ArrayList<>();
+        idsByLevel.add(Collections.singletonList(MASTER_ID));
+        Map<String, String> parentById = new HashMap<>();
+        Map<String, Map<String, BigDecimal>> packetSizeById = new HashMap<>();
+        Map<String, List<String>> childrenById = new HashMap<>();
+        int nextId = 1;
+        for (int holders : holdersByLevel) {
+            List<String> previous = idsByLevel.get(idsByLevel.size() - 1);
+            List<String> level = new ArrayList<>();
+            for (int i = 0; i < holders; i++) {
+                String id = Integer.toString(nextId++);
+                level.add(id);
+                parentById.put(id, previous.get(ThreadLocalRandom.current().nextInt(previous.size())));
+            }
+            idsByLevel.add(level);
+        }
+        List<String> bottomHolders = idsByLevel.get(idsByLevel.size() - 1);
+        List<String> ownerIds = new ArrayList<>();
+        for (int i = 0; i < ownersCount; i++) {
+            String id = Integer.toString(nextId++);
+            ownerIds.add(id);
+            parentById.put(id, bottomHolders.get(i % bottomHolders.size()));
+            BigDecimal packetSize = new BigDecimal(ThreadLocalRandom.current().nextInt(15, 101));
+            for (String holderId = id; holderId != null; holderId = parentById.get(holderId)) {
+                packetSizeById.computeIfAbsent(holderId, k -> new HashMap<>()).merge(TestDataGenerator.SECURITY, packetSize, BigDecimal::add);
+            }
+        }
+        parentById.forEach((id, parentId) -> childrenById.computeIfAbsent(parentId, k -> new ArrayList<>()).add(id));
+
+        //start nodes from the top so every child gets an acceptor of its already created parent
+        long clientsTimestamp = System.currentTimeMillis() - 60000;
+        Map<String, VoteAcceptor> acceptorsById = new HashMap<>();
+        Map<String, ClientNode> nodesById = new HashMap<>();
+        VotingOrganizer organizer = null;
+        for (int level = 0; level < idsByLevel.size(); level++) {
+            LatencyStats hopLatency = new LatencyStats(String.format("hop %d->%d", level + 1, level));
+            if (level < idsByLevel.size() - 1)
+                hopLatencies.add(hopLatency);
+            for (String id : idsByLevel.get(level)) {
+                MockWalletManager walletManager = new MockWalletManager(bus, bus.subscribe());
+                WalletMessageConnector connector = new WalletMessageConnector(walletManager, serializer, cryptoHelper,
+                    participantKeysById, privateKeysById.get(id), id, MASTER_ID, 180000, 4);
+                ClientNode node;
+                if (level == 0) {
+                    organizer = new VotingOrganizer(serializer, cryptoHelper, participantKeysById, privateKeysById.get(id), 24 * 60 * 60000);
+                    connector.addClient(organizer);
+                    node = new MasterNode(serializer, cryptoHelper, participantKeysById, privateKeysById.get(id));
+                } else {
+                    node = new ClientNode(id, serializer, cryptoHelper, participantKeysById, privateKeysById.get(id), acceptorsById.get(parentById.get(id)), null, null);
+                }
+                boolean isBottom = level == idsByLevel.size() - 1;
+                acceptorsById.put(id, new InProcessVoteAcceptor(node, hopLatency, level == idsByLevel.size() - 2, level == 0, 2));
+                if (isBottom)
+                    node.addChangeListener(new StatusListener(node));
+                node.setClientsOnTime(clientsTimestamp, childrenById.getOrDefault(id, Collections.emptyList()).stream()
+                    .map(childId -> new Client(childId, packetSizeById.get(childId), isBottom ? ParticipantRole.Owner : ParticipantRole.NominalHolder))
+                    .toArray(Client[]::new));
+                connector.addClient(node);
+                MessageHandler handler = new MessageHandler(walletManager, cryptoHelper, participantKeysById, connector::handleNewMessage);
+                handler.run(pollInterval);
+                handlers.add(handler);
+                connectors.add(connector);
+                nodes.add(node);
+                nodesById.put(id, node);
+            }
+        }
+        log.info("run. {} holders with {} owners started", holdersCount + 1, ownersCount);
+
+        long now = System.currentTimeMillis();
+        Voting voting = TestDataGenerator.generateVotingEn(now, now + 24 * 60 * 60000);
+        organizer.addNewVoting(voting);
+        while (nodes.stream().anyMatch(n -> n.getVoting(voting.getId()) == null)) {
+            Thread.sleep(10);
+        }
+        log.info("run. voting {} delivered to all nodes in {} ms", voting.getId(), System.currentTimeMillis() - now);
+
+        drive(voting, ownerIds, packetSizeById, nodesById, parentById, votesPerSecond);
+        handlers.forEach(MessageHandler::stop);
+        connectors.forEach(WalletMessageConnector::stop);
+    }
+
+    private class StatusListener implements AssetsChangeListener {
+        private final ClientNode node;
+
+        StatusListener(ClientNode node) {
+            this.node = node;
+        }
+
+        @Override
+        public void votingChanged(String votingId) {
+        }
+
+        @Override
+        public void clientVoteChanged(String votingId, String clientId) {
+            VoteResultAndStatus vote = node.getClientVote(votingId, clientId);
+            if (vote == null || vote.getStatus() == null)
+                return;
+            Long submitted = submitTimeByOwnerId.remove(clientId);
+            if (submitted == null)
+                return;
+            statusLatency.add(System.nanoTime() - submitted);
+            if (vote.getStatus().getStatus() == VoteResultStatus.OK)
+                confirmedVotes.incrementAndGet();
+            else
+                rejectedVotes.incrementAndGet();
+        }
+    }
+
+    private void drive(Voting voting, List<String> ownerIds, Map<String, Map<String, BigDecimal>> packetSizeById, Map<String, ClientNode> nodesById,
+                       Map<String, String> parentById, int votesPerSecond) throws Exception {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long gcCount = gcCount(), gcTime = gcTime();
+        AtomicLong maxHeapUsed = new AtomicLong();
+        ScheduledExecutorService monitor = Executors.newSingleThreadScheduledExecutor();
+        monitor.scheduleAtFixedRate(() -> {
+            maxHeapUsed.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+            log.info("drive. submitted={} failed={} atMaster={} confirmed={} rejected={} heapUsed={}MB", submittedVotes.get(), failedVotes.get(),
+                masterVotes.get(), confirmedVotes.get(), rejectedVotes.get(), memory.getHeapMemoryUsage().getUsed() / 1024 / 1024);
+        }, 1, 1, TimeUnit.SECONDS);
+
+        ExecutorService voters = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        long start = System.nanoTime();
+        long periodNanos = TimeUnit.SECONDS.toNanos(1) / votesPerSecond;
+        for (int i = 0; i < ownerIds.size(); i++) {
+            long delay = start + i * periodNanos - System.nanoTime();
+            if (delay > 0)
+                TimeUnit.NANOSECONDS.sleep(delay);
+            String ownerId = ownerIds.get(i);
+            HashMap<String, BigDecimal> securities = new HashMap<>(packetSizeById.get(ownerId));
+            ClientNode node = nodesById.get(parentById.get(ownerId));
+            voters.execute(() -> {
+                VoteResult vote = TestDataGenerator.generateVote(ownerId, securities, voting);
+                long submitted = System.nanoTime();
+                submitTimeByOwnerId.put(ownerId, submitted);
+                try {
+                    node.addClientVote(vote, AssetsHolder.EMPTY_SIGNATURE);
+                    submitLatency.add(System.nanoTime() - submitted);
+                    submittedVotes.incrementAndGet();
+                } catch (InternalLogicException e) {
+                    submitTimeByOwnerId.remove(ownerId);
+                    failedVotes.incrementAndGet();
+                    log.error("drive. addClientVote failed. ownerId={} error={}", ownerId, e.getMessage());
+                }
+            });
+        }
+        voters.shutdown();
+        voters.awaitTermination(1, TimeUnit.HOURS);
+        long submitTime = System.nanoTime() - start;
+
+        long lastProgress = System.currentTimeMillis();
+        long handled = 0;
+        while (confirmedVotes.get() + rejectedVotes.get() < submittedVotes.get() && System.currentTimeMillis() - lastProgress < 30000) {
+            Thread.sleep(100);
+            if (confirmedVotes.get() + rejectedVotes.get() > handled) {
+                handled = confirmedVotes.get() + rejectedVotes.get();
+                lastProgress = System.currentTimeMillis();
+            }
+        }
+        long totalTime = System.nanoTime() - start;
+        monitor.shutdownNow();
+        maxHeapUsed.accumulateAndGet(memory.getHeapMemoryUsage().getUsed(), Math::max);
+
+        System.out.println(String.format("Cluster: %d nodes, %d owners, target %d votes/s", nodes.size(), ownerIds.size(), votesPerSecond));
+        System.out.println(String.format("Submitted %d votes (%d failed) in %.1f s: %.0f votes/s", submittedVotes.get(), failedVotes.get(),
+            submitTime / 1e9, submittedVotes.get() * 1e9 / submitTime));
+        System.out.println(String.format("Confirmed %d votes (%d rejected, %d lost) in %.1f s: %.0f votes/s", confirmedVotes.get(), rejectedVotes.get(),
+            submittedVotes.get() - confirmedVotes.get() - rejectedVotes.get(), totalTime / 1e9, confirmedVotes.get() * 1e9 / totalTime));
+        System.out.println(submitLatency.report());
+        for (int i = hopLatencies.size() - 1; i >= 0; i--) {
+            System.out.println(hopLatencies.get(i).report());
+        }
+        System.out.println(masterLatency.report());
+        System.out.println(statusLatency.report());
+        System.out.println(String.format("Heap: max used %d MB, GC: %d collections, %d ms", maxHeapUsed.get() / 1024 / 1024,
+            gcCount() - gcCount, gcTime() - gcTime));
+        VoteTracer.getDefault().flush();
+        System.out.println(VoteTracer.getDefault().getReport());
+    }
+
+    private static long gcCount() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+    }
+
+    private static long gcTime() {
+        return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+    }
+}
@@ -21,7 +21,10 @@
 
 package uk.dsxt.voting.tests;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.AllArgsConstructor;
 import lombok.Setter;
 import lombok.Value;
@@ -33,22 +36,31 @@ import uk.dsxt.voting.client.datamodel.ClientsOnTime;
 import uk.dsxt.voting.common.domain.dataModel.*;
 import uk.dsxt.voting.common.iso20022.Iso20022Serializer;
 import uk.dsxt.voting.common.utils.crypto.CryptoHelperImpl;
+import uk.dsxt.voting.common.utils.crypto.CryptoKeysGenerator;
 import uk.dsxt.voting.common.utils.crypto.KeyPair;
 
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.stream.Collectors;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 @Log4j2
 public class TestDataGenerator {
     private final static ObjectMapper mapper = new ObjectMapper();
 
-    private final static String SECURITY = "security";
+    // files are written by many small values, flushing after each of them would cost a system call per value
+    private final static ObjectWriter streamWriter = mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    public final static String SECURITY = "security";
     private final static String MASTER_PASSWORD = "master_password";
 
+    private final static int WRITE_BUFFER_SIZE = 1 << 16;
+
     private final static CryptoHelperImpl cryptoHelper = CryptoHelperImpl.DEFAULT_CRYPTO_HELPER;
 
     @Value
@@ -61,7 +73,6 @@ public class TestDataGenerator {
         String privateKey;
         String publicKey;
         String name;
-        VoteResult vote;
         List<ClientFullInfo> clients;
         @NonFinal
         @Setter
@@ -74,6 +85,98 @@ public class TestDataGenerator {
         String walletOffShedule;
     }
 
+    /**
+     * Owners of a scenario are not kept in memory: holder, packet size and vote of an owner are drawn in this order
+     * from a random seeded with the owner index, so every pass over the owners sees the same values.
+     * Only owner indexes grouped by holder (4 bytes per owner) and packet sizes summed by holder are stored.
+     */
+    private static class Owners {
+        private static final int CHUNK_SIZE = 1 << 16;
+
+        private final long seed;
+        private final int first;
+        private final int count;
+        private final int holdersCount;
+        private final int[] offsets;
+        private final int[] indexes;
+        private final long[] packetSizes;
+
+        Owners(long seed, int first, int count, int holdersCount) {
+            this.seed = seed;
+            this.first = first;
+            this.count = count;
+            this.holdersCount = holdersCount;
+            int chunks = (count + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            int[][] countsByChunk = new int[chunks][];
+            long[][] packetSizesByChunk = new long[chunks][];
+            IntStream.range(0, chunks).parallel().forEach(chunk -> {
+                Random random = new Random();
+                int[] counts = new int[holdersCount];
+                long[] sizes = new long[holdersCount];
+                for (int i = chunk * CHUNK_SIZE, end = Math.min(count, i + CHUNK_SIZE); i < end; i++) {
+                    int holder = holder(random, first + i);
+                    counts[holder]++;
+                    sizes[holder] += packetSize(random);
+                }
+                countsByChunk[chunk] = counts;
+                packetSizesByChunk[chunk] = sizes;
+            });
+
+            // counting sort: positions of every chunk inside holder groups keep owners of a holder in index order
+            offsets = new int[holdersCount + 1];
+            packetSizes = new long[holdersCount];
+            int[][] positionsByChunk = new int[chunks][holdersCount];
+            for (int holder = 0; holder < holdersCount; holder++) {
+                int position = offsets[holder];
+                for (int chunk = 0; chunk < chunks; chunk++) {
+                    positionsByChunk[chunk][holder] = position;
+                    position += countsByChunk[chunk][holder];
+                    packetSizes[holder] += packetSizesByChunk[chunk][holder];
+                }
+                offsets[holder + 1] = position;
+            }
+            indexes = new int[count];
+            IntStream.range(0, chunks).parallel().forEach(chunk -> {
+                Random random = new Random();
+                int[] positions = positionsByChunk[chunk];
+                for (int i = chunk * CHUNK_SIZE, end = Math.min(count, i + CHUNK_SIZE); i < end; i++) {
+                    indexes[positions[holder(random, first + i)]++] = first + i;
+                }
+            });
+        }
+
+        /**
+         * Reseeds random for the owner, the next values drawn from it are packet size and vote of the owner.
+         */
+        int holder(Random random, int index) {
+            random.setSeed(seed + index * 0x9E3779B97F4A7C15L);
+            return index < 6 ? 0 : randomInt(random, 0, holdersCount - 1);
+        }
+
+        int packetSize(Random random) {
+            return randomInt(random, 15, 100);
+        }
+
+        int getCount() {
+            return count;
+        }
+
+        long getPacketSize(int holder) {
+            return packetSizes[holder];
+        }
+
+        void forEachOwner(int holder, IntConsumer action) {
+            for (int i = offsets[holder]; i < offsets[holder + 1]; i++) {
+                action.accept(indexes[i]);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface ContentWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
     public static void main(String[] args) {
         try {
             if (args.length == 1) {
@@ -81,7 +184,7 @@ public class TestDataGenerator {
                 return;
             }
             if (args.length > 0 && args.length < 10) {
-                System.out.println("<name> <totalParticipant> <holdersCount> <vmCount> <levelsCount> <minutes> <generateVotes> <victimsCount>");
+                System.out.println("<name> <totalParticipant> <holdersCount> <vmCount> <levelsCount> <minutes> <generateVotes> <victimsCount> <generateDisconnect> <disconnectNodes> [<ownerKeysCount>]");
                 throw new IllegalArgumentException("Invalid arguments count exception.");
             }
             int argId = 0;
@@ -94,63 +197,63 @@ public class TestDataGenerator {
             boolean generateVotes = args.length == 0 ? true : Boolean.parseBoolean(args[argId++]);
             int victimsCount = args.length == 0 ? 0 : Integer.parseInt(args[argId++]);
             boolean generateDisconnect = args.length == 0 ? false : Boolean.parseBoolean(args[argId++]);
-            int disconnectNodes = args.length == 0 ? 0 : Integer.parseInt(args[argId]);
+            int disconnectNodes = args.length == 0 ? 0 : Integer.parseInt(args[argId++]);
+            int ownerKeysCount = args.length <= argId ? 1 : Integer.parseInt(args[argId]);
             TestDataGenerator generator = new TestDataGenerator();
-            generator.generate(name, totalParticipant, holdersCount, vmCount, levelsCount, minutes, generateVotes, victimsCount, generateDisconnect, disconnectNodes);
+            generator.generate(name, totalParticipant, holdersCount, vmCount, levelsCount, minutes, generateVotes, victimsCount, generateDisconnect, disconnectNodes, ownerKeysCount);
         } catch (Exception e) {
             log.error("Test generation was failed.", e);
         }
     }
 
+    /**
+     * Holders are generated in memory, owners are streamed (see {@link Owners}) and share a pool of ownerKeysCount keys.
+     */
     private void generate(String name, int totalParticipant, int holdersCount, int vmCount, int levelsCount, int minutes, boolean generateVotes, int victimsCount,
-                          boolean generateDisconnect, int disconnectNodes) throws Exception {
-        ClientFullInfo[] clients = new ClientFullInfo[totalParticipant];
-        Participant[] participants = new Participant[totalParticipant];
+                          boolean generateDisconnect, int disconnectNodes, int ownerKeysCount) throws Exception {
         //generating keys
         long start = System.currentTimeMillis();
-        log.debug("generating {} keys", totalParticipant);
-        KeyPair[] holderKeys = cryptoHelper.createCryptoKeysGenerator().generateKeys(holdersCount + 1);
-        KeyPair[] keys = new KeyPair[totalParticipant];
-        for (int i = 0; i < keys.length; i++) {
-            keys[i] = holderKeys[Math.min(i, holderKeys.length - 1)];
-        }
-        log.debug("{} keys generated. {} seconds spent", totalParticipant, (System.currentTimeMillis() - start) / 1000);
+        log.debug("generating {} holder keys and {} owner keys", holdersCount, ownerKeysCount);
+        CryptoKeysGenerator keysGenerator = cryptoHelper.createCryptoKeysGenerator();
+        KeyPair[] holderKeys = keysGenerator.generateKeysParallel(holdersCount);
+        KeyPair[] ownerKeys = keysGenerator.generateKeysParallel(Math.max(1, ownerKeysCount));
+        log.debug("{} keys generated. {} seconds spent", holderKeys.length + ownerKeys.length, (System.currentTimeMillis() - start) / 1000);
 
         //generating voting
         long now = System.currentTimeMillis();
         long dayStart = now - now % (24 * 60 * 60 * 1000);
         Voting voting = generateVotingEn(dayStart, dayStart + minutes * 60000);
-        //generating participants info
-        for (int i = 0; i < totalParticipant; i++) {
-            ParticipantRole role;
-            if (i == 0)
-                role = ParticipantRole.NRD;
-            else if (i < holdersCount)
-                role = ParticipantRole.NominalHolder;
-            else
-                role = ParticipantRole.Owner;
-            HashMap<String, BigDecimal> securities = new HashMap<>();
-            securities.put(SECURITY, role == ParticipantRole.Owner ? new BigDecimal(randomInt(15, 100)) : BigDecimal.ZERO);
-            int ownerIdx = role == ParticipantRole.NRD ? -1 : i < 6 ? 0 : randomInt(0, Math.min(i, holdersCount) - 1);
-            VoteResult vote = role != ParticipantRole.Owner ? null : generateVote(Integer.toString(i), securities, voting);
-            clients[i] = new ClientFullInfo(securities, i, ownerIdx, role, keys[i].getPrivateKey(), keys[i].getPublicKey(), String.format("Random name #%d", i), vote, new ArrayList<>(), false, true, "");
-            participants[i] = new Participant(i == 0 ? "00" : Integer.toString(i), clients[i].getName(), clients[i].getPublicKey());
-            if (role != ParticipantRole.NRD) {
-                clients[ownerIdx].clients.add(clients[i]);
-                for (; ownerIdx >= 0; ownerIdx = clients[ownerIdx].getHolderId()) {
-                    for (Map.Entry<String, BigDecimal> secEntry : securities.entrySet()) {
-                        clients[ownerIdx].getPacketSizeBySecurity().put(secEntry.getKey(), clients[ownerIdx].getPacketSizeBySecurity().get(secEntry.getKey()).add(secEntry.getValue()));
-                    }
-                }
-            }
+        //generating holders info
+        ClientFullInfo[] holders = new ClientFullInfo[holdersCount];
+        for (int i = 0; i < holdersCount; i++) {
+            ParticipantRole role = i == 0 ? ParticipantRole.NRD : ParticipantRole.NominalHolder;
+            int ownerIdx = role == ParticipantRole.NRD ? -1 : i < 6 ? 0 : randomInt(0, i - 1);
+            holders[i] = new ClientFullInfo(new HashMap<>(), i, ownerIdx, role, holderKeys[i].getPrivateKey(), holderKeys[i].getPublicKey(),
+                String.format("Random name #%d", i), new ArrayList<>(), false, true, "");
+            if (role != ParticipantRole.NRD)
+                holders[ownerIdx].clients.add(holders[i]);
+        }
+        //grouping owners by holders
+        start = System.currentTimeMillis();
+        Owners owners = new Owners(ThreadLocalRandom.current().nextLong(), holdersCount, Math.max(0, totalParticipant - holdersCount), holdersCount);
+        log.debug("{} owners grouped by holders. {} seconds spent", owners.getCount(), (System.currentTimeMillis() - start) / 1000);
+        //holdings rollup in one bottom-up pass, parent of a holder always has smaller index
+        long[] packetSizes = new long[holdersCount];
+        for (int i = holdersCount - 1; i >= 0; i--) {
+            packetSizes[i] += owners.getPacketSize(i);
+            holders[i].getPacketSizeBySecurity().put(SECURITY, BigDecimal.valueOf(packetSizes[i]));
+            if (i > 0)
+                packetSizes[holders[i].getHolderId()] += packetSizes[i];
         }
 
         if (victimsCount > 0) {
-            ThreadLocalRandom.current().ints(1, holdersCount - 1).distinct().limit(victimsCount).forEach(i -> clients[i].setVictim(true));
-            ThreadLocalRandom.current().ints(1, holdersCount - 1).filter(i -> !clients[i].isVictim()).distinct().limit(victimsCount).forEach(i -> clients[i].setHonest(false));
+            ThreadLocalRandom.current().ints(1, holdersCount - 1).distinct().limit(victimsCount).forEach(i -> holders[i].setVictim(true));
+            ThreadLocalRandom.current().ints(1, holdersCount - 1).filter(i -> !holders[i].isVictim()).distinct().limit(victimsCount).forEach(i -> holders[i].setHonest(false));
         }
 
-        saveData(clients, participants, name, voting, holdersCount, vmCount, minutes, generateVotes, generateDisconnect, disconnectNodes);
+        start = System.currentTimeMillis();
+        saveData(holders, owners, ownerKeys, name, voting, holdersCount, vmCount, minutes, generateVotes, generateDisconnect, disconnectNodes);
+        log.debug("{} participants saved. {} seconds spent", totalParticipant, (System.currentTimeMillis() - start) / 1000);
     }
 
     private static void generateCredentialsJSON() throws IOException {
@@ -169,7 +272,11 @@ public class TestDataGenerator {
         FileUtils.writeStringToFile(new File("credentials00.json"), string);
     }
 
-    private static VoteResult generateVote(String id, HashMap<String, BigDecimal> securities, Voting voting) {
+    static VoteResult generateVote(String id, HashMap<String, BigDecimal> securities, Voting voting) {
+        return generateVote(id, securities, voting, ThreadLocalRandom.current());
+    }
+
+    public static VoteResult generateVote(String id, Map<String, BigDecimal> securities, Voting voting, Random random) {
         VoteResult vote = new VoteResult(voting.getId(), id, securities.get(SECURITY));
         for (int j = 0; j < voting.getQuestions().length; j++) {
             String questionId = voting.getQuestions()[j].getId();
@@ -178,15 +285,15 @@ public class TestDataGenerator {
                 BigDecimal totalSum = BigDecimal.ZERO;
                 for (int i = 0; i < voting.getQuestions()[j].getAnswers().length; i++) {
                     String answerId = voting.getQuestions()[j].getAnswers()[i].getId();
-                    int amount = randomInt(0, vote.getPacketSize().subtract(totalSum).intValue());
+                    int amount = randomInt(random, 0, vote.getPacketSize().subtract(totalSum).intValue());
                     BigDecimal voteAmount = new BigDecimal(amount);
                     totalSum = totalSum.add(voteAmount);
                     if (voteAmount.compareTo(BigDecimal.ZERO) > 0)
                         vote.setAnswer(questionId, answerId, voteAmount);
                 }
             } else {
-                String answerId = voting.getQuestions()[j].getAnswers()[randomInt(0, voting.getQuestions()[j].getAnswers().length - 1)].getId();
-                BigDecimal voteAmount = new BigDecimal(randomInt(0, vote.getPacketSize().intValue()));
+                String answerId = voting.getQuestions()[j].getAnswers()[randomInt(random, 0, voting.getQuestions()[j].getAnswers().length - 1)].getId();
+                BigDecimal voteAmount = new BigDecimal(randomInt(random, 0, vote.getPacketSize().intValue()));
                 if (voteAmount.compareTo(BigDecimal.ZERO) > 0)
                     vote.setAnswer(questionId, answerId, voteAmount);
             }
@@ -224,7 +331,7 @@ public class TestDataGenerator {
         return new Voting("1", "GMET_Ежегодное голосование", startTime, endTime, questions, SECURITY);
     }
 
-    private static Voting generateVotingEn(long startTime, long endTime) throws Exception {
+    public static Voting generateVotingEn(long startTime, long endTime) throws Exception {
         Question[] questions = new Question[5];
         Answer[] answers = new Answer[3];
         answers[0] = new Answer("1", "For");
@@ -254,12 +361,27 @@ public class TestDataGenerator {
         return new Voting("1", "GMET_Annual voting", startTime, endTime, questions, SECURITY);
     }
 
-    private void saveData(ClientFullInfo[] clients, Participant[] participants, String name, Voting voting,
+    private void saveData(ClientFullInfo[] holders, Owners owners, KeyPair[] ownerKeys, String name, Voting voting,
                           int holdersCount, int vmCount, int minutes, boolean generateVotes,
                           boolean generateDisconnect, int disconnectNodes) throws Exception {
         //saving info to appropriate files
         final String dirPath = "/src/main/resources/scenarios";
-        FileUtils.writeStringToFile(new File(String.format("%s/%s/%s/participants.json", BaseTestsLauncher.MODULE_NAME, dirPath, name)), mapper.writeValueAsString(participants));
+        ForkJoinTask<Void> participantsTask = ForkJoinPool.commonPool().submit(() -> {
+            writeFile(new File(String.format("%s/%s/%s/participants.json", BaseTestsLauncher.MODULE_NAME, dirPath, name)), out -> {
+                try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+                    generator.writeStartArray();
+                    for (ClientFullInfo holder : holders) {
+                        streamWriter.writeValue(generator, new Participant(holder.getId() == 0 ? "00" : Integer.toString(holder.getId()), holder.getName(), holder.getPublicKey()));
+                    }
+                    for (int i = 0; i < owners.getCount(); i++) {
+                        int id = holdersCount + i;
+                        streamWriter.writeValue(generator, new Participant(Integer.toString(id), String.format("Random name #%d", id), ownerKeys[i % ownerKeys.length].getPublicKey()));
+                    }
+                    generator.writeEndArray();
+                }
+            });
+            return null;
+        });
         Iso20022Serializer serializer = new Iso20022Serializer();
         FileUtils.writeStringToFile(new File(String.format("%s/%s/%s/voting.xml", BaseTestsLauncher.MODULE_NAME, dirPath, name)), serializer.serialize(voting));
         StringBuilder vmConfig = new StringBuilder();
@@ -274,26 +396,21 @@ public class TestDataGenerator {
 
         //aggregating data from all files and save it to one file
         if (generateDisconnect)
-            ThreadLocalRandom.current().ints(1, holdersCount - 1).distinct().limit(disconnectNodes).forEach(i -> clients[i].setWalletOffShedule(generateWalletoffShedule(minutes)));
+            ThreadLocalRandom.current().ints(1, holdersCount - 1).distinct().limit(disconnectNodes).forEach(i -> holders[i].setWalletOffShedule(generateWalletoffShedule(minutes)));
+        try {
+            IntStream.range(0, holdersCount).parallel().forEach(i -> {
+                try {
+                    saveHolderData(holders[i], owners, voting, String.format("%s/%s/%s/%s", BaseTestsLauncher.MODULE_NAME, dirPath, name, holders[i].getId()), minutes, generateVotes);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
         StringBuilder nodesConfig = new StringBuilder();
         for (int i = 0; i < holdersCount; i++) {
-            ClientFullInfo client = clients[i];
-            List<ClientCredentials> credentials = client.getClients().stream().
-                map(child -> new ClientCredentials(Integer.toString(child.getId()), Integer.toString(child.getId()))).
-                collect(Collectors.toList());
-            FileUtils.writeStringToFile(new File(String.format("%s/%s/%s/%s/credentials.json", BaseTestsLauncher.MODULE_NAME, dirPath, name, client.getId())), mapper.writeValueAsString(credentials));
-            List<Client> clientsJson = client.getClients().stream().
-                map(child -> new Client(Integer.toString(child.getId()), child.getPacketSizeBySecurity(), child.getRole())).
-                collect(Collectors.toList());
-            FileUtils.writeStringToFile(new File(String.format("%s/%s/%s/%s/clients.json", BaseTestsLauncher.MODULE_NAME, dirPath, name, client.getId())),
-                mapper.writeValueAsString(new ClientsOnTime[]{new ClientsOnTime(-20000, clientsJson.toArray(new Client[clientsJson.size()]))}));
-            String messages = client.getClients().stream().
-                filter(child -> child.getVote() != null).
-                map(child -> String.format("%s:%s", randomInt(30, minutes * 60), child.getVote().toString())).
-                reduce("", (s1, s2) -> s1 + "\n" + s2);
-            FileUtils.writeStringToFile(new File(String.format("%s/%s/%s/%s/messages.txt", BaseTestsLauncher.MODULE_NAME, dirPath, name, client.getId())), generateVotes ? messages : "");
-            FileUtils.writeStringToFile(new File(String.format("%s/%s/%s/%s/walletoff_schedule.txt", BaseTestsLauncher.MODULE_NAME, dirPath, name, client.getId())), client.getWalletOffShedule());
-
+            ClientFullInfo client = holders[i];
             nodesConfig.append(i);
             nodesConfig.append("=");
             nodesConfig.append(mapper.writeValueAsString(new NodeInfo(client.getId() == 0 ? MASTER_PASSWORD : (client.isVictim() ? "victim_password" : ""), client.getId(), Math.max(0, client.getHolderId()), client.getPrivateKey(),
@@ -301,6 +418,80 @@ public class TestDataGenerator {
             nodesConfig.append("\n");
         }
         FileUtils.writeStringToFile(new File(String.format("%s/%s/%s/voting.txt", BaseTestsLauncher.MODULE_NAME, dirPath, name)), nodesConfig.toString());
+        participantsTask.get();
+    }
+
+    /**
+     * Writes files of the holder node streaming over its clients: child holders first, then owners in index order.
+     */
+    private void saveHolderData(ClientFullInfo holder, Owners owners, Voting voting, String path, int minutes, boolean generateVotes) throws IOException {
+        writeFile(new File(path, "credentials.json"), out -> {
+            try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+                generator.writeStartArray();
+                for (ClientFullInfo child : holder.getClients()) {
+                    streamWriter.writeValue(generator, new ClientCredentials(Integer.toString(child.getId()), Integer.toString(child.getId())));
+                }
+                forEachOwner(owners, holder.getId(), (id, random) -> streamWriter.writeValue(generator, new ClientCredentials(Integer.toString(id), Integer.toString(id))));
+                generator.writeEndArray();
+            }
+        });
+        // same layout as ClientsOnTime[] with one entry
+        writeFile(new File(path, "clients.json"), out -> {
+            try (JsonGenerator generator = mapper.getFactory().createGenerator(out)) {
+                generator.writeStartArray();
+                generator.writeStartObject();
+                generator.writeNumberField("minutes", -20000);
+                generator.writeArrayFieldStart("clients");
+                for (ClientFullInfo child : holder.getClients()) {
+                    streamWriter.writeValue(generator, new Client(Integer.toString(child.getId()), child.getPacketSizeBySecurity(), child.getRole()));
+                }
+                forEachOwner(owners, holder.getId(), (id, random) -> streamWriter.writeValue(generator,
+                    new Client(Integer.toString(id), Collections.singletonMap(SECURITY, BigDecimal.valueOf(owners.packetSize(random))), ParticipantRole.Owner)));
+                generator.writeEndArray();
+                generator.writeEndObject();
+                generator.writeEndArray();
+            }
+        });
+        writeFile(new File(path, "messages.txt"), out -> {
+            if (!generateVotes)
+                return;
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            forEachOwner(owners, holder.getId(), (id, random) -> {
+                Map<String, BigDecimal> securities = Collections.singletonMap(SECURITY, BigDecimal.valueOf(owners.packetSize(random)));
+                VoteResult vote = generateVote(Integer.toString(id), securities, voting, random);
+                writer.write(String.format("\n%s:%s", randomInt(random, 30, minutes * 60), vote.toString()));
+            });
+            writer.flush();
+        });
+        FileUtils.writeStringToFile(new File(path, "walletoff_schedule.txt"), holder.getWalletOffShedule());
+    }
+
+    @FunctionalInterface
+    private interface OwnerWriter {
+        void write(int id, Random random) throws IOException;
+    }
+
+    private static void forEachOwner(Owners owners, int holder, OwnerWriter writer) throws IOException {
+        Random random = new Random();
+        try {
+            owners.forEachOwner(holder, id -> {
+                owners.holder(random, id);
+                try {
+                    writer.write(id, random);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static void writeFile(File file, ContentWriter writer) throws IOException {
+        FileUtils.forceMkdir(file.getAbsoluteFile().getParentFile());
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file), WRITE_BUFFER_SIZE)) {
+            writer.write(out);
+        }
     }
 
     private String generateWalletoffShedule(int minutes) {
@@ -322,7 +513,10 @@ public class TestDataGenerator {
     }
 
     private static int randomInt(int baseMinValue, int baseMaxValue) {
-        Random random = new Random();
+        return randomInt(ThreadLocalRandom.current(), baseMinValue, baseMaxValue);
+    }
+
+    private static int randomInt(Random random, int baseMinValue, int baseMaxValue) {
         return baseMinValue + random.nextInt(baseMaxValue - baseMinValue + 1);
     }
 }